@@ -43,7 +43,9 @@ import org.picketlink.idm.query.IdentityQueryBuilder;
 
 import java.io.Serializable;
 import java.util.ArrayList;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Set;
 
 import static org.picketlink.common.util.StringUtil.isNullOrEmpty;
 import static org.picketlink.idm.model.annotation.IdentityStereotype.Stereotype.GROUP;
@@ -52,6 +54,10 @@ import static org.picketlink.idm.model.annotation.RelationshipStereotype.Stereot
 import static org.picketlink.idm.model.annotation.RelationshipStereotype.Stereotype.GROUP_MEMBERSHIP;
 import static org.picketlink.idm.model.annotation.StereotypeProperty.Property.IDENTITY_GROUP_NAME;
 import static org.picketlink.idm.model.annotation.StereotypeProperty.Property.IDENTITY_ROLE_NAME;
+import static org.picketlink.idm.model.annotation.StereotypeProperty.Property.RELATIONSHIP_GRANT_ASSIGNEE;
+import static org.picketlink.idm.model.annotation.StereotypeProperty.Property.RELATIONSHIP_GRANT_ROLE;
+import static org.picketlink.idm.model.annotation.StereotypeProperty.Property.RELATIONSHIP_GROUP_MEMBERSHIP_GROUP;
+import static org.picketlink.idm.model.annotation.StereotypeProperty.Property.RELATIONSHIP_GROUP_MEMBERSHIP_MEMBER;
 
 /**
  * <p>Provides some comon authorization methods.</p>
@@ -222,6 +228,34 @@ public class AuthorizationUtil {
         return false;
     }
 
+    /**
+     * <p>Checks if an authenticated user is granted with at least one of the roles with the given names.</p>
+     *
+     * <p>The roles granted to the user are resolved only once, regardless of how many role names are being checked.</p>
+     *
+     * @param identity The {@link org.picketlink.Identity} instance representing an authenticated user.
+     * @param partitionManager
+     * @param roleNames The role names.
+     *
+     * @return True if the user is granted with any of the roles. Otherwise, returns false.
+     */
+    public static boolean hasAnyRole(Identity identity, PartitionManager partitionManager, String... roleNames) {
+        if (!isLoggedIn(identity)) {
+            return false;
+        }
+
+        Set<String> grantedRoles = getRelatedIdentityTypeNames(identity, partitionManager, GRANT, RELATIONSHIP_GRANT_ROLE,
+            RELATIONSHIP_GRANT_ASSIGNEE, IDENTITY_ROLE_NAME);
+
+        for (String roleName : roleNames) {
+            if (grantedRoles.contains(roleName)) {
+                return true;
+            }
+        }
+
+        return false;
+    }
+
     /**
      * <p>Checks if an authenticated user is member of the a group with the given name.</p>
      *
@@ -334,6 +368,34 @@ public class AuthorizationUtil {
         return false;
     }
 
+    /**
+     * <p>Checks if an authenticated user is member of at least one of the groups with the given names.</p>
+     *
+     * <p>The groups the user is member of are resolved only once, regardless of how many group names are being checked.</p>
+     *
+     * @param identity The {@link org.picketlink.Identity} instance representing an authenticated user.
+     * @param partitionManager
+     * @param groupNames The group names.
+     *
+     * @return True if the user is member of any of the groups. Otherwise, returns false.
+     */
+    public static boolean isMemberOfAny(Identity identity, PartitionManager partitionManager, String... groupNames) {
+        if (!isLoggedIn(identity)) {
+            return false;
+        }
+
+        Set<String> groups = getRelatedIdentityTypeNames(identity, partitionManager, GROUP_MEMBERSHIP,
+            RELATIONSHIP_GROUP_MEMBERSHIP_GROUP, RELATIONSHIP_GROUP_MEMBERSHIP_MEMBER, IDENTITY_GROUP_NAME);
+
+        for (String groupName : groupNames) {
+            if (groups.contains(groupName)) {
+                return true;
+            }
+        }
+
+        return false;
+    }
+
     /**
      * <p>Checks if an authenticated user is associated with a partition with the given type and name.</p>
      *
@@ -386,4 +448,80 @@ public class AuthorizationUtil {
     public static boolean hasLevel(Identity identity, Level level){
         return (level.compareTo(identity.getLevel()) <= 0);
     }
-}
\ No newline at end of file
+
+    /**
+     * <p>Returns the names of all identity types related with the authenticated account through relationships with the
+     * given stereotype. For instance, the names of all roles granted to the account.</p>
+     */
+    private static Set<String> getRelatedIdentityTypeNames(Identity identity, PartitionManager partitionManager,
+                                                           RelationshipStereotype.Stereotype relationshipStereotype,
+                                                           StereotypeProperty.Property identityTypeStereotype,
+                                                           StereotypeProperty.Property accountStereotype,
+                                                           StereotypeProperty.Property nameStereotype) {
+        Set<String> names = new HashSet<String>();
+        RelationshipManager relationshipManager = partitionManager.createRelationshipManager();
+
+        for (IdentityConfiguration configuration : partitionManager.getConfigurations()) {
+            for (IdentityStoreConfiguration storeConfiguration : configuration.getStoreConfiguration()) {
+                for (Class<? extends AttributedType> attributedType : storeConfiguration.getSupportedTypes().keySet()) {
+                    if (!Relationship.class.isAssignableFrom(attributedType)) {
+                        continue;
+                    }
+
+                    RelationshipStereotype stereotype = attributedType.getAnnotation(RelationshipStereotype.class);
+
+                    if (stereotype == null || !relationshipStereotype.equals(stereotype.value())) {
+                        continue;
+                    }
+
+                    Class<? extends Relationship> relationshipType = (Class<? extends Relationship>) attributedType;
+                    Property<Object> identityTypeProperty = getStereotypeProperty(relationshipType, identityTypeStereotype);
+                    Property<Object> accountProperty = getStereotypeProperty(relationshipType, accountStereotype);
+
+                    if (identityTypeProperty != null && accountProperty != null) {
+                        List<? extends Relationship> result = relationshipManager
+                            .createRelationshipQuery(relationshipType)
+                            .setParameter(Relationship.RELATIONSHIP_QUERY_ATTRIBUTE.byName(accountProperty.getName()), identity
+                                .getAccount())
+                            .getResultList();
+
+                        for (Relationship relationship : result) {
+                            Object identityType = identityTypeProperty.getValue(relationship);
+
+                            if (identityType != null) {
+                                Property<Object> nameProperty = getStereotypeProperty(identityType.getClass(), nameStereotype);
+
+                                if (nameProperty != null) {
+                                    Object name = nameProperty.getValue(identityType);
+
+                                    if (name != null) {
+                                        names.add(name.toString());
+                                    }
+                                }
+                            }
+                        }
+                    }
+                }
+            }
+        }
+
+        return names;
+    }
+
+    private static Property<Object> getStereotypeProperty(Class<?> type, StereotypeProperty.Property stereotypeProperty) {
+        List<Property<Object>> properties = PropertyQueries
+            .createQuery(type)
+            .addCriteria(new AnnotatedPropertyCriteria(StereotypeProperty.class))
+            .getResultList();
+
+        for (Property<Object> property : properties) {
+            StereotypeProperty attributeProperty = property.getAnnotatedElement().getAnnotation(StereotypeProperty.class);
+
+            if (stereotypeProperty.equals(attributeProperty.value())) {
+                return property;
+            }
+        }
+
+        return null;
+    }
+}
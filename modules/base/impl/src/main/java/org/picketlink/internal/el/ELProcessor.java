@@ -47,11 +47,18 @@ import javax.inject.Inject;
 /**
  * <p>Provides EL processing.</p>
  *
+ * <p>Parsed expressions are cached, so the same expression is only parsed once. The cache keeps the most recently used
+ * expressions.</p>
+ *
  * @author Pedro Igor
  */
 @ApplicationScoped
 public class ELProcessor {
 
+    private static final int MAX_CACHED_EXPRESSIONS = 1000;
+
+    private final ExpressionCache expressionCache = new ExpressionCache(MAX_CACHED_EXPRESSIONS);
+
     private ExpressionFactory expressionFactory;
     private CompositeELResolver elResolver;
 
@@ -75,7 +82,7 @@ public class ELProcessor {
 
     public <R> R eval(String expression) {
         PicketLinkELContext context = new PicketLinkELContext(this.elResolver);
-        ValueExpression valueExpression = this.expressionFactory.createValueExpression(context, expression, Object.class);
+        ValueExpression valueExpression = getValueExpression(context, expression);
 
         R value;
 
@@ -89,6 +96,17 @@ public class ELProcessor {
         return value;
     }
 
+    private ValueExpression getValueExpression(ELContext context, String expression) {
+        ValueExpression valueExpression = this.expressionCache.get(expression);
+
+        if (valueExpression == null) {
+            valueExpression = this.expressionFactory.createValueExpression(context, expression, Object.class);
+            this.expressionCache.put(expression, valueExpression);
+        }
+
+        return valueExpression;
+    }
+
     @Inject
     private void initialize() {
         this.expressionFactory = this.beanManager.wrapExpressionFactory(ExpressionFactory.newInstance());
@@ -0,0 +1,57 @@
+/*
+ * JBoss, Home of Professional Open Source
+ *
+ * Copyright 2013 Red Hat, Inc. and/or its affiliates.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.picketlink.internal.el;
+
+import javax.el.ValueExpression;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * <p>A bounded cache of parsed expressions. When full, the least recently used expression is evicted.</p>
+ */
+class ExpressionCache {
+
+    private final Map<String, ValueExpression> expressions;
+
+    ExpressionCache(final int maxSize) {
+        this.expressions = new LinkedHashMap<String, ValueExpression>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, ValueExpression> eldest) {
+                return size() > maxSize;
+            }
+        };
+    }
+
+    ValueExpression get(String expression) {
+        synchronized (this.expressions) {
+            return this.expressions.get(expression);
+        }
+    }
+
+    void put(String expression, ValueExpression valueExpression) {
+        synchronized (this.expressions) {
+            this.expressions.put(expression, valueExpression);
+        }
+    }
+
+    int size() {
+        synchronized (this.expressions) {
+            return this.expressions.size();
+        }
+    }
+}
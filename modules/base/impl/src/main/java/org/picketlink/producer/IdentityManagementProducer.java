@@ -33,6 +33,7 @@ import org.picketlink.idm.permission.acl.spi.PermissionHandler;
 import org.picketlink.internal.CDIEventBridge;
 import org.picketlink.internal.SecuredIdentityManager;
 
+import javax.annotation.PreDestroy;
 import javax.enterprise.context.ApplicationScoped;
 import javax.enterprise.context.RequestScoped;
 import javax.enterprise.inject.Instance;
@@ -61,6 +62,11 @@ import static org.picketlink.log.BaseLog.ROOT_LOGGER;
 @ApplicationScoped
 public class IdentityManagementProducer {
 
+    /**
+     * Maximum time to wait for the pending events when the embedded partition manager is closed, in milliseconds.
+     */
+    private static final long DESTROY_TIMEOUT = 5000;
+
     @Inject
     @PicketLink
     private Instance<Partition> defaultPartition;
@@ -80,6 +86,8 @@ public class IdentityManagementProducer {
 
     private PartitionManager partitionManager;
 
+    private DefaultPartitionManager embeddedPartitionManager;
+
     @Inject
     public void init() {
         if (this.partitionManager != null) {
@@ -100,6 +108,17 @@ public class IdentityManagementProducer {
         }
     }
 
+    /**
+     * <p>Releases the resources held by the embedded {@link PartitionManager}. A partition manager provided by the
+     * application is left to the application.</p>
+     */
+    @PreDestroy
+    public void destroy() {
+        if (this.embeddedPartitionManager != null) {
+            this.embeddedPartitionManager.close(DESTROY_TIMEOUT);
+        }
+    }
+
     @Produces
     public PartitionManager producePartitionManager() {
         return this.partitionManager;
@@ -143,7 +162,9 @@ public class IdentityManagementProducer {
         }
 
         List<IdentityConfiguration> identityConfiguration = this.identityManagementConfiguration.getIdentityConfiguration();
-        PartitionManager partitionManager = new DefaultPartitionManager(identityConfiguration, this.eventBridge, getPermissionHandlers());
+        DefaultPartitionManager partitionManager = new DefaultPartitionManager(identityConfiguration, this.eventBridge, getPermissionHandlers());
+
+        this.embeddedPartitionManager = partitionManager;
 
         this.eventBridge.fireEvent(new PartitionManagerCreateEvent(partitionManager));
 
@@ -0,0 +1,109 @@
+/*
+ * JBoss, Home of Professional Open Source
+ *
+ * Copyright 2013 Red Hat, Inc. and/or its affiliates.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.picketlink.authorization.util;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.picketlink.Identity;
+import org.picketlink.idm.IdentityManager;
+import org.picketlink.idm.PartitionManager;
+import org.picketlink.idm.RelationshipManager;
+import org.picketlink.idm.config.IdentityConfigurationBuilder;
+import org.picketlink.idm.internal.DefaultPartitionManager;
+import org.picketlink.idm.model.basic.Group;
+import org.picketlink.idm.model.basic.Realm;
+import org.picketlink.idm.model.basic.Role;
+import org.picketlink.idm.model.basic.User;
+
+import java.io.File;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+import static org.picketlink.idm.model.basic.BasicModel.addToGroup;
+import static org.picketlink.idm.model.basic.BasicModel.grantRole;
+
+public class AuthorizationUtilTestCase {
+
+    private PartitionManager partitionManager;
+
+    private Identity identity;
+
+    @Before
+    public void onSetup() {
+        IdentityConfigurationBuilder builder = new IdentityConfigurationBuilder();
+
+        builder
+            .named("default")
+                .stores()
+                    .file()
+                        .workingDirectory(new File(System.getProperty("java.io.tmpdir"), "pl-authorization-util").getPath())
+                        .preserveState(false)
+                        .supportAllFeatures();
+
+        this.partitionManager = new DefaultPartitionManager(builder.buildAll());
+        this.partitionManager.add(new Realm(Realm.DEFAULT_REALM));
+
+        IdentityManager identityManager = this.partitionManager.createIdentityManager();
+        RelationshipManager relationshipManager = this.partitionManager.createRelationshipManager();
+
+        User john = new User("john");
+        Role admin = new Role("admin");
+        Group sales = new Group("sales");
+
+        identityManager.add(john);
+        identityManager.add(admin);
+        identityManager.add(new Role("manager"));
+        identityManager.add(sales);
+        identityManager.add(new Group("support"));
+
+        grantRole(relationshipManager, john, admin);
+        addToGroup(relationshipManager, john, sales);
+
+        this.identity = mock(Identity.class);
+
+        when(this.identity.isLoggedIn()).thenReturn(true);
+        when(this.identity.getAccount()).thenReturn(john);
+    }
+
+    @Test
+    public void testHasAnyRole() {
+        assertTrue(AuthorizationUtil.hasAnyRole(this.identity, this.partitionManager, "admin"));
+        assertTrue(AuthorizationUtil.hasAnyRole(this.identity, this.partitionManager, "manager", "admin"));
+        assertFalse(AuthorizationUtil.hasAnyRole(this.identity, this.partitionManager, "manager"));
+        assertFalse(AuthorizationUtil.hasAnyRole(this.identity, this.partitionManager, "manager", "unknown"));
+        assertFalse(AuthorizationUtil.hasAnyRole(this.identity, this.partitionManager));
+    }
+
+    @Test
+    public void testIsMemberOfAny() {
+        assertTrue(AuthorizationUtil.isMemberOfAny(this.identity, this.partitionManager, "sales"));
+        assertTrue(AuthorizationUtil.isMemberOfAny(this.identity, this.partitionManager, "support", "sales"));
+        assertFalse(AuthorizationUtil.isMemberOfAny(this.identity, this.partitionManager, "support"));
+        assertFalse(AuthorizationUtil.isMemberOfAny(this.identity, this.partitionManager, "support", "unknown"));
+    }
+
+    @Test
+    public void testNotLoggedIn() {
+        when(this.identity.isLoggedIn()).thenReturn(false);
+
+        assertFalse(AuthorizationUtil.hasAnyRole(this.identity, this.partitionManager, "admin"));
+        assertFalse(AuthorizationUtil.isMemberOfAny(this.identity, this.partitionManager, "sales"));
+    }
+}
@@ -0,0 +1,77 @@
+/*
+ * JBoss, Home of Professional Open Source
+ *
+ * Copyright 2013 Red Hat, Inc. and/or its affiliates.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.picketlink.internal.el;
+
+import org.junit.Test;
+
+import javax.el.ValueExpression;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.mockito.Mockito.mock;
+
+public class ExpressionCacheTestCase {
+
+    @Test
+    public void testGet() {
+        ExpressionCache cache = new ExpressionCache(10);
+        ValueExpression expression = mock(ValueExpression.class);
+
+        assertNull(cache.get("#{identity.loggedIn}"));
+
+        cache.put("#{identity.loggedIn}", expression);
+
+        assertSame(expression, cache.get("#{identity.loggedIn}"));
+    }
+
+    @Test
+    public void testEvictsLeastRecentlyUsed() {
+        ExpressionCache cache = new ExpressionCache(2);
+        ValueExpression first = mock(ValueExpression.class);
+        ValueExpression second = mock(ValueExpression.class);
+        ValueExpression third = mock(ValueExpression.class);
+
+        cache.put("first", first);
+        cache.put("second", second);
+
+        // using the first expression makes the second one the eldest
+        cache.get("first");
+
+        cache.put("third", third);
+
+        assertEquals(2, cache.size());
+        assertSame(first, cache.get("first"));
+        assertNull(cache.get("second"));
+        assertSame(third, cache.get("third"));
+    }
+
+    @Test
+    public void testNewExpressionsAreCachedWhenFull() {
+        ExpressionCache cache = new ExpressionCache(100);
+
+        for (int i = 0; i < 1000; i++) {
+            cache.put("#{" + i + "}", mock(ValueExpression.class));
+        }
+
+        assertEquals(100, cache.size());
+        assertNull(cache.get("#{0}"));
+        assertNotNull(cache.get("#{999}"));
+    }
+}
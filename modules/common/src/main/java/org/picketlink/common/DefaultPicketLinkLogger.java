@@ -225,6 +225,21 @@ public class DefaultPicketLinkLogger implements PicketLinkLogger {
         return new IllegalStateException(ErrorCodes.AUDIT_MANAGER_NULL);
     }
 
+    @Override
+    public void auditEventsDropped(long count) {
+        logger.warn(count + " audit events were dropped because the audit queue is full");
+    }
+
+    @Override
+    public void auditEventWriteFailed(Throwable t) {
+        logger.error("Audit event could not be written", t);
+    }
+
+    @Override
+    public void auditInvalidProperty(String name, String value, Object defaultValue) {
+        logger.warn("Invalid value [" + value + "] of the " + name + " property, using " + defaultValue);
+    }
+
     /*
      *(non-Javadoc)
      *
@@ -350,6 +365,16 @@ public class DefaultPicketLinkLogger implements PicketLinkLogger {
         return new IllegalStateException(ErrorCodes.KEYSTOREKEYMGR_NULL_ALIAS);
     }
 
+    @Override
+    public void keyStoreReloaded(String keyStore) {
+        logger.info("KeyStore " + keyStore + " was modified and has been reloaded");
+    }
+
+    @Override
+    public void keyStoreReloadFailed(String keyStore, Throwable t) {
+        logger.warn("KeyStore " + keyStore + " was modified but could not be reloaded, keeping the previous keys", t);
+    }
+
     /*
      *(non-Javadoc)
      *
@@ -686,6 +711,16 @@ public class DefaultPicketLinkLogger implements PicketLinkLogger {
         logger.error("Exception loading the service providers:", t);
     }
 
+    @Override
+    public void samlMetaDataReloaded(String metadata, int entities) {
+        logger.info("Metadata " + metadata + " was modified and has been reloaded with " + entities + " entities");
+    }
+
+    @Override
+    public void samlMetaDataReloadFailed(String metadata, Throwable t) {
+        logger.warn("Metadata " + metadata + " was modified but could not be reloaded, keeping the previous entities", t);
+    }
+
     /*
      *(non-Javadoc)
      *
@@ -129,6 +129,29 @@ public interface PicketLinkLogger {
      */
     IllegalStateException auditNullAuditManager();
 
+    /**
+     * <p>Logs the number of audit events discarded because the asynchronous audit queue was full.</p>
+     *
+     * @param count
+     */
+    void auditEventsDropped(long count);
+
+    /**
+     * <p>Logs an audit event which could not be written by the asynchronous audit pipeline.</p>
+     *
+     * @param t
+     */
+    void auditEventWriteFailed(Throwable t);
+
+    /**
+     * <p>Logs an invalid value of an asynchronous audit pipeline system property, replaced by its default.</p>
+     *
+     * @param name
+     * @param value
+     * @param defaultValue
+     */
+    void auditInvalidProperty(String name, String value, Object defaultValue);
+
     /**
      * <p>Indicates if the logging level is set to INFO.</p>
      *
@@ -219,6 +242,21 @@ public interface PicketLinkLogger {
      */
     IllegalStateException keyStoreNullAlias();
 
+    /**
+     * <p>Logs a message when the KeyStore was modified and has been reloaded.</p>
+     *
+     * @param keyStore
+     */
+    void keyStoreReloaded(String keyStore);
+
+    /**
+     * <p>Logs a message when a modified KeyStore could not be reloaded and the previous one is still being used.</p>
+     *
+     * @param keyStore
+     * @param t
+     */
+    void keyStoreReloadFailed(String keyStore, Throwable t);
+
     /**
      * <p>Creates a {@link RuntimeException} for the case where parser founds a unknown end element.</p>
      *
@@ -419,6 +457,23 @@ public interface PicketLinkLogger {
     /** @param t */
     void samlMetaDataServiceProviderLoadingError(Throwable t);
 
+    /**
+     * <p>Logs a message when a metadata file was modified and has been reloaded.</p>
+     *
+     * @param metadata
+     * @param entities number of entities loaded from the file
+     */
+    void samlMetaDataReloaded(String metadata, int entities);
+
+    /**
+     * <p>Logs a message when a modified metadata file could not be reloaded and the previous entities are still
+     * being used.</p>
+     *
+     * @param metadata
+     * @param t
+     */
+    void samlMetaDataReloadFailed(String metadata, Throwable t);
+
     /** @param t */
     void signatureAssertionValidationError(Throwable t);
 
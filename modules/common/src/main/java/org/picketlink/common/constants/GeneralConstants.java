@@ -29,6 +29,10 @@ package org.picketlink.common.constants;
  * @since Oct 8, 2009
  */
 public interface GeneralConstants {
+    String ARTIFACT_RESOLUTION_KEY_MANAGER = "ARTIFACT_RESOLUTION_KEY_MANAGER";
+
+    String ARTIFACT_STORE = "ARTIFACT_STORE";
+
     String ASSERTIONS_VALIDITY = "ASSERTIONS_VALIDITY";
     String CLOCK_SKEW = "CLOCK_SKEW";
 
@@ -44,6 +48,8 @@ public interface GeneralConstants {
 
     String ATTIBUTE_MANAGER = "ATTRIBUTE_MANAGER";
 
+    String AUDIT_ASYNC = "picketlink.audit.async";
+
     String AUDIT_ENABLE = "picketlink.audit.enable";
 
     String AUDIT_HELPER = "AUDIT_HELPER";
@@ -96,6 +102,8 @@ public interface GeneralConstants {
 
     String ROLE_VALIDATOR_IGNORE = "ROLE_VALIDATOR_IGNORE";
 
+    String SAML_ARTIFACT_KEY = "SAMLart";
+
     String SAML_REQUEST_KEY = "SAMLRequest";
 
     String SAML_RESPONSE_KEY = "SAMLResponse";
@@ -23,6 +23,7 @@ import org.picketlink.common.constants.GeneralConstants;
 import org.picketlink.common.exceptions.ParsingException;
 import org.picketlink.common.util.StaxParserUtil;
 import org.picketlink.common.util.SystemPropertiesUtil;
+import org.w3c.dom.Node;
 
 import javax.xml.stream.EventFilter;
 import javax.xml.stream.XMLEventReader;
@@ -79,12 +80,31 @@ public abstract class AbstractParser implements ParserNamespaceSupport {
         if (configStream == null)
             throw logger.nullArgumentError("InputStream");
 
-        XMLInputFactory xmlInputFactory = getXMLInputFactory();
+        return parse(filterWhitespaces(StaxParserUtil.getXMLEventReader(configStream)));
+    }
 
-        XMLEventReader xmlEventReader = StaxParserUtil.getXMLEventReader(configStream);
+    /**
+     * Parse a DOM node for payload. Useful when the payload was already parsed into a DOM, as the node is read directly
+     * instead of being serialized and parsed again.
+     *
+     * @param node
+     *
+     * @return
+     *
+     * @throws {@link IllegalArgumentException} when the node is null
+     */
+    public Object parse(Node node) throws ParsingException {
+        if (node == null)
+            throw logger.nullArgumentError("Node");
+
+        return parse(filterWhitespaces(StaxParserUtil.getXMLEventReader(node)));
+    }
+
+    private XMLEventReader filterWhitespaces(XMLEventReader xmlEventReader) throws ParsingException {
+        XMLInputFactory xmlInputFactory = getXMLInputFactory();
 
         try {
-            xmlEventReader = xmlInputFactory.createFilteredReader(xmlEventReader, new EventFilter() {
+            return xmlInputFactory.createFilteredReader(xmlEventReader, new EventFilter() {
                 public boolean accept(XMLEvent xmlEvent) {
                     // We are going to disregard characters that are new line and whitespace
                     if (xmlEvent.isCharacters()) {
@@ -104,8 +124,6 @@ public abstract class AbstractParser implements ParserNamespaceSupport {
         } catch (XMLStreamException e) {
             throw logger.parserException(e);
         }
-
-        return parse(xmlEventReader);
     }
 
     private ClassLoader getTCCL() {
@@ -0,0 +1,176 @@
+/*
+ * JBoss, Home of Professional Open Source
+ *
+ * Copyright 2013 Red Hat, Inc. and/or its affiliates.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.picketlink.common.random;
+
+import java.security.SecureRandom;
+
+/**
+ * <p>Generates the random identifiers and secrets used across PicketLink.</p>
+ *
+ * <p>A {@link SecureRandom} only serves one caller at a time, so a single instance shared by all the threads, as the
+ * one behind {@link java.util.UUID#randomUUID()}, becomes a bottleneck under load. This class spreads the callers over
+ * a fixed number of instances, created once by a {@link SecureRandomProvider}, according to the id of the calling
+ * thread.</p>
+ *
+ * <p>The instance returned by {@link #getInstance()} can be replaced with {@link #setInstance(RandomGenerator)}, for
+ * instance to use a different {@link SecureRandomProvider}.</p>
+ */
+public class RandomGenerator {
+
+    private static final char[] HEX = "0123456789abcdef".toCharArray();
+
+    private static volatile RandomGenerator instance = new RandomGenerator();
+
+    private final SecureRandom[] stripes;
+
+    private final int mask;
+
+    /**
+     * Creates a generator with one {@link SecureRandom} per processor, each one seeded from the platform default
+     * {@link SecureRandom}.
+     */
+    public RandomGenerator() {
+        this(new SeededSecureRandomProvider(), Runtime.getRuntime().availableProcessors());
+    }
+
+    /**
+     * Creates a generator using {@link SecureRandom} instances created by the given provider.
+     *
+     * @param provider creates the {@link SecureRandom} instances.
+     * @param concurrency the expected number of concurrent callers, rounded up to a power of two.
+     */
+    public RandomGenerator(SecureRandomProvider provider, int concurrency) {
+        if (provider == null) {
+            throw new IllegalArgumentException("provider");
+        }
+
+        int size = Integer.highestOneBit(Math.max(1, concurrency) * 2 - 1);
+
+        this.stripes = new SecureRandom[size];
+        this.mask = size - 1;
+
+        for (int i = 0; i < size; i++) {
+            this.stripes[i] = provider.getSecureRandom();
+        }
+    }
+
+    public static RandomGenerator getInstance() {
+        return instance;
+    }
+
+    public static void setInstance(RandomGenerator generator) {
+        if (generator == null) {
+            throw new IllegalArgumentException("generator");
+        }
+
+        instance = generator;
+    }
+
+    /**
+     * Returns the {@link SecureRandom} used by the calling thread. It is shared with other threads, so it must not be
+     * reseeded.
+     */
+    public SecureRandom getSecureRandom() {
+        return this.stripes[(int) Thread.currentThread().getId() & this.mask];
+    }
+
+    /**
+     * Fills the given array with random bytes.
+     */
+    public void nextBytes(byte[] bytes) {
+        getSecureRandom().nextBytes(bytes);
+    }
+
+    /**
+     * Returns an array of the given size filled with random bytes, to be used as a secret.
+     */
+    public byte[] generateBytes(int size) {
+        byte[] bytes = new byte[size];
+
+        nextBytes(bytes);
+
+        return bytes;
+    }
+
+    /**
+     * Returns a random (version 4) UUID, in the same format as {@code UUID.randomUUID().toString()}.
+     */
+    public String generateUUID() {
+        byte[] bytes = generateBytes(16);
+
+        bytes[6] = (byte) ((bytes[6] & 0x0f) | 0x40);
+        bytes[8] = (byte) ((bytes[8] & 0x3f) | 0x80);
+
+        char[] chars = new char[36];
+        int position = 0;
+
+        for (int i = 0; i < 16; i++) {
+            if (i == 4 || i == 6 || i == 8 || i == 10) {
+                chars[position++] = '-';
+            }
+
+            chars[position++] = HEX[(bytes[i] >> 4) & 0x0f];
+            chars[position++] = HEX[bytes[i] & 0x0f];
+        }
+
+        return new String(chars);
+    }
+
+    /**
+     * Returns a random identifier made of the given number of random bytes, hex encoded.
+     */
+    public String generateId(int size) {
+        byte[] bytes = generateBytes(size);
+        char[] chars = new char[size * 2];
+
+        for (int i = 0; i < size; i++) {
+            chars[i * 2] = HEX[(bytes[i] >> 4) & 0x0f];
+            chars[i * 2 + 1] = HEX[bytes[i] & 0x0f];
+        }
+
+        return new String(chars);
+    }
+
+    /**
+     * <p>Creates SHA1PRNG instances seeded with bytes read from the platform default {@link SecureRandom}, which does
+     * not block. Seeding them explicitly before their first use avoids waiting for the system entropy source.</p>
+     */
+    private static class SeededSecureRandomProvider implements SecureRandomProvider {
+
+        private static final int SEED_LENGTH = 32;
+
+        private final SecureRandom seeder = new SecureRandom();
+
+        @Override
+        public SecureRandom getSecureRandom() {
+            byte[] seed = new byte[SEED_LENGTH];
+
+            this.seeder.nextBytes(seed);
+
+            try {
+                SecureRandom secureRandom = SecureRandom.getInstance(DefaultSecureRandomProvider.DEFAULT_SALT_ALGORITHM);
+
+                secureRandom.setSeed(seed);
+
+                return secureRandom;
+            } catch (Exception e) {
+                return new SecureRandom(seed);
+            }
+        }
+    }
+}
@@ -17,13 +17,23 @@
  */
 package org.picketlink.common.util;
 
-import java.util.logging.Level;
-import java.util.logging.Logger;
+import java.nio.charset.Charset;
+import java.util.Arrays;
 
 /**
  * Encodes and decodes to and from Base64 notation.
  *
  * <p>
+ * This is the Base64 implementation shared by all the PicketLink modules. Its API is the one of the original class
+ * described below, but the encoding and decoding are table-driven and work on whole blocks of data: arrays and strings
+ * are converted without intermediate copies, the streams buffer their input and output instead of converting a
+ * quantum at a time, and the {@link #encode(byte[], int, int, byte[], int, int)} and
+ * {@link #decode(byte[], int, int, byte[], int, int)} methods convert straight into a buffer given by the caller.
+ * Besides the standard alphabet, the URL and filename safe alphabet of RFC 4648 is supported with the
+ * {@link #URL_SAFE} option, optionally without padding with the {@link #NO_PADDING} option, as used by JOSE.
+ * </p>
+ *
+ * <p>
  * Change Log:
  * </p>
  * <ul>
@@ -71,8 +81,6 @@ import java.util.logging.Logger;
  */
 public class Base64 {
 
-    private static Logger logger = Logger.getLogger(Base64.class.getCanonicalName());
-
     /* ******** P U B L I C F I E L D S ******** */
 
     /** No options specified. Value is zero. */
@@ -90,11 +98,26 @@ public class Base64 {
     /** Don't break lines when encoding (violates strict Base64 specification) */
     public static final int DONT_BREAK_LINES = 8;
 
+    /**
+     * Use the URL and filename safe alphabet of RFC 4648, where '-' and '_' replace '+' and '/'. When decoding, both
+     * alphabets are accepted and the padding is optional.
+     */
+    public static final int URL_SAFE = 16;
+
+    /** Don't pad the encoded data with '=' characters, as required by JOSE. */
+    public static final int NO_PADDING = 32;
+
     /* ******** P R I V A T E F I E L D S ******** */
 
     /** Maximum line length (76) of Base64 output. */
     private static final int MAX_LINE_LENGTH = 76;
 
+    /** Number of quanta (groups of three bytes) on a line. */
+    private static final int LINE_GROUPS = MAX_LINE_LENGTH / 4;
+
+    /** Size of the buffers of the streams. */
+    private static final int BUFFER_SIZE = 3 * 1024;
+
     /** The equals sign (=) as a byte. */
     private static final byte EQUALS_SIGN = (byte) '=';
 
@@ -104,147 +127,56 @@ public class Base64 {
     /** Preferred encoding. */
     private static final String PREFERRED_ENCODING = "UTF-8";
 
+    /** The encoding of the Base64 characters. */
+    private static final Charset US_ASCII = Charset.forName("US-ASCII");
+
     /** The 64 valid Base64 values. */
-    private static final byte[] ALPHABET;
-    private static final byte[] _NATIVE_ALPHABET = /* May be something funny like EBCDIC */
-            {(byte) 'A', (byte) 'B', (byte) 'C', (byte) 'D', (byte) 'E', (byte) 'F', (byte) 'G', (byte) 'H', (byte) 'I', (byte) 'J',
-                    (byte) 'K', (byte) 'L', (byte) 'M', (byte) 'N', (byte) 'O', (byte) 'P', (byte) 'Q', (byte) 'R', (byte) 'S',
-                    (byte) 'T', (byte) 'U', (byte) 'V', (byte) 'W', (byte) 'X', (byte) 'Y', (byte) 'Z', (byte) 'a', (byte) 'b',
-                    (byte) 'c', (byte) 'd', (byte) 'e', (byte) 'f', (byte) 'g', (byte) 'h', (byte) 'i', (byte) 'j', (byte) 'k',
-                    (byte) 'l', (byte) 'm', (byte) 'n', (byte) 'o', (byte) 'p', (byte) 'q', (byte) 'r', (byte) 's', (byte) 't',
-                    (byte) 'u', (byte) 'v', (byte) 'w', (byte) 'x', (byte) 'y', (byte) 'z', (byte) '0', (byte) '1', (byte) '2',
-                    (byte) '3', (byte) '4', (byte) '5', (byte) '6', (byte) '7', (byte) '8', (byte) '9', (byte) '+', (byte) '/'};
-
-    /** Determine which ALPHABET to use. */
-    static {
-        byte[] __bytes;
-        try {
-            __bytes = "ABCDEFGHIJKLMNOPQRSTUVWXYZabcdefghijklmnopqrstuvwxyz0123456789+/".getBytes(PREFERRED_ENCODING);
-        } // end try
-        catch (java.io.UnsupportedEncodingException use) {
-            __bytes = _NATIVE_ALPHABET; // Fall back to native encoding
-        } // end catch
-        ALPHABET = __bytes;
-    } // end static
+    private static final byte[] ALPHABET = toAscii("ABCDEFGHIJKLMNOPQRSTUVWXYZabcdefghijklmnopqrstuvwxyz0123456789+/");
 
-    /**
-     * Translates a Base64 value to either its 6-bit reconstruction value or a negative number indicating some other meaning.
-     **/
-    private static final byte[] DECODABET = {-9, -9, -9, -9, -9, -9, -9, -9, -9, // Decimal 0 - 8
-            -5, -5, // Whitespace: Tab and Linefeed
-            -9, -9, // Decimal 11 - 12
-            -5, // Whitespace: Carriage Return
-            -9, -9, -9, -9, -9, -9, -9, -9, -9, -9, -9, -9, -9, // Decimal 14 - 26
-            -9, -9, -9, -9, -9, // Decimal 27 - 31
-            -5, // Whitespace: Space
-            -9, -9, -9, -9, -9, -9, -9, -9, -9, -9, // Decimal 33 - 42
-            62, // Plus sign at decimal 43
-            -9, -9, -9, // Decimal 44 - 46
-            63, // Slash at decimal 47
-            52, 53, 54, 55, 56, 57, 58, 59, 60, 61, // Numbers zero through nine
-            -9, -9, -9, // Decimal 58 - 60
-            -1, // Equals sign at decimal 61
-            -9, -9, -9, // Decimal 62 - 64
-            0, 1, 2, 3, 4, 5, 6, 7, 8, 9, 10, 11, 12, 13, // Letters 'A' through 'N'
-            14, 15, 16, 17, 18, 19, 20, 21, 22, 23, 24, 25, // Letters 'O' through 'Z'
-            -9, -9, -9, -9, -9, -9, // Decimal 91 - 96
-            26, 27, 28, 29, 30, 31, 32, 33, 34, 35, 36, 37, 38, // Letters 'a' through 'm'
-            39, 40, 41, 42, 43, 44, 45, 46, 47, 48, 49, 50, 51, // Letters 'n' through 'z'
-            -9, -9, -9, -9 // Decimal 123 - 126
-    /*
-     * ,-9,-9,-9,-9,-9,-9,-9,-9,-9,-9,-9,-9,-9, // Decimal 127 - 139 -9,-9,-9,-9,-9,-9,-9,-9,-9,-9,-9,-9,-9, // Decimal 140 -
-     * 152 -9,-9,-9,-9,-9,-9,-9,-9,-9,-9,-9,-9,-9, // Decimal 153 - 165 -9,-9,-9,-9,-9,-9,-9,-9,-9,-9,-9,-9,-9, // Decimal 166 -
-     * 178 -9,-9,-9,-9,-9,-9,-9,-9,-9,-9,-9,-9,-9, // Decimal 179 - 191 -9,-9,-9,-9,-9,-9,-9,-9,-9,-9,-9,-9,-9, // Decimal 192 -
-     * 204 -9,-9,-9,-9,-9,-9,-9,-9,-9,-9,-9,-9,-9, // Decimal 205 - 217 -9,-9,-9,-9,-9,-9,-9,-9,-9,-9,-9,-9,-9, // Decimal 218 -
-     * 230 -9,-9,-9,-9,-9,-9,-9,-9,-9,-9,-9,-9,-9, // Decimal 231 - 243 -9,-9,-9,-9,-9,-9,-9,-9,-9,-9,-9,-9 // Decimal 244 - 255
-     */
-    };
+    /** The 64 valid Base64 values of the URL and filename safe alphabet. */
+    private static final byte[] URL_SAFE_ALPHABET = toAscii("ABCDEFGHIJKLMNOPQRSTUVWXYZabcdefghijklmnopqrstuvwxyz0123456789-_");
 
-    // I think I end up not using the BAD_ENCODING indicator.
-    // private static final byte BAD_ENCODING = -9; // Indicates error in encoding
+    private static final byte BAD_ENCODING = -9; // Indicates error in encoding
     private static final byte WHITE_SPACE_ENC = -5; // Indicates white space in encoding
     private static final byte EQUALS_SIGN_ENC = -1; // Indicates equals sign in encoding
 
+    /**
+     * Translates a byte to either its 6-bit reconstruction value or a negative number indicating some other meaning.
+     * Bytes outside of the ASCII range are bad encodings.
+     */
+    private static final byte[] DECODABET = createDecodabet(ALPHABET);
+
+    /** The {@link #DECODABET} of the URL and filename safe alphabet, which also accepts the standard alphabet. */
+    private static final byte[] URL_SAFE_DECODABET = createDecodabet(URL_SAFE_ALPHABET);
+
     /** Defeats instantiation. */
     private Base64() {
     }
 
-    /* ******** E N C O D I N G M E T H O D S ******** */
+    private static byte[] toAscii(String alphabet) {
+        return alphabet.getBytes(US_ASCII);
+    }
 
-    /**
-     * Encodes up to the first three bytes of array <var>threeBytes</var> and returns a four-byte array in Base64 notation. The
-     * actual number of significant bytes in your array is given by <var>numSigBytes</var>. The array <var>threeBytes</var>
-     * needs only be as big as <var>numSigBytes</var>. Code can reuse a byte array by passing a four-byte array as
-     * <var>b4</var>.
-     *
-     * @param b4 A reusable byte array to reduce array instantiation
-     * @param threeBytes the array to convert
-     * @param numSigBytes the number of significant bytes in your array
-     * @return four byte array in Base64 notation.
-     * @since 1.5.1
-     */
-    private static byte[] encode3to4(byte[] b4, byte[] threeBytes, int numSigBytes) {
-        encode3to4(threeBytes, 0, numSigBytes, b4, 0);
-        return b4;
-    } // end encode3to4
+    private static byte[] createDecodabet(byte[] alphabet) {
+        byte[] decodabet = new byte[256];
 
-    /**
-     * Encodes up to three bytes of the array <var>source</var> and writes the resulting four Base64 bytes to
-     * <var>destination</var>. The source and destination arrays can be manipulated anywhere along their length by specifying
-     * <var>srcOffset</var> and <var>destOffset</var>. This method does not check to make sure your arrays are large enough to
-     * accomodate <var>srcOffset</var> + 3 for the <var>source</var> array or <var>destOffset</var> + 4 for the
-     * <var>destination</var> array. The actual number of significant bytes in your array is given by <var>numSigBytes</var>.
-     *
-     * @param source the array to convert
-     * @param srcOffset the index where conversion begins
-     * @param numSigBytes the number of significant bytes in your array
-     * @param destination the array to hold the conversion
-     * @param destOffset the index where output will be put
-     * @return the <var>destination</var> array
-     * @since 1.3
-     */
-    private static byte[] encode3to4(byte[] source, int srcOffset, int numSigBytes, byte[] destination, int destOffset) {
-        // 1 2 3
-        // 01234567890123456789012345678901 Bit position
-        // --------000000001111111122222222 Array position from threeBytes
-        // --------| || || || | Six bit groups to index ALPHABET
-        // >>18 >>12 >> 6 >> 0 Right shift necessary
-        // 0x3f 0x3f 0x3f Additional AND
-
-        // Create buffer with zero-padding if there are only one or two
-        // significant bytes passed in the array.
-        // We have to shift left 24 in order to flush out the 1's that appear
-        // when Java treats a value as negative that is cast from a byte to an int.
-        int inBuff = (numSigBytes > 0 ? ((source[srcOffset] << 24) >>> 8) : 0)
-                | (numSigBytes > 1 ? ((source[srcOffset + 1] << 24) >>> 16) : 0)
-                | (numSigBytes > 2 ? ((source[srcOffset + 2] << 24) >>> 24) : 0);
-
-        switch (numSigBytes) {
-            case 3:
-                destination[destOffset] = ALPHABET[(inBuff >>> 18)];
-                destination[destOffset + 1] = ALPHABET[(inBuff >>> 12) & 0x3f];
-                destination[destOffset + 2] = ALPHABET[(inBuff >>> 6) & 0x3f];
-                destination[destOffset + 3] = ALPHABET[(inBuff) & 0x3f];
-                return destination;
-
-            case 2:
-                destination[destOffset] = ALPHABET[(inBuff >>> 18)];
-                destination[destOffset + 1] = ALPHABET[(inBuff >>> 12) & 0x3f];
-                destination[destOffset + 2] = ALPHABET[(inBuff >>> 6) & 0x3f];
-                destination[destOffset + 3] = EQUALS_SIGN;
-                return destination;
-
-            case 1:
-                destination[destOffset] = ALPHABET[(inBuff >>> 18)];
-                destination[destOffset + 1] = ALPHABET[(inBuff >>> 12) & 0x3f];
-                destination[destOffset + 2] = EQUALS_SIGN;
-                destination[destOffset + 3] = EQUALS_SIGN;
-                return destination;
-
-            default:
-                return destination;
-        } // end switch
-    } // end encode3to4
+        Arrays.fill(decodabet, BAD_ENCODING);
+
+        decodabet['\t'] = WHITE_SPACE_ENC;
+        decodabet['\n'] = WHITE_SPACE_ENC;
+        decodabet['\r'] = WHITE_SPACE_ENC;
+        decodabet[' '] = WHITE_SPACE_ENC;
+        decodabet[EQUALS_SIGN] = EQUALS_SIGN_ENC;
+
+        for (int i = 0; i < ALPHABET.length; i++) {
+            decodabet[ALPHABET[i]] = (byte) i;
+            decodabet[alphabet[i]] = (byte) i;
+        }
+
+        return decodabet;
+    }
+
+    /* ******** E N C O D I N G M E T H O D S ******** */
 
     /**
      * Serializes an object and returns the Base64-encoded version of that serialized object. If the object cannot be serialized
@@ -360,6 +292,8 @@ public class Base64 {
      *   GZIP: gzip-compresses object before encoding it.
      *   DONT_BREAK_LINES: don't break lines at 76 characters
      *     <i>Note: Technically, this makes your encoding non-compliant.</i>
+     *   URL_SAFE: use the URL and filename safe alphabet.
+     *   NO_PADDING: don't pad the encoded data.
      * </pre>
      * <p>
      * Example: <code>encodeBytes( myData, Base64.GZIP )</code> or
@@ -372,6 +306,8 @@ public class Base64 {
      * @return the encoded bytes
      * @see Base64#GZIP
      * @see Base64#DONT_BREAK_LINES
+     * @see Base64#URL_SAFE
+     * @see Base64#NO_PADDING
      * @since 2.0
      */
     public static String encodeBytes(byte[] source, int options) {
@@ -400,6 +336,8 @@ public class Base64 {
      *   GZIP: gzip-compresses object before encoding it.
      *   DONT_BREAK_LINES: don't break lines at 76 characters
      *     <i>Note: Technically, this makes your encoding non-compliant.</i>
+     *   URL_SAFE: use the URL and filename safe alphabet.
+     *   NO_PADDING: don't pad the encoded data.
      * </pre>
      * <p>
      * Example: <code>encodeBytes( myData, Base64.GZIP )</code> or
@@ -413,16 +351,14 @@ public class Base64 {
      * @param options Specified options
      * @see Base64#GZIP
      * @see Base64#DONT_BREAK_LINES
+     * @see Base64#URL_SAFE
+     * @see Base64#NO_PADDING
      * @return the text node
      * @since 2.0
      */
     public static String encodeBytes(byte[] source, int off, int len, int options) {
-        // Isolate options
-        int dontBreakLines = (options & DONT_BREAK_LINES);
-        int gzip = (options & GZIP);
-
         // Compress?
-        if (gzip == GZIP) {
+        if ((options & GZIP) == GZIP) {
             java.io.ByteArrayOutputStream baos = null;
             java.util.zip.GZIPOutputStream gzos = null;
             Base64.OutputStream b64os = null;
@@ -430,7 +366,7 @@ public class Base64 {
             try {
                 // GZip -> Base64 -> ByteArray
                 baos = new java.io.ByteArrayOutputStream();
-                b64os = new Base64.OutputStream(baos, ENCODE | dontBreakLines);
+                b64os = new Base64.OutputStream(baos, ENCODE | (options & ~GZIP));
                 gzos = new java.util.zip.GZIPOutputStream(b64os);
 
                 gzos.write(source, off, len);
@@ -455,125 +391,66 @@ public class Base64 {
                 }
             } // end finally
 
-            // Return value according to relevant encoding.
-            try {
-                return new String(baos.toByteArray(), PREFERRED_ENCODING);
-            } // end try
-            catch (java.io.UnsupportedEncodingException uue) {
-                return new String(baos.toByteArray());
-            } // end catch
+            return new String(baos.toByteArray(), US_ASCII);
         } // end if: compress
 
         // Else, don't compress. Better not to use streams at all then.
-        else {
-            // Convert option to boolean in way that code likes it.
-            boolean breakLines = dontBreakLines == 0;
-
-            int len43 = len * 4 / 3;
-            byte[] outBuff = new byte[(len43) // Main 4:3
-                    + ((len % 3) > 0 ? 4 : 0) // Account for padding
-                    + (breakLines ? (len43 / MAX_LINE_LENGTH) : 0)]; // New lines
-            int d = 0;
-            int e = 0;
-            int len2 = len - 2;
-            int lineLength = 0;
-            for (; d < len2; d += 3, e += 4) {
-                encode3to4(source, d + off, 3, outBuff, e);
-
-                lineLength += 4;
-                if (breakLines && lineLength == MAX_LINE_LENGTH) {
-                    outBuff[e + 4] = NEW_LINE;
-                    e++;
-                    lineLength = 0;
-                } // end if: end of line
-            } // en dfor: each piece of array
-
-            if (d < len) {
-                encode3to4(source, d + off, len - d, outBuff, e);
-                e += 4;
-            } // end if: some padding needed
-
-            // Return value according to relevant encoding.
-            try {
-                return new String(outBuff, 0, e, PREFERRED_ENCODING);
-            } // end try
-            catch (java.io.UnsupportedEncodingException uue) {
-                return new String(outBuff, 0, e);
-            } // end catch
+        byte[] encoded = new byte[getEncodedLength(len, options)];
 
-        } // end else: don't compress
+        encode(source, off, len, encoded, 0, options);
 
+        return new String(encoded, US_ASCII);
     } // end encodeBytes
 
-    /* ******** D E C O D I N G M E T H O D S ******** */
-
     /**
-     * Decodes four bytes from array <var>source</var> and writes the resulting bytes (up to three of them) to
-     * <var>destination</var>. The source and destination arrays can be manipulated anywhere along their length by specifying
-     * <var>srcOffset</var> and <var>destOffset</var>. This method does not check to make sure your arrays are large enough to
-     * accomodate <var>srcOffset</var> + 4 for the <var>source</var> array or <var>destOffset</var> + 3 for the
-     * <var>destination</var> array. This method returns the actual number of bytes that were converted from the Base64
-     * encoding.
-     *
+     * Returns the number of characters of the Base64 notation of <var>len</var> bytes.
      *
-     * @param source the array to convert
-     * @param srcOffset the index where conversion begins
-     * @param destination the array to hold the conversion
-     * @param destOffset the index where output will be put
-     * @return the number of decoded bytes converted
-     * @since 1.3
+     * @param len the number of bytes to encode
+     * @param options the options of {@link #encode(byte[], int, int, byte[], int, int)}
+     * @return the number of encoded characters
      */
-    private static int decode4to3(byte[] source, int srcOffset, byte[] destination, int destOffset) {
-        // Example: Dk==
-        if (source[srcOffset + 2] == EQUALS_SIGN) {
-            // Two ways to do the same thing. Don't know which way I like best.
-            // int outBuff = ( ( DECODABET[ source[ srcOffset ] ] << 24 ) >>> 6 )
-            // | ( ( DECODABET[ source[ srcOffset + 1] ] << 24 ) >>> 12 );
-            int outBuff = ((DECODABET[source[srcOffset]] & 0xFF) << 18) | ((DECODABET[source[srcOffset + 1]] & 0xFF) << 12);
-
-            destination[destOffset] = (byte) (outBuff >>> 16);
-            return 1;
+    public static int getEncodedLength(int len, int options) {
+        int groups = len / 3;
+        int remaining = len % 3;
+        long length = groups * 4L;
+
+        if (remaining > 0) {
+            length += (options & NO_PADDING) == NO_PADDING ? remaining + 1 : 4;
         }
 
-        // Example: DkL=
-        else if (source[srcOffset + 3] == EQUALS_SIGN) {
-            // Two ways to do the same thing. Don't know which way I like best.
-            // int outBuff = ( ( DECODABET[ source[ srcOffset ] ] << 24 ) >>> 6 )
-            // | ( ( DECODABET[ source[ srcOffset + 1 ] ] << 24 ) >>> 12 )
-            // | ( ( DECODABET[ source[ srcOffset + 2 ] ] << 24 ) >>> 18 );
-            int outBuff = ((DECODABET[source[srcOffset]] & 0xFF) << 18) | ((DECODABET[source[srcOffset + 1]] & 0xFF) << 12)
-                    | ((DECODABET[source[srcOffset + 2]] & 0xFF) << 6);
-
-            destination[destOffset] = (byte) (outBuff >>> 16);
-            destination[destOffset + 1] = (byte) (outBuff >>> 8);
-            return 2;
+        if ((options & DONT_BREAK_LINES) == 0) {
+            length += groups / LINE_GROUPS;
         }
 
-        // Example: DkLE
-        else {
-            try {
-                // Two ways to do the same thing. Don't know which way I like best.
-                // int outBuff = ( ( DECODABET[ source[ srcOffset ] ] << 24 ) >>> 6 )
-                // | ( ( DECODABET[ source[ srcOffset + 1 ] ] << 24 ) >>> 12 )
-                // | ( ( DECODABET[ source[ srcOffset + 2 ] ] << 24 ) >>> 18 )
-                // | ( ( DECODABET[ source[ srcOffset + 3 ] ] << 24 ) >>> 24 );
-                int outBuff = ((DECODABET[source[srcOffset]] & 0xFF) << 18) | ((DECODABET[source[srcOffset + 1]] & 0xFF) << 12)
-                        | ((DECODABET[source[srcOffset + 2]] & 0xFF) << 6) | ((DECODABET[source[srcOffset + 3]] & 0xFF));
-
-                destination[destOffset] = (byte) (outBuff >> 16);
-                destination[destOffset + 1] = (byte) (outBuff >> 8);
-                destination[destOffset + 2] = (byte) (outBuff);
-
-                return 3;
-            } catch (Exception e) {
-                logger.log(Level.FINE, "" + source[srcOffset] + ": " + (DECODABET[source[srcOffset]]));
-                logger.log(Level.FINE, "" + source[srcOffset + 1] + ": " + (DECODABET[source[srcOffset + 1]]));
-                logger.log(Level.FINE, "" + source[srcOffset + 2] + ": " + (DECODABET[source[srcOffset + 2]]));
-                logger.log(Level.FINE, "" + source[srcOffset + 3] + ": " + (DECODABET[source[srcOffset + 3]]));
-                return -1;
-            } // end catch
+        if (length > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("Too much data to encode: " + len + " bytes.");
         }
-    } // end decodeToBytes
+
+        return (int) length;
+    }
+
+    /**
+     * Encodes bytes into Base64 notation, writing the encoded characters as ASCII bytes to <var>destination</var>, which
+     * must have room for {@link #getEncodedLength(int, int)} bytes. Lines are broken after 76 characters, unless the
+     * {@link #DONT_BREAK_LINES} option is given.
+     *
+     * @param source the data to encode
+     * @param off the index of the first byte to encode
+     * @param len the number of bytes to encode
+     * @param destination the array receiving the encoded data
+     * @param destOffset the index where the encoded data is written
+     * @param options {@link #DONT_BREAK_LINES}, {@link #URL_SAFE} and {@link #NO_PADDING}
+     * @return the number of bytes written to <var>destination</var>
+     */
+    public static int encode(byte[] source, int off, int len, byte[] destination, int destOffset, int options) {
+        Encoder encoder = new Encoder(options);
+        int remaining = len % 3;
+        int end = encoder.encode(source, off, len - remaining, destination, destOffset);
+
+        return encoder.finish(source, off + len - remaining, remaining, destination, end) - destOffset;
+    }
+
+    /* ******** D E C O D I N G M E T H O D S ******** */
 
     /**
      * Very low-level access to decoding ASCII characters in the form of a byte array. Does not support automatically gunzipping
@@ -586,44 +463,42 @@ public class Base64 {
      * @since 1.3
      */
     public static byte[] decode(byte[] source, int off, int len) {
-        int len34 = len * 3 / 4;
-        byte[] outBuff = new byte[len34]; // Upper limit on size of output
-        int outBuffPosn = 0;
-
-        byte[] b4 = new byte[4];
-        int b4Posn = 0;
-        int i = 0;
-        byte sbiCrop = 0;
-        byte sbiDecode = 0;
-        for (i = off; i < off + len; i++) {
-            sbiCrop = (byte) (source[i] & 0x7f); // Only the low seven bits
-            sbiDecode = DECODABET[sbiCrop];
-
-            if (sbiDecode >= WHITE_SPACE_ENC) // White space, Equals sign or better
-            {
-                if (sbiDecode >= EQUALS_SIGN_ENC) {
-                    b4[b4Posn++] = sbiCrop;
-                    if (b4Posn > 3) {
-                        outBuffPosn += decode4to3(b4, 0, outBuff, outBuffPosn);
-                        b4Posn = 0;
-
-                        // If that was the equals sign, break out of 'for' loop
-                        if (sbiCrop == EQUALS_SIGN)
-                            break;
-                    } // end if: quartet built
+        byte[] decoded = new byte[getMaxDecodedLength(len)];
+        int length = decode(source, off, len, decoded, 0, NO_OPTIONS);
+
+        return length == decoded.length ? decoded : Arrays.copyOf(decoded, length);
+    } // end decode
 
-                } // end if: equals sign or better
+    /**
+     * Returns the maximum number of bytes decoded from <var>len</var> Base64 characters.
+     *
+     * @param len the number of characters to decode
+     * @return the maximum number of decoded bytes
+     */
+    public static int getMaxDecodedLength(int len) {
+        return len / 4 * 3 + len % 4 * 3 / 4;
+    }
 
-            } // end if: white space, equals sign or better
-            else {
-                throw new IllegalStateException("Bad Base64 input character at " + i + ": " + source[i] + "(decimal)");
-            } // end else:
-        } // each input character
+    /**
+     * Decodes Base64 characters, given as ASCII bytes, into <var>destination</var>, which must have room for
+     * {@link #getMaxDecodedLength(int)} bytes. White space is ignored, and decoding stops at the first padding character.
+     * An incomplete last quantum is ignored, unless the {@link #URL_SAFE} option is given.
+     *
+     * @param source the Base64 encoded data
+     * @param off the index of the first character to decode
+     * @param len the number of characters to decode
+     * @param destination the array receiving the decoded data
+     * @param destOffset the index where the decoded data is written
+     * @param options {@link #URL_SAFE} to decode the URL and filename safe alphabet, without padding
+     * @return the number of bytes written to <var>destination</var>
+     * @throws IllegalStateException if the data contains characters outside of the alphabet
+     */
+    public static int decode(byte[] source, int off, int len, byte[] destination, int destOffset, int options) {
+        Decoder decoder = new Decoder(options, false, true);
+        int end = decoder.decode(source, null, off, len, destination, destOffset);
 
-        byte[] out = new byte[outBuffPosn];
-        System.arraycopy(outBuff, 0, out, 0, outBuffPosn);
-        return out;
-    } // end decode
+        return decoder.finish(destination, end) - destOffset;
+    }
 
     /**
      * Decodes data from Base64 notation, automatically detecting gzip-compressed data and decompressing it.
@@ -633,21 +508,36 @@ public class Base64 {
      * @since 1.4
      */
     public static byte[] decode(String s) {
-        byte[] bytes;
-        try {
-            bytes = s.getBytes(PREFERRED_ENCODING);
-        } // end try
-        catch (java.io.UnsupportedEncodingException uee) {
-            bytes = s.getBytes();
-        } // end catch
-        // </change>
+        return decode(s, GZIP);
+    } // end decode
+
+    /**
+     * Decodes data from Base64 notation.
+     * <p>
+     * Valid options:
+     *
+     * <pre>
+     *   GZIP: decompresses the decoded data if it is gzip-compressed.
+     *   URL_SAFE: decodes the URL and filename safe alphabet, without padding.
+     * </pre>
+     *
+     * @param s the string to decode
+     * @param options Specified options
+     * @return the decoded data
+     * @throws IllegalStateException if the data contains characters outside of the alphabet
+     */
+    public static byte[] decode(String s, int options) {
+        byte[] bytes = new byte[getMaxDecodedLength(s.length())];
+        Decoder decoder = new Decoder(options, false, true);
+        int decodedLength = decoder.finish(bytes, decoder.decode(null, s, 0, s.length(), bytes, 0));
 
-        // Decode
-        bytes = decode(bytes, 0, bytes.length);
+        if (decodedLength != bytes.length) {
+            bytes = Arrays.copyOf(bytes, decodedLength);
+        }
 
         // Check to see if it's gzip-compressed
         // GZIP Magic Two-Byte Number: 0x8b1f (35615)
-        if (bytes != null && bytes.length >= 4) {
+        if ((options & GZIP) == GZIP && bytes.length >= 4) {
 
             int head = (bytes[0] & 0xff) | ((bytes[1] << 8) & 0xff00);
             if (java.util.zip.GZIPInputStream.GZIP_MAGIC == head) {
@@ -889,6 +779,220 @@ public class Base64 {
         return encodedData;
     } // end encodeFromFile
 
+    /* ******** I N N E R C L A S S E N C O D E R ******** */
+
+    /**
+     * Encodes whole quanta of three bytes, keeping the position on the current line between calls so that lines are
+     * broken after {@link #MAX_LINE_LENGTH} characters.
+     */
+    private static final class Encoder {
+
+        private final byte[] alphabet;
+        private final boolean breakLines;
+        private final boolean pad;
+        private int lineGroups; // Number of quanta on the current line
+
+        Encoder(int options) {
+            this.alphabet = (options & URL_SAFE) == URL_SAFE ? URL_SAFE_ALPHABET : ALPHABET;
+            this.breakLines = (options & DONT_BREAK_LINES) != DONT_BREAK_LINES;
+            this.pad = (options & NO_PADDING) != NO_PADDING;
+        }
+
+        /**
+         * Encodes <var>len</var> bytes, a multiple of three, and returns the index following the last encoded byte.
+         */
+        int encode(byte[] source, int off, int len, byte[] destination, int destOffset) {
+            byte[] alphabet = this.alphabet;
+            int end = off + len;
+            int d = destOffset;
+
+            while (off < end) {
+                int lineEnd = this.breakLines ? Math.min(end, off + (LINE_GROUPS - this.lineGroups) * 3) : end;
+                int groups = (lineEnd - off) / 3;
+
+                for (; off < lineEnd; off += 3) {
+                    int inBuff = (source[off] & 0xff) << 16 | (source[off + 1] & 0xff) << 8 | (source[off + 2] & 0xff);
+
+                    destination[d] = alphabet[inBuff >>> 18];
+                    destination[d + 1] = alphabet[(inBuff >>> 12) & 0x3f];
+                    destination[d + 2] = alphabet[(inBuff >>> 6) & 0x3f];
+                    destination[d + 3] = alphabet[inBuff & 0x3f];
+                    d += 4;
+                }
+
+                if (this.breakLines && (this.lineGroups += groups) == LINE_GROUPS) {
+                    destination[d++] = NEW_LINE;
+                    this.lineGroups = 0;
+                }
+            }
+
+            return d;
+        }
+
+        /**
+         * Encodes the last, incomplete, quantum of one or two bytes and returns the index following the last encoded
+         * byte.
+         */
+        int finish(byte[] source, int off, int len, byte[] destination, int destOffset) {
+            if (len == 0) {
+                return destOffset;
+            }
+
+            int inBuff = (source[off] & 0xff) << 16 | (len > 1 ? (source[off + 1] & 0xff) << 8 : 0);
+            int d = destOffset;
+
+            destination[d++] = this.alphabet[inBuff >>> 18];
+            destination[d++] = this.alphabet[(inBuff >>> 12) & 0x3f];
+
+            if (len > 1) {
+                destination[d++] = this.alphabet[(inBuff >>> 6) & 0x3f];
+            } else if (this.pad) {
+                destination[d++] = EQUALS_SIGN;
+            }
+
+            if (this.pad) {
+                destination[d++] = EQUALS_SIGN;
+            }
+
+            return d;
+        }
+    } // end inner class Encoder
+
+    /* ******** I N N E R C L A S S D E C O D E R ******** */
+
+    /**
+     * Decodes Base64 characters, read either from an array of ASCII bytes or from a {@link CharSequence}, keeping the
+     * bits of an incomplete quantum between calls.
+     */
+    private static final class Decoder {
+
+        private final byte[] decodabet;
+        private final boolean unpadded; // Whether the last quantum may be incomplete
+        private final boolean skipInvalid; // Whether characters outside of the alphabet are ignored
+        private final boolean stopAtPadding; // Whether the data ends with the first padding character
+        private int inBuff; // Bits of the incomplete quantum
+        private int numSigChars; // Number of characters in the incomplete quantum
+        private boolean done;
+
+        Decoder(int options, boolean skipInvalid, boolean stopAtPadding) {
+            this.unpadded = (options & URL_SAFE) == URL_SAFE;
+            this.decodabet = this.unpadded ? URL_SAFE_DECODABET : DECODABET;
+            this.skipInvalid = skipInvalid;
+            this.stopAtPadding = stopAtPadding;
+        }
+
+        /**
+         * Decodes <var>len</var> characters, from <var>source</var> if it is not null or from <var>chars</var>, and
+         * returns the index following the last decoded byte.
+         */
+        int decode(byte[] source, CharSequence chars, int off, int len, byte[] destination, int destOffset) {
+            byte[] decodabet = this.decodabet;
+            int end = off + len;
+            int d = destOffset;
+            int i = off;
+
+            while (i < end && !this.done) {
+                if (this.numSigChars == 0) {
+                    // Whole quanta, without white space or padding, are decoded at once
+                    while (i + 4 <= end) {
+                        int a = sextet(decodabet, source, chars, i);
+                        int b = sextet(decodabet, source, chars, i + 1);
+                        int c = sextet(decodabet, source, chars, i + 2);
+                        int e = sextet(decodabet, source, chars, i + 3);
+
+                        if ((a | b | c | e) < 0) {
+                            break;
+                        }
+
+                        int outBuff = a << 18 | b << 12 | c << 6 | e;
+
+                        destination[d] = (byte) (outBuff >> 16);
+                        destination[d + 1] = (byte) (outBuff >> 8);
+                        destination[d + 2] = (byte) outBuff;
+                        d += 3;
+                        i += 4;
+                    }
+
+                    if (i == end) {
+                        break;
+                    }
+                }
+
+                int sbiDecode = sextet(decodabet, source, chars, i);
+
+                if (sbiDecode >= 0) {
+                    this.inBuff = this.inBuff << 6 | sbiDecode;
+
+                    if (++this.numSigChars == 4) {
+                        destination[d] = (byte) (this.inBuff >> 16);
+                        destination[d + 1] = (byte) (this.inBuff >> 8);
+                        destination[d + 2] = (byte) this.inBuff;
+                        d += 3;
+                        this.inBuff = 0;
+                        this.numSigChars = 0;
+                    }
+                } else if (sbiDecode == EQUALS_SIGN_ENC) {
+                    if (this.numSigChars == 1) {
+                        throw new IllegalStateException("Bad Base64 padding at " + i + ".");
+                    }
+
+                    // Padding following a complete quantum, as the second '=' of "==", is ignored
+                    d = flush(destination, d);
+                    this.done = this.stopAtPadding;
+                } else if (sbiDecode == BAD_ENCODING && !this.skipInvalid) {
+                    int bad = source != null ? source[i] & 0xff : chars.charAt(i);
+
+                    throw new IllegalStateException("Bad Base64 input character at " + i + ": " + bad + "(decimal)");
+                }
+
+                i++;
+            }
+
+            return d;
+        }
+
+        /**
+         * Decodes the last quantum, if it is incomplete, and returns the index following the last decoded byte.
+         */
+        int finish(byte[] destination, int destOffset) {
+            if (this.numSigChars > 1 && this.unpadded) {
+                return flush(destination, destOffset);
+            }
+
+            if (this.numSigChars > 0 && (this.unpadded || !this.stopAtPadding)) {
+                throw new IllegalStateException("Improperly padded Base64 input.");
+            }
+
+            // Like an incomplete quantum followed by padding, an unpadded one is ignored in arrays and strings
+            this.inBuff = 0;
+            this.numSigChars = 0;
+
+            return destOffset;
+        }
+
+        private int flush(byte[] destination, int destOffset) {
+            int d = destOffset;
+
+            if (this.numSigChars == 2) {
+                destination[d++] = (byte) (this.inBuff >> 4);
+            } else if (this.numSigChars == 3) {
+                destination[d++] = (byte) (this.inBuff >> 10);
+                destination[d++] = (byte) (this.inBuff >> 2);
+            }
+
+            this.inBuff = 0;
+            this.numSigChars = 0;
+
+            return d;
+        }
+
+        private static int sextet(byte[] decodabet, byte[] source, CharSequence chars, int i) {
+            int c = source != null ? source[i] & 0xff : chars.charAt(i);
+
+            return c < decodabet.length ? decodabet[c] : BAD_ENCODING;
+        }
+    } // end inner class Decoder
+
     /* ******** I N N E R C L A S S I N P U T S T R E A M ******** */
 
     /**
@@ -900,13 +1004,15 @@ public class Base64 {
      */
     public static class InputStream extends java.io.FilterInputStream {
 
-        private boolean encode; // Encoding or decoding
+        private final Encoder encoder; // Set when encoding
+        private final Decoder decoder; // Set when decoding
+        private final byte[] input; // Data read from the underlying stream
+        private int inputLength; // Length of the incomplete quantum kept in the input when encoding
+        private final byte[] buffer; // Converted data
         private int position; // Current position in the buffer
-        private byte[] buffer; // Small buffer holding converted data
-        private int bufferLength; // Length of buffer (3 or 4)
-        private int numSigBytes; // Number of meaningful bytes in the buffer
-        private int lineLength;
-        private boolean breakLines; // Break lines at less than 80 characters
+        private int limit; // Length of the converted data in the buffer
+        private boolean pendingNewLine; // Lines are only ended when more data follows
+        private boolean eof;
 
         /**
          * Constructs a {@link Base64.InputStream} in DECODE mode.
@@ -928,6 +1034,8 @@ public class Base64 {
          *   DONT_BREAK_LINES: don't break lines at 76 characters
          *     (only meaningful when encoding)
          *     <i>Note: Technically, this makes your encoding non-compliant.</i>
+         *   URL_SAFE: use the URL and filename safe alphabet.
+         *   NO_PADDING: don't pad the encoded data (only meaningful when encoding)
          * </pre>
          * <p>
          * Example: <code>new Base64.InputStream( in, Base64.DECODE )</code>
@@ -942,12 +1050,17 @@ public class Base64 {
          */
         public InputStream(java.io.InputStream in, int options) {
             super(in);
-            this.breakLines = (options & DONT_BREAK_LINES) != DONT_BREAK_LINES;
-            this.encode = (options & ENCODE) == ENCODE;
-            this.bufferLength = encode ? 4 : 3;
-            this.buffer = new byte[bufferLength];
-            this.position = -1;
-            this.lineLength = 0;
+            this.input = new byte[BUFFER_SIZE];
+
+            if ((options & ENCODE) == ENCODE) {
+                this.encoder = new Encoder(options);
+                this.decoder = null;
+                this.buffer = new byte[getEncodedLength(BUFFER_SIZE, NO_OPTIONS) + 2];
+            } else {
+                this.encoder = null;
+                this.decoder = new Decoder(options, true, false);
+                this.buffer = new byte[getMaxDecodedLength(BUFFER_SIZE + 3)];
+            }
         } // end constructor
 
         /**
@@ -957,107 +1070,16 @@ public class Base64 {
          * @since 1.3
          */
         public int read() throws java.io.IOException {
-            // Do we need to get data?
-            if (position < 0) {
-                if (encode) {
-                    byte[] b3 = new byte[3];
-                    int numBinaryBytes = 0;
-                    for (int i = 0; i < 3; i++) {
-                        try {
-                            int b = in.read();
-
-                            // If end of stream, b is -1.
-                            if (b >= 0) {
-                                b3[i] = (byte) b;
-                                numBinaryBytes++;
-                            } // end if: not end of stream
-
-                        } // end try: read
-                        catch (java.io.IOException e) {
-                            // Only a problem if we got no data at all.
-                            if (i == 0)
-                                throw e;
-
-                        } // end catch
-                    } // end for: each needed input byte
-
-                    if (numBinaryBytes > 0) {
-                        encode3to4(b3, 0, numBinaryBytes, buffer, 0);
-                        position = 0;
-                        numSigBytes = 4;
-                    } // end if: got data
-                    else {
-                        return -1;
-                    } // end else
-                } // end if: encoding
-
-                // Else decoding
-                else {
-                    byte[] b4 = new byte[4];
-                    int i = 0;
-                    for (i = 0; i < 4; i++) {
-                        // Read four "meaningful" bytes:
-                        int b = 0;
-                        do {
-                            b = in.read();
-                        } while (b >= 0 && DECODABET[b & 0x7f] <= WHITE_SPACE_ENC);
-
-                        if (b < 0)
-                            break; // Reads a -1 if end of stream
-
-                        b4[i] = (byte) b;
-                    } // end for: each needed input byte
-
-                    if (i == 4) {
-                        numSigBytes = decode4to3(b4, 0, buffer, 0);
-                        position = 0;
-                    } // end if: got four characters
-                    else if (i == 0) {
-                        return -1;
-                    } // end else if: also padded correctly
-                    else {
-                        // Must have broken out from above.
-                        throw new java.io.IOException("Improperly padded Base64 input.");
-                    } // end
-
-                } // end else: decode
-            } // end else: get data
-
-            // Got data?
-            if (position >= 0) {
-                // End of relevant data?
-                if (/* !encode && */position >= numSigBytes)
-                    return -1;
-
-                if (encode && breakLines && lineLength >= MAX_LINE_LENGTH) {
-                    lineLength = 0;
-                    return '\n';
-                } // end if
-                else {
-                    lineLength++; // This isn't important when decoding
-                    // but throwing an extra "if" seems
-                    // just as wasteful.
-
-                    int b = buffer[position++];
-
-                    if (position >= bufferLength)
-                        position = -1;
-
-                    return b & 0xFF; // This is how you "cast" a byte that's
-                    // intended to be unsigned.
-                } // end else
-            } // end if: position >= 0
-
-            // Else error
-            else {
-                // When JDK1.4 is more accepted, use an assertion here.
-                throw new java.io.IOException("Error in Base64 code reading stream.");
-            } // end else
+            if (this.position >= this.limit && !fill()) {
+                return -1;
+            }
+
+            return this.buffer[this.position++] & 0xFF;
         } // end read
 
         /**
-         * Calls {@link #read()} repeatedly until the end of stream is reached or <var>len</var> bytes are read. Returns number
-         * of bytes read into array or -1 if end of stream is encountered.
+         * Reads until the end of stream is reached or <var>len</var> bytes are read. Returns number of bytes read into
+         * array or -1 if end of stream is encountered.
          *
          * @param dest array to hold values
          * @param off offset for array
@@ -1066,24 +1088,112 @@ public class Base64 {
          * @since 1.3
          */
         public int read(byte[] dest, int off, int len) throws java.io.IOException {
-            int i;
-            int b;
-            for (i = 0; i < len; i++) {
-                b = read();
-
-                // if( b < 0 && i == 0 )
-                // return -1;
-
-                if (b >= 0)
-                    dest[off + i] = (byte) b;
-                else if (i == 0)
-                    return -1;
-                else
-                    break; // Out of 'for' loop
-            } // end for: each byte read
-            return i;
+            int read = 0;
+
+            while (read < len) {
+                if (this.position >= this.limit && !fill()) {
+                    break;
+                }
+
+                int length = Math.min(len - read, this.limit - this.position);
+
+                System.arraycopy(this.buffer, this.position, dest, off + read, length);
+                this.position += length;
+                read += length;
+            } // end while: each chunk read
+
+            return read == 0 && len > 0 ? -1 : read;
         } // end read
 
+        @Override
+        public long skip(long n) throws java.io.IOException {
+            long skipped = 0;
+
+            while (skipped < n && (this.position < this.limit || fill())) {
+                int length = (int) Math.min(n - skipped, this.limit - this.position);
+
+                this.position += length;
+                skipped += length;
+            }
+
+            return skipped;
+        }
+
+        @Override
+        public int available() {
+            return this.limit - this.position;
+        }
+
+        @Override
+        public boolean markSupported() {
+            return false;
+        }
+
+        /**
+         * Reads and converts the next chunk of the input stream. Returns false at the end of stream.
+         */
+        private boolean fill() throws java.io.IOException {
+            this.position = 0;
+            this.limit = 0;
+
+            while (this.limit == 0 && !this.eof) {
+                int read = this.in.read(this.input, this.inputLength, this.input.length - this.inputLength);
+
+                if (read < 0) {
+                    this.eof = true;
+                }
+
+                try {
+                    this.limit = this.encoder != null ? encode(read) : decode(read);
+                } catch (IllegalStateException e) {
+                    throw new java.io.IOException(e.getMessage());
+                }
+            }
+
+            return this.limit > 0;
+        }
+
+        private int encode(int read) {
+            int length = this.inputLength + Math.max(read, 0);
+            int whole = length - length % 3;
+
+            if (whole == 0 && (!this.eof || length == 0)) {
+                this.inputLength = length;
+                return 0;
+            }
+
+            int d = 0;
+
+            if (this.pendingNewLine) {
+                this.buffer[d++] = NEW_LINE;
+                this.pendingNewLine = false;
+            }
+
+            d = this.encoder.encode(this.input, 0, whole, this.buffer, d);
+
+            if (this.eof) {
+                d = this.encoder.finish(this.input, whole, length - whole, this.buffer, d);
+                this.inputLength = 0;
+            } else {
+                System.arraycopy(this.input, whole, this.input, 0, length - whole);
+                this.inputLength = length - whole;
+            }
+
+            if (this.buffer[d - 1] == NEW_LINE) {
+                this.pendingNewLine = true;
+                d--;
+            }
+
+            return d;
+        }
+
+        private int decode(int read) {
+            if (read < 0) {
+                return this.decoder.finish(this.buffer, 0);
+            }
+
+            return this.decoder.decode(this.input, null, 0, read, this.buffer, 0);
+        }
     } // end inner class InputStream
 
     /* ******** I N N E R C L A S S O U T P U T S T R E A M ******** */
@@ -1097,13 +1207,12 @@ public class Base64 {
      */
     public static class OutputStream extends java.io.FilterOutputStream {
 
-        private boolean encode;
-        private int position;
-        private byte[] buffer;
-        private int bufferLength;
-        private int lineLength;
-        private boolean breakLines;
-        private byte[] b4; // Scratch used in a few places
+        private final Encoder encoder; // Set when encoding
+        private final Decoder decoder; // Set when decoding
+        private byte[] input; // Incomplete quantum when encoding, single character when decoding
+        private int position; // Length of the incomplete quantum
+        private byte[] buffer; // Converted data not yet written
+        private int length; // Length of the converted data in the buffer
         private boolean suspendEncoding;
 
         /**
@@ -1126,6 +1235,8 @@ public class Base64 {
          *   DONT_BREAK_LINES: don't break lines at 76 characters
          *     (only meaningful when encoding)
          *     <i>Note: Technically, this makes your encoding non-compliant.</i>
+         *   URL_SAFE: use the URL and filename safe alphabet.
+         *   NO_PADDING: don't pad the encoded data (only meaningful when encoding)
          * </pre>
          * <p>
          * Example: <code>new Base64.OutputStream( out, Base64.ENCODE )</code>
@@ -1139,67 +1250,49 @@ public class Base64 {
          */
         public OutputStream(java.io.OutputStream out, int options) {
             super(out);
-            this.breakLines = (options & DONT_BREAK_LINES) != DONT_BREAK_LINES;
-            this.encode = (options & ENCODE) == ENCODE;
-            this.bufferLength = encode ? 3 : 4;
-            this.buffer = new byte[bufferLength];
-            this.position = 0;
-            this.lineLength = 0;
-            this.suspendEncoding = false;
-            this.b4 = new byte[4];
+            this.input = new byte[3];
+
+            if ((options & ENCODE) == ENCODE) {
+                this.encoder = new Encoder(options);
+                this.decoder = null;
+                this.buffer = new byte[getEncodedLength(BUFFER_SIZE, NO_OPTIONS) + 2];
+            } else {
+                this.encoder = null;
+                this.decoder = new Decoder(options, false, false);
+                this.buffer = new byte[getMaxDecodedLength(BUFFER_SIZE + 3)];
+            }
         } // end constructor
 
         /**
-         * Writes the byte to the output stream after converting to/from Base64 notation. When encoding, bytes are buffered
-         * three at a time before the output stream actually gets a write() call. When decoding, bytes are buffered four at a
-         * time.
+         * Writes the byte to the output stream after converting to/from Base64 notation. The converted data is buffered
+         * and written to the output stream when the buffer is full, or when the stream is flushed or closed.
          *
          * @param theByte the byte to write
          * @since 1.3
          */
         public void write(int theByte) throws java.io.IOException {
             // Encoding suspended?
-            if (suspendEncoding) {
-                super.out.write(theByte);
+            if (this.suspendEncoding) {
+                this.out.write(theByte);
                 return;
             } // end if: supsended
 
-            // Encode?
-            if (encode) {
-                buffer[position++] = (byte) theByte;
-                if (position >= bufferLength) { // Enough to encode.
-                    out.write(encode3to4(b4, buffer, bufferLength));
-
-                    lineLength += 4;
-                    if (breakLines && lineLength >= MAX_LINE_LENGTH) {
-                        out.write(NEW_LINE);
-                        lineLength = 0;
-                    } // end if: end of line
-
-                    position = 0;
-                } // end if: enough to output
-            } // end if: encoding
-
-            // Else, Decoding
-            else {
-                // Meaningful Base64 character?
-                if (DECODABET[theByte & 0x7f] > WHITE_SPACE_ENC) {
-                    buffer[position++] = (byte) theByte;
-                    if (position >= bufferLength) { // Enough to output.
-                        int len = Base64.decode4to3(buffer, 0, b4, 0);
-                        out.write(b4, 0, len);
-                        // out.write( Base64.decode4to3( buffer ) );
-                        position = 0;
-                    } // end if: enough to output
-                } // end if: meaningful base64 character
-                else if (DECODABET[theByte & 0x7f] != WHITE_SPACE_ENC) {
-                    throw new java.io.IOException("Invalid character in Base64 data.");
-                } // end else: not white space either
-            } // end else: decoding
+            if (this.encoder != null) {
+                this.input[this.position++] = (byte) theByte;
+
+                if (this.position == 3) {
+                    ensureCapacity(5);
+                    this.length = this.encoder.encode(this.input, 0, 3, this.buffer, this.length);
+                    this.position = 0;
+                }
+            } else {
+                this.input[0] = (byte) theByte;
+                decode(this.input, 0, 1);
+            }
         } // end write
 
         /**
-         * Calls {@link #write(int)} repeatedly until <var>len</var> bytes are written.
+         * Converts <var>len</var> bytes to/from Base64 notation and writes them to the output stream.
          *
          * @param theBytes array from which to read bytes
          * @param off offset for array
@@ -1208,15 +1301,38 @@ public class Base64 {
          */
         public void write(byte[] theBytes, int off, int len) throws java.io.IOException {
             // Encoding suspended?
-            if (suspendEncoding) {
-                super.out.write(theBytes, off, len);
+            if (this.suspendEncoding) {
+                this.out.write(theBytes, off, len);
                 return;
             } // end if: supsended
 
-            for (int i = 0; i < len; i++) {
-                write(theBytes[off + i]);
-            } // end for: each byte written
+            if (this.encoder == null) {
+                for (int chunk; len > 0; off += chunk, len -= chunk) {
+                    chunk = Math.min(len, BUFFER_SIZE);
+                    decode(theBytes, off, chunk);
+                }
+
+                return;
+            }
+
+            // Complete the pending quantum
+            while (this.position > 0) {
+                if (len == 0) {
+                    return;
+                }
+
+                write(theBytes[off++]);
+                len--;
+            }
+
+            for (int chunk; len >= 3; off += chunk, len -= chunk) {
+                chunk = Math.min(len - len % 3, BUFFER_SIZE);
+                ensureCapacity(getEncodedLength(chunk, NO_OPTIONS) + 1);
+                this.length = this.encoder.encode(theBytes, off, chunk, this.buffer, this.length);
+            }
 
+            System.arraycopy(theBytes, off, this.input, 0, len);
+            this.position = len;
         } // end write
 
         /**
@@ -1225,24 +1341,44 @@ public class Base64 {
          * @throws IOException
          */
         public void flushBase64() throws java.io.IOException {
-            if (position > 0) {
-                if (encode) {
-                    out.write(encode3to4(b4, buffer, position));
-                    position = 0;
-                } // end if: encoding
-                else {
+            if (this.encoder != null) {
+                if (this.position > 0) {
+                    ensureCapacity(4);
+                    this.length = this.encoder.finish(this.input, 0, this.position, this.buffer, this.length);
+                    this.position = 0;
+                } // end if: buffer partially full
+            } else {
+                try {
+                    ensureCapacity(2);
+                    this.length = this.decoder.finish(this.buffer, this.length);
+                } catch (IllegalStateException e) {
                     throw new java.io.IOException("Base64 input not properly padded.");
-                } // end else: decoding
-            } // end if: buffer partially full
+                }
+            }
 
+            writeBuffer();
         } // end flush
 
+        /**
+         * Writes the converted data and flushes the output stream. An incomplete quantum is kept until
+         * {@link #flushBase64()} is called or the stream is closed.
+         */
+        @Override
+        public void flush() throws java.io.IOException {
+            writeBuffer();
+            this.out.flush();
+        }
+
         /**
          * Flushes and closes (I think, in the superclass) the stream.
          *
          * @since 1.3
          */
         public void close() throws java.io.IOException {
+            if (this.buffer == null) {
+                return;
+            }
+
             // 1. Ensure that pending characters are written
             flushBase64();
 
@@ -1250,8 +1386,8 @@ public class Base64 {
             // Base class both flushes and closes.
             super.close();
 
-            buffer = null;
-            out = null;
+            this.buffer = null;
+            this.out = null;
         } // end close
 
         /**
@@ -1274,6 +1410,28 @@ public class Base64 {
             this.suspendEncoding = false;
         } // end resumeEncoding
 
+        private void decode(byte[] source, int off, int len) throws java.io.IOException {
+            ensureCapacity(getMaxDecodedLength(len + 3));
+
+            try {
+                this.length = this.decoder.decode(source, null, off, len, this.buffer, this.length);
+            } catch (IllegalStateException e) {
+                throw new java.io.IOException("Invalid character in Base64 data.");
+            }
+        }
+
+        private void ensureCapacity(int capacity) throws java.io.IOException {
+            if (this.buffer.length - this.length < capacity) {
+                writeBuffer();
+            }
+        }
+
+        private void writeBuffer() throws java.io.IOException {
+            if (this.length > 0) {
+                this.out.write(this.buffer, 0, this.length);
+                this.length = 0;
+            }
+        }
     } // end inner class OutputStream
 
 } // end class Base64
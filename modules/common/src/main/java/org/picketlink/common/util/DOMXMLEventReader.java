@@ -0,0 +1,457 @@
+/*
+ * JBoss, Home of Professional Open Source
+ *
+ * Copyright 2013 Red Hat, Inc. and/or its affiliates.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.picketlink.common.util;
+
+import org.w3c.dom.Attr;
+import org.w3c.dom.NamedNodeMap;
+import org.w3c.dom.Node;
+import org.w3c.dom.ProcessingInstruction;
+
+import javax.xml.XMLConstants;
+import javax.xml.namespace.NamespaceContext;
+import javax.xml.stream.Location;
+import javax.xml.stream.XMLEventFactory;
+import javax.xml.stream.XMLEventReader;
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.events.Attribute;
+import javax.xml.stream.events.Namespace;
+import javax.xml.stream.events.XMLEvent;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+
+/**
+ * <p>An {@link XMLEventReader} that reads the events from a DOM {@link Node}, instead of parsing a stream.</p>
+ *
+ * <p>This allows StAX based parsers to read documents that were already parsed into a DOM (eg.: to validate their
+ * signatures) without serializing and parsing them again. Adjacent text and CDATA nodes are reported as a single
+ * characters event, as if the document was parsed with coalescing enabled.</p>
+ *
+ * <p>Instances are not thread-safe and the node must not be modified while it is being read.</p>
+ */
+public class DOMXMLEventReader implements XMLEventReader {
+
+    private static final Location UNKNOWN_LOCATION = new Location() {
+        @Override
+        public int getLineNumber() {
+            return -1;
+        }
+
+        @Override
+        public int getColumnNumber() {
+            return -1;
+        }
+
+        @Override
+        public int getCharacterOffset() {
+            return -1;
+        }
+
+        @Override
+        public String getPublicId() {
+            return null;
+        }
+
+        @Override
+        public String getSystemId() {
+            return null;
+        }
+    };
+
+    private static final ThreadLocal<XMLEventFactory> EVENT_FACTORY = new ThreadLocal<XMLEventFactory>() {
+        @Override
+        protected XMLEventFactory initialValue() {
+            XMLEventFactory eventFactory = XMLEventFactory.newInstance();
+
+            eventFactory.setLocation(UNKNOWN_LOCATION);
+
+            return eventFactory;
+        }
+    };
+
+    private final XMLEventFactory eventFactory = EVENT_FACTORY.get();
+    private final Node root;
+    private Node current;
+    private boolean leaving;
+    private boolean finished;
+    private XMLEvent nextEvent;
+
+    public DOMXMLEventReader(Node root) {
+        if (root == null) {
+            throw new IllegalArgumentException("Node can not be null.");
+        }
+
+        this.root = root;
+    }
+
+    @Override
+    public XMLEvent nextEvent() throws XMLStreamException {
+        XMLEvent event = peek();
+
+        if (event == null) {
+            throw new NoSuchElementException();
+        }
+
+        this.nextEvent = null;
+
+        return event;
+    }
+
+    @Override
+    public boolean hasNext() {
+        return lookAhead() != null;
+    }
+
+    @Override
+    public XMLEvent peek() throws XMLStreamException {
+        return lookAhead();
+    }
+
+    @Override
+    public String getElementText() throws XMLStreamException {
+        StringBuilder text = new StringBuilder();
+
+        while (hasNext()) {
+            XMLEvent event = nextEvent();
+
+            switch (event.getEventType()) {
+                case XMLStreamConstants.END_ELEMENT:
+                    return text.toString();
+                case XMLStreamConstants.CHARACTERS:
+                case XMLStreamConstants.CDATA:
+                case XMLStreamConstants.SPACE:
+                    text.append(event.asCharacters().getData());
+                    break;
+                case XMLStreamConstants.COMMENT:
+                case XMLStreamConstants.PROCESSING_INSTRUCTION:
+                    break;
+                default:
+                    throw new XMLStreamException("Element text content may not contain an event of type " + event.getEventType() + ".");
+            }
+        }
+
+        throw new XMLStreamException("Unexpected end of document when reading element text content.");
+    }
+
+    @Override
+    public XMLEvent nextTag() throws XMLStreamException {
+        while (hasNext()) {
+            XMLEvent event = nextEvent();
+
+            if (event.isStartElement() || event.isEndElement()) {
+                return event;
+            }
+
+            if (event.isCharacters() && !event.asCharacters().isWhiteSpace()) {
+                throw new XMLStreamException("Expected start or end element. Found characters.");
+            }
+        }
+
+        throw new XMLStreamException("Unexpected end of document when looking for a tag.");
+    }
+
+    /**
+     * <p>Returns the properties that are fixed for a DOM source: the reader is namespace aware and coalesces adjacent
+     * text. Other properties are unknown and <code>null</code> is returned.</p>
+     */
+    @Override
+    public Object getProperty(String name) throws IllegalArgumentException {
+        if (name == null) {
+            throw new IllegalArgumentException("Property name can not be null.");
+        }
+
+        if (XMLInputFactory.IS_NAMESPACE_AWARE.equals(name) || XMLInputFactory.IS_COALESCING.equals(name)) {
+            return Boolean.TRUE;
+        }
+
+        return null;
+    }
+
+    @Override
+    public void close() throws XMLStreamException {
+        this.finished = true;
+        this.nextEvent = null;
+    }
+
+    @Override
+    public Object next() {
+        try {
+            return nextEvent();
+        } catch (XMLStreamException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    @Override
+    public void remove() {
+        throw new UnsupportedOperationException();
+    }
+
+    private XMLEvent lookAhead() {
+        if (this.nextEvent == null && !this.finished) {
+            this.nextEvent = readEvent();
+        }
+
+        return this.nextEvent;
+    }
+
+    /**
+     * <p>Walks the tree in document order, returning the event for the next node of interest.</p>
+     *
+     * @return
+     */
+    private XMLEvent readEvent() {
+        while (true) {
+            if (!advance()) {
+                this.finished = true;
+                return null;
+            }
+
+            XMLEvent event = createEvent();
+
+            if (event != null) {
+                return event;
+            }
+        }
+    }
+
+    /**
+     * <p>Moves to the next node, or leaves the current one if it has no more children.</p>
+     *
+     * @return false if there are no more nodes.
+     */
+    private boolean advance() {
+        if (this.current == null) {
+            this.current = this.root;
+            this.leaving = false;
+            return true;
+        }
+
+        if (!this.leaving && this.current.getFirstChild() != null && !isText(this.current)) {
+            this.current = this.current.getFirstChild();
+            return true;
+        }
+
+        if (!this.leaving && hasEndEvent(this.current)) {
+            this.leaving = true;
+            return true;
+        }
+
+        if (this.current == this.root) {
+            return false;
+        }
+
+        Node sibling = this.current.getNextSibling();
+
+        if (isText(this.current)) {
+            // skip the text nodes already coalesced into the last characters event
+            while (sibling != null && isText(sibling)) {
+                sibling = sibling.getNextSibling();
+            }
+        }
+
+        if (sibling != null) {
+            this.current = sibling;
+            this.leaving = false;
+            return true;
+        }
+
+        this.current = this.current.getParentNode();
+        this.leaving = true;
+
+        return true;
+    }
+
+    private XMLEvent createEvent() {
+        Node node = this.current;
+
+        switch (node.getNodeType()) {
+            case Node.DOCUMENT_NODE:
+                if (this.leaving) {
+                    return this.eventFactory.createEndDocument();
+                }
+
+                return this.eventFactory.createStartDocument();
+            case Node.ELEMENT_NODE:
+                if (this.leaving) {
+                    return this.eventFactory.createEndElement(getPrefix(node), getNamespaceURI(node), getLocalName(node),
+                        getNamespaces(node).iterator());
+                }
+
+                return createStartElement(node);
+            case Node.TEXT_NODE:
+            case Node.CDATA_SECTION_NODE:
+                return this.eventFactory.createCharacters(getText(node));
+            case Node.COMMENT_NODE:
+                return this.eventFactory.createComment(node.getNodeValue());
+            case Node.PROCESSING_INSTRUCTION_NODE:
+                ProcessingInstruction processingInstruction = (ProcessingInstruction) node;
+                return this.eventFactory.createProcessingInstruction(processingInstruction.getTarget(),
+                    processingInstruction.getData());
+            default:
+                // entity references are expected to be expanded, document types are not reported
+                return null;
+        }
+    }
+
+    private XMLEvent createStartElement(final Node node) {
+        List<Attribute> attributes = new ArrayList<Attribute>();
+        NamedNodeMap attributeNodes = node.getAttributes();
+
+        for (int i = 0; i < attributeNodes.getLength(); i++) {
+            Attr attr = (Attr) attributeNodes.item(i);
+
+            if (!isNamespaceDeclaration(attr)) {
+                attributes.add(this.eventFactory.createAttribute(getPrefix(attr), getNamespaceURI(attr), getLocalName(attr),
+                    attr.getValue()));
+            }
+        }
+
+        return this.eventFactory.createStartElement(getPrefix(node), getNamespaceURI(node), getLocalName(node),
+            attributes.iterator(), getNamespaces(node).iterator(), new NamespaceContext() {
+            @Override
+            public String getNamespaceURI(String prefix) {
+                if (XMLConstants.XML_NS_PREFIX.equals(prefix)) {
+                    return XMLConstants.XML_NS_URI;
+                }
+
+                String namespaceURI = node.lookupNamespaceURI(isNullOrEmpty(prefix) ? null : prefix);
+
+                return namespaceURI != null ? namespaceURI : XMLConstants.NULL_NS_URI;
+            }
+
+            @Override
+            public String getPrefix(String namespaceURI) {
+                if (XMLConstants.XML_NS_URI.equals(namespaceURI)) {
+                    return XMLConstants.XML_NS_PREFIX;
+                }
+
+                if (node.isDefaultNamespace(namespaceURI)) {
+                    return XMLConstants.DEFAULT_NS_PREFIX;
+                }
+
+                return node.lookupPrefix(namespaceURI);
+            }
+
+            @Override
+            public Iterator getPrefixes(String namespaceURI) {
+                String prefix = getPrefix(namespaceURI);
+
+                if (prefix == null) {
+                    return Collections.emptyList().iterator();
+                }
+
+                return Collections.singletonList(prefix).iterator();
+            }
+        });
+    }
+
+    private List<Namespace> getNamespaces(Node node) {
+        NamedNodeMap attributeNodes = node.getAttributes();
+        List<Namespace> namespaces = null;
+
+        for (int i = 0; i < attributeNodes.getLength(); i++) {
+            Attr attr = (Attr) attributeNodes.item(i);
+
+            if (isNamespaceDeclaration(attr)) {
+                if (namespaces == null) {
+                    namespaces = new ArrayList<Namespace>();
+                }
+
+                if (XMLConstants.XMLNS_ATTRIBUTE.equals(attr.getName())) {
+                    namespaces.add(this.eventFactory.createNamespace(attr.getValue()));
+                } else {
+                    namespaces.add(this.eventFactory.createNamespace(getLocalName(attr), attr.getValue()));
+                }
+            }
+        }
+
+        if (namespaces == null) {
+            return Collections.emptyList();
+        }
+
+        return namespaces;
+    }
+
+    private String getText(Node node) {
+        Node sibling = node.getNextSibling();
+
+        if (sibling == null || !isText(sibling)) {
+            return node.getNodeValue();
+        }
+
+        StringBuilder text = new StringBuilder(node.getNodeValue());
+
+        while (sibling != null && isText(sibling)) {
+            text.append(sibling.getNodeValue());
+            sibling = sibling.getNextSibling();
+        }
+
+        return text.toString();
+    }
+
+    private boolean hasEndEvent(Node node) {
+        return node.getNodeType() == Node.ELEMENT_NODE || node.getNodeType() == Node.DOCUMENT_NODE;
+    }
+
+    private boolean isText(Node node) {
+        return node.getNodeType() == Node.TEXT_NODE || node.getNodeType() == Node.CDATA_SECTION_NODE;
+    }
+
+    private boolean isNamespaceDeclaration(Attr attr) {
+        return XMLConstants.XMLNS_ATTRIBUTE_NS_URI.equals(attr.getNamespaceURI())
+            || XMLConstants.XMLNS_ATTRIBUTE.equals(attr.getName()) || attr.getName().startsWith("xmlns:");
+    }
+
+    private String getLocalName(Node node) {
+        String localName = node.getLocalName();
+
+        if (localName == null) {
+            // node created by a non namespace aware parser
+            localName = node.getNodeName();
+
+            int index = localName.indexOf(':');
+
+            if (index != -1) {
+                localName = localName.substring(index + 1);
+            }
+        }
+
+        return localName;
+    }
+
+    private String getPrefix(Node node) {
+        String prefix = node.getPrefix();
+
+        return prefix != null ? prefix : XMLConstants.DEFAULT_NS_PREFIX;
+    }
+
+    private String getNamespaceURI(Node node) {
+        String namespaceURI = node.getNamespaceURI();
+
+        return namespaceURI != null ? namespaceURI : XMLConstants.NULL_NS_URI;
+    }
+
+    private boolean isNullOrEmpty(String value) {
+        return value == null || value.length() == 0;
+    }
+}
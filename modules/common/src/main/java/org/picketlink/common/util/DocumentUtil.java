@@ -36,6 +36,7 @@ import javax.xml.namespace.QName;
 import javax.xml.parsers.DocumentBuilder;
 import javax.xml.parsers.DocumentBuilderFactory;
 import javax.xml.parsers.ParserConfigurationException;
+import javax.xml.transform.OutputKeys;
 import javax.xml.transform.Result;
 import javax.xml.transform.Source;
 import javax.xml.transform.Transformer;
@@ -50,6 +51,7 @@ import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.OutputStream;
 import java.io.Reader;
 import java.io.StringReader;
 import java.io.StringWriter;
@@ -66,6 +68,8 @@ public class DocumentUtil {
 
     private static DocumentBuilderFactory documentBuilderFactory;
 
+    private static final ThreadLocal<DocumentBuilder> documentBuilders = new ThreadLocal<DocumentBuilder>();
+
     public static final String feature_external_general_entities = "http://xml.org/sax/features/external-general-entities";
     public static final String feature_external_parameter_entities = "http://xml.org/sax/features/external-parameter-entities";
     public static final String feature_disallow_doctype_decl = "http://apache.org/xml/features/disallow-doctype-decl";
@@ -98,14 +102,17 @@ public class DocumentUtil {
      * @throws ParserConfigurationException
      */
     public static Document createDocument() throws ConfigurationException {
-        DocumentBuilderFactory factory = getDocumentBuilderFactory();
         DocumentBuilder builder;
         try {
-            builder = factory.newDocumentBuilder();
+            builder = getDocumentBuilder();
         } catch (ParserConfigurationException e) {
             throw new ConfigurationException(e);
         }
-        return builder.newDocument();
+        try {
+            return builder.newDocument();
+        } finally {
+            releaseDocumentBuilder(builder);
+        }
     }
 
     /**
@@ -119,9 +126,12 @@ public class DocumentUtil {
      */
     public static Document createDocumentWithBaseNamespace(String baseNamespace, String localPart) throws ProcessingException {
         try {
-            DocumentBuilderFactory factory = getDocumentBuilderFactory();
-            DocumentBuilder builder = factory.newDocumentBuilder();
-            return builder.getDOMImplementation().createDocument(baseNamespace, localPart, null);
+            DocumentBuilder builder = getDocumentBuilder();
+            try {
+                return builder.getDOMImplementation().createDocument(baseNamespace, localPart, null);
+            } finally {
+                releaseDocumentBuilder(builder);
+            }
         } catch (DOMException e) {
             throw logger.processingError(e);
         } catch (ParserConfigurationException e) {
@@ -158,9 +168,12 @@ public class DocumentUtil {
      */
     public static Document getDocument(Reader reader) throws ConfigurationException, ProcessingException, ParsingException {
         try {
-            DocumentBuilderFactory factory = getDocumentBuilderFactory();
-            DocumentBuilder builder = factory.newDocumentBuilder();
-            return builder.parse(new InputSource(reader));
+            DocumentBuilder builder = getDocumentBuilder();
+            try {
+                return builder.parse(new InputSource(reader));
+            } finally {
+                releaseDocumentBuilder(builder);
+            }
         } catch (ParserConfigurationException e) {
             throw logger.configurationError(e);
         } catch (SAXException e) {
@@ -182,10 +195,13 @@ public class DocumentUtil {
      * @throws SAXException
      */
     public static Document getDocument(File file) throws ConfigurationException, ProcessingException, ParsingException {
-        DocumentBuilderFactory factory = getDocumentBuilderFactory();
         try {
-            DocumentBuilder builder = factory.newDocumentBuilder();
-            return builder.parse(file);
+            DocumentBuilder builder = getDocumentBuilder();
+            try {
+                return builder.parse(file);
+            } finally {
+                releaseDocumentBuilder(builder);
+            }
         } catch (ParserConfigurationException e) {
             throw logger.configurationError(e);
         } catch (SAXException e) {
@@ -207,10 +223,13 @@ public class DocumentUtil {
      * @throws SAXException
      */
     public static Document getDocument(InputStream is) throws ConfigurationException, ProcessingException, ParsingException {
-        DocumentBuilderFactory factory = getDocumentBuilderFactory();
         try {
-            DocumentBuilder builder = factory.newDocumentBuilder();
-            return builder.parse(is);
+            DocumentBuilder builder = getDocumentBuilder();
+            try {
+                return builder.parse(is);
+            } finally {
+                releaseDocumentBuilder(builder);
+            }
         } catch (ParserConfigurationException e) {
             throw logger.configurationError(e);
         } catch (SAXException e) {
@@ -236,11 +255,13 @@ public class DocumentUtil {
 
         Result streamResult = new StreamResult(sw);
         // Write the DOM document to the stream
-        Transformer xformer = TransformerUtil.getTransformer();
+        Transformer xformer = TransformerUtil.getThreadLocalTransformer();
         try {
             xformer.transform(source, streamResult);
         } catch (TransformerException e) {
             throw logger.processingError(e);
+        } finally {
+            TransformerUtil.releaseThreadLocalTransformer(xformer);
         }
 
         return sw.toString();
@@ -262,11 +283,13 @@ public class DocumentUtil {
 
         Result streamResult = new StreamResult(sw);
         // Write the DOM document to the file
-        Transformer xformer = TransformerUtil.getTransformer();
+        Transformer xformer = TransformerUtil.getThreadLocalTransformer();
         try {
             xformer.transform(source, streamResult);
         } catch (TransformerException e) {
             throw logger.processingError(e);
+        } finally {
+            TransformerUtil.releaseThreadLocalTransformer(xformer);
         }
 
         return sw.toString();
@@ -329,6 +352,29 @@ public class DocumentUtil {
         return getSourceAsStream(new DOMSource(node));
     }
 
+    /**
+     * Write a DOM Node to the given {@link OutputStream}, using UTF-8. The stream is not closed.
+     *
+     * @param node
+     * @param outputStream
+     *
+     * @throws ConfigurationException
+     * @throws ProcessingException
+     */
+    public static void writeNode(Node node, OutputStream outputStream) throws ConfigurationException, ProcessingException {
+        Transformer transformer = TransformerUtil.getThreadLocalTransformer();
+
+        transformer.setOutputProperty(OutputKeys.ENCODING, "UTF-8");
+
+        try {
+            transformer.transform(new DOMSource(node), new StreamResult(outputStream));
+        } catch (TransformerException e) {
+            throw logger.processingError(e);
+        } finally {
+            TransformerUtil.releaseThreadLocalTransformer(transformer);
+        }
+    }
+
     /**
      * Get the {@link Source} as an {@link InputStream}
      *
@@ -343,11 +389,13 @@ public class DocumentUtil {
         ByteArrayOutputStream baos = new ByteArrayOutputStream();
         Result streamResult = new StreamResult(baos);
         // Write the DOM document to the stream
-        Transformer transformer = TransformerUtil.getTransformer();
+        Transformer transformer = TransformerUtil.getThreadLocalTransformer();
         try {
             transformer.transform(source, streamResult);
         } catch (TransformerException e) {
             throw logger.processingError(e);
+        } finally {
+            TransformerUtil.releaseThreadLocalTransformer(transformer);
         }
 
         return new ByteArrayInputStream(baos.toByteArray());
@@ -370,11 +418,13 @@ public class DocumentUtil {
 
         Result streamResult = new StreamResult(baos);
         // Write the DOM document to the stream
-        Transformer transformer = TransformerUtil.getTransformer();
+        Transformer transformer = TransformerUtil.getThreadLocalTransformer();
         try {
             transformer.transform(source, streamResult);
         } catch (TransformerException e) {
             throw logger.processingError(e);
+        } finally {
+            TransformerUtil.releaseThreadLocalTransformer(transformer);
         }
 
         return new String(baos.toByteArray());
@@ -469,9 +519,13 @@ public class DocumentUtil {
 
     public static Node getNodeFromSource(Source source) throws ProcessingException, ConfigurationException {
         try {
-            Transformer transformer = TransformerUtil.getTransformer();
+            Transformer transformer = TransformerUtil.getThreadLocalTransformer();
             DOMResult result = new DOMResult();
-            TransformerUtil.transform(transformer, source, result);
+            try {
+                TransformerUtil.transform(transformer, source, result);
+            } finally {
+                TransformerUtil.releaseThreadLocalTransformer(transformer);
+            }
             return result.getNode();
         } catch (ParsingException te) {
             throw logger.processingError(te);
@@ -480,9 +534,13 @@ public class DocumentUtil {
 
     public static Document getDocumentFromSource(Source source) throws ProcessingException, ConfigurationException {
         try {
-            Transformer transformer = TransformerUtil.getTransformer();
+            Transformer transformer = TransformerUtil.getThreadLocalTransformer();
             DOMResult result = new DOMResult();
-            TransformerUtil.transform(transformer, source, result);
+            try {
+                TransformerUtil.transform(transformer, source, result);
+            } finally {
+                TransformerUtil.releaseThreadLocalTransformer(transformer);
+            }
             return (Document) result.getNode();
         } catch (ParsingException te) {
             throw logger.processingError(te);
@@ -503,6 +561,41 @@ public class DocumentUtil {
         }
     }
 
+    /**
+     * <p> Returns the {@link DocumentBuilder} associated with the current thread. Builders are not thread-safe, but they
+     * can be reused by the same thread once reset, which avoids creating a new parser for every document. The builder
+     * must be given back with {@link #releaseDocumentBuilder(DocumentBuilder)}. </p>
+     *
+     * @return
+     *
+     * @throws ParserConfigurationException
+     */
+    private static DocumentBuilder getDocumentBuilder() throws ParserConfigurationException {
+        DocumentBuilder builder = documentBuilders.get();
+
+        if (builder == null) {
+            return getDocumentBuilderFactory().newDocumentBuilder();
+        }
+
+        // taken from the thread while in use, so that a nested parse on the same thread gets its own builder
+        documentBuilders.remove();
+        builder.reset();
+
+        return builder;
+    }
+
+    /**
+     * <p> Gives back a {@link DocumentBuilder} obtained from {@link #getDocumentBuilder()}, so that it can be reused by
+     * the current thread. </p>
+     *
+     * @param builder
+     */
+    private static void releaseDocumentBuilder(DocumentBuilder builder) {
+        if (documentBuilders.get() == null) {
+            documentBuilders.set(builder);
+        }
+    }
+
     /**
      * <p> Creates a namespace aware {@link DocumentBuilderFactory}. The returned instance is cached and shared between
      * different threads. </p>
@@ -0,0 +1,199 @@
+/*
+ * JBoss, Home of Professional Open Source
+ *
+ * Copyright 2013 Red Hat, Inc. and/or its affiliates.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.picketlink.common.util;
+
+import org.picketlink.common.constants.GeneralConstants;
+
+import java.lang.ref.Reference;
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * <p>Caches a JAXP factory per class loader.</p>
+ *
+ * <p>JAXP looks up factory implementations from the context class loader, or from the class loader of PicketLink when
+ * the {@link GeneralConstants#TCCL_JAXP} system property is set to true. Different class loaders may find different
+ * implementations, so a factory is only shared by the callers that would look it up from the same class loader. The
+ * system property is read once, when the cache is created.</p>
+ *
+ * <p>Lookups do not lock. Class loaders are weakly referenced, and so are the factories whose implementation was loaded
+ * by the class loader they are cached for, so the cache does not keep an undeployed application alive.</p>
+ *
+ * @param <F> the type of the factory
+ */
+abstract class JAXPFactoryCache<F> {
+
+    private final boolean tcclJaxp = SystemPropertiesUtil.getSystemProperty(GeneralConstants.TCCL_JAXP, "false")
+            .equalsIgnoreCase("true");
+
+    private final Class<?> owner;
+
+    private final ConcurrentMap<ClassLoaderKey, FactoryReference<F>> factories = new ConcurrentHashMap<ClassLoaderKey, FactoryReference<F>>();
+
+    private final ReferenceQueue<ClassLoader> collectedClassLoaders = new ReferenceQueue<ClassLoader>();
+
+    /**
+     * The factory looked up from the class loader of the owner, when {@link GeneralConstants#TCCL_JAXP} is set.
+     */
+    private volatile F ownerFactory;
+
+    /**
+     * The factory looked up when the current thread has no context class loader.
+     */
+    private volatile F defaultFactory;
+
+    /**
+     * @param owner the class whose class loader is used when {@link GeneralConstants#TCCL_JAXP} is set
+     */
+    JAXPFactoryCache(Class<?> owner) {
+        this.owner = owner;
+    }
+
+    /**
+     * <p>Returns the factory for the class loader the current thread would use, creating it if necessary.</p>
+     *
+     * @return
+     */
+    F get() {
+        if (this.tcclJaxp) {
+            F factory = this.ownerFactory;
+
+            if (factory == null) {
+                factory = createWithClassLoader(this.owner.getClassLoader());
+                this.ownerFactory = factory;
+            }
+
+            return factory;
+        }
+
+        ClassLoader classLoader = SecurityActions.getTCCL();
+
+        if (classLoader == null) {
+            F factory = this.defaultFactory;
+
+            if (factory == null) {
+                factory = create();
+                this.defaultFactory = factory;
+            }
+
+            return factory;
+        }
+
+        FactoryReference<F> reference = this.factories.get(new ClassLoaderKey(classLoader, null));
+        F factory = reference != null ? reference.get() : null;
+
+        if (factory == null) {
+            factory = create();
+
+            expungeCollectedClassLoaders();
+
+            this.factories.put(new ClassLoaderKey(classLoader, this.collectedClassLoaders),
+                new FactoryReference<F>(factory, classLoader));
+        }
+
+        return factory;
+    }
+
+    /**
+     * <p>Creates and configures a new factory. Called with the class loader used to look up the implementation set as
+     * the context class loader.</p>
+     *
+     * @return
+     */
+    protected abstract F create();
+
+    private F createWithClassLoader(ClassLoader classLoader) {
+        ClassLoader prevTCCL = SecurityActions.getTCCL();
+
+        try {
+            SecurityActions.setTCCL(classLoader);
+            return create();
+        } finally {
+            SecurityActions.setTCCL(prevTCCL);
+        }
+    }
+
+    private void expungeCollectedClassLoaders() {
+        Reference<? extends ClassLoader> collected;
+
+        while ((collected = this.collectedClassLoaders.poll()) != null) {
+            this.factories.remove(collected);
+        }
+    }
+
+    /**
+     * <p>Weakly references a class loader. Keys are equal when they reference the same class loader, or when they are
+     * the same key once their class loader was collected.</p>
+     */
+    private static final class ClassLoaderKey extends WeakReference<ClassLoader> {
+
+        private final int hash;
+
+        ClassLoaderKey(ClassLoader classLoader, ReferenceQueue<ClassLoader> queue) {
+            super(classLoader, queue);
+            this.hash = System.identityHashCode(classLoader);
+        }
+
+        @Override
+        public int hashCode() {
+            return this.hash;
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (this == obj) {
+                return true;
+            }
+
+            if (!(obj instanceof ClassLoaderKey)) {
+                return false;
+            }
+
+            ClassLoader classLoader = get();
+
+            return classLoader != null && classLoader == ((ClassLoaderKey) obj).get();
+        }
+    }
+
+    /**
+     * <p>References a factory strongly, unless its implementation was loaded by the class loader it is cached for, in
+     * which case the factory would keep the class loader alive and is only weakly referenced.</p>
+     */
+    private static final class FactoryReference<F> {
+
+        private final F factory;
+
+        private final WeakReference<F> weakFactory;
+
+        FactoryReference(F factory, ClassLoader classLoader) {
+            if (factory.getClass().getClassLoader() == classLoader) {
+                this.factory = null;
+                this.weakFactory = new WeakReference<F>(factory);
+            } else {
+                this.factory = factory;
+                this.weakFactory = null;
+            }
+        }
+
+        F get() {
+            return this.factory != null ? this.factory : this.weakFactory.get();
+        }
+    }
+}
@@ -19,7 +19,6 @@ package org.picketlink.common.util;
 
 import org.picketlink.common.PicketLinkLogger;
 import org.picketlink.common.PicketLinkLoggerFactory;
-import org.picketlink.common.constants.GeneralConstants;
 import org.picketlink.common.exceptions.ProcessingException;
 import org.w3c.dom.Attr;
 import org.w3c.dom.DOMException;
@@ -49,6 +48,15 @@ public class StaxUtil {
 
     private static ThreadLocal<Stack<String>> registeredNSStack = new ThreadLocal<Stack<String>>();
 
+    // looked up once per class loader, a factory can be shared to create writers from different threads
+    private static final JAXPFactoryCache<XMLOutputFactory> xmlOutputFactories = new JAXPFactoryCache<XMLOutputFactory>(
+            StaxUtil.class) {
+        @Override
+        protected XMLOutputFactory create() {
+            return XMLOutputFactory.newInstance();
+        }
+    };
+
     /**
      * Flush the stream writer
      *
@@ -339,14 +347,14 @@ public class StaxUtil {
             domElementNS = "";
         }
 
-        writeStartElement(writer, domElementPrefix, domElement.getLocalName(), domElementNS);
+        writeStartElement(writer, domElementPrefix, getLocalName(domElement), domElementNS);
 
         // Should we register namespace
         if (domElementPrefix != "" && !registeredNSStack.get().contains(domElementNS)) {
             // writeNameSpace(writer, domElementPrefix, domElementNS );
             registeredNSStack.get().push(domElementNS);
         } else if (domElementPrefix == "" && domElementNS != null) {
-            writeNameSpace(writer, "xmlns", domElementNS);
+            writeDefaultNameSpace(writer, domElementNS);
         }
 
         // Deal with Attributes
@@ -354,7 +362,7 @@ public class StaxUtil {
         for (int i = 0, len = attrs.getLength(); i < len; ++i) {
             Attr attr = (Attr) attrs.item(i);
             String attributePrefix = attr.getPrefix();
-            String attribLocalName = attr.getLocalName();
+            String attribLocalName = getLocalName(attr);
             String attribValue = attr.getValue();
 
             if (attributePrefix == null || attributePrefix.length() == 0) {
@@ -377,6 +385,26 @@ public class StaxUtil {
         writeEndElement(writer);
     }
 
+    /**
+     * Nodes created with DOM Level 1 methods (eg.: by a {@link XMLStreamWriter} writing to a
+     * {@link javax.xml.transform.dom.DOMResult}) do not have a local name.
+     */
+    private static String getLocalName(Node node) {
+        String localName = node.getLocalName();
+
+        if (localName == null) {
+            localName = node.getNodeName();
+
+            int index = localName.indexOf(':');
+
+            if (index != -1) {
+                localName = localName.substring(index + 1);
+            }
+        }
+
+        return localName;
+    }
+
     /**
      * Write a namespace
      *
@@ -430,18 +458,6 @@ public class StaxUtil {
     }
 
     private static XMLOutputFactory getXMLOutputFactory() {
-        boolean tccl_jaxp = SystemPropertiesUtil.getSystemProperty(GeneralConstants.TCCL_JAXP, "false")
-                .equalsIgnoreCase("true");
-        ClassLoader prevTCCL = SecurityActions.getTCCL();
-        try {
-            if (tccl_jaxp) {
-                SecurityActions.setTCCL(StaxUtil.class.getClassLoader());
-            }
-            return XMLOutputFactory.newInstance();
-        } finally {
-            if (tccl_jaxp) {
-                SecurityActions.setTCCL(prevTCCL);
-            }
-        }
+        return xmlOutputFactories.get();
     }
 }
\ No newline at end of file
@@ -25,6 +25,9 @@ import javax.crypto.SecretKey;
 import javax.crypto.SecretKeyFactory;
 import javax.crypto.spec.PBEKeySpec;
 import javax.crypto.spec.PBEParameterSpec;
+import java.io.UnsupportedEncodingException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
@@ -210,6 +213,29 @@ public class StringUtil {
         return maskedString;
     }
 
+    /**
+     * Get a SHA-256 digest of a password, encoded in Base64, to be used in cache keys instead of the password itself.
+     *
+     * @param password the password, may be null
+     *
+     * @return the digest, or null if the password is null
+     */
+    public static String getPasswordDigest(String password) {
+        if (password == null) {
+            return null;
+        }
+
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+
+            return Base64.encodeBytes(digest.digest(password.getBytes("UTF-8")), Base64.DONT_BREAK_LINES);
+        } catch (NoSuchAlgorithmException e) {
+            throw new RuntimeException(e);
+        } catch (UnsupportedEncodingException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
     public static String[] split(String toSplit, String delimiter) {
         if (delimiter.length() != 1) {
             throw new IllegalArgumentException("Delimiter can only be one character in length");
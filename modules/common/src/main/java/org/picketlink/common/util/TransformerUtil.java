@@ -66,7 +66,15 @@ public class TransformerUtil {
 
     private static final PicketLinkLogger logger = PicketLinkLoggerFactory.getLogger();
 
-    private static TransformerFactory transformerFactory;
+    private static final JAXPFactoryCache<TransformerFactory> transformerFactories = new JAXPFactoryCache<TransformerFactory>(
+            TransformerUtil.class) {
+        @Override
+        protected TransformerFactory create() {
+            return TransformerFactory.newInstance();
+        }
+    };
+
+    private static final ThreadLocal<ThreadLocalTransformer> threadLocalTransformer = new ThreadLocal<ThreadLocalTransformer>();
 
     /**
      * Get the Default Transformer
@@ -76,47 +84,75 @@ public class TransformerUtil {
      * @throws ConfigurationException
      */
     public static Transformer getTransformer() throws ConfigurationException {
-        Transformer transformer;
-        try {
-            transformer = getTransformerFactory().newTransformer();
-        } catch (TransformerConfigurationException e) {
-            throw logger.configurationError(e);
-        } catch (TransformerFactoryConfigurationError e) {
-            throw logger.configurationError(e);
+        return newTransformer(getTransformerFactory());
+    }
+
+    /**
+     * <p>Get the Default Transformer associated with the current thread, reset to the default output properties. The
+     * instance must be given back with {@link #releaseThreadLocalTransformer(Transformer)} once the transformation is
+     * done.</p>
+     *
+     * <p>The instance is taken from the thread until it is released. If the current thread asks for another one in the
+     * meantime, for example from a nested transformation, it gets a new instance. The instance must not be kept or
+     * handed to other threads. Use {@link #getTransformer()} otherwise.</p>
+     *
+     * @return
+     *
+     * @throws ConfigurationException
+     */
+    public static Transformer getThreadLocalTransformer() throws ConfigurationException {
+        TransformerFactory factory = getTransformerFactory();
+        ThreadLocalTransformer current = threadLocalTransformer.get();
+
+        if (current == null || current.factory != factory) {
+            return newTransformer(factory);
         }
 
-        transformer.setOutputProperty(OutputKeys.OMIT_XML_DECLARATION, "yes");
-        transformer.setOutputProperty(OutputKeys.INDENT, "no");
+        threadLocalTransformer.remove();
 
-        return transformer;
+        current.transformer.reset();
+        setDefaultOutputProperties(current.transformer);
+
+        return current.transformer;
+    }
+
+    /**
+     * <p>Gives back a {@link Transformer} obtained from {@link #getThreadLocalTransformer()}, so that it can be reused by
+     * the current thread.</p>
+     *
+     * @param transformer
+     */
+    public static void releaseThreadLocalTransformer(Transformer transformer) {
+        if (threadLocalTransformer.get() == null) {
+            threadLocalTransformer.set(new ThreadLocalTransformer(getTransformerFactory(), transformer));
+        }
     }
 
     /**
-     * <p>Creates a {@link TransformerFactory}. The returned instance is cached and shared between different
-     * threads.</p>
+     * <p>Returns the {@link TransformerFactory} for the class loader used to look up JAXP implementations. The returned
+     * instance is cached and shared between different threads.</p>
      *
      * @return
      *
      * @throws TransformerFactoryConfigurationError
      */
     public static TransformerFactory getTransformerFactory() throws TransformerFactoryConfigurationError {
-        if (transformerFactory == null) {
-            boolean tccl_jaxp = SystemPropertiesUtil.getSystemProperty(GeneralConstants.TCCL_JAXP, "false")
-                    .equalsIgnoreCase("true");
-            ClassLoader prevTCCL = SecurityActions.getTCCL();
-            try {
-                if (tccl_jaxp) {
-                    SecurityActions.setTCCL(TransformerUtil.class.getClassLoader());
-                }
-                transformerFactory = TransformerFactory.newInstance();
-            } finally {
-                if (tccl_jaxp) {
-                    SecurityActions.setTCCL(prevTCCL);
-                }
-            }
+        return transformerFactories.get();
+    }
+
+    private static Transformer newTransformer(TransformerFactory factory) throws ConfigurationException {
+        Transformer transformer;
+        try {
+            transformer = factory.newTransformer();
+        } catch (TransformerConfigurationException e) {
+            throw logger.configurationError(e);
+        } catch (TransformerFactoryConfigurationError e) {
+            throw logger.configurationError(e);
         }
 
-        return transformerFactory;
+        setDefaultOutputProperties(transformer);
+
+        return transformer;
     }
 
     /**
@@ -172,15 +208,38 @@ public class TransformerUtil {
 
     public static void transform(JAXBContext context, JAXBElement<?> jaxb, Result result) throws ParsingException {
         try {
-            Transformer transformer = getTransformer();
-            JAXBSource jaxbSource = new JAXBSource(context, jaxb);
+            Transformer transformer = getThreadLocalTransformer();
 
-            transformer.transform(jaxbSource, result);
+            try {
+                transformer.transform(new JAXBSource(context, jaxb), result);
+            } finally {
+                releaseThreadLocalTransformer(transformer);
+            }
         } catch (Exception e) {
             throw logger.parserError(e);
         }
     }
 
+    private static void setDefaultOutputProperties(Transformer transformer) {
+        transformer.setOutputProperty(OutputKeys.OMIT_XML_DECLARATION, "yes");
+        transformer.setOutputProperty(OutputKeys.INDENT, "no");
+    }
+
+    /**
+     * A {@link Transformer} kept by a thread, along with the factory that created it.
+     */
+    private static class ThreadLocalTransformer {
+
+        private final TransformerFactory factory;
+
+        private final Transformer transformer;
+
+        ThreadLocalTransformer(TransformerFactory factory, Transformer transformer) {
+            this.factory = factory;
+            this.transformer = transformer;
+        }
+    }
+
     /**
      * Custom Project {@code Transformer} that can take in a {@link StAXSource} and transform into {@link DOMResult}
      *
@@ -81,6 +81,11 @@ public class IDPType extends ProviderType {
      */
     private String identityParticipantStack = null;
 
+    /**
+     * If the user wants to keep the messages sent with the HTTP-Artifact binding in a particular store
+     */
+    private String artifactStore = null;
+
     /**
      * Gets the value of the encryption property.
      *
@@ -263,4 +268,23 @@ public class IDPType extends ProviderType {
     public String getIdentityParticipantStack() {
         return this.identityParticipantStack;
     }
-}
\ No newline at end of file
+
+    /**
+     * Sets the value of the artifactStore property. The value must be the name of a class implementing {@code
+     * org.picketlink.identity.federation.core.saml.v2.interfaces.SAML2ArtifactStore}.
+     *
+     * @param artifactStore allowed object is {@link String }
+     */
+    public void setArtifactStore(String artifactStore) {
+        this.artifactStore = artifactStore;
+    }
+
+    /**
+     * Gets the value of the artifactStore property.
+     *
+     * @return possible object is {@link String }
+     */
+    public String getArtifactStore() {
+        return this.artifactStore;
+    }
+}
@@ -65,6 +65,16 @@ public class SPType extends ProviderType {
      */
     protected boolean idpUsesPostBinding = true;
 
+    /**
+     * Is the IDP sending responses with the HTTP-Artifact binding
+     */
+    protected boolean idpUsesArtifactBinding = false;
+
+    /**
+     * The SOAP endpoint of the IDP resolving the artifacts it sends
+     */
+    protected String artifactResolutionServiceURL;
+
     private String logOutPage = GeneralConstants.LOGOUT_PAGE_NAME;
 
     /**
@@ -149,6 +159,22 @@ public class SPType extends ProviderType {
         this.idpUsesPostBinding = idpPostBinding;
     }
 
+    public boolean isIdpUsesArtifactBinding() {
+        return idpUsesArtifactBinding;
+    }
+
+    public void setIdpUsesArtifactBinding(boolean idpUsesArtifactBinding) {
+        this.idpUsesArtifactBinding = idpUsesArtifactBinding;
+    }
+
+    public String getArtifactResolutionServiceURL() {
+        return artifactResolutionServiceURL;
+    }
+
+    public void setArtifactResolutionServiceURL(String artifactResolutionServiceURL) {
+        this.artifactResolutionServiceURL = artifactResolutionServiceURL;
+    }
+
     public String getLogOutPage() {
         return this.logOutPage;
     }
@@ -45,7 +45,7 @@ import java.util.List;
 public class Handlers {
 
     protected String handlerChainClass;
-    private boolean locking = true;
+    private Boolean locking;
 
     protected List<Handler> handler = new ArrayList<Handler>();
 
@@ -105,11 +105,13 @@ public class Handlers {
     }
 
     /**
-     * Indicates if the handler chain execution should be locked
+     * Indicates if the handler chain execution should be locked, on the IDP and on the SP. Defaults to true. The built-in
+     * handlers can be called concurrently, so a chain made only of them can be configured with
+     * <code>locking="false"</code>.
      *
      * @return
      */
     public boolean isLocking() {
-        return locking;
+        return this.locking == null || this.locking;
     }
 }
\ No newline at end of file
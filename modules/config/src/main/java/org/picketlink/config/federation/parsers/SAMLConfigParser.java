@@ -120,6 +120,12 @@ public class SAMLConfigParser extends AbstractParser {
 
     public static final String IDENTITY_PARTICIPANT_STACK = "IdentityParticipantStack";
 
+    public static final String ARTIFACT_STORE = "ArtifactStore";
+
+    public static final String IDP_USES_ARTIFACT_BINDING = "IDPUsesArtifactBinding";
+
+    public static final String ARTIFACT_RESOLUTION_SERVICE_URL = "ArtifactResolutionServiceURL";
+
     public static final String STRICT_POST_BINDING = "StrictPostBinding";
 
     public static final String SSL_CLIENT_AUTHENTICATION = "SSLClientAuthentication";
@@ -232,6 +238,12 @@ public class SAMLConfigParser extends AbstractParser {
             idp.setIdentityParticipantStack(StaxParserUtil.getAttributeValue(attribute));
         }
 
+        attributeQName = new QName("", ARTIFACT_STORE);
+        attribute = startElement.getAttributeByName(attributeQName);
+        if (attribute != null) {
+            idp.setArtifactStore(StaxParserUtil.getAttributeValue(attribute));
+        }
+
         attributeQName = new QName("", SSL_CLIENT_AUTHENTICATION);
         attribute = startElement.getAttributeByName(attributeQName);
         if (attribute != null) {
@@ -334,6 +346,18 @@ public class SAMLConfigParser extends AbstractParser {
             sp.setIdpUsesPostBinding(Boolean.parseBoolean(StaxParserUtil.getAttributeValue(attribute)));
         }
 
+        attributeQName = new QName("", IDP_USES_ARTIFACT_BINDING);
+        attribute = startElement.getAttributeByName(attributeQName);
+        if (attribute != null) {
+            sp.setIdpUsesArtifactBinding(Boolean.parseBoolean(StaxParserUtil.getAttributeValue(attribute)));
+        }
+
+        attributeQName = new QName("", ARTIFACT_RESOLUTION_SERVICE_URL);
+        attribute = startElement.getAttributeByName(attributeQName);
+        if (attribute != null) {
+            sp.setArtifactResolutionServiceURL(StaxParserUtil.getAttributeValue(attribute));
+        }
+
         attributeQName = new QName("", SUPPORTS_SIGNATURES);
         attribute = startElement.getAttributeByName(attributeQName);
         if (attribute != null) {
@@ -41,6 +41,7 @@ import org.picketlink.idm.model.Partition;
 import org.picketlink.internal.el.ELProcessor;
 import org.picketlink.producer.LevelFactoryResolver;
 
+import javax.enterprise.context.ApplicationScoped;
 import javax.enterprise.inject.Any;
 import javax.enterprise.inject.spi.BeanManager;
 import javax.inject.Inject;
@@ -48,16 +49,32 @@ import javax.interceptor.InvocationContext;
 
 import java.lang.annotation.Annotation;
 import java.lang.reflect.Method;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 
 import static org.apache.deltaspike.core.util.ProxyUtils.getUnproxiedClass;
 
 /**
  * <p>Default implementation of the authorization checks provided by the built-in security annotations provided by PicketLink.</p>
  *
+ * <p>The security annotations of each intercepted method are resolved only once, during the first invocation. Subsequent
+ * invocations get them from a cache. The cache belongs to this application scoped bean, so it is discarded with the
+ * application and does not keep its classes alive after a redeployment.</p>
+ *
  * @author Pedro Igor
  */
+@ApplicationScoped
 public class DefaultAuthorizationManager {
 
+    @SuppressWarnings("unchecked")
+    private static final Class<? extends Annotation>[] SECURITY_ANNOTATIONS = new Class[] {LoggedIn.class, Restrict.class,
+        RequiresPermission.class, RolesAllowed.class, GroupsAllowed.class, PartitionsAllowed.class, RequiresLevel.class};
+
+    private final ConcurrentMap<AuthorizationMetadataKey, Map<Class<? extends Annotation>, Annotation>> authorizationMetadata =
+        new ConcurrentHashMap<AuthorizationMetadataKey, Map<Class<? extends Annotation>, Annotation>>();
+
     @Inject
     private BeanManager beanManager;
 
@@ -126,28 +143,15 @@ public class DefaultAuthorizationManager {
     public boolean hasRole(InvocationContext invocationContext) {
         RolesAllowed rolesAllowed = getAnnotation(invocationContext, RolesAllowed.class);
 
-        for (String roleName : rolesAllowed.value()) {
-            if (AuthorizationUtil.hasRole(getIdentity(), this.partitionManager, roleName)) {
-                return true;
-            }
-        }
-
-        return false;
+        return AuthorizationUtil.hasAnyRole(getIdentity(), this.partitionManager, rolesAllowed.value());
     }
 
     @Secures
     @GroupsAllowed
     public boolean isMember(InvocationContext invocationContext) {
         GroupsAllowed groupsAllowed = getAnnotation(invocationContext, GroupsAllowed.class);
-        String[] groupNames = groupsAllowed.value();
-
-        for (String groupName : groupNames) {
-            if (AuthorizationUtil.isMember(getIdentity(), this.partitionManager, groupName)) {
-                return true;
-            }
-        }
 
-        return false;
+        return AuthorizationUtil.isMemberOfAny(getIdentity(), this.partitionManager, groupsAllowed.value());
     }
 
     @Secures
@@ -176,22 +180,75 @@ public class DefaultAuthorizationManager {
     }
 
     private <T extends Annotation> T getAnnotation(InvocationContext invocationContext, Class<T> annotationType) {
-        Class unproxiedClass = getUnproxiedClass(invocationContext.getTarget().getClass());
-        T annotation = (T) unproxiedClass.getAnnotation(annotationType);
+        Class<?> targetClass = invocationContext.getTarget().getClass();
         Method invocationContextMethod = invocationContext.getMethod();
+        AuthorizationMetadataKey key = new AuthorizationMetadataKey(targetClass, invocationContextMethod);
+        Map<Class<? extends Annotation>, Annotation> annotations = this.authorizationMetadata.get(key);
 
-        if (annotation == null) {
-            annotation = invocationContextMethod.getAnnotation(annotationType);
+        if (annotations == null) {
+            annotations = resolveAnnotations(getUnproxiedClass(targetClass), invocationContextMethod);
+            this.authorizationMetadata.putIfAbsent(key, annotations);
         }
 
+        T annotation = (T) annotations.get(annotationType);
+
         if (annotation == null) {
-            throw new IllegalArgumentException("No annotation [" + annotationType + " found in type [" + unproxiedClass + "] or method [" + invocationContextMethod + ".");
+            throw new IllegalArgumentException("No annotation [" + annotationType + " found in type [" + getUnproxiedClass(targetClass) + "] or method [" + invocationContextMethod + ".");
         }
 
         return annotation;
     }
 
+    private Map<Class<? extends Annotation>, Annotation> resolveAnnotations(Class<?> unproxiedClass, Method method) {
+        Map<Class<? extends Annotation>, Annotation> annotations = new HashMap<Class<? extends Annotation>, Annotation>();
+
+        for (Class<? extends Annotation> annotationType : SECURITY_ANNOTATIONS) {
+            Annotation annotation = unproxiedClass.getAnnotation(annotationType);
+
+            if (annotation == null) {
+                annotation = method.getAnnotation(annotationType);
+            }
+
+            if (annotation != null) {
+                annotations.put(annotationType, annotation);
+            }
+        }
+
+        return annotations;
+    }
+
     private Identity getIdentity() {
         return this.identity;
     }
-}
\ No newline at end of file
+
+    private static class AuthorizationMetadataKey {
+
+        private final Class<?> targetClass;
+        private final Method method;
+
+        AuthorizationMetadataKey(Class<?> targetClass, Method method) {
+            this.targetClass = targetClass;
+            this.method = method;
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (this == obj) {
+                return true;
+            }
+
+            if (!(obj instanceof AuthorizationMetadataKey)) {
+                return false;
+            }
+
+            AuthorizationMetadataKey other = (AuthorizationMetadataKey) obj;
+
+            return this.targetClass.equals(other.targetClass) && this.method.equals(other.method);
+        }
+
+        @Override
+        public int hashCode() {
+            return 31 * this.targetClass.hashCode() + this.method.hashCode();
+        }
+    }
+}
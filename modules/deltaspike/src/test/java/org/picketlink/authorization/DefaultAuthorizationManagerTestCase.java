@@ -0,0 +1,152 @@
+/*
+ * JBoss, Home of Professional Open Source
+ *
+ * Copyright 2013 Red Hat, Inc. and/or its affiliates.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.picketlink.authorization;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.picketlink.Identity;
+import org.picketlink.authorization.annotations.LoggedIn;
+import org.picketlink.authorization.annotations.RolesAllowed;
+import org.picketlink.idm.model.basic.Agent;
+import org.picketlink.idm.model.basic.User;
+
+import javax.interceptor.InvocationContext;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+public class DefaultAuthorizationManagerTestCase {
+
+    private DefaultAuthorizationManager authorizationManager;
+
+    private Identity identity;
+
+    @Before
+    public void onSetup() throws Exception {
+        this.authorizationManager = new DefaultAuthorizationManager();
+        this.identity = mock(Identity.class);
+
+        Field identityField = DefaultAuthorizationManager.class.getDeclaredField("identity");
+
+        identityField.setAccessible(true);
+        identityField.set(this.authorizationManager, this.identity);
+    }
+
+    @Test
+    public void testLoggedIn() throws Exception {
+        InvocationContext invocationContext = createInvocationContext(new SecuredBean(), "loggedIn");
+
+        assertFalse(this.authorizationManager.isLoggedIn(invocationContext));
+
+        when(this.identity.getAccount()).thenReturn(new User("john"));
+
+        assertTrue(this.authorizationManager.isLoggedIn(invocationContext));
+    }
+
+    @Test
+    public void testTypeAnnotation() throws Exception {
+        InvocationContext invocationContext = createInvocationContext(new UserBean(), "anyMethod");
+
+        when(this.identity.getAccount()).thenReturn(new Agent("agent"));
+
+        assertFalse(this.authorizationManager.isLoggedIn(invocationContext));
+
+        when(this.identity.getAccount()).thenReturn(new User("john"));
+
+        assertTrue(this.authorizationManager.isLoggedIn(invocationContext));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testMissingAnnotation() throws Exception {
+        this.authorizationManager.isLoggedIn(createInvocationContext(new SecuredBean(), "adminOnly"));
+    }
+
+    @Test
+    public void testMetadataIsResolvedOncePerMethod() throws Exception {
+        SecuredBean bean = new SecuredBean();
+
+        when(this.identity.getAccount()).thenReturn(new User("john"));
+
+        for (int i = 0; i < 10; i++) {
+            this.authorizationManager.isLoggedIn(createInvocationContext(bean, "loggedIn"));
+            this.authorizationManager.isLoggedIn(createInvocationContext(new UserBean(), "anyMethod"));
+        }
+
+        assertEquals(2, getAuthorizationMetadata(this.authorizationManager).size());
+
+        this.authorizationManager.isLoggedIn(createInvocationContext(bean, "otherLoggedIn"));
+
+        assertEquals(3, getAuthorizationMetadata(this.authorizationManager).size());
+    }
+
+    @Test
+    public void testMetadataIsNotShared() throws Exception {
+        when(this.identity.getAccount()).thenReturn(new User("john"));
+
+        this.authorizationManager.isLoggedIn(createInvocationContext(new SecuredBean(), "loggedIn"));
+
+        assertEquals(1, getAuthorizationMetadata(this.authorizationManager).size());
+        assertTrue(getAuthorizationMetadata(new DefaultAuthorizationManager()).isEmpty());
+    }
+
+    private InvocationContext createInvocationContext(Object target, String methodName) throws Exception {
+        InvocationContext invocationContext = mock(InvocationContext.class);
+        Method method = target.getClass().getMethod(methodName);
+
+        when(invocationContext.getTarget()).thenReturn(target);
+        when(invocationContext.getMethod()).thenReturn(method);
+
+        return invocationContext;
+    }
+
+    private Map<?, ?> getAuthorizationMetadata(DefaultAuthorizationManager authorizationManager) throws Exception {
+        Field field = DefaultAuthorizationManager.class.getDeclaredField("authorizationMetadata");
+
+        field.setAccessible(true);
+
+        return (Map<?, ?>) field.get(authorizationManager);
+    }
+
+    public static class SecuredBean {
+
+        @LoggedIn
+        public void loggedIn() {
+        }
+
+        @LoggedIn
+        public void otherLoggedIn() {
+        }
+
+        @RolesAllowed("admin")
+        public void adminOnly() {
+        }
+    }
+
+    @LoggedIn(requiresAccount = User.class)
+    public static class UserBean {
+
+        public void anyMethod() {
+        }
+    }
+}
@@ -35,6 +35,7 @@ import org.picketlink.identity.federation.core.saml.v2.writers.SAMLResponseWrite
 import org.picketlink.identity.federation.core.util.JAXPValidationUtil;
 import org.picketlink.identity.federation.saml.v2.SAML2Object;
 import org.picketlink.identity.federation.saml.v2.assertion.NameIDType;
+import org.picketlink.identity.federation.saml.v2.protocol.ArtifactResolveType;
 import org.picketlink.identity.federation.saml.v2.protocol.AuthnRequestType;
 import org.picketlink.identity.federation.saml.v2.protocol.LogoutRequestType;
 import org.picketlink.identity.federation.saml.v2.protocol.NameIDPolicyType;
@@ -43,8 +44,7 @@ import org.picketlink.identity.federation.saml.v2.protocol.ResponseType;
 import org.w3c.dom.Document;
 
 import javax.xml.datatype.XMLGregorianCalendar;
-import java.io.ByteArrayInputStream;
-import java.io.ByteArrayOutputStream;
+import javax.xml.transform.dom.DOMResult;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
@@ -164,7 +164,7 @@ public class SAML2Request {
 
         SAMLParser samlParser = new SAMLParser();
         JAXPValidationUtil.checkSchemaValidation(samlDocument);
-        SAML2Object requestType = (SAML2Object) samlParser.parse(DocumentUtil.getNodeAsStream(samlDocument));
+        SAML2Object requestType = (SAML2Object) samlParser.parse(samlDocument);
 
         samlDocumentHolder = new SAMLDocumentHolder(requestType, samlDocument);
         return requestType;
@@ -191,7 +191,7 @@ public class SAML2Request {
 
         SAMLParser samlParser = new SAMLParser();
         JAXPValidationUtil.checkSchemaValidation(samlDocument);
-        RequestAbstractType requestType = (RequestAbstractType) samlParser.parse(DocumentUtil.getNodeAsStream(samlDocument));
+        RequestAbstractType requestType = (RequestAbstractType) samlParser.parse(samlDocument);
 
         samlDocumentHolder = new SAMLDocumentHolder(requestType, samlDocument);
         return requestType;
@@ -219,7 +219,7 @@ public class SAML2Request {
         SAMLParser samlParser = new SAMLParser();
         JAXPValidationUtil.checkSchemaValidation(samlDocument);
 
-        AuthnRequestType requestType = (AuthnRequestType) samlParser.parse(DocumentUtil.getNodeAsStream(samlDocument));
+        AuthnRequestType requestType = (AuthnRequestType) samlParser.parse(samlDocument);
         samlDocumentHolder = new SAMLDocumentHolder(requestType, samlDocument);
         return requestType;
     }
@@ -266,16 +266,18 @@ public class SAML2Request {
      * @throws ConfigurationException
      */
     public Document convert(RequestAbstractType rat) throws ProcessingException, ConfigurationException, ParsingException {
-        ByteArrayOutputStream bos = new ByteArrayOutputStream();
+        Document samlDocument = DocumentUtil.createDocument();
 
-        SAMLRequestWriter writer = new SAMLRequestWriter(StaxUtil.getXMLStreamWriter(bos));
+        SAMLRequestWriter writer = new SAMLRequestWriter(new DOMResult(samlDocument));
         if (rat instanceof AuthnRequestType) {
             writer.write((AuthnRequestType) rat);
         } else if (rat instanceof LogoutRequestType) {
             writer.write((LogoutRequestType) rat);
+        } else if (rat instanceof ArtifactResolveType) {
+            writer.write((ArtifactResolveType) rat);
         }
 
-        return DocumentUtil.getDocument(new String(bos.toByteArray()));
+        return samlDocument;
     }
 
     /**
@@ -290,12 +292,11 @@ public class SAML2Request {
      * @throws ConfigurationException
      */
     public Document convert(ResponseType responseType) throws ProcessingException, ParsingException, ConfigurationException {
-        ByteArrayOutputStream baos = new ByteArrayOutputStream();
-        SAMLResponseWriter writer = new SAMLResponseWriter(StaxUtil.getXMLStreamWriter(baos));
+        Document samlDocument = DocumentUtil.createDocument();
+        SAMLResponseWriter writer = new SAMLResponseWriter(new DOMResult(samlDocument));
         writer.write(responseType);
 
-        ByteArrayInputStream bis = new ByteArrayInputStream(baos.toByteArray());
-        return DocumentUtil.getDocument(bis);
+        return samlDocument;
     }
 
     /**
@@ -64,8 +64,7 @@ import org.w3c.dom.Node;
 
 import javax.xml.datatype.XMLGregorianCalendar;
 import javax.xml.namespace.QName;
-import java.io.ByteArrayInputStream;
-import java.io.ByteArrayOutputStream;
+import javax.xml.transform.dom.DOMResult;
 import java.io.InputStream;
 import java.io.OutputStream;
 import java.io.Writer;
@@ -374,7 +373,7 @@ public class SAML2Response {
         SAMLParser samlParser = new SAMLParser();
         JAXPValidationUtil.checkSchemaValidation(samlDocument);
 
-        return (EncryptedAssertionType) samlParser.parse(DocumentUtil.getNodeAsStream(samlDocument));
+        return (EncryptedAssertionType) samlParser.parse(samlDocument);
 
     }
 
@@ -396,7 +395,7 @@ public class SAML2Response {
 
         SAMLParser samlParser = new SAMLParser();
         JAXPValidationUtil.checkSchemaValidation(samlDocument);
-        return (AssertionType) samlParser.parse(DocumentUtil.getNodeAsStream(samlDocument));
+        return (AssertionType) samlParser.parse(samlDocument);
     }
 
     /**
@@ -427,7 +426,7 @@ public class SAML2Response {
         SAMLParser samlParser = new SAMLParser();
         JAXPValidationUtil.checkSchemaValidation(samlResponseDocument);
 
-        ResponseType responseType = (ResponseType) samlParser.parse(DocumentUtil.getNodeAsStream(samlResponseDocument));
+        ResponseType responseType = (ResponseType) samlParser.parse(samlResponseDocument);
 
         samlDocumentHolder = new SAMLDocumentHolder(responseType, samlResponseDocument);
         return responseType;
@@ -449,7 +448,24 @@ public class SAML2Response {
         if (is == null)
             throw logger.nullArgumentError("InputStream");
 
-        Document samlResponseDocument = DocumentUtil.getDocument(is);
+        return getSAML2ObjectFromDocument(DocumentUtil.getDocument(is));
+    }
+
+    /**
+     * Read a {@code SAML2Object} from a document, such as the message of an {@code ArtifactResponse}
+     *
+     * @param samlResponseDocument
+     *
+     * @return
+     *
+     * @throws ParsingException
+     * @throws ConfigurationException
+     * @throws ProcessingException
+     */
+    public SAML2Object getSAML2ObjectFromDocument(Document samlResponseDocument) throws ParsingException,
+            ConfigurationException, ProcessingException {
+        if (samlResponseDocument == null)
+            throw logger.nullArgumentError("Document");
 
         if (logger.isTraceEnabled()) {
             logger.trace("SAML Response Document: " + DocumentUtil.asString(samlResponseDocument));
@@ -458,12 +474,10 @@ public class SAML2Response {
         SAMLParser samlParser = new SAMLParser();
         JAXPValidationUtil.checkSchemaValidation(samlResponseDocument);
 
-        InputStream responseStream = DocumentUtil.getNodeAsStream(samlResponseDocument);
-        SAML2Object responseType = (SAML2Object) samlParser.parse(responseStream);
+        SAML2Object responseType = (SAML2Object) samlParser.parse(samlResponseDocument);
 
         samlDocumentHolder = new SAMLDocumentHolder(responseType, samlResponseDocument);
         return responseType;
-
     }
 
     /**
@@ -498,9 +512,9 @@ public class SAML2Response {
      */
     public Document convert(StatusResponseType responseType) throws ProcessingException, ConfigurationException,
             ParsingException {
-        ByteArrayOutputStream bos = new ByteArrayOutputStream();
+        Document samlDocument = DocumentUtil.createDocument();
 
-        SAMLResponseWriter writer = new SAMLResponseWriter(StaxUtil.getXMLStreamWriter(bos));
+        SAMLResponseWriter writer = new SAMLResponseWriter(new DOMResult(samlDocument));
 
         if (responseType instanceof ResponseType) {
             ResponseType response = (ResponseType) responseType;
@@ -509,7 +523,7 @@ public class SAML2Response {
             writer.write(responseType, new QName(PROTOCOL_NSURI.get(), LOGOUT_RESPONSE.get(), "samlp"));
         }
 
-        return DocumentUtil.getDocument(new ByteArrayInputStream(bos.toByteArray()));
+        return samlDocument;
     }
 
     /**
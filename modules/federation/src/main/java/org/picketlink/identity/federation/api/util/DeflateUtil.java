@@ -21,6 +21,9 @@ import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
 import java.util.zip.Deflater;
 import java.util.zip.DeflaterOutputStream;
 import java.util.zip.Inflater;
@@ -29,11 +32,26 @@ import java.util.zip.InflaterInputStream;
 /**
  * Encoder of saml messages based on DEFLATE compression
  *
+ * <p>
+ * {@link Deflater} and {@link Inflater} instances hold native memory and are costly to create, so they are reset and
+ * kept for reuse once a message has been encoded or decoded. The streams returned by {@link #encode(OutputStream)} and
+ * {@link #decode(InputStream)} release them when closed. The decoding streams also release their {@link Inflater} as
+ * soon as the whole message has been read.
+ * </p>
+ *
  * @author Anil.Saldhana@redhat.com
  * @since Dec 11, 2008
  */
 public class DeflateUtil {
 
+    private static final int MAX_IDLE = 2 * Runtime.getRuntime().availableProcessors();
+
+    private static final int BUFFER_SIZE = 1024;
+
+    private static final BlockingQueue<Deflater> deflaters = new ArrayBlockingQueue<Deflater>(MAX_IDLE);
+
+    private static final BlockingQueue<Inflater> inflaters = new ArrayBlockingQueue<Inflater>(MAX_IDLE);
+
     /**
      * Apply DEFLATE encoding
      *
@@ -44,11 +62,14 @@ public class DeflateUtil {
      * @throws IOException
      */
     public static byte[] encode(byte[] message) throws IOException {
-        ByteArrayOutputStream baos = new ByteArrayOutputStream();
-        Deflater deflater = new Deflater(Deflater.DEFLATED, true);
-        DeflaterOutputStream deflaterStream = new DeflaterOutputStream(baos, deflater);
-        deflaterStream.write(message);
-        deflaterStream.finish();
+        ByteArrayOutputStream baos = new ByteArrayOutputStream(Math.max(64, message.length / 2));
+        OutputStream deflaterStream = encode(baos);
+
+        try {
+            deflaterStream.write(message);
+        } finally {
+            deflaterStream.close();
+        }
 
         return baos.toByteArray();
     }
@@ -66,6 +87,18 @@ public class DeflateUtil {
         return encode(message.getBytes());
     }
 
+    /**
+     * Returns a stream applying DEFLATE encoding to the bytes written to it before passing them to the given stream.
+     * Closing the returned stream finishes the encoding and closes the given stream.
+     *
+     * @param out the stream receiving the encoded bytes
+     *
+     * @return
+     */
+    public static OutputStream encode(OutputStream out) {
+        return new PooledDeflaterOutputStream(out, borrowDeflater());
+    }
+
     /**
      * DEFLATE decoding
      *
@@ -74,7 +107,170 @@ public class DeflateUtil {
      * @return
      */
     public static InputStream decode(byte[] msgToDecode) {
-        ByteArrayInputStream bais = new ByteArrayInputStream(msgToDecode);
-        return new InflaterInputStream(bais, new Inflater(true));
+        return decode(new ByteArrayInputStream(msgToDecode));
+    }
+
+    /**
+     * DEFLATE decoding of the bytes read from the given stream
+     *
+     * @param in the stream providing the encoded message
+     *
+     * @return
+     */
+    public static InputStream decode(InputStream in) {
+        return new PooledInflaterInputStream(in, borrowInflater());
+    }
+
+    private static Deflater borrowDeflater() {
+        Deflater deflater = deflaters.poll();
+
+        if (deflater == null) {
+            deflater = new Deflater(Deflater.DEFLATED, true);
+        }
+
+        return deflater;
+    }
+
+    private static void returnDeflater(Deflater deflater) {
+        deflater.reset();
+
+        if (!deflaters.offer(deflater)) {
+            deflater.end();
+        }
+    }
+
+    private static Inflater borrowInflater() {
+        Inflater inflater = inflaters.poll();
+
+        if (inflater == null) {
+            inflater = new Inflater(true);
+        }
+
+        return inflater;
+    }
+
+    private static void returnInflater(Inflater inflater) {
+        inflater.reset();
+
+        if (!inflaters.offer(inflater)) {
+            inflater.end();
+        }
+    }
+
+    private static class PooledDeflaterOutputStream extends DeflaterOutputStream {
+
+        private boolean closed;
+
+        PooledDeflaterOutputStream(OutputStream out, Deflater deflater) {
+            super(out, deflater, BUFFER_SIZE);
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            ensureOpen();
+            super.write(b, off, len);
+        }
+
+        @Override
+        public void finish() throws IOException {
+            ensureOpen();
+            super.finish();
+        }
+
+        @Override
+        public void close() throws IOException {
+            if (this.closed) {
+                return;
+            }
+
+            try {
+                super.finish();
+                this.out.close();
+            } finally {
+                this.closed = true;
+                returnDeflater(this.def);
+            }
+        }
+
+        // the deflater may be used by another stream once this one is closed
+        private void ensureOpen() throws IOException {
+            if (this.closed) {
+                throw new IOException("Stream closed");
+            }
+        }
+    }
+
+    private static class PooledInflaterInputStream extends InflaterInputStream {
+
+        private boolean closed;
+
+        // the inflater has been returned, once the end of the message was reached
+        private boolean released;
+
+        PooledInflaterInputStream(InputStream in, Inflater inflater) {
+            super(in, inflater, BUFFER_SIZE);
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            ensureOpen();
+
+            if (this.released) {
+                return -1;
+            }
+
+            int read = super.read(b, off, len);
+
+            if (read == -1) {
+                release();
+            }
+
+            return read;
+        }
+
+        @Override
+        public int available() throws IOException {
+            ensureOpen();
+
+            if (this.released) {
+                return 0;
+            }
+
+            return super.available();
+        }
+
+        @Override
+        public long skip(long n) throws IOException {
+            ensureOpen();
+            return super.skip(n);
+        }
+
+        @Override
+        public void close() throws IOException {
+            if (this.closed) {
+                return;
+            }
+
+            this.closed = true;
+
+            try {
+                this.in.close();
+            } finally {
+                release();
+            }
+        }
+
+        private void release() {
+            if (!this.released) {
+                this.released = true;
+                returnInflater(this.inf);
+            }
+        }
+
+        private void ensureOpen() throws IOException {
+            if (this.closed) {
+                throw new IOException("Stream closed");
+            }
+        }
     }
-}
\ No newline at end of file
+}
@@ -32,6 +32,8 @@ import org.w3c.dom.Element;
 
 import java.net.URI;
 import java.security.Principal;
+import java.util.ArrayList;
+import java.util.List;
 
 /**
  * WS-Trust Client
@@ -206,6 +208,47 @@ public class WSTrustClient {
         return this.issueInternal(request, 0);
     }
 
+    /**
+     * <p>
+     * Issues several security tokens by sending a single {@code RequestSecurityTokenCollection} to the STS.
+     * </p>
+     *
+     * @param requests the {@code RequestSecurityToken} instances that contain the WS-Trust request information.
+     *
+     * @return the issued security tokens, in the order of the requests.
+     *
+     * @throws IllegalArgumentException if the specified requests are null.
+     * @throws WSTrustException if a processing error occurs while issuing the tokens.
+     */
+    public List<Element> issueTokens(List<RequestSecurityToken> requests) throws WSTrustException {
+        if (requests == null)
+            throw logger.nullArgumentError("requests");
+        return this.issueTokensInternal(requests, 0);
+    }
+
+    /**
+     * This method will send a RequestSecurityTokenCollection with a RequestSecurityToken for each of the passed-in
+     * endpoints, which will be set as their AppliesTo.
+     *
+     * @param endpointURIs - The ultimate recipients of the tokens.
+     *
+     * @return the issued security tokens, in the order of the endpoints.
+     */
+    public List<Element> issueTokensForEndpoints(List<String> endpointURIs) throws WSTrustException {
+        if (endpointURIs == null)
+            throw logger.nullArgumentError("endpointURIs");
+
+        List<RequestSecurityToken> requests = new ArrayList<RequestSecurityToken>();
+
+        for (String endpointURI : endpointURIs) {
+            RequestSecurityToken request = new RequestSecurityToken();
+            request.setAppliesTo(WSTrustUtil.createAppliesTo(endpointURI));
+            requests.add(request);
+        }
+
+        return this.issueTokensInternal(requests, 0);
+    }
+
     /**
      * This method will send a RequestSecurityToken with a RequestType of renew and the passed-in tokenType identifies
      * the type
@@ -278,6 +321,33 @@ public class WSTrustClient {
         }
     }
 
+    /**
+     * <p>
+     * This method issues the tokens of a request collection and has failover support when more than one endpoint URI
+     * has been provided in the constructor, in the same way as {@link #issueInternal(RequestSecurityToken, int)}.
+     * </p>
+     *
+     * @param requests the {@code RequestSecurityToken} instances that contain the WS-Trust request information.
+     * @param clientIndex an {@code int} that indicates which of the {@code STSClient} instances should be used to
+     * perform the request.
+     *
+     * @return the security tokens that have been issued.
+     *
+     * @throws WSTrustException if a WS-Trust exception is thrown by the STS.
+     */
+    private List<Element> issueTokensInternal(List<RequestSecurityToken> requests, int clientIndex) throws WSTrustException {
+        STSClient client = this.clients[clientIndex];
+        try {
+            return client.issueTokens(requests);
+        } catch (RuntimeException e) {
+            // if this was a connection refused exception and we still have clients to try, call the next client.
+            if (this.isCausedByConnectException(e) && clientIndex < this.clients.length - 1) {
+                return this.issueTokensInternal(requests, ++clientIndex);
+            }
+            throw e;
+        }
+    }
+
     /**
      * <p>
      * This method renews the specified token and has failover support when more than one endpoint URI has been provided
@@ -41,6 +41,12 @@ import java.io.InputStream;
 /**
  * Helper class to deal with audit
  *
+ * <p>
+ * Events are written by a {@link PicketLinkAuditPipeline}, off the request thread, unless the
+ * {@code picketlink.audit.async} system property is set to false. {@link #close()} must be called when the helper is no
+ * longer used, to write the pending events.
+ * </p>
+ *
  * @author anil saldhana
  */
 public class PicketLinkAuditHelper {
@@ -49,6 +55,8 @@ public class PicketLinkAuditHelper {
 
     private AuditManager auditManager = null;
 
+    private volatile PicketLinkAuditPipeline auditPipeline;
+
     /**
      * Create a {@link PicketLinkAuditHelper}
      *
@@ -58,6 +66,7 @@ public class PicketLinkAuditHelper {
      */
     public PicketLinkAuditHelper(String securityDomainName) throws ConfigurationException {
         configureAuditManager(securityDomainName);
+        configureAuditPipeline();
     }
 
     protected void configureAuditManager(String securityDomainName) throws ConfigurationException {
@@ -70,6 +79,14 @@ public class PicketLinkAuditHelper {
         }
     }
 
+    protected void configureAuditPipeline() {
+        boolean async = Boolean.parseBoolean(SecurityActions.getSystemProperty(GeneralConstants.AUDIT_ASYNC, "true"));
+
+        if (async && auditManager != null) {
+            auditPipeline = new PicketLinkAuditPipeline(auditManager);
+        }
+    }
+
     /**
      * Audit the event
      *
@@ -79,7 +96,33 @@ public class PicketLinkAuditHelper {
         if (auditManager == null) {
             throw logger.auditNullAuditManager();
         }
-        auditManager.audit(ae);
+
+        PicketLinkAuditPipeline pipeline = auditPipeline;
+
+        if (pipeline != null) {
+            pipeline.submit(ae);
+        } else {
+            auditManager.audit(ae);
+        }
+    }
+
+    /**
+     * Writes the pending events and stops the asynchronous writer. Events audited afterwards are written
+     * synchronously.
+     */
+    public void close() {
+        PicketLinkAuditPipeline pipeline = auditPipeline;
+
+        if (pipeline != null) {
+            pipeline.close();
+        }
+    }
+
+    /**
+     * Returns the pipeline writing the events, or null if they are written synchronously.
+     */
+    public PicketLinkAuditPipeline getAuditPipeline() {
+        return auditPipeline;
     }
 
     /**
@@ -0,0 +1,380 @@
+/*
+ * JBoss, Home of Professional Open Source
+ *
+ * Copyright 2013 Red Hat, Inc. and/or its affiliates.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.picketlink.identity.federation.core.audit;
+
+import org.jboss.security.audit.AuditEvent;
+import org.jboss.security.audit.AuditManager;
+import org.picketlink.common.PicketLinkLogger;
+import org.picketlink.common.PicketLinkLoggerFactory;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * <p>
+ * Writes audit events to an {@link AuditManager} from a background thread, so that the requests raising them do not
+ * wait for the audit backend.
+ * </p>
+ * <p>
+ * Events are queued in a bounded queue of {@link #getQueueSize()} events. The writer thread takes them from the queue
+ * by batches of at most {@link #getBatchSize()} events. When the queue is full, the {@link OverflowPolicy} decides
+ * whether the caller waits for room or the event is dropped. Dropped events are counted and logged.
+ * </p>
+ * <p>
+ * {@link #close()} writes the queued events before returning. Events submitted after the pipeline is closed are
+ * written synchronously.
+ * </p>
+ * <p>
+ * The defaults can be changed with the {@code picketlink.audit.queue.size}, {@code picketlink.audit.batch.size},
+ * {@code picketlink.audit.overflow} and {@code picketlink.audit.overflow.sampleRate} system properties, read when a
+ * pipeline is created without explicit settings.
+ * </p>
+ */
+public class PicketLinkAuditPipeline {
+
+    private static final PicketLinkLogger logger = PicketLinkLoggerFactory.getLogger();
+
+    public static final String QUEUE_SIZE_PROPERTY = "picketlink.audit.queue.size";
+
+    public static final String BATCH_SIZE_PROPERTY = "picketlink.audit.batch.size";
+
+    public static final String OVERFLOW_POLICY_PROPERTY = "picketlink.audit.overflow";
+
+    public static final String SAMPLE_RATE_PROPERTY = "picketlink.audit.overflow.sampleRate";
+
+    public static final int DEFAULT_QUEUE_SIZE = 10000;
+
+    public static final int DEFAULT_BATCH_SIZE = 100;
+
+    public static final OverflowPolicy DEFAULT_OVERFLOW_POLICY = OverflowPolicy.BLOCK;
+
+    public static final int DEFAULT_SAMPLE_RATE = 10;
+
+    /**
+     * How long {@link #close()} waits for the writer thread to write the queued events.
+     */
+    public static final long CLOSE_TIMEOUT = 10000;
+
+    private static final AtomicInteger threadCount = new AtomicInteger();
+
+    /**
+     * What to do with an event submitted while the queue is full.
+     */
+    public enum OverflowPolicy {
+        /**
+         * The caller waits until the writer thread makes room. No event is lost.
+         */
+        BLOCK,
+
+        /**
+         * The event is dropped.
+         */
+        DROP,
+
+        /**
+         * One overflowing event out of {@link PicketLinkAuditPipeline#getSampleRate()} is kept, the caller waiting for
+         * room as with {@link #BLOCK}. The others are dropped.
+         */
+        SAMPLE
+    }
+
+    private final AuditManager auditManager;
+
+    private final BlockingQueue<AuditEvent> queue;
+
+    private final int batchSize;
+
+    private final OverflowPolicy overflowPolicy;
+
+    private final int sampleRate;
+
+    private final Thread writer;
+
+    private final AtomicLong overflowCount = new AtomicLong();
+
+    private final AtomicLong droppedCount = new AtomicLong();
+
+    private final AtomicLong writtenCount = new AtomicLong();
+
+    private final AtomicLong loggedDroppedCount = new AtomicLong();
+
+    // submitters hold the read lock between checking closed and queuing, so no event is queued once close() has drained
+    private final ReadWriteLock closeLock = new ReentrantReadWriteLock();
+
+    private volatile boolean closed;
+
+    /**
+     * Creates a pipeline configured by the system properties, or with the defaults, and starts its writer thread.
+     * Invalid property values are logged and replaced by the defaults.
+     *
+     * @param auditManager the audit manager writing the events.
+     */
+    public PicketLinkAuditPipeline(AuditManager auditManager) {
+        this(auditManager, getIntProperty(QUEUE_SIZE_PROPERTY, DEFAULT_QUEUE_SIZE),
+            getIntProperty(BATCH_SIZE_PROPERTY, DEFAULT_BATCH_SIZE), getOverflowPolicyProperty(),
+            getIntProperty(SAMPLE_RATE_PROPERTY, DEFAULT_SAMPLE_RATE));
+    }
+
+    /**
+     * Creates a pipeline and starts its writer thread.
+     *
+     * @param auditManager the audit manager writing the events.
+     * @param queueSize the maximum number of events waiting to be written.
+     * @param batchSize the maximum number of events taken from the queue at once.
+     * @param overflowPolicy what to do with the events submitted while the queue is full.
+     * @param sampleRate with {@link OverflowPolicy#SAMPLE}, one overflowing event out of {@code sampleRate} is kept.
+     */
+    public PicketLinkAuditPipeline(AuditManager auditManager, int queueSize, int batchSize, OverflowPolicy overflowPolicy,
+                                   int sampleRate) {
+        if (auditManager == null)
+            throw logger.auditNullAuditManager();
+        if (overflowPolicy == null)
+            throw logger.nullArgumentError("overflowPolicy");
+
+        this.auditManager = auditManager;
+        this.queue = new ArrayBlockingQueue<AuditEvent>(queueSize);
+        this.batchSize = Math.max(1, batchSize);
+        this.overflowPolicy = overflowPolicy;
+        this.sampleRate = Math.max(1, sampleRate);
+
+        this.writer = new Thread(new Runnable() {
+            public void run() {
+                writeEvents();
+            }
+        }, "picketlink-audit-" + threadCount.incrementAndGet());
+        this.writer.setDaemon(true);
+        this.writer.start();
+    }
+
+    /**
+     * Queues the given event. Depending on the {@link OverflowPolicy}, waits for room or drops the event if the queue
+     * is full.
+     *
+     * @param auditEvent
+     */
+    public void submit(AuditEvent auditEvent) {
+        this.closeLock.readLock().lock();
+
+        try {
+            if (this.closed) {
+                write(auditEvent);
+                return;
+            }
+
+            if (this.queue.offer(auditEvent)) {
+                return;
+            }
+        } finally {
+            this.closeLock.readLock().unlock();
+        }
+
+        long overflow = this.overflowCount.incrementAndGet();
+
+        if (this.overflowPolicy == OverflowPolicy.DROP
+            || (this.overflowPolicy == OverflowPolicy.SAMPLE && overflow % this.sampleRate != 0)) {
+            this.droppedCount.incrementAndGet();
+            return;
+        }
+
+        try {
+            while (!offer(auditEvent)) {
+                // the queue is still full
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            write(auditEvent);
+        }
+    }
+
+    /**
+     * Stops the writer thread once it has written the queued events, waiting at most {@link #CLOSE_TIMEOUT}
+     * milliseconds. The events still queued after that are written by the calling thread.
+     */
+    public void close() {
+        this.closeLock.writeLock().lock();
+
+        try {
+            if (this.closed) {
+                return;
+            }
+
+            this.closed = true;
+        } finally {
+            this.closeLock.writeLock().unlock();
+        }
+
+        try {
+            this.writer.join(CLOSE_TIMEOUT);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+
+        List<AuditEvent> remaining = new ArrayList<AuditEvent>();
+
+        this.queue.drainTo(remaining);
+
+        for (AuditEvent auditEvent : remaining) {
+            write(auditEvent);
+        }
+
+        logDropped();
+    }
+
+    public boolean isClosed() {
+        return this.closed;
+    }
+
+    public int getQueueSize() {
+        return this.queue.size() + this.queue.remainingCapacity();
+    }
+
+    public int getBatchSize() {
+        return this.batchSize;
+    }
+
+    public OverflowPolicy getOverflowPolicy() {
+        return this.overflowPolicy;
+    }
+
+    public int getSampleRate() {
+        return this.sampleRate;
+    }
+
+    /**
+     * Returns the number of events waiting to be written.
+     */
+    public int getPendingCount() {
+        return this.queue.size();
+    }
+
+    public long getDroppedCount() {
+        return this.droppedCount.get();
+    }
+
+    public long getWrittenCount() {
+        return this.writtenCount.get();
+    }
+
+    /**
+     * Waits a little for room in the queue, or writes the event if the pipeline has been closed.
+     *
+     * @return false if the event is still to be queued.
+     */
+    private boolean offer(AuditEvent auditEvent) throws InterruptedException {
+        this.closeLock.readLock().lock();
+
+        try {
+            if (this.closed) {
+                write(auditEvent);
+                return true;
+            }
+
+            return this.queue.offer(auditEvent, 100, TimeUnit.MILLISECONDS);
+        } finally {
+            this.closeLock.readLock().unlock();
+        }
+    }
+
+    private void writeEvents() {
+        List<AuditEvent> batch = new ArrayList<AuditEvent>(this.batchSize);
+
+        while (!this.closed || !this.queue.isEmpty()) {
+            try {
+                AuditEvent first = this.queue.poll(100, TimeUnit.MILLISECONDS);
+
+                if (first == null) {
+                    continue;
+                }
+
+                batch.add(first);
+                this.queue.drainTo(batch, this.batchSize - 1);
+
+                for (AuditEvent auditEvent : batch) {
+                    write(auditEvent);
+                }
+
+                batch.clear();
+                logDropped();
+            } catch (InterruptedException e) {
+                // only close() stops the writer
+            }
+        }
+    }
+
+    private void write(AuditEvent auditEvent) {
+        try {
+            this.auditManager.audit(auditEvent);
+            this.writtenCount.incrementAndGet();
+        } catch (RuntimeException e) {
+            logger.auditEventWriteFailed(e);
+        }
+    }
+
+    private void logDropped() {
+        long dropped = this.droppedCount.get();
+        long loggedDropped = this.loggedDroppedCount.getAndSet(dropped);
+
+        if (dropped > loggedDropped) {
+            logger.auditEventsDropped(dropped - loggedDropped);
+        }
+    }
+
+    private static int getIntProperty(String name, int defaultValue) {
+        String value = SecurityActions.getSystemProperty(name, null);
+
+        if (value == null) {
+            return defaultValue;
+        }
+
+        try {
+            int intValue = Integer.parseInt(value.trim());
+
+            if (intValue > 0) {
+                return intValue;
+            }
+        } catch (NumberFormatException e) {
+            // logged below
+        }
+
+        logger.auditInvalidProperty(name, value, defaultValue);
+
+        return defaultValue;
+    }
+
+    private static OverflowPolicy getOverflowPolicyProperty() {
+        String value = SecurityActions.getSystemProperty(OVERFLOW_POLICY_PROPERTY, null);
+
+        if (value == null) {
+            return DEFAULT_OVERFLOW_POLICY;
+        }
+
+        try {
+            return OverflowPolicy.valueOf(value.trim().toUpperCase());
+        } catch (IllegalArgumentException e) {
+            logger.auditInvalidProperty(OVERFLOW_POLICY_PROPERTY, value, DEFAULT_OVERFLOW_POLICY);
+            return DEFAULT_OVERFLOW_POLICY;
+        }
+    }
+}
@@ -46,11 +46,20 @@ import java.security.cert.Certificate;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
 
+import static org.picketlink.common.util.StringUtil.getPasswordDigest;
 import static org.picketlink.common.util.StringUtil.isNullOrEmpty;
 
 /**
- * KeyStore based Trust Key Manager
+ * <p>KeyStore based Trust Key Manager</p>
+ *
+ * <p>Keys are read from the keystore only once and kept in memory, so private keys are not decrypted again for every
+ * message. If the {@link #KEYSTORE_RELOAD_INTERVAL} option is set and the keystore is a file, the file is checked for
+ * modifications at most once per interval and, when it changes, the keystore and all the keys read from it are
+ * replaced at once.</p>
  *
  * @author Anil.Saldhana@redhat.com
  * @since Jan 22, 2009
@@ -65,7 +74,7 @@ public class KeyStoreKeyManager implements TrustKeyManager {
      * uses a
      * secure thumb drive or a TPM module or a HSM module. Also see JBoss XMLKey.
      */
-    private final Map<String, SecretKey> keys = new HashMap<String, SecretKey>();
+    private final ConcurrentMap<String, SecretKey> keys = new ConcurrentHashMap<String, SecretKey>();
 
     private final Map<String, Object> options = new HashMap<String, Object>();
 
@@ -73,7 +82,17 @@ public class KeyStoreKeyManager implements TrustKeyManager {
 
     private final HashMap<String, String> authPropsMap = new HashMap<String, String>();
 
-    private KeyStore ks = null;
+    private volatile KeyStoreHolder keyStoreHolder;
+
+    private long keyStoreReloadInterval;
+
+    private volatile long nextKeyStoreCheck;
+
+    private final AtomicLong keyLookupCount = new AtomicLong();
+
+    private final AtomicLong keyLoadCount = new AtomicLong();
+
+    private final AtomicLong keyStoreReloadCount = new AtomicLong();
 
     private String keyStoreURL;
 
@@ -87,6 +106,14 @@ public class KeyStoreKeyManager implements TrustKeyManager {
 
     private String keyStorePass;
 
+    private String keyStorePassDigest;
+
+    private String signingKeyPassDigest;
+
+    private String signingCacheKey;
+
+    private String encryptionCacheKey;
+
     public static final String KEYSTORE_URL = "KeyStoreURL";
 
     public static final String KEYSTORE_PASS = "KeyStorePass";
@@ -99,6 +126,12 @@ public class KeyStoreKeyManager implements TrustKeyManager {
 
     public static final String ENCRYPTION_KEY_ALIAS = "EncryptionKeyAlias";
 
+    /**
+     * Interval, in milliseconds, between checks for modifications of the keystore file. If not set, the keystore is never
+     * reloaded.
+     */
+    public static final String KEYSTORE_RELOAD_INTERVAL = "KeyStoreReloadInterval";
+
     /**
      * @see TrustKeyManager#getSigningKey()
      */
@@ -107,8 +140,7 @@ public class KeyStoreKeyManager implements TrustKeyManager {
             throw logger.keyStoreNullSigningKeyPass();
 
         try {
-            initKeyStore();
-            return (PrivateKey) ks.getKey(this.signingAlias, this.signingKeyPass);
+            return getPrivateKey(initKeyStore(), this.signingAlias, this.signingKeyPass, this.signingCacheKey);
         } catch (KeyStoreException e) {
             throw logger.keyStoreConfigurationError(e);
         } catch (NoSuchAlgorithmException e) {
@@ -132,9 +164,9 @@ public class KeyStoreKeyManager implements TrustKeyManager {
             throw logger.keyStoreNullSigningKeyPass();
 
         try {
-            initKeyStore();
-            PrivateKey privateKey = this.getSigningKey();
-            PublicKey publicKey = KeyStoreUtil.getPublicKey(this.ks, this.signingAlias, this.signingKeyPass);
+            KeyStoreHolder holder = initKeyStore();
+            PrivateKey privateKey = getPrivateKey(holder, this.signingAlias, this.signingKeyPass, this.signingCacheKey);
+            PublicKey publicKey = getPublicKey(holder, this.signingAlias, this.signingKeyPass, this.signingCacheKey);
             return new KeyPair(publicKey, privateKey);
         } catch (KeyStoreException e) {
             throw logger.keyStoreConfigurationError(e);
@@ -154,8 +186,7 @@ public class KeyStoreKeyManager implements TrustKeyManager {
                 throw logger.keyStoreNullEncryptionKeyPass();
 
             try {
-                initKeyStore();
-                return (PrivateKey) ks.getKey(this.encryptionAlias, this.encryptionKeyPass);
+                return getPrivateKey(initKeyStore(), this.encryptionAlias, this.encryptionKeyPass, this.encryptionCacheKey);
             } catch (KeyStoreException e) {
                 throw logger.keyStoreConfigurationError(e);
             } catch (NoSuchAlgorithmException e) {
@@ -180,9 +211,10 @@ public class KeyStoreKeyManager implements TrustKeyManager {
             }
 
             try {
-                initKeyStore();
+                KeyStoreHolder holder = initKeyStore();
                 PrivateKey privateKey = this.getSigningKey();
-                PublicKey publicKey = KeyStoreUtil.getPublicKey(this.ks, this.encryptionAlias, this.encryptionKeyPass);
+                PublicKey publicKey = getPublicKey(holder, this.encryptionAlias, this.encryptionKeyPass,
+                    this.encryptionCacheKey);
                 return new KeyPair(publicKey, privateKey);
             } catch (KeyStoreException e) {
                 throw logger.keyStoreConfigurationError(e);
@@ -199,12 +231,12 @@ public class KeyStoreKeyManager implements TrustKeyManager {
      */
     public Certificate getCertificate(String alias) throws TrustKeyConfigurationException, TrustKeyProcessingException {
         try {
-            initKeyStore();
+            KeyStoreHolder holder = initKeyStore();
 
             if (alias == null || alias.length() == 0)
                 throw logger.keyStoreNullAlias();
 
-            return ks.getCertificate(alias);
+            return holder.keyStore.getCertificate(alias);
         } catch (KeyStoreException e) {
             throw logger.keyStoreConfigurationError(e);
         } catch (GeneralSecurityException e) {
@@ -221,9 +253,7 @@ public class KeyStoreKeyManager implements TrustKeyManager {
         PublicKey publicKey = null;
 
         try {
-            initKeyStore();
-
-            Certificate cert = ks.getCertificate(alias);
+            Certificate cert = initKeyStore().keyStore.getCertificate(alias);
             if (cert != null)
                 publicKey = cert.getPublicKey();
             else
@@ -249,7 +279,7 @@ public class KeyStoreKeyManager implements TrustKeyManager {
     public PublicKey getValidatingKey(String domain) throws TrustKeyConfigurationException, TrustKeyProcessingException {
         PublicKey publicKey = null;
         try {
-            initKeyStore();
+            KeyStoreHolder holder = initKeyStore();
 
             String domainAlias = this.domainAliasMap.get(domain);
             if (domainAlias == null && domain.startsWith("[") && domain.endsWith("]")) {
@@ -261,13 +291,15 @@ public class KeyStoreKeyManager implements TrustKeyManager {
                 throw logger.keyStoreMissingDomainAlias(domain);
 
             try {
-                publicKey = KeyStoreUtil.getPublicKey(ks, domainAlias, this.keyStorePass.toCharArray());
+                publicKey = getPublicKey(holder, domainAlias, this.keyStorePass.toCharArray(),
+                    getCacheKey(domainAlias, this.keyStorePassDigest));
             } catch (UnrecoverableKeyException urke) {
                 // Try with the signing key pass
                 if (this.signingKeyPass == null || this.signingKeyPass.length == 0)
                     throw logger.keyStoreNullSigningKeyPass();
 
-                publicKey = KeyStoreUtil.getPublicKey(ks, domainAlias, this.signingKeyPass);
+                publicKey = getPublicKey(holder, domainAlias, this.signingKeyPass,
+                    getCacheKey(domainAlias, this.signingKeyPassDigest));
             }
         } catch (KeyStoreException e) {
             throw logger.keyStoreConfigurationError(e);
@@ -281,14 +313,135 @@ public class KeyStoreKeyManager implements TrustKeyManager {
         return publicKey;
     }
 
-    private void initKeyStore() throws GeneralSecurityException, IOException {
-        if (ks == null) {
-            logger.keyStoreSetup();
-            this.setUpKeyStore();
+    /**
+     * Returns the number of keys requested from this manager.
+     *
+     * @return
+     */
+    public long getKeyLookupCount() {
+        return this.keyLookupCount.get();
+    }
+
+    /**
+     * Returns the number of keys that were not cached and had to be read from the keystore.
+     *
+     * @return
+     */
+    public long getKeyLoadCount() {
+        return this.keyLoadCount.get();
+    }
+
+    /**
+     * Returns how many times the keystore was reloaded after a modification.
+     *
+     * @return
+     */
+    public long getKeyStoreReloadCount() {
+        return this.keyStoreReloadCount.get();
+    }
+
+    private PrivateKey getPrivateKey(KeyStoreHolder holder, String alias, char[] password, String cacheKey)
+            throws GeneralSecurityException {
+        this.keyLookupCount.incrementAndGet();
+
+        PrivateKey privateKey = holder.privateKeys.get(cacheKey);
+
+        if (privateKey == null) {
+            this.keyLoadCount.incrementAndGet();
+
+            privateKey = (PrivateKey) holder.keyStore.getKey(alias, password);
+
+            if (privateKey != null) {
+                holder.privateKeys.putIfAbsent(cacheKey, privateKey);
+            }
         }
 
-        if (ks == null)
-            throw logger.keyStoreNullStore();
+        return privateKey;
+    }
+
+    private PublicKey getPublicKey(KeyStoreHolder holder, String alias, char[] password, String cacheKey)
+            throws GeneralSecurityException {
+        this.keyLookupCount.incrementAndGet();
+
+        PublicKey publicKey = holder.publicKeys.get(cacheKey);
+
+        if (publicKey == null) {
+            this.keyLoadCount.incrementAndGet();
+
+            publicKey = KeyStoreUtil.getPublicKey(holder.keyStore, alias, password);
+
+            if (publicKey != null) {
+                holder.publicKeys.putIfAbsent(cacheKey, publicKey);
+            }
+        }
+
+        return publicKey;
+    }
+
+    /**
+     * Keys are cached by alias and password, so that a key unlocked once is not returned for a wrong password. Only a
+     * digest of the password is kept, computed once when the passwords are set.
+     */
+    private static String getCacheKey(String alias, String passwordDigest) {
+        return alias + ":" + passwordDigest;
+    }
+
+    private KeyStoreHolder initKeyStore() throws GeneralSecurityException, IOException {
+        KeyStoreHolder holder = this.keyStoreHolder;
+
+        if (holder == null) {
+            synchronized (this) {
+                holder = this.keyStoreHolder;
+
+                if (holder == null) {
+                    logger.keyStoreSetup();
+                    holder = this.setUpKeyStore();
+                    this.nextKeyStoreCheck = System.currentTimeMillis() + this.keyStoreReloadInterval;
+                    this.keyStoreHolder = holder;
+                }
+            }
+        } else if (this.keyStoreReloadInterval > 0 && holder.file != null
+                && System.currentTimeMillis() >= this.nextKeyStoreCheck) {
+            holder = reloadKeyStore();
+        }
+
+        return holder;
+    }
+
+    /**
+     * Reloads the keystore if its file was modified since it was last read. If the new file can not be read, the current
+     * keys are kept and the file is checked again after the next interval.
+     *
+     * @return
+     */
+    private synchronized KeyStoreHolder reloadKeyStore() {
+        KeyStoreHolder holder = this.keyStoreHolder;
+        long now = System.currentTimeMillis();
+
+        if (now < this.nextKeyStoreCheck) {
+            return holder;
+        }
+
+        this.nextKeyStoreCheck = now + this.keyStoreReloadInterval;
+
+        if (holder.file.lastModified() == holder.lastModified) {
+            return holder;
+        }
+
+        try {
+            KeyStoreHolder reloaded = setUpKeyStore();
+
+            this.keyStoreHolder = reloaded;
+            this.keyStoreReloadCount.incrementAndGet();
+
+            logger.keyStoreReloaded(this.keyStoreURL);
+
+            return reloaded;
+        } catch (Exception e) {
+            logger.keyStoreReloadFailed(this.keyStoreURL, e);
+        }
+
+        return holder;
     }
 
     /**
@@ -316,6 +469,17 @@ public class KeyStoreKeyManager implements TrustKeyManager {
         if (encKeypass != null) {
             this.encryptionKeyPass = encKeypass.toCharArray();
         }
+
+        String reloadInterval = this.authPropsMap.get(KEYSTORE_RELOAD_INTERVAL);
+
+        if (!isNullOrEmpty(reloadInterval)) {
+            this.keyStoreReloadInterval = Long.parseLong(reloadInterval.trim());
+        }
+
+        this.keyStorePassDigest = getPasswordDigest(this.keyStorePass);
+        this.signingKeyPassDigest = getPasswordDigest(signKeypass);
+        this.signingCacheKey = getCacheKey(this.signingAlias, this.signingKeyPassDigest);
+        this.encryptionCacheKey = getCacheKey(this.encryptionAlias, getPasswordDigest(encKeypass));
     }
 
     /**
@@ -337,7 +501,9 @@ public class KeyStoreKeyManager implements TrustKeyManager {
             } catch (GeneralSecurityException e) {
                 throw logger.keyStoreProcessingError(e);
             }
-            keys.put(domain, key);
+            SecretKey existing = keys.putIfAbsent(domain, key);
+            if (existing != null)
+                key = existing;
         }
         return key;
     }
@@ -357,7 +523,7 @@ public class KeyStoreKeyManager implements TrustKeyManager {
         return this.options.get(key);
     }
 
-    private void setUpKeyStore() throws GeneralSecurityException, IOException {
+    private KeyStoreHolder setUpKeyStore() throws GeneralSecurityException, IOException {
         // Keystore URL/Pass can be either by configuration or on the HTTPS connector
         if (this.keyStoreURL == null) {
             this.keyStoreURL = SecurityActions.getProperty("javax.net.ssl.keyStore", null);
@@ -366,8 +532,59 @@ public class KeyStoreKeyManager implements TrustKeyManager {
             this.keyStorePass = SecurityActions.getProperty("javax.net.ssl.keyStorePassword", null);
         }
 
+        File file = getKeyStoreFile(this.keyStoreURL);
+        // read before loading, so that a modification made while loading is detected by the next check
+        long lastModified = file != null ? file.lastModified() : 0;
+
         InputStream is = this.getKeyStoreInputStream(this.keyStoreURL);
-        ks = KeyStoreUtil.getKeyStore(is, keyStorePass.toCharArray());
+        KeyStore ks;
+
+        try {
+            ks = KeyStoreUtil.getKeyStore(is, keyStorePass.toCharArray());
+        } finally {
+            is.close();
+        }
+
+        if (ks == null)
+            throw logger.keyStoreNullStore();
+
+        return new KeyStoreHolder(ks, file, lastModified);
+    }
+
+    /**
+     * Returns the keystore file, or null if the keystore is not loaded from a file and can not be watched for changes.
+     *
+     * @param keyStore
+     *
+     * @return
+     */
+    private File getKeyStoreFile(String keyStore) {
+        if (keyStore == null) {
+            return null;
+        }
+
+        File file = new File(keyStore);
+
+        if (file.isFile()) {
+            return file;
+        }
+
+        URL url = null;
+
+        try {
+            url = new URL(keyStore);
+        } catch (Exception e) {
+            url = SecurityActions.loadResource(getClass(), keyStore);
+        }
+
+        if (url != null && "file".equals(url.getProtocol())) {
+            try {
+                return new File(url.toURI());
+            } catch (Exception ignore) {
+            }
+        }
+
+        return null;
     }
 
     /**
@@ -416,4 +633,26 @@ public class KeyStoreKeyManager implements TrustKeyManager {
             throw logger.keyStoreNotLocated(keyStore);
         return is;
     }
-}
\ No newline at end of file
+
+    /**
+     * Holds a loaded keystore and the keys already read from it. It is replaced as a whole when the keystore is reloaded.
+     */
+    private static class KeyStoreHolder {
+
+        private final KeyStore keyStore;
+
+        private final File file;
+
+        private final long lastModified;
+
+        private final ConcurrentMap<String, PrivateKey> privateKeys = new ConcurrentHashMap<String, PrivateKey>();
+
+        private final ConcurrentMap<String, PublicKey> publicKeys = new ConcurrentHashMap<String, PublicKey>();
+
+        private KeyStoreHolder(KeyStore keyStore, File file, long lastModified) {
+            this.keyStore = keyStore;
+            this.file = file;
+            this.lastModified = lastModified;
+        }
+    }
+}
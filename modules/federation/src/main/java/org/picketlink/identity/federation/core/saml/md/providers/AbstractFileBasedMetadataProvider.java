@@ -39,6 +39,11 @@ public abstract class AbstractFileBasedMetadataProvider<T> extends AbstractMetad
 
     public static final String FILENAME_KEY = "FileName";
 
+    /**
+     * Interval, in milliseconds, to check if the file was modified. Used by providers that can reload their metadata.
+     */
+    public static final String RELOAD_INTERVAL_KEY = "ReloadInterval";
+
     private String fileName;
 
     protected InputStream metadataFileStream;
@@ -21,6 +21,8 @@ import org.picketlink.common.util.StaxParserUtil;
 import org.picketlink.identity.federation.core.parsers.saml.metadata.SAMLEntitiesDescriptorParser;
 import org.picketlink.identity.federation.saml.v2.metadata.EntitiesDescriptorType;
 
+import java.io.InputStream;
+
 /**
  * File based provider that handles multiple entities
  *
@@ -29,21 +31,36 @@ import org.picketlink.identity.federation.saml.v2.metadata.EntitiesDescriptorTyp
  */
 public class FileBasedEntitiesMetadataProvider extends AbstractFileBasedMetadataProvider<EntitiesDescriptorType> {
 
+    private EntitiesDescriptorType metaData;
+
     /**
+     * <p>The injected stream is parsed on the first call, later calls return the same {@link EntitiesDescriptorType}
+     * until another stream is injected.</p>
+     *
      * @see org.picketlink.identity.federation.core.interfaces.IMetadataProvider#getMetaData()
      */
-    public EntitiesDescriptorType getMetaData() {
+    public synchronized EntitiesDescriptorType getMetaData() {
+        if (this.metaData != null)
+            return this.metaData;
+
         if (this.metadataFileStream == null)
             throw logger.injectedValueMissing("Metadata file");
 
         try {
             SAMLEntitiesDescriptorParser parser = new SAMLEntitiesDescriptorParser();
-            return (EntitiesDescriptorType) parser.parse(StaxParserUtil.getXMLEventReader(metadataFileStream));
+            this.metaData = (EntitiesDescriptorType) parser.parse(StaxParserUtil.getXMLEventReader(metadataFileStream));
+            return this.metaData;
         } catch (Exception e) {
             throw new RuntimeException(e);
         }
     }
 
+    @Override
+    public synchronized void injectFileStream(InputStream fileStream) {
+        super.injectFileStream(fileStream);
+        this.metaData = null;
+    }
+
     public boolean isMultiple() {
         return true;
     }
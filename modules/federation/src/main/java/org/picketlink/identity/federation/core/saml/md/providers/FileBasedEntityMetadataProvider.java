@@ -45,6 +45,8 @@ public class FileBasedEntityMetadataProvider extends AbstractMetadataProvider im
 
     private InputStream metadataFileStream;
 
+    private EntityDescriptorType metaData;
+
     @SuppressWarnings("unused")
     private PublicKey encryptionKey;
 
@@ -62,13 +64,17 @@ public class FileBasedEntityMetadataProvider extends AbstractMetadataProvider im
     /**
      * @see IMetadataProvider#getMetaData()
      */
-    public EntityDescriptorType getMetaData() {
+    public synchronized EntityDescriptorType getMetaData() {
+        if (this.metaData != null)
+            return this.metaData;
+
         if (this.metadataFileStream == null)
             throw logger.injectedValueMissing("Metadata file");
 
         try {
             SAMLEntityDescriptorParser parser = new SAMLEntityDescriptorParser();
-            return (EntityDescriptorType) parser.parse(StaxParserUtil.getXMLEventReader(metadataFileStream));
+            this.metaData = (EntityDescriptorType) parser.parse(StaxParserUtil.getXMLEventReader(metadataFileStream));
+            return this.metaData;
         } catch (Exception e) {
             throw new RuntimeException(e);
         }
@@ -85,8 +91,9 @@ public class FileBasedEntityMetadataProvider extends AbstractMetadataProvider im
         this.encryptionKey = publicKey;
     }
 
-    public void injectFileStream(InputStream fileStream) {
+    public synchronized void injectFileStream(InputStream fileStream) {
         this.metadataFileStream = fileStream;
+        this.metaData = null;
     }
 
     public void injectSigningKey(PublicKey publicKey) {
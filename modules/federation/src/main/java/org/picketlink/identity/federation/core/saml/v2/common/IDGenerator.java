@@ -19,8 +19,7 @@ package org.picketlink.identity.federation.core.saml.v2.common;
 
 import org.picketlink.common.PicketLinkLogger;
 import org.picketlink.common.PicketLinkLoggerFactory;
-
-import java.util.UUID;
+import org.picketlink.common.random.RandomGenerator;
 
 /**
  * Utility class that generates unique IDs
@@ -36,7 +35,7 @@ public class IDGenerator {
      * Create a basic unique ID
      */
     public static String create() {
-        return UUID.randomUUID().toString();
+        return RandomGenerator.getInstance().generateUUID();
     }
 
     /**
@@ -18,6 +18,7 @@
 package org.picketlink.identity.federation.core.saml.v2.factories;
 
 import org.picketlink.common.constants.JBossSAMLURIConstants;
+import org.picketlink.common.random.RandomGenerator;
 import org.picketlink.identity.federation.saml.v2.assertion.AttributeStatementType;
 import org.picketlink.identity.federation.saml.v2.assertion.AttributeStatementType.ASTChoiceType;
 import org.picketlink.identity.federation.saml.v2.assertion.AttributeType;
@@ -117,7 +118,7 @@ public class JBossSAMLBaseFactory {
      * @return
      */
     public static String createUUID() {
-        return java.util.UUID.randomUUID().toString();
+        return RandomGenerator.getInstance().generateUUID();
     }
 
     /**
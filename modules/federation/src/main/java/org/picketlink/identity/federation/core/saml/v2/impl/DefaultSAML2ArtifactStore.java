@@ -0,0 +1,112 @@
+/*
+ * JBoss, Home of Professional Open Source
+ *
+ * Copyright 2013 Red Hat, Inc. and/or its affiliates.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.picketlink.identity.federation.core.saml.v2.impl;
+
+import org.picketlink.identity.federation.core.saml.v2.interfaces.SAML2ArtifactStore;
+import org.w3c.dom.Document;
+
+import java.util.Iterator;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * <p>
+ * Default {@link SAML2ArtifactStore}, keeping the messages in memory.
+ * </p>
+ * <p>
+ * Messages are kept for {@link #getTimeout()} milliseconds. The expired messages are removed by the calls to
+ * {@link #store(String, Document, String)}, at most once per timeout.
+ * </p>
+ */
+public class DefaultSAML2ArtifactStore implements SAML2ArtifactStore {
+
+    public static final long DEFAULT_TIMEOUT = 60000;
+
+    private final ConcurrentMap<String, StoredMessage> messages = new ConcurrentHashMap<String, StoredMessage>();
+
+    private final AtomicLong nextExpiryCheck = new AtomicLong();
+
+    private volatile long timeout = DEFAULT_TIMEOUT;
+
+    public void store(String artifact, Document message, String recipient) {
+        long now = System.currentTimeMillis();
+        long nextCheck = this.nextExpiryCheck.get();
+
+        if (now >= nextCheck && this.nextExpiryCheck.compareAndSet(nextCheck, now + this.timeout)) {
+            removeExpired(now);
+        }
+
+        this.messages.put(artifact, new StoredMessage(message, recipient, now + this.timeout));
+    }
+
+    public Document resolve(String artifact, String requester) {
+        StoredMessage storedMessage = this.messages.get(artifact);
+
+        if (storedMessage == null || requester == null || !requester.equals(storedMessage.recipient)) {
+            return null;
+        }
+
+        // only one of the concurrent requests gets the message
+        if (!this.messages.remove(artifact, storedMessage) || storedMessage.expires <= System.currentTimeMillis()) {
+            return null;
+        }
+
+        return storedMessage.message;
+    }
+
+    public int size() {
+        return this.messages.size();
+    }
+
+    public long getTimeout() {
+        return this.timeout;
+    }
+
+    /**
+     * Sets how long, in milliseconds, a message can be resolved after it is stored.
+     */
+    public void setTimeout(long timeout) {
+        this.timeout = timeout;
+    }
+
+    private void removeExpired(long now) {
+        Iterator<StoredMessage> iterator = this.messages.values().iterator();
+
+        while (iterator.hasNext()) {
+            if (iterator.next().expires <= now) {
+                iterator.remove();
+            }
+        }
+    }
+
+    private static class StoredMessage {
+
+        private final Document message;
+
+        private final String recipient;
+
+        private final long expires;
+
+        StoredMessage(Document message, String recipient, long expires) {
+            this.message = message;
+            this.recipient = recipient;
+            this.expires = expires;
+        }
+    }
+}
@@ -26,54 +26,81 @@ import java.util.LinkedHashSet;
 import java.util.Set;
 
 /**
- * Default implementation of the SAML2 handler chain
+ * Default implementation of the SAML2 handler chain.
+ *
+ * <p>Every change creates a new set of handlers, so {@link #handlers()} returns a snapshot that can be iterated by
+ * many requests while the chain is being changed.</p>
  *
  * @author Anil.Saldhana@redhat.com
  * @since Oct 1, 2009
  */
 public class DefaultSAML2HandlerChain implements SAML2HandlerChain {
 
-    private Set<SAML2Handler> handlers = new LinkedHashSet<SAML2Handler>();
+    private volatile Set<SAML2Handler> handlers = Collections.emptySet();
 
     /**
      * @see SAML2HandlerChain#add(SAML2Handler)
      */
-    public boolean add(SAML2Handler handler) {
-        return handlers.add(handler);
+    public synchronized boolean add(SAML2Handler handler) {
+        Set<SAML2Handler> handlers = copy();
+        boolean added = handlers.add(handler);
+
+        this.handlers = Collections.unmodifiableSet(handlers);
+
+        return added;
     }
 
     /**
      * @see SAML2HandlerChain#add(SAML2Handler)
      */
-    public boolean addAll(Collection<SAML2Handler> handlers) {
-        return this.handlers.addAll(handlers);
+    public synchronized boolean addAll(Collection<SAML2Handler> handlers) {
+        Set<SAML2Handler> newHandlers = copy();
+        boolean added = newHandlers.addAll(handlers);
+
+        this.handlers = Collections.unmodifiableSet(newHandlers);
+
+        return added;
     }
 
     /**
      * @see SAML2HandlerChain#handlers()
      */
     public Set<SAML2Handler> handlers() {
-        return Collections.unmodifiableSet(handlers);
+        return this.handlers;
     }
 
     /**
      * @see SAML2HandlerChain#remove(SAML2Handler)
      */
-    public boolean remove(SAML2Handler handler) {
-        return handlers.remove(handler);
+    public synchronized boolean remove(SAML2Handler handler) {
+        Set<SAML2Handler> handlers = copy();
+        boolean removed = handlers.remove(handler);
+
+        this.handlers = Collections.unmodifiableSet(handlers);
+
+        return removed;
     }
 
     /**
      * @see SAML2HandlerChain#size()
      */
     public int size() {
-        return handlers.size();
+        return this.handlers.size();
     }
 
     /**
      * @see SAML2HandlerChain#removeAll(Collection)
      */
-    public boolean removeAll(Collection<SAML2Handler> handlers) {
-        return handlers.removeAll(handlers);
+    public synchronized boolean removeAll(Collection<SAML2Handler> handlers) {
+        Set<SAML2Handler> newHandlers = copy();
+        boolean removed = newHandlers.removeAll(handlers);
+
+        this.handlers = Collections.unmodifiableSet(newHandlers);
+
+        return removed;
+    }
+
+    private Set<SAML2Handler> copy() {
+        return new LinkedHashSet<SAML2Handler>(this.handlers);
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,54 @@
+/*
+ * JBoss, Home of Professional Open Source
+ *
+ * Copyright 2013 Red Hat, Inc. and/or its affiliates.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.picketlink.identity.federation.core.saml.v2.interfaces;
+
+import org.w3c.dom.Document;
+
+/**
+ * <p>
+ * Keeps the messages an IDP sends with the HTTP-Artifact binding, until the receiver resolves their artifact with an
+ * {@code ArtifactResolve} request.
+ * </p>
+ * <p>
+ * Implementations are called concurrently and must be thread safe. They can be configured with the
+ * <i>ArtifactStore</i> attribute of the IDP configuration, for instance to share the messages between several IDP
+ * nodes.
+ * </p>
+ */
+public interface SAML2ArtifactStore {
+
+    /**
+     * Stores a message until its artifact is resolved by its recipient or it expires.
+     *
+     * @param artifact the artifact identifying the message.
+     * @param message the SAML message.
+     * @param recipient the entity ID of the only entity allowed to resolve the artifact.
+     */
+    void store(String artifact, Document message, String recipient);
+
+    /**
+     * Removes and returns the message identified by the given artifact. An artifact can only be resolved once, and only
+     * by the recipient of its message. The message is kept when another entity asks for it.
+     *
+     * @param artifact
+     * @param requester the entity ID of the issuer of the {@code ArtifactResolve} request.
+     *
+     * @return the message, or null if the artifact is unknown, expired or was not sent to the requester.
+     */
+    Document resolve(String artifact, String requester);
+}
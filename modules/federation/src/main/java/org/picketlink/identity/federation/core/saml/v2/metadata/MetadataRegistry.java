@@ -0,0 +1,414 @@
+/*
+ * JBoss, Home of Professional Open Source
+ *
+ * Copyright 2013 Red Hat, Inc. and/or its affiliates.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.picketlink.identity.federation.core.saml.v2.metadata;
+
+import org.picketlink.common.PicketLinkLogger;
+import org.picketlink.common.PicketLinkLoggerFactory;
+import org.picketlink.common.constants.JBossSAMLConstants;
+import org.picketlink.common.exceptions.ParsingException;
+import org.picketlink.common.util.StaxParserUtil;
+import org.picketlink.identity.federation.core.parsers.saml.metadata.SAMLEntityDescriptorParser;
+import org.picketlink.identity.federation.core.saml.v2.util.SAMLMetadataUtil;
+import org.picketlink.identity.federation.saml.v2.metadata.EndpointType;
+import org.picketlink.identity.federation.saml.v2.metadata.EntityDescriptorType;
+import org.picketlink.identity.federation.saml.v2.metadata.EntityDescriptorType.EDTChoiceType;
+import org.picketlink.identity.federation.saml.v2.metadata.EntityDescriptorType.EDTDescriptorChoiceType;
+import org.picketlink.identity.federation.saml.v2.metadata.IDPSSODescriptorType;
+import org.picketlink.identity.federation.saml.v2.metadata.KeyTypes;
+import org.picketlink.identity.federation.saml.v2.metadata.SPSSODescriptorType;
+import org.picketlink.identity.federation.saml.v2.metadata.SSODescriptorType;
+
+import javax.xml.stream.XMLEventReader;
+import javax.xml.stream.events.XMLEvent;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URI;
+import java.security.cert.X509Certificate;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Timer;
+import java.util.TimerTask;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * <p>Holds the {@link EntityDescriptorType} known by a provider, indexed by entityID and by the location of their
+ * assertion consumer, single sign-on and single logout endpoints.</p>
+ *
+ * <p>Entities are kept in an immutable snapshot which is replaced as a whole when the metadata is loaded again, so
+ * lookups never block and never see a partially loaded aggregate. Signing and encryption certificates are decoded
+ * when the metadata is loaded, instead of when the first message of an entity arrives.</p>
+ *
+ * <p>When watching a file, the registry checks its last modification time on a background thread and reloads it
+ * when it changes. A file that can not be parsed is logged and the previous entities are kept.</p>
+ */
+public class MetadataRegistry {
+
+    private static final PicketLinkLogger logger = PicketLinkLoggerFactory.getLogger();
+
+    private volatile Snapshot snapshot = new Snapshot(Collections.<EntityDescriptorType>emptyList());
+
+    private final AtomicLong lookupCount = new AtomicLong();
+
+    private final AtomicLong lookupTime = new AtomicLong();
+
+    private final AtomicLong reloadCount = new AtomicLong();
+
+    private File file;
+
+    private long lastModified;
+
+    private Timer timer;
+
+    /**
+     * <p>Loads the entities from the given stream, replacing the ones currently registered. The stream may contain
+     * a single EntityDescriptor or an EntitiesDescriptor aggregate, which is read entity by entity without building
+     * the aggregate.</p>
+     *
+     * @param metadata
+     *
+     * @throws ParsingException
+     */
+    public void load(InputStream metadata) throws ParsingException {
+        register(parse(metadata));
+    }
+
+    /**
+     * <p>Registers the given entities, replacing the ones currently registered.</p>
+     *
+     * @param entityDescriptors
+     */
+    public void register(List<EntityDescriptorType> entityDescriptors) {
+        this.snapshot = new Snapshot(entityDescriptors);
+    }
+
+    /**
+     * <p>Loads the entities from the given file and, if the interval is greater than zero, checks every interval
+     * milliseconds if the file was modified to load it again. A file previously being watched is no longer
+     * checked.</p>
+     *
+     * @param file
+     * @param interval
+     *
+     * @throws IOException
+     * @throws ParsingException
+     */
+    public synchronized void watch(File file, long interval) throws IOException, ParsingException {
+        stop();
+
+        long lastModified = file.lastModified();
+
+        load(file);
+
+        this.file = file;
+        this.lastModified = lastModified;
+
+        if (interval > 0) {
+            this.timer = new Timer("MetadataRegistry " + file.getName(), true);
+            this.timer.schedule(new TimerTask() {
+                @Override
+                public void run() {
+                    reloadIfModified();
+                }
+            }, interval, interval);
+        }
+    }
+
+    /**
+     * <p>Loads the file being watched again if it was modified since it was last loaded.</p>
+     *
+     * @return true if the file was reloaded.
+     */
+    public synchronized boolean reloadIfModified() {
+        if (this.file == null) {
+            return false;
+        }
+
+        long lastModified = this.file.lastModified();
+
+        if (lastModified == this.lastModified) {
+            return false;
+        }
+
+        // only retried once the file changes again
+        this.lastModified = lastModified;
+
+        try {
+            load(this.file);
+        } catch (Exception e) {
+            logger.samlMetaDataReloadFailed(this.file.getPath(), e);
+            return false;
+        }
+
+        this.reloadCount.incrementAndGet();
+
+        logger.samlMetaDataReloaded(this.file.getPath(), getEntityCount());
+
+        return true;
+    }
+
+    /**
+     * <p>Stops watching the file, if any. Registered entities are kept.</p>
+     */
+    public synchronized void stop() {
+        if (this.timer != null) {
+            this.timer.cancel();
+            this.timer = null;
+        }
+
+        this.file = null;
+    }
+
+    public EntityDescriptorType getEntityDescriptor(String entityID) {
+        long start = System.nanoTime();
+
+        try {
+            return this.snapshot.entities.get(entityID);
+        } finally {
+            countLookup(start);
+        }
+    }
+
+    /**
+     * <p>Returns the entity that declares an endpoint, or a response location, with the given location.</p>
+     *
+     * @param location
+     *
+     * @return
+     */
+    public EntityDescriptorType getEntityDescriptorByEndpoint(String location) {
+        long start = System.nanoTime();
+
+        try {
+            return this.snapshot.endpoints.get(location);
+        } finally {
+            countLookup(start);
+        }
+    }
+
+    public SPSSODescriptorType getSPDescriptor(String entityID) {
+        long start = System.nanoTime();
+
+        try {
+            return this.snapshot.spDescriptors.get(entityID);
+        } finally {
+            countLookup(start);
+        }
+    }
+
+    public IDPSSODescriptorType getIDPDescriptor(String entityID) {
+        long start = System.nanoTime();
+
+        try {
+            return this.snapshot.idpDescriptors.get(entityID);
+        } finally {
+            countLookup(start);
+        }
+    }
+
+    public X509Certificate getSigningCertificate(String entityID) {
+        long start = System.nanoTime();
+
+        try {
+            return this.snapshot.signingCertificates.get(entityID);
+        } finally {
+            countLookup(start);
+        }
+    }
+
+    public X509Certificate getEncryptionCertificate(String entityID) {
+        long start = System.nanoTime();
+
+        try {
+            return this.snapshot.encryptionCertificates.get(entityID);
+        } finally {
+            countLookup(start);
+        }
+    }
+
+    public List<EntityDescriptorType> getEntityDescriptors() {
+        return this.snapshot.entityDescriptors;
+    }
+
+    public int getEntityCount() {
+        return this.snapshot.entities.size();
+    }
+
+    public long getLookupCount() {
+        return this.lookupCount.get();
+    }
+
+    /**
+     * @return the average time spent on lookups, in nanoseconds.
+     */
+    public long getAverageLookupTime() {
+        long count = this.lookupCount.get();
+
+        if (count == 0) {
+            return 0;
+        }
+
+        return this.lookupTime.get() / count;
+    }
+
+    public long getReloadCount() {
+        return this.reloadCount.get();
+    }
+
+    private void load(File file) throws IOException, ParsingException {
+        InputStream is = new FileInputStream(file);
+
+        try {
+            load(is);
+        } finally {
+            is.close();
+        }
+    }
+
+    private void countLookup(long start) {
+        this.lookupTime.addAndGet(System.nanoTime() - start);
+        this.lookupCount.incrementAndGet();
+    }
+
+    private static List<EntityDescriptorType> parse(InputStream metadata) throws ParsingException {
+        List<EntityDescriptorType> entityDescriptors = new ArrayList<EntityDescriptorType>();
+        XMLEventReader xmlEventReader = StaxParserUtil.getXMLEventReader(metadata);
+        SAMLEntityDescriptorParser parser = new SAMLEntityDescriptorParser();
+
+        while (xmlEventReader.hasNext()) {
+            XMLEvent xmlEvent = StaxParserUtil.peek(xmlEventReader);
+
+            if (xmlEvent.isStartElement()
+                && JBossSAMLConstants.ENTITY_DESCRIPTOR.get().equals(
+                StaxParserUtil.getStartElementName(xmlEvent.asStartElement()))) {
+                entityDescriptors.add((EntityDescriptorType) parser.parse(xmlEventReader));
+            } else {
+                // aggregate elements, their signature and extensions are not kept
+                StaxParserUtil.getNextEvent(xmlEventReader);
+            }
+        }
+
+        return entityDescriptors;
+    }
+
+    private static class Snapshot {
+
+        private final List<EntityDescriptorType> entityDescriptors;
+
+        private final Map<String, EntityDescriptorType> entities = new HashMap<String, EntityDescriptorType>();
+
+        private final Map<String, EntityDescriptorType> endpoints = new HashMap<String, EntityDescriptorType>();
+
+        private final Map<String, SPSSODescriptorType> spDescriptors = new HashMap<String, SPSSODescriptorType>();
+
+        private final Map<String, IDPSSODescriptorType> idpDescriptors = new HashMap<String, IDPSSODescriptorType>();
+
+        private final Map<String, X509Certificate> signingCertificates = new HashMap<String, X509Certificate>();
+
+        private final Map<String, X509Certificate> encryptionCertificates = new HashMap<String, X509Certificate>();
+
+        private Snapshot(List<EntityDescriptorType> entityDescriptors) {
+            this.entityDescriptors = Collections.unmodifiableList(new ArrayList<EntityDescriptorType>(entityDescriptors));
+
+            for (EntityDescriptorType entityDescriptor : this.entityDescriptors) {
+                index(entityDescriptor);
+            }
+        }
+
+        private void index(EntityDescriptorType entityDescriptor) {
+            String entityID = entityDescriptor.getEntityID();
+
+            this.entities.put(entityID, entityDescriptor);
+
+            for (EDTChoiceType choiceType : entityDescriptor.getChoiceType()) {
+                for (EDTDescriptorChoiceType descriptorChoiceType : choiceType.getDescriptors()) {
+                    SPSSODescriptorType spDescriptor = descriptorChoiceType.getSpDescriptor();
+
+                    if (spDescriptor != null) {
+                        if (!this.spDescriptors.containsKey(entityID)) {
+                            this.spDescriptors.put(entityID, spDescriptor);
+                        }
+
+                        index(entityDescriptor, spDescriptor.getAssertionConsumerService());
+                        index(entityDescriptor, spDescriptor);
+                    }
+
+                    IDPSSODescriptorType idpDescriptor = descriptorChoiceType.getIdpDescriptor();
+
+                    if (idpDescriptor != null) {
+                        if (!this.idpDescriptors.containsKey(entityID)) {
+                            this.idpDescriptors.put(entityID, idpDescriptor);
+                        }
+
+                        index(entityDescriptor, idpDescriptor.getSingleSignOnService());
+                        index(entityDescriptor, idpDescriptor);
+                    }
+                }
+            }
+        }
+
+        private void index(EntityDescriptorType entityDescriptor, SSODescriptorType ssoDescriptor) {
+            String entityID = entityDescriptor.getEntityID();
+
+            index(entityDescriptor, ssoDescriptor.getSingleLogoutService());
+
+            if (!this.signingCertificates.containsKey(entityID)) {
+                X509Certificate certificate = getCertificate(entityID, KeyTypes.SIGNING, ssoDescriptor);
+
+                if (certificate != null) {
+                    this.signingCertificates.put(entityID, certificate);
+                }
+            }
+
+            if (!this.encryptionCertificates.containsKey(entityID)) {
+                X509Certificate certificate = getCertificate(entityID, KeyTypes.ENCRYPTION, ssoDescriptor);
+
+                if (certificate != null) {
+                    this.encryptionCertificates.put(entityID, certificate);
+                }
+            }
+        }
+
+        private void index(EntityDescriptorType entityDescriptor, List<? extends EndpointType> endpoints) {
+            for (EndpointType endpoint : endpoints) {
+                index(entityDescriptor, endpoint.getLocation());
+                index(entityDescriptor, endpoint.getResponseLocation());
+            }
+        }
+
+        private void index(EntityDescriptorType entityDescriptor, URI location) {
+            if (location != null && !this.endpoints.containsKey(location.toString())) {
+                this.endpoints.put(location.toString(), entityDescriptor);
+            }
+        }
+
+        private X509Certificate getCertificate(String entityID, KeyTypes use, SSODescriptorType ssoDescriptor) {
+            try {
+                return SAMLMetadataUtil.getCertificate(use, ssoDescriptor);
+            } catch (RuntimeException e) {
+                // an entity with an invalid certificate is still registered, messages that need it will fail
+                logger.trace("Could not decode " + use.value() + " certificate of " + entityID, e);
+                return null;
+            }
+        }
+    }
+}
@@ -48,6 +48,8 @@ import java.util.Map;
 import java.util.Properties;
 import java.util.Set;
 import java.util.StringTokenizer;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 
 /**
  * File based metadata store that uses the ${user.home}/jbid-store location to persist the data
@@ -63,6 +65,8 @@ public class FileBasedMetadataConfigurationStore implements IMetadataConfigurati
 
     private String baseDirectory = null;
 
+    private final ConcurrentMap<String, PersistedEntity> entities = new ConcurrentHashMap<String, PersistedEntity>();
+
     public FileBasedMetadataConfigurationStore() {
         bootstrap();
     }
@@ -165,12 +169,28 @@ public class FileBasedMetadataConfigurationStore implements IMetadataConfigurati
      */
     public EntityDescriptorType load(String id) throws IOException {
         File persistedFile = validateIdAndReturnMDFile(id);
+        String path = persistedFile.getPath();
+        long lastModified = persistedFile.lastModified();
+
+        PersistedEntity persistedEntity = entities.get(path);
+
+        if (persistedEntity != null && persistedEntity.lastModified == lastModified) {
+            return persistedEntity.entity;
+        }
 
         SAMLEntityDescriptorParser parser = new SAMLEntityDescriptorParser();
+        FileInputStream fis = new FileInputStream(persistedFile);
         try {
-            return (EntityDescriptorType) parser.parse(StaxParserUtil.getXMLEventReader(new FileInputStream(persistedFile)));
+            EntityDescriptorType entity = (EntityDescriptorType) parser.parse(StaxParserUtil.getXMLEventReader(fis));
+            entities.put(path, new PersistedEntity(entity, lastModified));
+            return entity;
         } catch (ParsingException e) {
             throw new RuntimeException(e);
+        } finally {
+            try {
+                fis.close();
+            } catch (IOException ioe) {
+            }
         }
     }
 
@@ -180,13 +200,19 @@ public class FileBasedMetadataConfigurationStore implements IMetadataConfigurati
     public void persist(EntityDescriptorType entity, String id) throws IOException {
         File persistedFile = validateIdAndReturnMDFile(id);
 
+        entities.remove(persistedFile.getPath());
+
+        FileOutputStream fos = new FileOutputStream(persistedFile);
         try {
-            XMLStreamWriter streamWriter = StaxUtil.getXMLStreamWriter(new FileOutputStream(persistedFile));
+            XMLStreamWriter streamWriter = StaxUtil.getXMLStreamWriter(fos);
             SAMLMetadataWriter writer = new SAMLMetadataWriter(streamWriter);
 
             writer.writeEntityDescriptor(entity);
+            StaxUtil.flush(streamWriter);
         } catch (ProcessingException e) {
             throw new RuntimeException(e);
+        } finally {
+            fos.close();
         }
 
         logger.trace("Persisted entity descriptor into " + persistedFile.getPath());
@@ -214,6 +240,8 @@ public class FileBasedMetadataConfigurationStore implements IMetadataConfigurati
     public void delete(String id) {
         File persistedFile = validateIdAndReturnMDFile(id);
 
+        entities.remove(persistedFile.getPath());
+
         if (persistedFile.exists())
             persistedFile.delete();
     }
@@ -376,5 +404,21 @@ public class FileBasedMetadataConfigurationStore implements IMetadataConfigurati
      * @see {@code IMetadataConfigurationStore#cleanup()}
      */
     public void cleanup() {
+        entities.clear();
+    }
+
+    /**
+     * An entity loaded from a file, which is parsed again only once the file is modified.
+     */
+    private static class PersistedEntity {
+
+        private final EntityDescriptorType entity;
+
+        private final long lastModified;
+
+        private PersistedEntity(EntityDescriptorType entity, long lastModified) {
+            this.entity = entity;
+            this.lastModified = lastModified;
+        }
     }
 }
\ No newline at end of file
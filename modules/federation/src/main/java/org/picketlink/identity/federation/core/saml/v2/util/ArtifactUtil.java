@@ -0,0 +1,121 @@
+/*
+ * JBoss, Home of Professional Open Source
+ *
+ * Copyright 2013 Red Hat, Inc. and/or its affiliates.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.picketlink.identity.federation.core.saml.v2.util;
+
+import org.picketlink.common.random.RandomGenerator;
+import org.picketlink.common.util.Base64;
+
+import java.io.UnsupportedEncodingException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+
+/**
+ * <p>
+ * Creates and checks the artifacts of the SAML v2.0 HTTP-Artifact binding. Only the type 0x0004 artifacts defined by
+ * the SAML v2.0 Bindings specification are supported:
+ * </p>
+ * <pre>
+ * TypeCode (0x0004, 2 bytes) || EndpointIndex (2 bytes) || SourceID (20 bytes) || MessageHandle (20 bytes)
+ * </pre>
+ * <p>
+ * The SourceID is the SHA-1 digest of the entity ID of the issuer, and the MessageHandle is random.
+ * </p>
+ */
+public class ArtifactUtil {
+
+    public static final int TYPE_CODE = 0x0004;
+
+    private static final int SOURCE_ID_LENGTH = 20;
+
+    private static final int MESSAGE_HANDLE_LENGTH = 20;
+
+    private static final int ARTIFACT_LENGTH = 4 + SOURCE_ID_LENGTH + MESSAGE_HANDLE_LENGTH;
+
+    /**
+     * Creates a new type 0x0004 artifact.
+     *
+     * @param issuer the entity ID of the issuer of the message.
+     * @param endpointIndex the index of the artifact resolution endpoint of the issuer.
+     *
+     * @return the base64 encoded artifact.
+     */
+    public static String createArtifact(String issuer, int endpointIndex) {
+        byte[] artifact = new byte[ARTIFACT_LENGTH];
+
+        artifact[0] = (byte) (TYPE_CODE >> 8);
+        artifact[1] = (byte) TYPE_CODE;
+        artifact[2] = (byte) (endpointIndex >> 8);
+        artifact[3] = (byte) endpointIndex;
+
+        System.arraycopy(computeSourceID(issuer), 0, artifact, 4, SOURCE_ID_LENGTH);
+        System.arraycopy(RandomGenerator.getInstance().generateBytes(MESSAGE_HANDLE_LENGTH), 0, artifact,
+                4 + SOURCE_ID_LENGTH, MESSAGE_HANDLE_LENGTH);
+
+        return Base64.encodeBytes(artifact, Base64.DONT_BREAK_LINES);
+    }
+
+    /**
+     * Checks whether the given artifact was issued by the given entity.
+     *
+     * @param artifact the base64 encoded artifact.
+     * @param issuer the entity ID of the issuer.
+     *
+     * @return true if the artifact is well formed and its SourceID is the one of the issuer.
+     */
+    public static boolean isIssuedBy(String artifact, String issuer) {
+        byte[] decoded = decode(artifact);
+
+        return decoded != null
+                && Arrays.equals(computeSourceID(issuer), Arrays.copyOfRange(decoded, 4, 4 + SOURCE_ID_LENGTH));
+    }
+
+    /**
+     * Computes the SourceID of the given entity: the SHA-1 digest of its entity ID.
+     */
+    public static byte[] computeSourceID(String entityID) {
+        try {
+            return MessageDigest.getInstance("SHA-1").digest(entityID.getBytes("UTF-8"));
+        } catch (NoSuchAlgorithmException e) {
+            throw new RuntimeException(e);
+        } catch (UnsupportedEncodingException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    private static byte[] decode(String artifact) {
+        if (artifact == null) {
+            return null;
+        }
+
+        byte[] decoded;
+
+        try {
+            decoded = Base64.decode(artifact.trim(), Base64.NO_OPTIONS);
+        } catch (RuntimeException e) {
+            return null;
+        }
+
+        if (decoded == null || decoded.length != ARTIFACT_LENGTH
+                || ((decoded[0] & 0xFF) << 8 | decoded[1] & 0xFF) != TYPE_CODE) {
+            return null;
+        }
+
+        return decoded;
+    }
+}
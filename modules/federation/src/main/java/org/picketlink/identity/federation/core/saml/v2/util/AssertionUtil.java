@@ -50,7 +50,7 @@ import org.w3c.dom.Element;
 import org.w3c.dom.Node;
 
 import javax.xml.datatype.XMLGregorianCalendar;
-import java.io.ByteArrayInputStream;
+import javax.xml.transform.dom.DOMResult;
 import java.io.ByteArrayOutputStream;
 import java.security.PublicKey;
 import java.util.ArrayList;
@@ -93,16 +93,19 @@ public class AssertionUtil {
      * @throws ProcessingException
      */
     public static Document asDocument(AssertionType assertion) throws ProcessingException {
-        ByteArrayOutputStream baos = new ByteArrayOutputStream();
-        SAMLAssertionWriter writer = new SAMLAssertionWriter(StaxUtil.getXMLStreamWriter(baos));
-
-        writer.write(assertion);
+        Document document;
 
         try {
-            return DocumentUtil.getDocument(new ByteArrayInputStream(baos.toByteArray()));
-        } catch (Exception e) {
+            document = DocumentUtil.createDocument();
+        } catch (ConfigurationException e) {
             throw logger.processingError(e);
         }
+
+        SAMLAssertionWriter writer = new SAMLAssertionWriter(new DOMResult(document));
+
+        writer.write(assertion);
+
+        return document;
     }
 
     /**
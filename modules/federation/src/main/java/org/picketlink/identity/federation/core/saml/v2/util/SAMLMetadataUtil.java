@@ -39,7 +39,7 @@ import java.security.cert.X509Certificate;
 public class SAMLMetadataUtil {
 
     /**
-     * Get the {@link X509Certificate} from the KeyInfo
+     * Get the {@link X509Certificate} from the KeyInfo. The certificate is decoded once and kept by the key descriptor.
      *
      * @param keyDescriptor
      *
@@ -53,6 +53,11 @@ public class SAMLMetadataUtil {
         X509Certificate cert = null;
         Element keyInfo = keyDescriptor.getKeyInfo();
         if (keyInfo != null) {
+            cert = keyDescriptor.getCertificate();
+            if (cert != null) {
+                return cert;
+            }
+
             NodeList x509DataNodes = keyInfo.getElementsByTagName("X509Data");
             if (x509DataNodes == null || x509DataNodes.getLength() == 0) {
                 x509DataNodes = keyInfo.getElementsByTagNameNS(JBossSAMLURIConstants.XMLDSIG_NSURI.get(), "X509Data");
@@ -73,6 +78,7 @@ public class SAMLMetadataUtil {
                         Node certNode = nl.getFirstChild();
                         String certNodeValue = certNode.getNodeValue();
                         cert = XMLSignatureUtil.getX509CertificateFromKeyInfoString(certNodeValue.replaceAll("\\s", ""));
+                        keyDescriptor.setCertificate(cert);
                         break;
                     }
                 }
@@ -29,7 +29,6 @@ import javax.xml.datatype.DatatypeConstants;
 import javax.xml.datatype.DatatypeFactory;
 import javax.xml.datatype.Duration;
 import javax.xml.datatype.XMLGregorianCalendar;
-import java.util.GregorianCalendar;
 import java.util.TimeZone;
 
 /**
@@ -42,6 +41,11 @@ public class XMLTimeUtil {
 
     private static final PicketLinkLogger logger = PicketLinkLoggerFactory.getLogger();
 
+    private static final long MILLIS_PER_DAY = 24L * 60 * 60 * 1000;
+
+    // DatatypeFactory.newInstance() looks the implementation up on every call, the factory is created once instead
+    private static volatile DatatypeFactory datatypeFactory;
+
     /**
      * Add additional time in miliseconds
      *
@@ -57,7 +61,7 @@ public class XMLTimeUtil {
 
         Duration duration;
         try {
-            duration = newDatatypeFactory().newDuration(milis);
+            duration = getDatatypeFactory().newDuration(milis);
         } catch (DatatypeConfigurationException e) {
             throw logger.configurationError(e);
         }
@@ -96,15 +100,20 @@ public class XMLTimeUtil {
         TimeZone tz = TimeZone.getTimeZone(timezone);
         DatatypeFactory dtf;
         try {
-            dtf = newDatatypeFactory();
+            dtf = getDatatypeFactory();
         } catch (DatatypeConfigurationException e) {
             throw logger.configurationError(e);
         }
 
-        GregorianCalendar gc = new GregorianCalendar(tz);
-        XMLGregorianCalendar xgc = dtf.newXMLGregorianCalendar(gc);
+        long now = System.currentTimeMillis();
+        int offset = tz.getOffset(now);
+        long local = now + offset;
+        long days = floorDiv(local, MILLIS_PER_DAY);
+        int millisOfDay = (int) (local - days * MILLIS_PER_DAY);
+        int[] date = toDate(days);
 
-        return xgc;
+        return dtf.newXMLGregorianCalendar(date[0], date[1], date[2], millisOfDay / 3600000, (millisOfDay / 60000) % 60,
+                (millisOfDay / 1000) % 60, millisOfDay % 1000, offset / 60000);
     }
 
     /**
@@ -189,7 +198,7 @@ public class XMLTimeUtil {
         DatatypeFactory factory = null;
 
         try {
-            factory = newDatatypeFactory();
+            factory = getDatatypeFactory();
         } catch (DatatypeConfigurationException e) {
             throw logger.parserError(e);
         }
@@ -218,16 +227,100 @@ public class XMLTimeUtil {
     public static XMLGregorianCalendar parse(String timeString) throws ParsingException {
         DatatypeFactory factory = null;
         try {
-            factory = newDatatypeFactory();
+            factory = getDatatypeFactory();
         } catch (DatatypeConfigurationException e) {
             throw logger.parserError(e);
         }
         return factory.newXMLGregorianCalendar(timeString);
     }
 
+    /**
+     * Formats the given instant as a xs:dateTime in UTC, such as {@code 2013-06-03T17:42:09.322Z}, without going
+     * through a {@code XMLGregorianCalendar}.
+     *
+     * @param timeInMillis the instant, in milliseconds since the epoch, between the years 0000 and 9999
+     *
+     * @return
+     */
+    public static String format(long timeInMillis) {
+        long days = floorDiv(timeInMillis, MILLIS_PER_DAY);
+        int millisOfDay = (int) (timeInMillis - days * MILLIS_PER_DAY);
+        int[] date = toDate(days);
+
+        if (date[0] < 0 || date[0] > 9999) {
+            throw logger.invalidArgumentError("timeInMillis");
+        }
+
+        char[] chars = new char[24];
+
+        appendDigits(chars, 0, date[0], 4);
+        chars[4] = '-';
+        appendDigits(chars, 5, date[1], 2);
+        chars[7] = '-';
+        appendDigits(chars, 8, date[2], 2);
+        chars[10] = 'T';
+        appendDigits(chars, 11, millisOfDay / 3600000, 2);
+        chars[13] = ':';
+        appendDigits(chars, 14, (millisOfDay / 60000) % 60, 2);
+        chars[16] = ':';
+        appendDigits(chars, 17, (millisOfDay / 1000) % 60, 2);
+        chars[19] = '.';
+        appendDigits(chars, 20, millisOfDay % 1000, 3);
+        chars[23] = 'Z';
+
+        return new String(chars);
+    }
 
     /**
-     * Create a new {@link DatatypeFactory}
+     * Given a string representing xml time, returns the instant it represents in milliseconds since the epoch. Values
+     * with a four digit year and an explicit timezone, as written by SAML and WS-Trust, are parsed without creating a
+     * {@code XMLGregorianCalendar}. Digits of the fractional seconds beyond the milliseconds are ignored.
+     *
+     * @param timeString
+     *
+     * @return
+     *
+     * @throws ParsingException
+     */
+    public static long parseTimeInMillis(String timeString) throws ParsingException {
+        if (timeString == null) {
+            throw logger.nullArgumentError("timeString");
+        }
+
+        long timeInMillis = parseUTC(timeString);
+
+        if (timeInMillis != Long.MIN_VALUE) {
+            return timeInMillis;
+        }
+
+        try {
+            return parse(timeString).toGregorianCalendar().getTimeInMillis();
+        } catch (IllegalArgumentException e) {
+            throw logger.parserError(e);
+        }
+    }
+
+    /**
+     * Returns the shared {@link DatatypeFactory}, created with {@link #newDatatypeFactory()} on first use.
+     *
+     * @return
+     *
+     * @throws DatatypeConfigurationException
+     */
+    public static DatatypeFactory getDatatypeFactory() throws DatatypeConfigurationException {
+        DatatypeFactory factory = datatypeFactory;
+
+        if (factory == null) {
+            factory = newDatatypeFactory();
+            datatypeFactory = factory;
+        }
+
+        return factory;
+    }
+
+
+    /**
+     * Create a new {@link DatatypeFactory}. Use {@link #getDatatypeFactory()} unless a distinct instance is needed.
      *
      * @return
      *
@@ -248,4 +341,148 @@ public class XMLTimeUtil {
             }
         }
     }
-}
\ No newline at end of file
+
+    /**
+     * Parses {@code yyyy-MM-ddTHH:mm:ss[.S*](Z|(+|-)hh:mm)}, or returns {@code Long.MIN_VALUE} if the value has another
+     * form.
+     */
+    private static long parseUTC(String value) {
+        int length = value.length();
+
+        if (length < 20 || value.charAt(4) != '-' || value.charAt(7) != '-' || value.charAt(10) != 'T'
+                || value.charAt(13) != ':' || value.charAt(16) != ':') {
+            return Long.MIN_VALUE;
+        }
+
+        int year = parseDigits(value, 0, 4);
+        int month = parseDigits(value, 5, 2);
+        int day = parseDigits(value, 8, 2);
+        int hour = parseDigits(value, 11, 2);
+        int minute = parseDigits(value, 14, 2);
+        int second = parseDigits(value, 17, 2);
+
+        if (year < 0 || month < 1 || month > 12 || day < 1 || day > daysInMonth(year, month) || hour < 0 || hour > 23
+                || minute < 0 || minute > 59 || second < 0 || second > 59) {
+            return Long.MIN_VALUE;
+        }
+
+        int position = 19;
+        int millis = 0;
+
+        if (value.charAt(position) == '.') {
+            int start = ++position;
+
+            while (position < length && Character.isDigit(value.charAt(position))) {
+                if (position - start < 3) {
+                    millis = millis * 10 + (value.charAt(position) - '0');
+                }
+                position++;
+            }
+
+            if (position == start) {
+                return Long.MIN_VALUE;
+            }
+
+            for (int i = position - start; i < 3; i++) {
+                millis *= 10;
+            }
+        }
+
+        int offset;
+
+        if (position == length - 1 && value.charAt(position) == 'Z') {
+            offset = 0;
+        } else if (position == length - 6 && (value.charAt(position) == '+' || value.charAt(position) == '-')
+                && value.charAt(position + 3) == ':') {
+            int offsetHours = parseDigits(value, position + 1, 2);
+            int offsetMinutes = parseDigits(value, position + 4, 2);
+
+            if (offsetHours < 0 || offsetHours > 14 || offsetMinutes < 0 || offsetMinutes > 59) {
+                return Long.MIN_VALUE;
+            }
+
+            offset = (offsetHours * 60 + offsetMinutes) * 60000;
+
+            if (value.charAt(position) == '-') {
+                offset = -offset;
+            }
+        } else {
+            return Long.MIN_VALUE;
+        }
+
+        return toDays(year, month, day) * MILLIS_PER_DAY + ((hour * 60 + minute) * 60 + second) * 1000L + millis - offset;
+    }
+
+    private static int parseDigits(String value, int start, int count) {
+        int result = 0;
+
+        for (int i = start; i < start + count; i++) {
+            char c = value.charAt(i);
+
+            if (c < '0' || c > '9') {
+                return -1;
+            }
+
+            result = result * 10 + (c - '0');
+        }
+
+        return result;
+    }
+
+    private static void appendDigits(char[] chars, int start, int value, int count) {
+        for (int i = start + count - 1; i >= start; i--) {
+            chars[i] = (char) ('0' + value % 10);
+            value /= 10;
+        }
+    }
+
+    private static int daysInMonth(int year, int month) {
+        if (month == 2) {
+            return (year % 4 == 0 && (year % 100 != 0 || year % 400 == 0)) ? 29 : 28;
+        }
+
+        return (month == 4 || month == 6 || month == 9 || month == 11) ? 30 : 31;
+    }
+
+    /**
+     * Returns the number of days between the epoch and the given date of the proleptic Gregorian calendar.
+     */
+    private static long toDays(long year, int month, int day) {
+        year -= month <= 2 ? 1 : 0;
+
+        long era = floorDiv(year, 400);
+        long yearOfEra = year - era * 400;
+        long dayOfYear = (153 * (month + (month > 2 ? -3 : 9)) + 2) / 5 + day - 1;
+        long dayOfEra = yearOfEra * 365 + yearOfEra / 4 - yearOfEra / 100 + dayOfYear;
+
+        return era * 146097 + dayOfEra - 719468;
+    }
+
+    /**
+     * Returns the year, month and day of the proleptic Gregorian calendar at the given number of days from the epoch.
+     */
+    private static int[] toDate(long days) {
+        days += 719468;
+
+        long era = floorDiv(days, 146097);
+        long dayOfEra = days - era * 146097;
+        long yearOfEra = (dayOfEra - dayOfEra / 1460 + dayOfEra / 36524 - dayOfEra / 146096) / 365;
+        long dayOfYear = dayOfEra - (365 * yearOfEra + yearOfEra / 4 - yearOfEra / 100);
+        long shiftedMonth = (5 * dayOfYear + 2) / 153;
+        int day = (int) (dayOfYear - (153 * shiftedMonth + 2) / 5 + 1);
+        int month = (int) (shiftedMonth < 10 ? shiftedMonth + 3 : shiftedMonth - 9);
+        long year = yearOfEra + era * 400 + (month <= 2 ? 1 : 0);
+
+        return new int[] {(int) year, month, day};
+    }
+
+    private static long floorDiv(long dividend, long divisor) {
+        long quotient = dividend / divisor;
+
+        if ((dividend % divisor != 0) && ((dividend < 0) != (divisor < 0))) {
+            quotient--;
+        }
+
+        return quotient;
+    }
+}
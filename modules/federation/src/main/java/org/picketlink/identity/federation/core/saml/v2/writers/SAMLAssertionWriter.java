@@ -50,6 +50,7 @@ import org.w3c.dom.Element;
 import javax.xml.datatype.XMLGregorianCalendar;
 import javax.xml.namespace.QName;
 import javax.xml.stream.XMLStreamWriter;
+import javax.xml.transform.dom.DOMResult;
 import java.net.URI;
 import java.util.List;
 import java.util.Set;
@@ -64,6 +65,17 @@ import static org.picketlink.common.constants.JBossSAMLURIConstants.ASSERTION_NS
  */
 public class SAMLAssertionWriter extends BaseWriter {
 
+    /**
+     * <p>Creates a writer that appends the assertions to the node of the given {@link DOMResult}.</p>
+     *
+     * @param result
+     *
+     * @throws ProcessingException
+     */
+    public SAMLAssertionWriter(DOMResult result) throws ProcessingException {
+        this(StaxUtil.getXMLStreamWriter(result));
+    }
+
     public SAMLAssertionWriter(XMLStreamWriter writer) {
         super(writer);
     }
@@ -50,6 +50,7 @@ import javax.xml.bind.JAXBException;
 import javax.xml.bind.Marshaller;
 import javax.xml.namespace.QName;
 import javax.xml.stream.XMLStreamWriter;
+import javax.xml.transform.dom.DOMResult;
 import java.io.StringWriter;
 import java.net.URI;
 import java.util.List;
@@ -66,6 +67,17 @@ import static org.picketlink.common.constants.JBossSAMLURIConstants.PROTOCOL_NSU
  */
 public class SAMLRequestWriter extends BaseWriter {
 
+    /**
+     * <p>Creates a writer that appends the requests to the node of the given {@link DOMResult}.</p>
+     *
+     * @param result
+     *
+     * @throws ProcessingException
+     */
+    public SAMLRequestWriter(DOMResult result) throws ProcessingException {
+        this(StaxUtil.getXMLStreamWriter(result));
+    }
+
     public SAMLRequestWriter(XMLStreamWriter writer) {
         super(writer);
     }
@@ -36,6 +36,7 @@ import org.w3c.dom.Element;
 
 import javax.xml.namespace.QName;
 import javax.xml.stream.XMLStreamWriter;
+import javax.xml.transform.dom.DOMResult;
 import java.net.URI;
 import java.util.List;
 
@@ -52,6 +53,18 @@ public class SAMLResponseWriter extends BaseWriter {
 
     private final SAMLAssertionWriter assertionWriter;
 
+    /**
+     * <p>Creates a writer that builds the DOM tree of the given {@link DOMResult} directly, instead of writing to a
+     * stream that would need to be parsed again into a {@link org.w3c.dom.Document}.</p>
+     *
+     * @param result
+     *
+     * @throws ProcessingException
+     */
+    public SAMLResponseWriter(DOMResult result) throws ProcessingException {
+        this(StaxUtil.getXMLStreamWriter(result));
+    }
+
     public SAMLResponseWriter(XMLStreamWriter writer) {
         super(writer);
         this.assertionWriter = new SAMLAssertionWriter(writer);
@@ -168,8 +168,7 @@ public class ServiceProviderSAMLWorkflow {
             destinationQueryString = destinationQueryStringWithSignature;
         }
         else {
-            String samlMessage = DocumentUtil.getDocumentAsString(samlDocument);
-            String base64Request = RedirectBindingUtil.deflateBase64URLEncode(samlMessage.getBytes("UTF-8"));
+            String base64Request = RedirectBindingUtil.deflateBase64URLEncode(samlDocument);
             destinationQueryString = RedirectBindingUtil.getDestinationQueryString(base64Request, relayState, willSendRequest);
         }
 
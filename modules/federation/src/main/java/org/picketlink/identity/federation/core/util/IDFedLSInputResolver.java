@@ -50,6 +50,8 @@ public class IDFedLSInputResolver implements LSResourceResolver {
         // XML Schema/DTD
         schemaLocationMap.put("datatypes.dtd", "schema/w3c/xmlschema/datatypes.dtd");
         schemaLocationMap.put("XMLSchema.dtd", "schema/w3c/xmlschema/XMLSchema.dtd");
+        schemaLocationMap.put("http://www.w3.org/2001/datatypes.dtd", "schema/w3c/xmlschema/datatypes.dtd");
+        schemaLocationMap.put("http://www.w3.org/2001/XMLSchema.dtd", "schema/w3c/xmlschema/XMLSchema.dtd");
         schemaLocationMap.put("http://www.w3.org/2001/xml.xsd", "schema/w3c/xmlschema/xml.xsd");
 
         // XML DSIG
@@ -67,6 +69,10 @@ public class IDFedLSInputResolver implements LSResourceResolver {
                 "schema/access_control-xacml-2.0-context-schema-os.xsd");
         schemaLocationMap.put("access_control-xacml-2.0-policy-schema-os.xsd",
                 "schema/access_control-xacml-2.0-policy-schema-os.xsd");
+        schemaLocationMap.put("http://docs.oasis-open.org/xacml/2.0/access_control-xacml-2.0-context-schema-os.xsd",
+                "schema/access_control-xacml-2.0-context-schema-os.xsd");
+        schemaLocationMap.put("http://docs.oasis-open.org/xacml/2.0/access_control-xacml-2.0-policy-schema-os.xsd",
+                "schema/access_control-xacml-2.0-policy-schema-os.xsd");
 
         // SAML
 
@@ -99,6 +105,8 @@ public class IDFedLSInputResolver implements LSResourceResolver {
                 "schema/wstrust/v1_3/oasis-200401-wss-wssecurity-utility-1.0.xsd");
         schemaLocationMap.put("http://schemas.xmlsoap.org/ws/2004/09/policy", "schema/wstrust/v1_3/ws-policy.xsd");
         schemaLocationMap.put("http://www.w3.org/2005/08/addressing", "schema/wstrust/v1_3/ws-addr.xsd");
+        schemaLocationMap.put("http://schemas.xmlsoap.org/ws/2004/09/policy/ws-policy.xsd", "schema/wstrust/v1_3/ws-policy.xsd");
+        schemaLocationMap.put("http://www.w3.org/2006/03/addressing/ws-addr.xsd", "schema/wstrust/v1_3/ws-addr.xsd");
     }
 
     public static Collection<String> schemas() {
@@ -114,11 +122,11 @@ public class IDFedLSInputResolver implements LSResourceResolver {
         LSInput lsi = null;
         if (systemId == null)
             throw logger.nullValueError("systemid");
-        if (StringUtil.isNotNull(systemId) && systemId.endsWith("dtd") && StringUtil.isNotNull(baseURI)) {
+        lsi = lsmap.get(systemId);
+        if (lsi == null && !schemaLocationMap.containsKey(systemId) && systemId.endsWith("dtd")
+                && StringUtil.isNotNull(baseURI)) {
             lsi = lsmap.get(baseURI);
         }
-        if (lsi == null)
-            lsi = lsmap.get(systemId);
         if (lsi == null) {
             final String loc = schemaLocationMap.get(systemId);
             if (loc == null)
@@ -21,7 +21,6 @@ import org.picketlink.common.PicketLinkLogger;
 import org.picketlink.common.PicketLinkLoggerFactory;
 import org.picketlink.common.constants.GeneralConstants;
 import org.picketlink.common.exceptions.ProcessingException;
-import org.picketlink.common.util.DocumentUtil;
 import org.picketlink.common.util.SystemPropertiesUtil;
 import org.w3c.dom.Node;
 import org.xml.sax.ErrorHandler;
@@ -29,6 +28,7 @@ import org.xml.sax.SAXException;
 import org.xml.sax.SAXParseException;
 
 import javax.xml.transform.Source;
+import javax.xml.transform.dom.DOMSource;
 import javax.xml.transform.stream.StreamSource;
 import javax.xml.validation.Schema;
 import javax.xml.validation.SchemaFactory;
@@ -39,7 +39,10 @@ import java.net.URL;
 import java.util.List;
 
 /**
- * Utility class associated with JAXP Validation
+ * <p>Utility class associated with JAXP Validation</p>
+ *
+ * <p>The {@link Schema} is compiled only once and shared, given that it is immutable and thread-safe. {@link Validator}
+ * instances are not thread-safe, so each thread gets its own.</p>
  *
  * @author Anil.Saldhana@redhat.com
  * @since Jun 30, 2011
@@ -48,10 +51,26 @@ public class JAXPValidationUtil {
 
     private static final PicketLinkLogger logger = PicketLinkLoggerFactory.getLogger();
 
+    /**
+     * @deprecated {@link Validator} instances are not thread-safe, so each thread now gets its own from
+     * {@link #validator()}. This field is no longer used.
+     */
+    @Deprecated
     protected static Validator validator;
 
+    /**
+     * @deprecated The factory is only needed to compile the shared {@link Schema}. This field references the factory
+     * that compiled it, and is no longer used otherwise.
+     */
+    @Deprecated
     protected static SchemaFactory schemaFactory;
 
+    private static volatile Schema schema;
+
+    private static final ThreadLocal<Validator> validators = new ThreadLocal<Validator>();
+
+    private static final ErrorHandler errorHandler = new CustomErrorHandler();
+
     public static void validate(String str) throws SAXException, IOException {
         validator().validate(new StreamSource(str));
     }
@@ -60,6 +79,18 @@ public class JAXPValidationUtil {
         validator().validate(new StreamSource(stream));
     }
 
+    /**
+     * Validate a node that was already parsed, without serializing it again
+     *
+     * @param node
+     *
+     * @throws SAXException
+     * @throws IOException
+     */
+    public static void validate(Node node) throws SAXException, IOException {
+        validator().validate(new DOMSource(node));
+    }
+
     /**
      * Based on system property "picketlink.schema.validate" set to "true", do schema validation
      *
@@ -70,39 +101,70 @@ public class JAXPValidationUtil {
     public static void checkSchemaValidation(Node samlDocument) throws ProcessingException {
         if (SecurityActions.getSystemProperty("picketlink.schema.validate", "false").equalsIgnoreCase("true")) {
             try {
-                JAXPValidationUtil.validate(DocumentUtil.getNodeAsStream(samlDocument));
+                JAXPValidationUtil.validate(samlDocument);
             } catch (Exception e) {
                 throw logger.processingError(e);
             }
         }
     }
 
+    /**
+     * Return the {@link Validator} associated with the current thread. It must not be shared with other threads.
+     *
+     * @return
+     *
+     * @throws SAXException
+     * @throws IOException
+     */
     public static Validator validator() throws SAXException, IOException {
-        SystemPropertiesUtil.ensure();
+        Validator threadValidator = validators.get();
 
-        if (validator == null) {
-            Schema schema = getSchema();
-            if (schema == null)
-                throw logger.nullValueError("schema");
-
-            validator = schema.newValidator();
-            validator.setErrorHandler(new CustomErrorHandler());
+        if (threadValidator == null) {
+            threadValidator = getSchema().newValidator();
+            threadValidator.setErrorHandler(errorHandler);
+            validators.set(threadValidator);
         }
-        return validator;
+
+        return threadValidator;
     }
 
     private static Schema getSchema() throws IOException {
+        Schema schemaGrammar = schema;
+
+        if (schemaGrammar == null) {
+            synchronized (JAXPValidationUtil.class) {
+                schemaGrammar = schema;
+
+                if (schemaGrammar == null) {
+                    schemaGrammar = createSchema();
+
+                    if (schemaGrammar == null)
+                        throw logger.nullValueError("schema");
+
+                    schema = schemaGrammar;
+                }
+            }
+        }
+
+        return schemaGrammar;
+    }
+
+    private static Schema createSchema() throws IOException {
+        SystemPropertiesUtil.ensure();
+
         boolean tccl_jaxp = SystemPropertiesUtil.getSystemProperty(GeneralConstants.TCCL_JAXP, "false").equalsIgnoreCase("true");
 
+        SchemaFactory factory;
         ClassLoader prevTCCL = SecurityActions.getTCCL();
         try {
             if (tccl_jaxp) {
                 SecurityActions.setTCCL(JAXPValidationUtil.class.getClassLoader());
             }
-            schemaFactory = SchemaFactory.newInstance("http://www.w3.org/2001/XMLSchema");
+            factory = SchemaFactory.newInstance("http://www.w3.org/2001/XMLSchema");
 
-            schemaFactory.setResourceResolver(new IDFedLSInputResolver());
-            schemaFactory.setErrorHandler(new CustomErrorHandler());
+            factory.setResourceResolver(new IDFedLSInputResolver());
+            factory.setErrorHandler(errorHandler);
+            schemaFactory = factory;
         } finally {
             if (tccl_jaxp) {
                 SecurityActions.setTCCL(prevTCCL);
@@ -110,7 +172,7 @@ public class JAXPValidationUtil {
         }
         Schema schemaGrammar = null;
         try {
-            schemaGrammar = schemaFactory.newSchema(sources());
+            schemaGrammar = factory.newSchema(sources());
         } catch (SAXException e) {
             logger.xmlCouldNotGetSchema(e);
         }
@@ -165,4 +227,4 @@ public class JAXPValidationUtil {
     }
 
     ;
-}
\ No newline at end of file
+}
@@ -37,13 +37,25 @@ import javax.xml.namespace.QName;
 import java.security.Key;
 import java.security.PrivateKey;
 import java.security.PublicKey;
+import java.util.Arrays;
 import java.util.HashMap;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 
 /**
  * Utility for XML Encryption <b>Note: </b> This utility is currently using Apache XML Security library API. JSR-106 is
  * not yet
  * final. Until that happens,we rely on the non-standard API.
  *
+ * <p>
+ * {@link XMLCipher} instances are costly to create and cannot be shared between threads, so the ones used to encrypt and
+ * decrypt are pooled by algorithm, and the ones used to wrap or unwrap keys by algorithm and key. The content keys
+ * unwrapped when decrypting are also cached, so that a key received more than once is only unwrapped once.
+ * </p>
+ *
  * @author Anil.Saldhana@redhat.com
  * @since May 4, 2009
  */
@@ -70,6 +82,12 @@ public class XMLEncryptionUtil {
 
     private static HashMap<String, EncryptionAlgorithm> algorithms = new HashMap<String, EncryptionAlgorithm>(4);
 
+    private static final int MAX_IDLE_CIPHERS = 16;
+
+    private static final int MAX_CIPHER_POOLS = 256;
+
+    private static final ConcurrentMap<List<Object>, Queue<XMLCipher>> cipherPools = new ConcurrentHashMap<List<Object>, Queue<XMLCipher>>();
+
     private static class EncryptionAlgorithm {
 
         EncryptionAlgorithm(String jceName, String xmlSecName, int size) {
@@ -190,12 +208,16 @@ public class XMLEncryptionUtil {
             throw logger.domMissingDocElementError(elementQName.toString());
 
         XMLCipher cipher = null;
-        EncryptedKey encryptedKey = encryptKey(document, secretKey, publicKey, keySize);
+        String keyWrapAlgorithm = getXMLEncryptionURLForKeyUnwrap(publicKey.getAlgorithm(), keySize);
+        Queue<XMLCipher> keyPool = getCipherPool(keyWrapAlgorithm, publicKey);
+        XMLCipher keyCipher = getKeyCipher(keyPool, keyWrapAlgorithm, XMLCipher.WRAP_MODE, publicKey);
+        EncryptedKey encryptedKey = encryptKey(keyCipher, document, secretKey);
 
         String encryptionAlgorithm = getXMLEncryptionURL(secretKey.getAlgorithm(), keySize);
+        Queue<XMLCipher> pool = getCipherPool(encryptionAlgorithm, null);
         // Encrypt the Document
         try {
-            cipher = XMLCipher.getInstance(encryptionAlgorithm);
+            cipher = getCipher(pool, encryptionAlgorithm);
             cipher.init(XMLCipher.ENCRYPT_MODE, secretKey);
         } catch (XMLEncryptionException e1) {
             throw logger.processingError(e1);
@@ -211,6 +233,10 @@ public class XMLEncryptionUtil {
         // The EncryptedKey element is added
         Element encryptedKeyElement = cipher.martial(document, encryptedKey);
 
+        // the encrypted key is bound to the cipher which created it until marshalled
+        keyPool.offer(keyCipher);
+        pool.offer(cipher);
+
         String wrappingElementName = wrappingElementPrefix + ":" + wrappingElementQName.getLocalPart();
 
         // Create the wrapping element and set its attribute NS
@@ -300,12 +326,16 @@ public class XMLEncryptionUtil {
             throw logger.nullArgumentError("document");
 
         XMLCipher cipher = null;
-        EncryptedKey encryptedKey = encryptKey(document, secretKey, publicKey, keySize);
+        String keyWrapAlgorithm = getXMLEncryptionURLForKeyUnwrap(publicKey.getAlgorithm(), keySize);
+        Queue<XMLCipher> keyPool = getCipherPool(keyWrapAlgorithm, publicKey);
+        XMLCipher keyCipher = getKeyCipher(keyPool, keyWrapAlgorithm, XMLCipher.WRAP_MODE, publicKey);
+        EncryptedKey encryptedKey = encryptKey(keyCipher, document, secretKey);
         String encryptionAlgorithm = getXMLEncryptionURL(secretKey.getAlgorithm(), keySize);
 
+        Queue<XMLCipher> pool = getCipherPool(encryptionAlgorithm, null);
         // Encrypt the Document
         try {
-            cipher = XMLCipher.getInstance(encryptionAlgorithm);
+            cipher = getCipher(pool, encryptionAlgorithm);
             cipher.init(XMLCipher.ENCRYPT_MODE, secretKey);
         } catch (XMLEncryptionException e1) {
             throw logger.processingError(e1);
@@ -321,6 +351,10 @@ public class XMLEncryptionUtil {
         // The EncryptedKey element is added
         Element encryptedKeyElement = cipher.martial(document, encryptedKey);
 
+        // the encrypted key is bound to the cipher which created it until marshalled
+        keyPool.offer(keyCipher);
+        pool.offer(cipher);
+
         // Outer ds:KeyInfo Element to hold the EncryptionKey
         Element sigElement = encryptedDoc.createElementNS(XMLSIG_NS, DS_KEY_INFO);
         sigElement.setAttributeNS(XMLNS, "xmlns:ds", XMLSIG_NS);
@@ -359,12 +393,16 @@ public class XMLEncryptionUtil {
             throw logger.wrongTypeError("Wrapping element prefix invalid");
 
         XMLCipher cipher = null;
-        EncryptedKey encryptedKey = encryptKey(document, secretKey, publicKey, keySize);
+        String keyWrapAlgorithm = getXMLEncryptionURLForKeyUnwrap(publicKey.getAlgorithm(), keySize);
+        Queue<XMLCipher> keyPool = getCipherPool(keyWrapAlgorithm, publicKey);
+        XMLCipher keyCipher = getKeyCipher(keyPool, keyWrapAlgorithm, XMLCipher.WRAP_MODE, publicKey);
+        EncryptedKey encryptedKey = encryptKey(keyCipher, document, secretKey);
 
         String encryptionAlgorithm = getXMLEncryptionURL(secretKey.getAlgorithm(), keySize);
+        Queue<XMLCipher> pool = getCipherPool(encryptionAlgorithm, null);
         // Encrypt the Document
         try {
-            cipher = XMLCipher.getInstance(encryptionAlgorithm);
+            cipher = getCipher(pool, encryptionAlgorithm);
             cipher.init(XMLCipher.ENCRYPT_MODE, secretKey);
         } catch (XMLEncryptionException e1) {
             throw logger.configurationError(e1);
@@ -380,6 +418,10 @@ public class XMLEncryptionUtil {
         // The EncryptedKey element is added
         Element encryptedKeyElement = cipher.martial(document, encryptedKey);
 
+        // the encrypted key is bound to the cipher which created it until marshalled
+        keyPool.offer(keyCipher);
+        pool.offer(cipher);
+
         String wrappingElementName = wrappingElementPrefix + ":" + wrappingElementQName.getLocalPart();
 
         // Create the wrapping element and set its attribute NS
@@ -451,11 +493,12 @@ public class XMLEncryptionUtil {
             encKeyElement = (Element) nodeList.item(0);
         }
 
+        Queue<XMLCipher> pool = getCipherPool(null, null);
         XMLCipher cipher;
         EncryptedData encryptedData;
         EncryptedKey encryptedKey;
         try {
-            cipher = XMLCipher.getInstance();
+            cipher = getCipher(pool, null);
             cipher.init(XMLCipher.DECRYPT_MODE, null);
             encryptedData = cipher.loadEncryptedData(documentWithEncryptedElement, encDataElement);
             encryptedKey = cipher.loadEncryptedKey(documentWithEncryptedElement, encKeyElement);
@@ -468,13 +511,12 @@ public class XMLEncryptionUtil {
         if (encryptedData != null && encryptedKey != null) {
             try {
                 String encAlgoURL = encryptedData.getEncryptionMethod().getAlgorithm();
-                XMLCipher keyCipher = XMLCipher.getInstance();
-                keyCipher.init(XMLCipher.UNWRAP_MODE, privateKey);
-                Key encryptionKey = keyCipher.decryptKey(encryptedKey, encAlgoURL);
-                cipher = XMLCipher.getInstance();
+                Key encryptionKey = decryptKey(encryptedKey, encAlgoURL, privateKey);
                 cipher.init(XMLCipher.DECRYPT_MODE, encryptionKey);
 
                 decryptedDoc = cipher.doFinal(documentWithEncryptedElement, encDataElement);
+
+                pool.offer(cipher);
             } catch (Exception e) {
                 throw logger.processingError(e);
             }
@@ -495,6 +537,83 @@ public class XMLEncryptionUtil {
         return decryptedDoc.getDocumentElement();
     }
 
+    /**
+     * Unwraps the content key with the given private key, using a pooled cipher.
+     */
+    private static Key decryptKey(EncryptedKey encryptedKey, String algorithm, PrivateKey privateKey)
+            throws XMLEncryptionException, ProcessingException {
+        Queue<XMLCipher> pool = getCipherPool(null, privateKey);
+        XMLCipher keyCipher = getKeyCipher(pool, null, XMLCipher.UNWRAP_MODE, privateKey);
+        Key key = keyCipher.decryptKey(encryptedKey, algorithm);
+
+        pool.offer(keyCipher);
+
+        return key;
+    }
+
+    /**
+     * Returns the idle ciphers for the given algorithm and, for the ciphers wrapping or unwrapping keys, key.
+     */
+    private static Queue<XMLCipher> getCipherPool(String algorithm, Key key) {
+        List<Object> poolKey = Arrays.<Object>asList(algorithm, key);
+        Queue<XMLCipher> pool = cipherPools.get(poolKey);
+
+        if (pool == null) {
+            if (cipherPools.size() >= MAX_CIPHER_POOLS) {
+                // drop the ciphers of keys which may no longer be in use
+                cipherPools.clear();
+            }
+
+            pool = new ArrayBlockingQueue<XMLCipher>(MAX_IDLE_CIPHERS);
+
+            Queue<XMLCipher> existing = cipherPools.putIfAbsent(poolKey, pool);
+
+            if (existing != null) {
+                pool = existing;
+            }
+        }
+
+        return pool;
+    }
+
+    private static EncryptedKey encryptKey(XMLCipher keyCipher, Document document, SecretKey secretKey)
+            throws ProcessingException {
+        try {
+            return keyCipher.encryptKey(document, secretKey);
+        } catch (XMLEncryptionException e) {
+            throw logger.processingError(e);
+        }
+    }
+
+    /**
+     * Returns an idle cipher wrapping or unwrapping keys with the given key, or a new one.
+     */
+    private static XMLCipher getKeyCipher(Queue<XMLCipher> pool, String algorithm, int mode, Key key)
+            throws ProcessingException {
+        XMLCipher cipher = pool.poll();
+
+        if (cipher == null) {
+            try {
+                cipher = algorithm == null ? XMLCipher.getInstance() : XMLCipher.getInstance(algorithm);
+                cipher.init(mode, key);
+            } catch (XMLEncryptionException e) {
+                throw logger.processingError(e);
+            }
+        }
+
+        return cipher;
+    }
+
+    private static XMLCipher getCipher(Queue<XMLCipher> pool, String algorithm) throws XMLEncryptionException {
+        XMLCipher cipher = pool.poll();
+
+        if (cipher == null) {
+            cipher = algorithm == null ? XMLCipher.getInstance() : XMLCipher.getInstance(algorithm);
+        }
+
+        return cipher;
+    }
+
     /**
      * From the secret key, get the W3C XML Encryption URL
      *
@@ -558,4 +677,4 @@ public class XMLEncryptionUtil {
         }
         return null;
     }
-}
\ No newline at end of file
+}
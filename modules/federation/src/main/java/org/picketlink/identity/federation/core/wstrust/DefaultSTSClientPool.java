@@ -0,0 +1,510 @@
+/*
+ * JBoss, Home of Professional Open Source
+ *
+ * Copyright 2013 Red Hat, Inc. and/or its affiliates.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.picketlink.identity.federation.core.wstrust;
+
+import org.picketlink.common.PicketLinkLogger;
+import org.picketlink.common.PicketLinkLoggerFactory;
+
+import java.security.AccessController;
+import java.security.PrivilegedAction;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.BlockingDeque;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.LinkedBlockingDeque;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * <p>
+ * Thread-safe {@link STSClientPool} keeping a sub pool of {@link STSClient}s for each {@link STSClientConfig}. Creating
+ * a client builds a JAX-WS {@code Dispatch}, so clients returned to the pool are handed out again instead of being
+ * discarded.
+ * </p>
+ * <p>
+ * Each sub pool lends at most {@link #getMaxClients()} clients at a time. A borrower waits up to
+ * {@link #getBorrowTimeout()} milliseconds for a client to be returned before the request fails. At most
+ * {@link #getMaxIdleClients()} returned clients are kept, and clients left idle for longer than
+ * {@link #getIdleTimeout()} milliseconds are evicted.
+ * </p>
+ * <p>
+ * The key of a configuration includes its credentials, so there is a sub pool per user. At most {@link #getMaxPools()}
+ * sub pools are kept: when a new one is needed, the least recently used sub pools with no borrowed client are
+ * removed. If all of them are in use, the client is created without being pooled.
+ * </p>
+ * <p>
+ * The defaults can be changed with the {@code picketlink.sts.client.pool.max}, {@code picketlink.sts.client.pool.maxIdle},
+ * {@code picketlink.sts.client.pool.maxPools}, {@code picketlink.sts.client.pool.borrowTimeout},
+ * {@code picketlink.sts.client.pool.idleTimeout} and {@code picketlink.sts.client.pool.validateOnBorrow} system
+ * properties. Changes to the sizes apply to sub pools created
+ * afterwards.
+ * </p>
+ */
+public class DefaultSTSClientPool implements STSClientPool {
+
+    private static final PicketLinkLogger logger = PicketLinkLoggerFactory.getLogger();
+
+    public static final int DEFAULT_MAX_CLIENTS = Integer.parseInt(getSystemProperty("picketlink.sts.client.pool.max", "20"));
+
+    public static final int DEFAULT_MAX_IDLE_CLIENTS = Integer.parseInt(getSystemProperty(
+        "picketlink.sts.client.pool.maxIdle", "10"));
+
+    public static final int DEFAULT_MAX_POOLS = Integer.parseInt(getSystemProperty("picketlink.sts.client.pool.maxPools",
+        "100"));
+
+    public static final long DEFAULT_BORROW_TIMEOUT = Long.parseLong(getSystemProperty(
+        "picketlink.sts.client.pool.borrowTimeout", "10000"));
+
+    public static final long DEFAULT_IDLE_TIMEOUT = Long.parseLong(getSystemProperty(
+        "picketlink.sts.client.pool.idleTimeout", "300000"));
+
+    public static final boolean DEFAULT_VALIDATE_ON_BORROW = Boolean.parseBoolean(getSystemProperty(
+        "picketlink.sts.client.pool.validateOnBorrow", "true"));
+
+    private final ConcurrentMap<String, SubPool> pools = new ConcurrentHashMap<String, SubPool>();
+
+    private final ConcurrentMap<STSClient, SubPool> borrowedClients = new ConcurrentHashMap<STSClient, SubPool>();
+
+    private volatile int maxClients = DEFAULT_MAX_CLIENTS;
+
+    private volatile int maxIdleClients = DEFAULT_MAX_IDLE_CLIENTS;
+
+    private volatile int maxPools = DEFAULT_MAX_POOLS;
+
+    private volatile long borrowTimeout = DEFAULT_BORROW_TIMEOUT;
+
+    private volatile long idleTimeout = DEFAULT_IDLE_TIMEOUT;
+
+    private volatile boolean validateOnBorrow = DEFAULT_VALIDATE_ON_BORROW;
+
+    @Override
+    public void createPool(STSClientConfig config) {
+        createPool(0, config);
+    }
+
+    @Override
+    public void createPool(int initialNumberOfClients, final STSClientConfig config) {
+        if (config == null)
+            throw logger.nullArgumentError("config");
+
+        createPool(initialNumberOfClients, new STSClientCreationCallBack() {
+            @Override
+            public STSClient createClient() {
+                return new STSClient(config);
+            }
+
+            @Override
+            public String getKey() {
+                return config.getSTSClientConfigKey();
+            }
+        });
+    }
+
+    /**
+     * Creates the sub pool for the key of the given callback, unless it already exists, and fills it with
+     * {@code initialNumberOfClients} clients.
+     */
+    @Override
+    public void createPool(int initialNumberOfClients, STSClientCreationCallBack callBack) {
+        if (callBack == null)
+            throw logger.nullArgumentError("callBack");
+
+        getOrCreatePool(callBack, initialNumberOfClients);
+    }
+
+    @Override
+    public void destroyPool(STSClientConfig config) {
+        SubPool pool = this.pools.remove(config.getSTSClientConfigKey());
+
+        if (pool != null) {
+            pool.destroy();
+        }
+    }
+
+    @Override
+    public void destroyPool(String moduleName) {
+        if (moduleName == null || moduleName.isEmpty()) {
+            moduleName = STSClientConfig.SUBSTITUTE_MODULE;
+        }
+
+        String prefix = moduleName + "|";
+        Iterator<SubPool> iterator = this.pools.values().iterator();
+
+        while (iterator.hasNext()) {
+            SubPool pool = iterator.next();
+
+            if (pool.key.startsWith(prefix)) {
+                iterator.remove();
+                pool.destroy();
+            }
+        }
+    }
+
+    /**
+     * Returns the client to its sub pool. Clients which were not borrowed from this pool, or were already returned,
+     * are ignored.
+     */
+    @Override
+    public void returnClient(STSClient stsClient) {
+        if (stsClient == null)
+            return;
+
+        SubPool pool = this.borrowedClients.remove(stsClient);
+
+        if (pool == null) {
+            logger.trace("Ignoring STSClient not borrowed from the pool: " + stsClient.getSTSClientConfigKey());
+            return;
+        }
+
+        pool.release(stsClient);
+    }
+
+    /**
+     * Borrows a client from the sub pool of the given configuration, creating the sub pool if needed. Waits up to
+     * {@link #getBorrowTimeout()} milliseconds when all the clients of the sub pool are in use.
+     */
+    @Override
+    public STSClient getClient(STSClientConfig config) {
+        if (config == null)
+            throw logger.nullArgumentError("config");
+
+        SubPool pool = this.pools.get(config.getSTSClientConfigKey());
+
+        if (pool == null) {
+            createPool(config);
+            pool = this.pools.get(config.getSTSClientConfigKey());
+
+            if (pool == null) {
+                // all the sub pools are in use
+                return new STSClient(config);
+            }
+        }
+
+        STSClient client = pool.borrow();
+
+        this.borrowedClients.put(client, pool);
+
+        return client;
+    }
+
+    @Override
+    public boolean configExists(STSClientConfig config) {
+        return this.pools.containsKey(config.getSTSClientConfigKey());
+    }
+
+    /**
+     * Removes the clients which have been idle for longer than {@link #getIdleTimeout()} from all the sub pools, and the
+     * sub pools left with no client.
+     */
+    public void evict() {
+        Iterator<SubPool> iterator = this.pools.values().iterator();
+
+        while (iterator.hasNext()) {
+            SubPool pool = iterator.next();
+
+            pool.evict();
+
+            if (pool.isUnused() && pool.idleClients.isEmpty()) {
+                iterator.remove();
+                pool.destroy();
+            }
+        }
+    }
+
+    /**
+     * Returns the number of sub pools.
+     */
+    public int getPoolCount() {
+        return this.pools.size();
+    }
+
+    /**
+     * Returns the number of clients kept in the sub pool of the given configuration, waiting to be borrowed.
+     */
+    public int getIdleCount(STSClientConfig config) {
+        SubPool pool = this.pools.get(config.getSTSClientConfigKey());
+        return pool != null ? pool.idleClients.size() : 0;
+    }
+
+    /**
+     * Returns the number of clients borrowed from the sub pool of the given configuration and not returned yet.
+     */
+    public int getActiveCount(STSClientConfig config) {
+        SubPool pool = this.pools.get(config.getSTSClientConfigKey());
+        return pool != null ? pool.maxClients - pool.permits.availablePermits() : 0;
+    }
+
+    /**
+     * Checks whether a pooled client can be handed out again. By default a client is valid when it has a
+     * {@code Dispatch} to work with.
+     *
+     * @param client the idle client about to be borrowed
+     * @return true if the client can be borrowed, false to discard it
+     */
+    protected boolean validate(STSClient client) {
+        return client.getDispatch() != null;
+    }
+
+    public int getMaxClients() {
+        return this.maxClients;
+    }
+
+    public void setMaxClients(int maxClients) {
+        if (maxClients < 0)
+            throw logger.cannotSetMaxPoolSizeToNegative(String.valueOf(maxClients));
+
+        this.maxClients = maxClients;
+    }
+
+    public int getMaxIdleClients() {
+        return this.maxIdleClients;
+    }
+
+    public void setMaxIdleClients(int maxIdleClients) {
+        if (maxIdleClients < 0)
+            throw logger.cannotSetMaxPoolSizeToNegative(String.valueOf(maxIdleClients));
+
+        this.maxIdleClients = maxIdleClients;
+    }
+
+    public int getMaxPools() {
+        return this.maxPools;
+    }
+
+    public void setMaxPools(int maxPools) {
+        if (maxPools < 0)
+            throw logger.cannotSetMaxPoolSizeToNegative(String.valueOf(maxPools));
+
+        this.maxPools = maxPools;
+    }
+
+    public long getBorrowTimeout() {
+        return this.borrowTimeout;
+    }
+
+    public void setBorrowTimeout(long borrowTimeout) {
+        this.borrowTimeout = borrowTimeout;
+    }
+
+    public long getIdleTimeout() {
+        return this.idleTimeout;
+    }
+
+    public void setIdleTimeout(long idleTimeout) {
+        this.idleTimeout = idleTimeout;
+    }
+
+    public boolean isValidateOnBorrow() {
+        return this.validateOnBorrow;
+    }
+
+    public void setValidateOnBorrow(boolean validateOnBorrow) {
+        this.validateOnBorrow = validateOnBorrow;
+    }
+
+    private SubPool getOrCreatePool(STSClientCreationCallBack callBack, int initialNumberOfClients) {
+        String key = callBack.getKey();
+        SubPool pool = this.pools.get(key);
+
+        if (pool != null) {
+            return pool;
+        }
+
+        int maxClients = this.maxClients;
+
+        if (initialNumberOfClients > maxClients)
+            throw logger.maximumNumberOfClientsReachedforPool(String.valueOf(maxClients));
+
+        if (this.pools.size() >= this.maxPools && !removeUnusedPools()) {
+            logger.trace("Too many STSClient pools, not pooling clients for " + key);
+            return null;
+        }
+
+        SubPool newPool = new SubPool(key, callBack, maxClients, Math.max(initialNumberOfClients, this.maxIdleClients));
+
+        pool = this.pools.putIfAbsent(key, newPool);
+
+        if (pool != null) {
+            return pool;
+        }
+
+        for (int i = 0; i < initialNumberOfClients; i++) {
+            newPool.idleClients.offerLast(new IdleClient(callBack.createClient()));
+        }
+
+        return newPool;
+    }
+
+    /**
+     * Removes the sub pools with no borrowed client, least recently used first, until there is room for a new one.
+     *
+     * @return true if there is room for a new sub pool
+     */
+    private boolean removeUnusedPools() {
+        evict();
+
+        List<SubPool> unusedPools = new ArrayList<SubPool>();
+
+        for (SubPool pool : this.pools.values()) {
+            if (pool.isUnused()) {
+                unusedPools.add(pool);
+            }
+        }
+
+        Collections.sort(unusedPools, new Comparator<SubPool>() {
+            @Override
+            public int compare(SubPool pool1, SubPool pool2) {
+                return pool1.lastUsed < pool2.lastUsed ? -1 : (pool1.lastUsed == pool2.lastUsed ? 0 : 1);
+            }
+        });
+
+        Iterator<SubPool> iterator = unusedPools.iterator();
+
+        while (this.pools.size() >= this.maxPools && iterator.hasNext()) {
+            SubPool pool = iterator.next();
+
+            if (this.pools.remove(pool.key, pool)) {
+                pool.destroy();
+            }
+        }
+
+        return this.pools.size() < this.maxPools;
+    }
+
+    private static String getSystemProperty(final String name, final String defaultValue) {
+        return AccessController.doPrivileged(new PrivilegedAction<String>() {
+            public String run() {
+                return System.getProperty(name, defaultValue);
+            }
+        });
+    }
+
+    private static class IdleClient {
+
+        private final STSClient client;
+
+        private final long idleSince = System.currentTimeMillis();
+
+        IdleClient(STSClient client) {
+            this.client = client;
+        }
+    }
+
+    /**
+     * The clients of one configuration. Idle clients are handed out last in, first out, so the ones left at the end of
+     * the deque are the ones to evict.
+     */
+    private class SubPool {
+
+        private final String key;
+
+        private final STSClientCreationCallBack callBack;
+
+        private final int maxClients;
+
+        private final int maxIdleClients;
+
+        private final Semaphore permits;
+
+        private final BlockingDeque<IdleClient> idleClients = new LinkedBlockingDeque<IdleClient>();
+
+        private volatile boolean destroyed;
+
+        private volatile long lastUsed = System.currentTimeMillis();
+
+        SubPool(String key, STSClientCreationCallBack callBack, int maxClients, int maxIdleClients) {
+            this.key = key;
+            this.callBack = callBack;
+            this.maxClients = maxClients;
+            this.maxIdleClients = maxIdleClients;
+            this.permits = new Semaphore(maxClients, true);
+        }
+
+        STSClient borrow() {
+            boolean acquired;
+
+            try {
+                acquired = this.permits.tryAcquire(borrowTimeout, TimeUnit.MILLISECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                acquired = false;
+            }
+
+            if (!acquired)
+                throw logger.maximumNumberOfClientsReachedforPool(String.valueOf(this.maxClients));
+
+            this.lastUsed = System.currentTimeMillis();
+
+            try {
+                IdleClient idleClient;
+
+                while ((idleClient = this.idleClients.pollFirst()) != null) {
+                    if (!isExpired(idleClient, System.currentTimeMillis())
+                        && (!validateOnBorrow || validate(idleClient.client))) {
+                        return idleClient.client;
+                    }
+                }
+
+                return this.callBack.createClient();
+            } catch (RuntimeException e) {
+                this.permits.release();
+                throw e;
+            }
+        }
+
+        void release(STSClient client) {
+            this.lastUsed = System.currentTimeMillis();
+
+            try {
+                if (!this.destroyed && this.idleClients.size() < this.maxIdleClients) {
+                    this.idleClients.offerFirst(new IdleClient(client));
+                }
+
+                evict();
+            } finally {
+                this.permits.release();
+            }
+        }
+
+        void evict() {
+            long now = System.currentTimeMillis();
+            IdleClient idleClient;
+
+            while ((idleClient = this.idleClients.peekLast()) != null && isExpired(idleClient, now)) {
+                this.idleClients.removeLastOccurrence(idleClient);
+            }
+        }
+
+        boolean isUnused() {
+            return this.permits.availablePermits() == this.maxClients;
+        }
+
+        void destroy() {
+            this.destroyed = true;
+            this.idleClients.clear();
+        }
+
+        private boolean isExpired(IdleClient idleClient, long now) {
+            return idleTimeout > 0 && now - idleClient.idleSince > idleTimeout;
+        }
+    }
+}
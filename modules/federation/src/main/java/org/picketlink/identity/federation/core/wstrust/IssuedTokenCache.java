@@ -0,0 +1,328 @@
+/*
+ * JBoss, Home of Professional Open Source
+ *
+ * Copyright 2013 Red Hat, Inc. and/or its affiliates.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.picketlink.identity.federation.core.wstrust;
+
+import org.picketlink.common.PicketLinkLogger;
+import org.picketlink.common.PicketLinkLoggerFactory;
+import org.picketlink.common.constants.WSTrustConstants;
+import org.picketlink.common.exceptions.fed.WSTrustException;
+import org.picketlink.common.util.DocumentUtil;
+import org.picketlink.identity.federation.core.saml.v2.util.XMLTimeUtil;
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+import org.w3c.dom.Node;
+
+import java.util.Iterator;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * <p>
+ * Cache of the tokens issued to an {@link STSClient}, enabled with {@link STSClient#setIssuedTokenCache(IssuedTokenCache)}.
+ * A cache can be shared by several clients, for instance by all the clients of an {@link STSClientPool}.
+ * </p>
+ * <p>
+ * A token is kept until {@link #getClockSkew()} milliseconds before it expires. The expiry is read from the
+ * {@code Lifetime} of the RSTR, or from the {@code NotOnOrAfter} attribute of the token {@code Conditions} when the
+ * STS does not return a lifetime. Tokens without either are not cached.
+ * </p>
+ * <p>
+ * When a token is used within {@link #getRefreshAhead()} milliseconds of the moment it stops being reused, the first
+ * caller requests a new token with its own client while the others keep getting the cached one, so that callers of
+ * tokens in frequent use do not all wait for the STS when it expires. {@link STSClient} instances are not thread-safe,
+ * so the token is never requested on a thread other than the caller's.
+ * </p>
+ */
+public class IssuedTokenCache {
+
+    private static final PicketLinkLogger logger = PicketLinkLoggerFactory.getLogger();
+
+    public static final long DEFAULT_CLOCK_SKEW = 30000;
+
+    public static final long DEFAULT_REFRESH_AHEAD = 60000;
+
+    public static final int DEFAULT_MAX_ENTRIES = 1000;
+
+    private final ConcurrentMap<String, CachedToken> tokens = new ConcurrentHashMap<String, CachedToken>();
+
+    private final AtomicLong hitCount = new AtomicLong();
+
+    private final AtomicLong missCount = new AtomicLong();
+
+    private final AtomicLong refreshCount = new AtomicLong();
+
+    private volatile long clockSkew = DEFAULT_CLOCK_SKEW;
+
+    private volatile long refreshAhead = DEFAULT_REFRESH_AHEAD;
+
+    private volatile int maxEntries = DEFAULT_MAX_ENTRIES;
+
+    /**
+     * Returns the token cached for the given key, or calls the issuer and caches the token it returns.
+     *
+     * @param key identifies the token request, see {@link STSClient}.
+     * @param issuer requests a new token from the STS.
+     *
+     * @return a copy of the cached token, or the token just issued.
+     *
+     * @throws WSTrustException if the token could not be issued.
+     */
+    public Element getToken(String key, Callable<Element> issuer) throws WSTrustException {
+        long now = System.currentTimeMillis();
+        CachedToken cachedToken = this.tokens.get(key);
+
+        if (cachedToken != null && now < cachedToken.expires - this.clockSkew) {
+            if (now >= cachedToken.expires - this.clockSkew - this.refreshAhead) {
+                Element token = refresh(key, cachedToken, issuer, now);
+
+                if (token != null) {
+                    return token;
+                }
+            }
+
+            this.hitCount.incrementAndGet();
+
+            return cachedToken.copy();
+        }
+
+        this.missCount.incrementAndGet();
+
+        Element token = issue(issuer);
+
+        put(key, token, now);
+
+        return token;
+    }
+
+    /**
+     * Removes the token cached for the given key.
+     */
+    public void invalidate(String key) {
+        this.tokens.remove(key);
+    }
+
+    /**
+     * Removes all the cached tokens.
+     */
+    public void clear() {
+        this.tokens.clear();
+    }
+
+    public int size() {
+        return this.tokens.size();
+    }
+
+    public long getHitCount() {
+        return this.hitCount.get();
+    }
+
+    public long getMissCount() {
+        return this.missCount.get();
+    }
+
+    /**
+     * Returns the number of tokens issued again before the cached ones expired.
+     */
+    public long getRefreshCount() {
+        return this.refreshCount.get();
+    }
+
+    public long getClockSkew() {
+        return this.clockSkew;
+    }
+
+    /**
+     * Sets how long before their expiry, in milliseconds, tokens stop being reused.
+     */
+    public void setClockSkew(long clockSkew) {
+        this.clockSkew = clockSkew;
+    }
+
+    public long getRefreshAhead() {
+        return this.refreshAhead;
+    }
+
+    /**
+     * Sets how long, in milliseconds, before a token stops being reused a new one is requested by one of its callers. 0
+     * disables those requests.
+     */
+    public void setRefreshAhead(long refreshAhead) {
+        this.refreshAhead = refreshAhead;
+    }
+
+    public int getMaxEntries() {
+        return this.maxEntries;
+    }
+
+    public void setMaxEntries(int maxEntries) {
+        this.maxEntries = maxEntries;
+    }
+
+    /**
+     * Requests a new token on the calling thread, unless another caller is already doing so.
+     *
+     * @return the new token, or null if the cached one should be returned.
+     */
+    private Element refresh(String key, CachedToken cachedToken, Callable<Element> issuer, long now) {
+        if (this.refreshAhead <= 0 || !cachedToken.refreshing.compareAndSet(false, true)) {
+            return null;
+        }
+
+        try {
+            Element token = issue(issuer);
+
+            put(key, token, now);
+            this.refreshCount.incrementAndGet();
+
+            return token;
+        } catch (Exception e) {
+            // the token is issued again by the next caller, or when it expires
+            logger.trace("Could not refresh the issued token " + key, e);
+            cachedToken.refreshing.set(false);
+            return null;
+        }
+    }
+
+    private Element issue(Callable<Element> issuer) throws WSTrustException {
+        try {
+            return issuer.call();
+        } catch (WSTrustException e) {
+            throw e;
+        } catch (RuntimeException e) {
+            throw e;
+        } catch (Exception e) {
+            throw new WSTrustException(e.getMessage(), e);
+        }
+    }
+
+    private void put(String key, Element token, long now) {
+        if (token == null) {
+            return;
+        }
+
+        long expires = getExpires(token);
+
+        if (expires - this.clockSkew <= now) {
+            this.tokens.remove(key);
+            return;
+        }
+
+        if (this.tokens.size() >= this.maxEntries && !this.tokens.containsKey(key)) {
+            removeExpired(now);
+
+            if (this.tokens.size() >= this.maxEntries) {
+                return;
+            }
+        }
+
+        try {
+            Document document = DocumentUtil.createDocument();
+
+            document.appendChild(document.importNode(token, true));
+
+            this.tokens.put(key, new CachedToken(document.getDocumentElement(), expires));
+        } catch (Exception e) {
+            logger.trace("Could not cache the issued token " + key, e);
+        }
+    }
+
+    private void removeExpired(long now) {
+        Iterator<CachedToken> iterator = this.tokens.values().iterator();
+
+        while (iterator.hasNext()) {
+            if (iterator.next().expires - this.clockSkew <= now) {
+                iterator.remove();
+            }
+        }
+    }
+
+    /**
+     * Returns when the given token expires, in milliseconds, or 0 if it is not known.
+     */
+    private static long getExpires(Element token) {
+        String expires = null;
+        Node requestedToken = token.getParentNode();
+
+        if (requestedToken != null && requestedToken.getParentNode() != null) {
+            Element lifetime = getChildElement(requestedToken.getParentNode(), WSTrustConstants.BASE_NAMESPACE,
+                WSTrustConstants.LIFETIME);
+
+            if (lifetime != null) {
+                Element expiresElement = getChildElement(lifetime, WSTrustConstants.WSU_NS, WSTrustConstants.EXPIRES);
+
+                if (expiresElement != null) {
+                    expires = expiresElement.getTextContent();
+                }
+            }
+        }
+
+        if (expires == null) {
+            Element conditions = getChildElement(token, null, "Conditions");
+
+            if (conditions != null && conditions.hasAttribute("NotOnOrAfter")) {
+                expires = conditions.getAttribute("NotOnOrAfter");
+            }
+        }
+
+        if (expires == null) {
+            return 0;
+        }
+
+        try {
+            return XMLTimeUtil.parseTimeInMillis(expires.trim());
+        } catch (Exception e) {
+            logger.trace("Could not parse the token expiry " + expires, e);
+            return 0;
+        }
+    }
+
+    private static Element getChildElement(Node parent, String namespace, String localName) {
+        for (Node child = parent.getFirstChild(); child != null; child = child.getNextSibling()) {
+            if (child.getNodeType() == Node.ELEMENT_NODE && localName.equals(child.getLocalName())
+                && (namespace == null || namespace.equals(child.getNamespaceURI()))) {
+                return (Element) child;
+            }
+        }
+
+        return null;
+    }
+
+    private static class CachedToken {
+
+        private final Element token;
+
+        private final long expires;
+
+        private final AtomicBoolean refreshing = new AtomicBoolean();
+
+        CachedToken(Element token, long expires) {
+            this.token = token;
+            this.expires = expires;
+        }
+
+        /**
+         * Copies the token, so that callers can change or import it. The DOM is not thread-safe, even for reading.
+         */
+        synchronized Element copy() {
+            return (Element) this.token.cloneNode(true);
+        }
+    }
+}
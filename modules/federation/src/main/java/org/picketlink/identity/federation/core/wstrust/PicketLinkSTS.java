@@ -18,6 +18,7 @@
 package org.picketlink.identity.federation.core.wstrust;
 
 
+import org.jboss.security.SecurityContext;
 import org.picketlink.common.ErrorCodes;
 import org.picketlink.common.PicketLinkLogger;
 import org.picketlink.common.PicketLinkLoggerFactory;
@@ -58,7 +59,19 @@ import java.io.InputStream;
 import java.net.URI;
 import java.net.URL;
 import java.security.AccessController;
+import java.security.Principal;
 import java.security.PrivilegedAction;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /**
  * <p>
@@ -84,6 +97,16 @@ public class PicketLinkSTS implements Provider<SOAPMessage> { // SecurityTokenSe
 
     private static final String STS_CONFIG_DIR = "picketlink-store" + SEPARATOR + "sts" + SEPARATOR;
 
+    // Configurable number of threads handling the requests of a RequestSecurityTokenCollection
+    private static final int collectionThreads = AccessController.doPrivileged(new PrivilegedAction<Integer>() {
+        public Integer run() {
+            String val = System.getProperty("picketlink.sts.collection.threads", "10");
+            return Integer.parseInt(val);
+        }
+    });
+
+    private static final ExecutorService collectionExecutor = createCollectionExecutor();
+
     @Resource
     protected WebServiceContext context;
 
@@ -128,34 +151,73 @@ public class PicketLinkSTS implements Provider<SOAPMessage> { // SecurityTokenSe
 
             WSTrustParser parser = new WSTrustParser();
 
-            baseRequest = (BaseRequestSecurityToken) parser.parse(DocumentUtil.getNodeAsStream(payLoad));
+            baseRequest = (BaseRequestSecurityToken) parser.parse(payLoad);
         } catch (Exception e) {
             throw logger.stsWSError(e);
         }
 
         if (baseRequest instanceof RequestSecurityToken) {
             RequestSecurityToken req = (RequestSecurityToken) baseRequest;
-            try {
-                req.setRSTDocument((Document) payLoad);
-            } catch (Exception e) {
-                throw new RuntimeException(e);
-            }
-
-            if (binaryToken != null) {
-                req.setBinaryToken(binaryToken);
-            }
-
-            if (valueType != null) {
-                req.setBinaryValueType(URI.create(valueType));
-            }
+            setRequestContent(req, (Document) payLoad, binaryToken, valueType);
             Source theResponse = this.handleTokenRequest(req);
             return convert(theResponse, soap12);
         } else if (baseRequest instanceof RequestSecurityTokenCollection) {
-            return convert(this.handleTokenRequestCollection((RequestSecurityTokenCollection) baseRequest), soap12);
+            return convert(this.handleTokenRequestCollection(createRequestCollection((Document) payLoad, binaryToken,
+                    valueType)), soap12);
         } else
             throw logger.stsWSInvalidTokenRequestError();
     }
 
+    /**
+     * Creates the requests of a collection from copies of their elements, so that the requests, handled concurrently,
+     * share no node of the payload. Each request gets a document of its own, as it would have been sent alone.
+     */
+    private RequestSecurityTokenCollection createRequestCollection(Document payLoad, Node binaryToken, String valueType) {
+        RequestSecurityTokenCollection collection = new RequestSecurityTokenCollection();
+        NodeList children = payLoad.getDocumentElement().getChildNodes();
+
+        try {
+            for (int i = 0; i < children.getLength(); i++) {
+                Node child = children.item(i);
+
+                if (child.getNodeType() != Node.ELEMENT_NODE || !WSTrustConstants.BASE_NAMESPACE.equals(child.getNamespaceURI())
+                        || !WSTrustConstants.RST.equals(child.getLocalName())) {
+                    continue;
+                }
+
+                Document rstDocument = DocumentUtil.createDocument();
+
+                rstDocument.appendChild(rstDocument.importNode(child, true));
+
+                RequestSecurityToken request = (RequestSecurityToken) new WSTrustParser().parse(rstDocument);
+                Node requestBinaryToken = binaryToken != null ? rstDocument.importNode(binaryToken, true) : null;
+
+                setRequestContent(request, rstDocument, requestBinaryToken, valueType);
+                collection.addRequestSecurityToken(request);
+            }
+        } catch (Exception e) {
+            throw logger.stsWSError(e);
+        }
+
+        return collection;
+    }
+
+    private void setRequestContent(RequestSecurityToken req, Document rstDocument, Node binaryToken, String valueType) {
+        try {
+            req.setRSTDocument(rstDocument);
+        } catch (Exception e) {
+            throw new RuntimeException(e);
+        }
+
+        if (binaryToken != null) {
+            req.setBinaryToken(binaryToken);
+        }
+
+        if (valueType != null) {
+            req.setBinaryValueType(URI.create(valueType));
+        }
+    }
+
     private SOAPMessage convert(Source theResponse, boolean wantSOAP12) {
         try {
             SOAPMessage response = null;
@@ -199,6 +261,106 @@ public class PicketLinkSTS implements Provider<SOAPMessage> { // SecurityTokenSe
      * @throws javax.xml.ws.WebServiceException Any exception encountered in handling token
      */
     protected Source handleTokenRequest(RequestSecurityToken request) {
+        WSTrustRequestHandler handler = this.getRequestHandler();
+
+        try {
+            return new DOMSource(this.handleTokenRequest(handler, request, this.context.getUserPrincipal()));
+        } catch (WSTrustException we) {
+            throw logger.stsWSHandlingTokenRequestError(we);
+        }
+    }
+
+    /**
+     * <p>
+     * Process a collection of security token requests. The requests are handled concurrently and their responses are
+     * written, in the order of the requests, to a single {@code RequestSecurityTokenResponseCollection}.
+     * </p>
+     *
+     * @param requestCollection a {@code RequestSecurityTokenCollection} containing the various requests information.
+     *
+     * @return a {@code Source} instance representing the marshalled response.
+     */
+    protected Source handleTokenRequestCollection(RequestSecurityTokenCollection requestCollection) {
+        final WSTrustRequestHandler handler = this.getRequestHandler();
+        // the context, class loader and security context are bound to the calling thread
+        final Principal principal = this.context.getUserPrincipal();
+        final ClassLoader classLoader = SecurityActions.getTCCL();
+        final boolean securityContextAvailable = SecurityActions.isSecurityContextAvailable();
+        final SecurityContext securityContext = securityContextAvailable ? SecurityActions.getSecurityContext() : null;
+
+        List<RequestSecurityToken> requests = requestCollection.getRequestSecurityTokens();
+
+        if (requests.isEmpty())
+            throw logger.stsWSInvalidTokenRequestError();
+
+        List<Future<Document>> results = new ArrayList<Future<Document>>();
+
+        for (final RequestSecurityToken request : requests) {
+            results.add(collectionExecutor.submit(new Callable<Document>() {
+                public Document call() throws Exception {
+                    ClassLoader previousClassLoader = SecurityActions.getTCCL();
+                    SecurityContext previousSecurityContext = null;
+
+                    SecurityActions.setTCCL(classLoader);
+
+                    if (securityContextAvailable) {
+                        previousSecurityContext = SecurityActions.getSecurityContext();
+                        SecurityActions.setSecurityContext(securityContext);
+                    }
+
+                    try {
+                        return handleTokenRequest(handler, request, principal);
+                    } finally {
+                        if (securityContextAvailable) {
+                            SecurityActions.setSecurityContext(previousSecurityContext);
+                        }
+
+                        SecurityActions.setTCCL(previousClassLoader);
+                    }
+                }
+            }));
+        }
+
+        Document responseCollection = null;
+
+        try {
+            for (Future<Document> result : results) {
+                Document response = result.get();
+
+                if (responseCollection == null) {
+                    responseCollection = response;
+                } else {
+                    // move the RSTR of each response into the collection of the first one
+                    NodeList rstrs = response.getDocumentElement().getElementsByTagNameNS(WSTrustConstants.BASE_NAMESPACE,
+                            WSTrustConstants.RSTR);
+
+                    for (int i = 0; i < rstrs.getLength(); i++) {
+                        responseCollection.getDocumentElement().appendChild(responseCollection.importNode(rstrs.item(i), true));
+                    }
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw logger.stsWSError(e);
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+
+            if (cause instanceof WSTrustException)
+                throw logger.stsWSHandlingTokenRequestError((WSTrustException) cause);
+            if (cause instanceof RuntimeException)
+                throw (RuntimeException) cause;
+
+            throw logger.stsWSError(cause);
+        } finally {
+            for (Future<Document> result : results) {
+                result.cancel(true);
+            }
+        }
+
+        return new DOMSource(responseCollection);
+    }
+
+    private WSTrustRequestHandler getRequestHandler() {
         if (context == null)
             throw new IllegalStateException(ErrorCodes.NULL_VALUE + "WebServiceContext");
         if (this.config == null)
@@ -213,42 +375,46 @@ public class PicketLinkSTS implements Provider<SOAPMessage> { // SecurityTokenSe
         if (handler == null)
             throw logger.nullValueError("WSTrustRequestHandler");
 
+        return handler;
+    }
+
+    private Document handleTokenRequest(WSTrustRequestHandler handler, RequestSecurityToken request, Principal principal)
+            throws WSTrustException {
         String requestType = request.getRequestType().toString();
 
         logger.trace("STS received request of type " + requestType);
 
-        try {
-            if (requestType.equals(WSTrustConstants.ISSUE_REQUEST)) {
-                Source source = this.marshallResponse(handler.issue(request, this.context.getUserPrincipal()));
-                Document doc = handler.postProcess((Document) ((DOMSource) source).getNode(), request);
-                return new DOMSource(doc);
-            } else if (requestType.equals(WSTrustConstants.RENEW_REQUEST)) {
-                Source source = this.marshallResponse(handler.renew(request, this.context.getUserPrincipal()));
-                // we need to sign/encrypt renewed tokens.
-                Document document = handler.postProcess((Document) ((DOMSource) source).getNode(), request);
-                return new DOMSource(document);
-            } else if (requestType.equals(WSTrustConstants.CANCEL_REQUEST))
-                return this.marshallResponse(handler.cancel(request, this.context.getUserPrincipal()));
-            else if (requestType.equals(WSTrustConstants.VALIDATE_REQUEST))
-                return this.marshallResponse(handler.validate(request, this.context.getUserPrincipal()));
-            else
-                throw logger.stsWSInvalidRequestTypeError(requestType);
-        } catch (WSTrustException we) {
-            throw logger.stsWSHandlingTokenRequestError(we);
-        }
+        if (requestType.equals(WSTrustConstants.ISSUE_REQUEST) || requestType.equals(WSTrustConstants.BATCH_ISSUE_REQUEST)) {
+            Source source = this.marshallResponse(handler.issue(request, principal));
+            return handler.postProcess((Document) ((DOMSource) source).getNode(), request);
+        } else if (requestType.equals(WSTrustConstants.RENEW_REQUEST)) {
+            Source source = this.marshallResponse(handler.renew(request, principal));
+            // we need to sign/encrypt renewed tokens.
+            return handler.postProcess((Document) ((DOMSource) source).getNode(), request);
+        } else if (requestType.equals(WSTrustConstants.CANCEL_REQUEST))
+            return (Document) ((DOMSource) this.marshallResponse(handler.cancel(request, principal))).getNode();
+        else if (requestType.equals(WSTrustConstants.VALIDATE_REQUEST)
+                || requestType.equals(WSTrustConstants.BATCH_VALIDATE_REQUEST))
+            return (Document) ((DOMSource) this.marshallResponse(handler.validate(request, principal))).getNode();
+        else
+            throw logger.stsWSInvalidRequestTypeError(requestType);
     }
 
-    /**
-     * <p>
-     * Process a collection of security token requests.
-     * </p>
-     *
-     * @param requestCollection a {@code RequestSecurityTokenCollection} containing the various requests information.
-     *
-     * @return a {@code Source} instance representing the marshalled response.
-     */
-    protected Source handleTokenRequestCollection(RequestSecurityTokenCollection requestCollection) {
-        throw new UnsupportedOperationException();
+    private static ExecutorService createCollectionExecutor() {
+        ThreadPoolExecutor executor = new ThreadPoolExecutor(collectionThreads, collectionThreads, 60L, TimeUnit.SECONDS,
+                new LinkedBlockingQueue<Runnable>(), new ThreadFactory() {
+                    private final AtomicInteger count = new AtomicInteger();
+
+                    public Thread newThread(Runnable runnable) {
+                        Thread thread = new Thread(runnable, "picketlink-sts-collection-" + count.incrementAndGet());
+                        thread.setDaemon(true);
+                        return thread;
+                    }
+                });
+
+        executor.allowCoreThreadTimeOut(true);
+
+        return executor;
     }
 
     /**
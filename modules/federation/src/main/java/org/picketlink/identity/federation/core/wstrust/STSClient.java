@@ -25,10 +25,12 @@ import org.picketlink.common.util.DocumentUtil;
 import org.picketlink.common.util.StringUtil;
 import org.picketlink.identity.federation.core.parsers.wst.WSTrustParser;
 import org.picketlink.identity.federation.core.wstrust.wrappers.RequestSecurityToken;
+import org.picketlink.identity.federation.core.wstrust.wrappers.RequestSecurityTokenCollection;
 import org.picketlink.identity.federation.core.wstrust.wrappers.RequestSecurityTokenResponse;
 import org.picketlink.identity.federation.core.wstrust.wrappers.RequestSecurityTokenResponseCollection;
 import org.picketlink.identity.federation.core.wstrust.writers.WSTrustRequestWriter;
 import org.picketlink.identity.federation.ws.trust.CancelTargetType;
+import org.picketlink.identity.federation.ws.trust.ClaimsType;
 import org.picketlink.identity.federation.ws.trust.RenewTargetType;
 import org.picketlink.identity.federation.ws.trust.StatusType;
 import org.picketlink.identity.federation.ws.trust.ValidateTargetType;
@@ -50,10 +52,12 @@ import javax.xml.ws.Service;
 import javax.xml.ws.Service.Mode;
 import javax.xml.ws.soap.SOAPBinding;
 
-import java.io.InputStream;
 import java.net.URI;
 import java.security.Principal;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Map;
+import java.util.concurrent.Callable;
 
 /**
  * WS-Trust Client
@@ -67,6 +71,10 @@ public class STSClient implements STSClientConfigKeyProvider {
 
     private final ThreadLocal<Dispatch<Source>> dispatchLocal = new InheritableThreadLocal<Dispatch<Source>>();
 
+    // Dispatch created from the configuration, used by threads which did not set their own. Lets a pooled client be
+    // borrowed by a thread other than the one which created it.
+    private volatile Dispatch<Source> configuredDispatch;
+
     private final String targetNS = "http://org.picketlink.trust/sts/";
 
     private String wsaIssuerAddress;
@@ -83,6 +91,12 @@ public class STSClient implements STSClientConfigKeyProvider {
 
     private String userName;
 
+    private String password;
+
+    private volatile IssuedTokenCache issuedTokenCache;
+
+    private volatile ValidatedTokenCache validatedTokenCache;
+
     /**
      * Indicates whether the request is a batch request - will be read from the {@link STSClientConfig}
      */
@@ -114,6 +128,7 @@ public class STSClient implements STSClientConfigKeyProvider {
         this.portName = config.getPortName();
         this.endPointAddress = config.getEndPointAddress();
         this.userName = config.getUsername();
+        this.password = config.getPassword();
 
         QName service = new QName(targetNS, this.serviceName);
         QName portName = new QName(targetNS, this.portName);
@@ -136,7 +151,7 @@ public class STSClient implements STSClientConfigKeyProvider {
             reqContext.put(BindingProvider.USERNAME_PROPERTY, config.getUsername());
             reqContext.put(BindingProvider.PASSWORD_PROPERTY, config.getPassword());
         }
-        setDispatch(dispatch);
+        this.configuredDispatch = dispatch;
     }
 
     /**
@@ -294,10 +309,170 @@ public class STSClient implements STSClientConfigKeyProvider {
         if (request.getContext() == null)
             request.setContext("default-context");
 
+        IssuedTokenCache cache = this.issuedTokenCache;
+        String key = cache != null ? getIssuedTokenCacheKey(request) : null;
+
+        if (key == null) {
+            return invokeIssue(request);
+        }
+
+        final RequestSecurityToken cachedRequest = request;
+
+        return cache.getToken(key, new Callable<Element>() {
+            public Element call() throws Exception {
+                return invokeIssue(cachedRequest);
+            }
+        });
+    }
+
+    private Element invokeIssue(RequestSecurityToken request) throws WSTrustException {
         validateDispatch();
         DOMSource requestSource = this.createSourceFromRequest(request);
-        Source response = dispatchLocal.get().invoke(requestSource);
+        Source response = getDispatch().invoke(requestSource);
+
+        NodeList nodes = getRequestedSecurityTokens(response);
+
+        Node rstr = nodes.item(0);
+        if (rstr == null)
+            throw new WSTrustException(logger.nullValueError("RSTR in the payload"));
+
+        return (Element) rstr.getFirstChild();
+    }
+
+    /**
+     * Returns the key of the token issued for the given request in the {@link IssuedTokenCache}, or null if the token
+     * must not be cached. Only plain issue requests, without keys, lifetime or delegation, are cached.
+     */
+    private String getIssuedTokenCacheKey(RequestSecurityToken request) throws WSTrustException {
+        String requestType = request.getRequestType().toString();
+
+        if (!WSTrustConstants.ISSUE_REQUEST.equals(requestType) && !WSTrustConstants.BATCH_ISSUE_REQUEST.equals(requestType))
+            return null;
+
+        if (request.getEntropy() != null || request.getUseKey() != null || request.getLifetime() != null
+            || request.getDelegateTo() != null || request.getRenewing() != null || request.getProofEncryption() != null
+            || request.getBinaryToken() != null || request.getKeyType() != null)
+            return null;
+
+        // the token is issued to the credentials of the dispatch, which may have been set after the client was created
+        Dispatch<Source> dispatch = getDispatch();
+        Map<String, Object> requestContext = dispatch != null ? dispatch.getRequestContext() : null;
+
+        if (requestContext == null)
+            return null;
+
+        StringBuilder key = new StringBuilder(STSClientConfig.computeSTSClientConfigKey(STSClientConfig.SUBSTITUTE_MODULE,
+            serviceName, portName, endPointAddress, (String) requestContext.get(BindingProvider.USERNAME_PROPERTY),
+            (String) requestContext.get(BindingProvider.PASSWORD_PROPERTY)));
+
+        key.append('|').append(request.getAppliesTo() != null ? WSTrustUtil.parseAppliesTo(request.getAppliesTo()) : null);
+        key.append('|').append(request.getTokenType());
+
+        if (request.getOnBehalfOf() != null) {
+            Principal principal = WSTrustUtil.getOnBehalfOfPrincipal(request.getOnBehalfOf());
+
+            if (principal == null)
+                return null;
+
+            key.append('|').append(principal.getName());
+        }
+
+        ClaimsType claims = request.getClaims();
+
+        if (claims != null) {
+            key.append('|').append(claims.getDialect());
+
+            for (Object claim : claims.getAny()) {
+                try {
+                    key.append('|').append(claim instanceof Node ? DocumentUtil.getNodeAsString((Node) claim) : claim);
+                } catch (Exception e) {
+                    throw new WSTrustException(e.getMessage(), e);
+                }
+            }
+        }
+
+        return key.toString();
+    }
+
+    /**
+     * <p>
+     * Issues several tokens with a single {@code RequestSecurityTokenCollection}, so that only one round trip to the STS
+     * is needed.
+     * </p>
+     *
+     * @param requests the token requests.
+     *
+     * @return the issued tokens, in the order of the requests.
+     *
+     * @throws WSTrustException if an error occurs while issuing the tokens.
+     */
+    public List<Element> issueTokens(List<RequestSecurityToken> requests) throws WSTrustException {
+        if (requests == null || requests.isEmpty())
+            throw logger.nullArgumentError("requests");
+
+        RequestSecurityTokenCollection collection = new RequestSecurityTokenCollection();
+
+        for (RequestSecurityToken request : requests) {
+            if (request.getRequestType() == null) {
+                if (isBatch)
+                    request.setRequestType(URI.create(WSTrustConstants.BATCH_ISSUE_REQUEST));
+                else
+                    request.setRequestType(URI.create(WSTrustConstants.ISSUE_REQUEST));
+            }
+
+            if (request.getContext() == null)
+                request.setContext("default-context");
+
+            collection.addRequestSecurityToken(request);
+        }
+
+        validateDispatch();
+        DOMSource requestSource = this.createSourceFromRequest(collection);
+        Source response = getDispatch().invoke(requestSource);
+
+        NodeList nodes = getRequestedSecurityTokens(response);
+
+        if (nodes.getLength() != requests.size())
+            throw new WSTrustException(logger.nullValueError("RSTR for each request in the payload"));
+
+        List<Element> tokens = new ArrayList<Element>(nodes.getLength());
+
+        for (int i = 0; i < nodes.getLength(); i++) {
+            tokens.add((Element) nodes.item(i).getFirstChild());
+        }
+
+        return tokens;
+    }
 
+    /**
+     * Issues a Security Token for each of the specified endpoints, with a single request to the STS.
+     *
+     * @param endpointURIs - The ultimate recipients of the tokens. Each one will be set as the AppliesTo of a
+     * RequestSecurityToken.
+     *
+     * @return the issued tokens, in the order of the endpoints.
+     *
+     * @throws WSTrustException
+     */
+    public List<Element> issueTokensForEndpoints(List<String> endpointURIs) throws WSTrustException {
+        if (endpointURIs == null)
+            throw logger.nullArgumentError("endpointURIs");
+
+        List<RequestSecurityToken> requests = new ArrayList<RequestSecurityToken>();
+
+        for (String endpointURI : endpointURIs) {
+            RequestSecurityToken request = new RequestSecurityToken();
+            if (wsaIssuerAddress != null) {
+                request.setIssuer(WSTrustUtil.createIssuer(wsaIssuerAddress));
+            }
+            setAppliesTo(endpointURI, request);
+            requests.add(request);
+        }
+
+        return issueTokens(requests);
+    }
+
+    private NodeList getRequestedSecurityTokens(Source response) throws WSTrustException {
         NodeList nodes;
         try {
             Node documentNode = DocumentUtil.getNodeFromSource(response);
@@ -325,11 +500,7 @@ public class STSClient implements STSClientConfigKeyProvider {
         if (nodes == null)
             throw new WSTrustException(logger.nullValueError("NodeList"));
 
-        Node rstr = nodes.item(0);
-        if (rstr == null)
-            throw new WSTrustException(logger.nullValueError("RSTR in the payload"));
-
-        return (Element) rstr.getFirstChild();
+        return nodes;
     }
 
     /**
@@ -355,7 +526,7 @@ public class STSClient implements STSClientConfigKeyProvider {
 
         // send the token request to JBoss STS and get the response.
         DOMSource requestSource = this.createSourceFromRequest(request);
-        Source response = dispatchLocal.get().invoke(requestSource);
+        Source response = getDispatch().invoke(requestSource);
         NodeList nodes;
         try {
             Node documentNode = DocumentUtil.getNodeFromSource(response);
@@ -397,6 +568,38 @@ public class STSClient implements STSClientConfigKeyProvider {
      * @throws WSTrustException
      */
     public boolean validateToken(Element token) throws WSTrustException {
+        ValidatedTokenCache cache = this.validatedTokenCache;
+        String key = cache != null ? getValidatedTokenCacheKey(cache, token) : null;
+
+        if (key != null && cache.isValid(key)) {
+            return true;
+        }
+
+        boolean valid = invokeValidate(token);
+
+        if (valid && key != null) {
+            cache.put(key, token);
+        }
+
+        return valid;
+    }
+
+    /**
+     * Returns the key of the given token in the {@link ValidatedTokenCache}, which includes the credentials of the
+     * dispatch, or null if the token must not be cached.
+     */
+    private String getValidatedTokenCacheKey(ValidatedTokenCache cache, Element token) {
+        Dispatch<Source> dispatch = getDispatch();
+        Map<String, Object> requestContext = dispatch != null ? dispatch.getRequestContext() : null;
+
+        if (requestContext == null)
+            return null;
+
+        return cache.getKey(this.endPointAddress, (String) requestContext.get(BindingProvider.USERNAME_PROPERTY),
+            (String) requestContext.get(BindingProvider.PASSWORD_PROPERTY), token);
+    }
+
+    private boolean invokeValidate(Element token) throws WSTrustException {
         validateDispatch();
         RequestSecurityToken request = new RequestSecurityToken();
         request.setContext("context");
@@ -409,12 +612,11 @@ public class STSClient implements STSClientConfigKeyProvider {
 
         DOMSource requestSource = this.createSourceFromRequest(request);
 
-        Source response = dispatchLocal.get().invoke(requestSource);
+        Source response = getDispatch().invoke(requestSource);
 
         try {
-            InputStream stream = DocumentUtil.getNodeAsStream(DocumentUtil.getNodeFromSource(response));
             RequestSecurityTokenResponseCollection responseCollection = (RequestSecurityTokenResponseCollection) new WSTrustParser()
-                    .parse(stream);
+                    .parse(DocumentUtil.getNodeFromSource(response));
             RequestSecurityTokenResponse tokenResponse = responseCollection.getRequestSecurityTokenResponses().get(0);
 
             StatusType status = tokenResponse.getStatus();
@@ -450,28 +652,62 @@ public class STSClient implements STSClientConfigKeyProvider {
         request.setContext("context");
 
         DOMSource requestSource = this.createSourceFromRequest(request);
-        Source response = dispatchLocal.get().invoke(requestSource);
+        Source response = getDispatch().invoke(requestSource);
         // get the WS-Trust response and check for presence of the RequestTokenCanceled element.
         try {
-            InputStream stream = DocumentUtil.getNodeAsStream(DocumentUtil.getNodeFromSource(response));
             RequestSecurityTokenResponseCollection responseCollection = (RequestSecurityTokenResponseCollection) new WSTrustParser()
-                    .parse(stream);
+                    .parse(DocumentUtil.getNodeFromSource(response));
             RequestSecurityTokenResponse tokenResponse = responseCollection.getRequestSecurityTokenResponses().get(0);
-            if (tokenResponse.getRequestedTokenCancelled() != null)
+            if (tokenResponse.getRequestedTokenCancelled() != null) {
+                if (this.validatedTokenCache != null)
+                    this.validatedTokenCache.invalidate(securityToken);
                 return true;
+            }
             return false;
         } catch (Exception e) {
             throw new WSTrustException(logger.parserError(e));
         }
     }
 
+    /**
+     * Enables the reuse of issued tokens until they expire. The same cache can be shared by several clients.
+     *
+     * @param issuedTokenCache the cache, or null to always request a new token from the STS.
+     */
+    public void setIssuedTokenCache(IssuedTokenCache issuedTokenCache) {
+        this.issuedTokenCache = issuedTokenCache;
+    }
+
+    public IssuedTokenCache getIssuedTokenCache() {
+        return this.issuedTokenCache;
+    }
+
+    /**
+     * Enables the reuse of the result of previous validations of the same token.
+     *
+     * @param validatedTokenCache the cache, or null to always ask the STS to validate tokens.
+     */
+    public void setValidatedTokenCache(ValidatedTokenCache validatedTokenCache) {
+        this.validatedTokenCache = validatedTokenCache;
+    }
+
+    public ValidatedTokenCache getValidatedTokenCache() {
+        return this.validatedTokenCache;
+    }
+
     /**
      * Get the dispatch object
      *
      * @return
      */
     public Dispatch<Source> getDispatch() {
-        return dispatchLocal.get();
+        Dispatch<Source> dispatch = dispatchLocal.get();
+
+        if (dispatch == null) {
+            dispatch = this.configuredDispatch;
+        }
+
+        return dispatch;
     }
 
     private DOMSource createSourceFromRequest(RequestSecurityToken request) throws WSTrustException {
@@ -485,6 +721,17 @@ public class STSClient implements STSClientConfigKeyProvider {
         }
     }
 
+    private DOMSource createSourceFromRequest(RequestSecurityTokenCollection collection) throws WSTrustException {
+        try {
+            DOMResult result = new DOMResult(DocumentUtil.createDocument());
+            WSTrustRequestWriter writer = new WSTrustRequestWriter(result);
+            writer.write(collection);
+            return new DOMSource(result.getNode());
+        } catch (Exception e) {
+            throw new WSTrustException(logger.processingError(e));
+        }
+    }
+
     /**
      * Validate that we have a {@code Dispatch} to work with
      */
@@ -503,6 +750,7 @@ public class STSClient implements STSClientConfigKeyProvider {
 
     @Override
     public String getSTSClientConfigKey() {
-        return STSClientConfig.computeSTSClientConfigKey(STSClientConfig.SUBSTITUTE_MODULE, serviceName, portName, endPointAddress, userName);
+        return STSClientConfig.computeSTSClientConfigKey(STSClientConfig.SUBSTITUTE_MODULE, serviceName, portName, endPointAddress, userName,
+            password);
     }
 }
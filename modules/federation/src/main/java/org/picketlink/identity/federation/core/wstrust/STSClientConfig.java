@@ -89,6 +89,8 @@ public class STSClientConfig implements STSClientConfigKeyProvider {
 
     public static final String IS_BATCH = "isBatch";
 
+    public static final String VALIDATED_TOKEN_CACHE = "validatedTokenCache";
+
     public static final String REQUEST_TYPE = "requestType";
 
     public static final String SOAP_BINDING = "soapBinding";
@@ -113,6 +115,8 @@ public class STSClientConfig implements STSClientConfigKeyProvider {
 
     private boolean isBatch = false; // Is the RST a batch request?
 
+    private boolean validatedTokenCache = false; // Are validated tokens remembered?
+
     private final String requestType;
 
     private final String soapBinding;
@@ -124,6 +128,7 @@ public class STSClientConfig implements STSClientConfigKeyProvider {
         username = builder.username;
         password = builder.password;
         isBatch = builder.isBatch;
+        validatedTokenCache = builder.validatedTokenCache;
         wsaIssuer = builder.wsaIssuer;
         wspAppliesTo = builder.wspAppliesTo;
         requestType = builder.requestType;
@@ -162,6 +167,10 @@ public class STSClientConfig implements STSClientConfigKeyProvider {
         return isBatch;
     }
 
+    public boolean isValidatedTokenCache() {
+        return validatedTokenCache;
+    }
+
     public String getRequestType() {
         return requestType;
     }
@@ -193,6 +202,8 @@ public class STSClientConfig implements STSClientConfigKeyProvider {
 
         private boolean isBatch;
 
+        private boolean validatedTokenCache;
+
         // default to Issue, but could be also Validate (including the base of the namespace URI)
         private String requestType = WSTrustConstants.ISSUE_REQUEST;
 
@@ -273,6 +284,14 @@ public class STSClientConfig implements STSClientConfigKeyProvider {
             this.isBatch = isBatch;
         }
 
+        public boolean isValidatedTokenCache() {
+            return validatedTokenCache;
+        }
+
+        public void setValidatedTokenCache(boolean validatedTokenCache) {
+            this.validatedTokenCache = validatedTokenCache;
+        }
+
         public STSClientConfig build() {
             validate(this);
             return new STSClientConfig(this);
@@ -298,6 +317,7 @@ public class STSClientConfig implements STSClientConfigKeyProvider {
                 this.wspAppliesTo = properties.getProperty(WSP_APPLIES_TO);
                 String batchStr = properties.getProperty(IS_BATCH);
                 this.isBatch = StringUtil.isNotNull(batchStr) ? Boolean.parseBoolean(batchStr) : false;
+                this.validatedTokenCache = Boolean.parseBoolean(properties.getProperty(VALIDATED_TOKEN_CACHE));
                 this.requestType = properties.getProperty(REQUEST_TYPE);
 
                 if (!StringUtil.isNullOrEmpty(properties.getProperty(SOAP_BINDING))) {
@@ -381,7 +401,18 @@ public class STSClientConfig implements STSClientConfigKeyProvider {
 
     @Override
     public String getSTSClientConfigKey() {
-        return computeSTSClientConfigKey(SUBSTITUTE_MODULE, this.serviceName, this.portName, this.endpointAddress, this.getUsername());
+        return computeSTSClientConfigKey(SUBSTITUTE_MODULE, this.serviceName, this.portName, this.endpointAddress,
+            this.getUsername(), this.getPassword());
+    }
+
+    /**
+     * Computes the key of a configuration including its credentials, so that a client created with a password is never
+     * handed out to a caller using another one. Only a digest of the password is part of the key.
+     */
+    public static String computeSTSClientConfigKey(String module, String serviceName, String portName, String endPointAddress,
+                                                   String userName, String password) {
+        return computeSTSClientConfigKey(module, serviceName, portName, endPointAddress, userName) + "|"
+            + StringUtil.getPasswordDigest(password);
     }
 
     public static String computeSTSClientConfigKey(String module, String serviceName, String portName, String endPointAddress, String userName) {
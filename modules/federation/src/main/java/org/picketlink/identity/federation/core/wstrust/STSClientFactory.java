@@ -27,14 +27,35 @@ package org.picketlink.identity.federation.core.wstrust;
  */
 public final class STSClientFactory {
 
-    private static STSClientPool stsClientPool;
+    private static volatile STSClientPool stsClientPool;
 
+    /**
+     * Returns the {@link STSClientPool} in use, creating a {@link DefaultSTSClientPool} if none was set.
+     *
+     * @return STSClientPool
+     */
     public static STSClientPool getInstance() {
-        return stsClientPool;
-    }
+        STSClientPool pool = stsClientPool;
+
+        if (pool == null) {
+            synchronized (STSClientFactory.class) {
+                if (stsClientPool == null) {
+                    stsClientPool = new DefaultSTSClientPool();
+                }
 
+                pool = stsClientPool;
+            }
+        }
 
-    public static void setInstance(STSClientPool clientPool) {
+        return pool;
+    }
+
+    /**
+     * Sets the {@link STSClientPool} to use. It is ignored once a pool is in use.
+     *
+     * @param clientPool
+     */
+    public static synchronized void setInstance(STSClientPool clientPool) {
         if (stsClientPool == null) {
             stsClientPool = clientPool;
         }
@@ -17,6 +17,9 @@
  */
 package org.picketlink.identity.federation.core.wstrust;
 
+import org.jboss.security.SecurityContext;
+import org.jboss.security.SecurityContextAssociation;
+
 import java.net.URL;
 import java.security.AccessController;
 import java.security.PrivilegedAction;
@@ -142,4 +145,110 @@ class SecurityActions {
         }
     }
 
-}
\ No newline at end of file
+    /**
+     * Get the Thread Context ClassLoader
+     *
+     * @return
+     */
+    static ClassLoader getTCCL() {
+        if (System.getSecurityManager() != null) {
+            return AccessController.doPrivileged(new PrivilegedAction<ClassLoader>() {
+                public ClassLoader run() {
+                    return Thread.currentThread().getContextClassLoader();
+                }
+            });
+        } else {
+            return Thread.currentThread().getContextClassLoader();
+        }
+    }
+
+    /**
+     * Set the Thread Context ClassLoader
+     *
+     * @param paramCl
+     */
+    static void setTCCL(final ClassLoader paramCl) {
+        if (System.getSecurityManager() != null) {
+            AccessController.doPrivileged(new PrivilegedAction<Void>() {
+                public Void run() {
+                    Thread.currentThread().setContextClassLoader(paramCl);
+                    return null;
+                }
+            });
+        } else {
+            Thread.currentThread().setContextClassLoader(paramCl);
+        }
+    }
+
+    /**
+     * Indicates if the PicketBox security context association is available. PicketBox is an optional dependency, so the
+     * security context is only propagated when it is on the classpath.
+     *
+     * @return
+     */
+    static boolean isSecurityContextAvailable() {
+        return SecurityContextHolder.AVAILABLE;
+    }
+
+    /**
+     * Get the current security context on the association
+     *
+     * @return
+     */
+    static SecurityContext getSecurityContext() {
+        if (System.getSecurityManager() != null) {
+            return AccessController.doPrivileged(new PrivilegedAction<SecurityContext>() {
+                public SecurityContext run() {
+                    return SecurityContextAssociation.getSecurityContext();
+                }
+            });
+        } else {
+            return SecurityContextAssociation.getSecurityContext();
+        }
+    }
+
+    /**
+     * Set the security context on the association, or clear it if {@code securityContext} is null
+     *
+     * @param securityContext
+     */
+    static void setSecurityContext(final SecurityContext securityContext) {
+        if (System.getSecurityManager() != null) {
+            AccessController.doPrivileged(new PrivilegedAction<Void>() {
+                public Void run() {
+                    setSecurityContextAssociation(securityContext);
+                    return null;
+                }
+            });
+        } else {
+            setSecurityContextAssociation(securityContext);
+        }
+    }
+
+    private static void setSecurityContextAssociation(SecurityContext securityContext) {
+        if (securityContext == null) {
+            SecurityContextAssociation.clearSecurityContext();
+        } else {
+            SecurityContextAssociation.setSecurityContext(securityContext);
+        }
+    }
+
+    /**
+     * Checks the availability of PicketBox once, when it is first needed.
+     */
+    private static class SecurityContextHolder {
+
+        private static final boolean AVAILABLE = isAvailable();
+
+        private static boolean isAvailable() {
+            try {
+                Class.forName("org.jboss.security.SecurityContextAssociation", false, SecurityActions.class.getClassLoader());
+                return true;
+            } catch (ClassNotFoundException e) {
+                return false;
+            } catch (LinkageError e) {
+                return false;
+            }
+        }
+    }
+}
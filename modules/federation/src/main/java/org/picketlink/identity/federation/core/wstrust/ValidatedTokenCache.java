@@ -0,0 +1,365 @@
+/*
+ * JBoss, Home of Professional Open Source
+ *
+ * Copyright 2013 Red Hat, Inc. and/or its affiliates.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.picketlink.identity.federation.core.wstrust;
+
+import org.apache.xml.security.c14n.Canonicalizer;
+import org.picketlink.common.PicketLinkLogger;
+import org.picketlink.common.PicketLinkLoggerFactory;
+import org.picketlink.common.util.Base64;
+import org.picketlink.identity.federation.core.saml.v2.util.XMLTimeUtil;
+import org.w3c.dom.Element;
+import org.w3c.dom.Node;
+
+import java.io.UnsupportedEncodingException;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * <p>
+ * Remembers the tokens an STS has found valid, so that {@link STSClient#validateToken(Element)} does not call the STS
+ * again for a token it has already validated. Enabled with the {@code validatedTokenCache} option of the
+ * {@link STSClientConfig}.
+ * </p>
+ * <p>
+ * Tokens are identified by a SHA-256 digest of their exclusive canonical form, of the STS endpoint which validated
+ * them and of the credentials the client used, so that a token validated for a caller is not trusted for another one.
+ * A token is remembered until the {@code NotOnOrAfter} instant of its {@code Conditions}; tokens without one are not
+ * cached. Once the cache holds {@link #getMaxEntries()} tokens, the oldest ones are dropped to make room for the new
+ * ones. Tokens canceled by the STS are removed with {@link #invalidate(String)}.
+ * </p>
+ */
+public class ValidatedTokenCache {
+
+    private static final PicketLinkLogger logger = PicketLinkLoggerFactory.getLogger();
+
+    public static final int DEFAULT_MAX_ENTRIES = 10000;
+
+    private static final ValidatedTokenCache instance = new ValidatedTokenCache();
+
+    static {
+        org.apache.xml.security.Init.init();
+    }
+
+    private final ConcurrentMap<String, ValidatedToken> tokens = new ConcurrentHashMap<String, ValidatedToken>();
+
+    // the keys of the tokens, by token id
+    private final ConcurrentMap<String, Set<String>> keysByTokenId = new ConcurrentHashMap<String, Set<String>>();
+
+    // the tokens in the order they were added, oldest first. Tokens removed from the cache are dropped when they come
+    // first, so the queue may be a little longer than the cache
+    private final Queue<ValidatedToken> insertionOrder = new ConcurrentLinkedQueue<ValidatedToken>();
+
+    private final AtomicInteger insertionOrderSize = new AtomicInteger();
+
+    private final AtomicLong hitCount = new AtomicLong();
+
+    private volatile int maxEntries = DEFAULT_MAX_ENTRIES;
+
+    /**
+     * Returns the cache shared by the clients which enable it in their configuration.
+     */
+    public static ValidatedTokenCache getInstance() {
+        return instance;
+    }
+
+    /**
+     * Computes the key identifying the given token validated by the given STS for the given credentials. Only a digest
+     * of the password is part of the key.
+     *
+     * @param endpointAddress the address of the STS validating the token.
+     * @param username the user name the client authenticates with, may be null.
+     * @param password the password the client authenticates with, may be null.
+     * @param token the token.
+     *
+     * @return the key, or null if the token cannot be canonicalized.
+     */
+    public String getKey(String endpointAddress, String username, String password, Element token) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+
+            update(digest, endpointAddress);
+            update(digest, username);
+            update(digest, password);
+            digest.update(Canonicalizer.getInstance(Canonicalizer.ALGO_ID_C14N_EXCL_OMIT_COMMENTS).canonicalizeSubtree(token));
+
+            return Base64.encodeBytes(digest.digest());
+        } catch (Exception e) {
+            logger.trace("Could not compute the key of the token " + token.getLocalName(), e);
+            return null;
+        }
+    }
+
+    /**
+     * Checks whether the token with the given key was validated and has not expired or been invalidated since.
+     */
+    public boolean isValid(String key) {
+        ValidatedToken validatedToken = this.tokens.get(key);
+
+        if (validatedToken == null) {
+            return false;
+        }
+
+        if (validatedToken.notOnOrAfter <= System.currentTimeMillis()) {
+            remove(validatedToken);
+            return false;
+        }
+
+        this.hitCount.incrementAndGet();
+
+        return true;
+    }
+
+    /**
+     * Remembers that the given token was found valid.
+     *
+     * @param key the key of the token, as computed by {@link #getKey(String, String, String, Element)}.
+     * @param token the token.
+     */
+    public void put(String key, Element token) {
+        long now = System.currentTimeMillis();
+        long notOnOrAfter = getNotOnOrAfter(token);
+
+        if (notOnOrAfter <= now) {
+            return;
+        }
+
+        ValidatedToken validatedToken = new ValidatedToken(key, getTokenId(token), notOnOrAfter);
+
+        removeOldest(now);
+        index(validatedToken);
+
+        ValidatedToken previous = this.tokens.put(key, validatedToken);
+
+        if (previous != null) {
+            unindex(previous);
+        }
+
+        this.insertionOrder.offer(validatedToken);
+        this.insertionOrderSize.incrementAndGet();
+    }
+
+    /**
+     * Removes the token with the given id, so that it is validated by the STS again. Called when the token is canceled.
+     *
+     * @param tokenId the {@code ID} or {@code AssertionID} of the token.
+     */
+    public void invalidate(String tokenId) {
+        if (tokenId == null) {
+            return;
+        }
+
+        Set<String> keys = this.keysByTokenId.get(tokenId);
+
+        if (keys == null) {
+            return;
+        }
+
+        List<String> removedKeys;
+
+        synchronized (keys) {
+            removedKeys = new ArrayList<String>(keys);
+            keys.clear();
+            this.keysByTokenId.remove(tokenId, keys);
+        }
+
+        for (String key : removedKeys) {
+            this.tokens.remove(key);
+        }
+    }
+
+    /**
+     * Removes the given token, so that it is validated by the STS again.
+     */
+    public void invalidate(Element token) {
+        invalidate(getTokenId(token));
+    }
+
+    /**
+     * Removes all the tokens.
+     */
+    public void clear() {
+        this.tokens.clear();
+        this.keysByTokenId.clear();
+    }
+
+    public int size() {
+        return this.tokens.size();
+    }
+
+    /**
+     * Returns the number of validations answered without calling the STS.
+     */
+    public long getHitCount() {
+        return this.hitCount.get();
+    }
+
+    public int getMaxEntries() {
+        return this.maxEntries;
+    }
+
+    public void setMaxEntries(int maxEntries) {
+        this.maxEntries = maxEntries;
+    }
+
+    /**
+     * Drops the tokens already removed from the cache or expired at the head of the insertion order, then the oldest
+     * tokens until there is room for a new one.
+     */
+    private void removeOldest(long now) {
+        ValidatedToken oldest;
+
+        while ((oldest = this.insertionOrder.peek()) != null) {
+            boolean stale = this.tokens.get(oldest.key) != oldest || oldest.notOnOrAfter <= now;
+
+            if (!stale && this.insertionOrderSize.get() < this.maxEntries) {
+                return;
+            }
+
+            // another thread may have taken the oldest token meanwhile, the next one is then the oldest
+            oldest = this.insertionOrder.poll();
+
+            if (oldest != null) {
+                this.insertionOrderSize.decrementAndGet();
+                remove(oldest);
+            }
+        }
+    }
+
+    private void remove(ValidatedToken validatedToken) {
+        if (this.tokens.remove(validatedToken.key, validatedToken)) {
+            unindex(validatedToken);
+        }
+    }
+
+    private void index(ValidatedToken validatedToken) {
+        if (validatedToken.tokenId == null) {
+            return;
+        }
+
+        while (true) {
+            Set<String> keys = this.keysByTokenId.get(validatedToken.tokenId);
+
+            if (keys == null) {
+                keys = new HashSet<String>();
+
+                Set<String> existing = this.keysByTokenId.putIfAbsent(validatedToken.tokenId, keys);
+
+                if (existing != null) {
+                    keys = existing;
+                }
+            }
+
+            synchronized (keys) {
+                // the set is removed from the index once it is empty, another one is then needed
+                if (this.keysByTokenId.get(validatedToken.tokenId) == keys) {
+                    keys.add(validatedToken.key);
+                    return;
+                }
+            }
+        }
+    }
+
+    private void unindex(ValidatedToken validatedToken) {
+        if (validatedToken.tokenId == null) {
+            return;
+        }
+
+        Set<String> keys = this.keysByTokenId.get(validatedToken.tokenId);
+
+        if (keys != null) {
+            synchronized (keys) {
+                // the key may have been indexed again for a newer entry
+                if (this.tokens.get(validatedToken.key) == null) {
+                    keys.remove(validatedToken.key);
+                }
+
+                if (keys.isEmpty()) {
+                    this.keysByTokenId.remove(validatedToken.tokenId, keys);
+                }
+            }
+        }
+    }
+
+    private static void update(MessageDigest digest, String value) throws UnsupportedEncodingException {
+        if (value != null) {
+            digest.update(value.getBytes("UTF-8"));
+        }
+
+        digest.update((byte) 0);
+    }
+
+    private static String getTokenId(Element token) {
+        if (token.hasAttribute("ID")) {
+            return token.getAttribute("ID");
+        }
+
+        if (token.hasAttribute("AssertionID")) {
+            return token.getAttribute("AssertionID");
+        }
+
+        return null;
+    }
+
+    /**
+     * Returns the {@code NotOnOrAfter} instant of the token conditions, in milliseconds, or 0 if there is none.
+     */
+    private static long getNotOnOrAfter(Element token) {
+        for (Node child = token.getFirstChild(); child != null; child = child.getNextSibling()) {
+            if (child.getNodeType() == Node.ELEMENT_NODE && "Conditions".equals(child.getLocalName())) {
+                Element conditions = (Element) child;
+
+                if (!conditions.hasAttribute("NotOnOrAfter")) {
+                    return 0;
+                }
+
+                try {
+                    return XMLTimeUtil.parseTimeInMillis(conditions.getAttribute("NotOnOrAfter").trim());
+                } catch (Exception e) {
+                    logger.trace("Could not parse the token NotOnOrAfter", e);
+                    return 0;
+                }
+            }
+        }
+
+        return 0;
+    }
+
+    private static class ValidatedToken {
+
+        private final String key;
+
+        private final String tokenId;
+
+        private final long notOnOrAfter;
+
+        ValidatedToken(String key, String tokenId, long notOnOrAfter) {
+            this.key = key;
+            this.tokenId = tokenId;
+            this.notOnOrAfter = notOnOrAfter;
+        }
+    }
+}
@@ -26,6 +26,7 @@ import org.picketlink.common.PicketLinkLoggerFactory;
 import org.picketlink.common.constants.WSTrustConstants;
 import org.picketlink.common.exceptions.ParsingException;
 import org.picketlink.common.exceptions.fed.WSTrustException;
+import org.picketlink.common.random.RandomGenerator;
 import org.picketlink.common.util.Base64;
 import org.picketlink.common.util.DocumentUtil;
 import org.picketlink.common.util.StaxParserUtil;
@@ -69,7 +70,6 @@ import java.security.InvalidKeyException;
 import java.security.NoSuchAlgorithmException;
 import java.security.Principal;
 import java.security.PublicKey;
-import java.security.SecureRandom;
 import java.security.cert.Certificate;
 import java.security.cert.X509Certificate;
 import java.util.GregorianCalendar;
@@ -369,10 +369,7 @@ public class WSTrustUtil {
      * @return a {@code byte[]} containing the generated secret.
      */
     public static byte[] createRandomSecret(final int size) {
-        SecureRandom random = new SecureRandom();
-        byte[] secret = new byte[size];
-        random.nextBytes(secret);
-        return secret;
+        return RandomGenerator.getInstance().generateBytes(size);
     }
 
     /**
@@ -40,6 +40,7 @@ import org.picketlink.identity.federation.core.wstrust.STSClientConfig;
 import org.picketlink.identity.federation.core.wstrust.STSClientFactory;
 import org.picketlink.identity.federation.core.wstrust.STSClientConfig.Builder;
 import org.picketlink.identity.federation.core.wstrust.STSClientPool;
+import org.picketlink.identity.federation.core.wstrust.ValidatedTokenCache;
 import org.picketlink.identity.federation.core.wstrust.SamlCredential;
 import org.picketlink.identity.federation.core.wstrust.plugins.saml.SAMLUtil;
 import org.picketlink.identity.federation.saml.v2.assertion.AssertionType;
@@ -244,6 +245,11 @@ public abstract class AbstractSTSLoginModule implements LoginModule {
      */
     public static final String IS_BATCH = "isBatch";
 
+    /**
+     * Key to specify whether tokens found valid are remembered until they expire
+     */
+    public static final String VALIDATED_TOKEN_CACHE = "validatedTokenCache";
+
     /**
      * Paramater name.
      */
@@ -314,6 +320,11 @@ public abstract class AbstractSTSLoginModule implements LoginModule {
      */
     protected boolean isBatch = false;
 
+    /**
+     * Value to indicate whether tokens validated by the STS are remembered
+     */
+    protected boolean validatedTokenCache = false;
+
     /**
      * Number of clients initialized for in case pool is out of free clients. 0 = pooling is disabled.
      */
@@ -365,6 +376,11 @@ public abstract class AbstractSTSLoginModule implements LoginModule {
             this.isBatch = Boolean.parseBoolean(batchIssueString);
         }
 
+        String validatedTokenCacheString = (String) options.get(VALIDATED_TOKEN_CACHE);
+        if (StringUtil.isNotNull(validatedTokenCacheString)) {
+            this.validatedTokenCache = Boolean.parseBoolean(validatedTokenCacheString);
+        }
+
         String initialClientsInPoolString = (String) options.get(INITIAL_CLIENTS_IN_POOL);
         if (StringUtil.isNotNull(initialClientsInPoolString)) {
             try {
@@ -466,7 +482,10 @@ public abstract class AbstractSTSLoginModule implements LoginModule {
      */
     protected Builder createBuilder() {
         if (options.containsKey(STS_CONFIG_FILE)) {
-            return new STSClientConfig.Builder(getRequiredOption(getOptions(), STS_CONFIG_FILE));
+            Builder builder = new STSClientConfig.Builder(getRequiredOption(getOptions(), STS_CONFIG_FILE));
+            if (validatedTokenCache)
+                builder.setValidatedTokenCache(true);
+            return builder;
         } else {
             Builder builder = new Builder();
             builder.endpointAddress((String) options.get(ENDPOINT_ADDRESS));
@@ -474,6 +493,7 @@ public abstract class AbstractSTSLoginModule implements LoginModule {
             builder.username((String) options.get(USERNAME_KEY)).password((String) options.get(PASSWORD_KEY));
 
             builder.setBatch(isBatch);
+            builder.setValidatedTokenCache(validatedTokenCache);
 
             String passwordString = (String) options.get(PASSWORD_KEY);
             if (passwordString != null && passwordString.startsWith(PicketLinkFederationConstants.PASS_MASK_PREFIX)) {
@@ -557,11 +577,18 @@ public abstract class AbstractSTSLoginModule implements LoginModule {
 
     protected STSClient createWSTrustClient(final STSClientConfig config) {
         try {
-            STSClientPool pool = STSClientFactory.getInstance();
+            STSClient client;
             if (initialClientsInPool > 0) {
-                pool.createPool(initialClientsInPool, config);
+                STSClientPool pool = STSClientFactory.getInstance();
+                if (pool.configExists(config) == false) {
+                    pool.createPool(initialClientsInPool, config);
+                }
+                client = pool.getClient(config);
+            } else {
+                client = new STSClient(config);
             }
-            return pool.getClient(config);
+            client.setValidatedTokenCache(config.isValidatedTokenCache() ? ValidatedTokenCache.getInstance() : null);
+            return client;
         } catch (final Exception e) {
             throw logger.authCouldNotCreateWSTrustClient(e);
         }
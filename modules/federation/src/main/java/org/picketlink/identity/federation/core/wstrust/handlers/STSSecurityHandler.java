@@ -25,6 +25,7 @@ import org.picketlink.common.exceptions.fed.WSTrustException;
 import org.picketlink.identity.federation.core.wstrust.STSClient;
 import org.picketlink.identity.federation.core.wstrust.STSClientConfig;
 import org.picketlink.identity.federation.core.wstrust.STSClientPool;
+import org.picketlink.identity.federation.core.wstrust.ValidatedTokenCache;
 import org.picketlink.identity.federation.core.wstrust.STSClientFactory;
 import org.w3c.dom.Element;
 
@@ -126,6 +127,9 @@ import static org.picketlink.common.constants.WSTrustConstants.SECURITY_TOKEN_UN
  * These will then be used when contacting the STS, overriding any such values that were parsed from the configuration
  * file.
  *
+ * Setting {@code validatedTokenCache=true} in the configuration file makes the handler remember the tokens found valid
+ * until they expire, in the {@link ValidatedTokenCache}, instead of calling the STS for each message carrying them.
+ *
  * @author <a href="mailto:dbevenius@jboss.com">Daniel Bevenius</a>
  */
 public abstract class STSSecurityHandler implements SOAPHandler<SOAPMessageContext> {
@@ -332,7 +336,9 @@ public abstract class STSSecurityHandler implements SOAPHandler<SOAPMessageConte
         if (pool.configExists(config) == false) {
             pool.createPool(config);
         }
-        return pool.getClient(config);
+        STSClient client = pool.getClient(config);
+        client.setValidatedTokenCache(config.isValidatedTokenCache() ? ValidatedTokenCache.getInstance() : null);
+        return client;
     }
 
     private boolean isOutBound(final SOAPMessageContext messageContext) {
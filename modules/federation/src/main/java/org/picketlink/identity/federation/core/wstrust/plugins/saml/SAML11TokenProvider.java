@@ -29,6 +29,7 @@ import org.picketlink.identity.federation.core.saml.v2.util.AssertionUtil;
 import org.picketlink.identity.federation.core.sts.AbstractSecurityTokenProvider;
 import org.picketlink.identity.federation.core.wstrust.SecurityToken;
 import org.picketlink.identity.federation.core.wstrust.StandardSecurityToken;
+import org.picketlink.identity.federation.core.wstrust.ValidatedTokenCache;
 import org.picketlink.identity.federation.core.wstrust.WSTrustRequestContext;
 import org.picketlink.identity.federation.core.wstrust.WSTrustUtil;
 import org.picketlink.identity.federation.core.wstrust.wrappers.Lifetime;
@@ -82,6 +83,8 @@ public class SAML11TokenProvider extends AbstractSecurityTokenProvider {
         // get the assertion ID and add it to the canceled assertions set.
         String assertionId = assertionElement.getAttribute("AssertionID");
         this.revocationRegistry.revokeToken(SAMLUtil.SAML11_TOKEN_TYPE, assertionId);
+        // tokens validated by clients running in this VM must be checked again.
+        ValidatedTokenCache.getInstance().invalidate(assertionId);
 
         String absoluteKI = this.properties.get(USE_ABSOLUTE_KEYIDENTIFIER);
         if (absoluteKI != null && "true".equalsIgnoreCase(absoluteKI)) {
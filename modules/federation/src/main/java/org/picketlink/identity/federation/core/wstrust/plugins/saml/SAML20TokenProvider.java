@@ -32,6 +32,7 @@ import org.picketlink.identity.federation.core.saml.v2.util.StatementUtil;
 import org.picketlink.identity.federation.core.sts.AbstractSecurityTokenProvider;
 import org.picketlink.identity.federation.core.wstrust.SecurityToken;
 import org.picketlink.identity.federation.core.wstrust.StandardSecurityToken;
+import org.picketlink.identity.federation.core.wstrust.ValidatedTokenCache;
 import org.picketlink.identity.federation.core.wstrust.WSTrustRequestContext;
 import org.picketlink.identity.federation.core.wstrust.WSTrustUtil;
 import org.picketlink.identity.federation.core.wstrust.wrappers.Lifetime;
@@ -127,6 +128,8 @@ public class SAML20TokenProvider extends AbstractSecurityTokenProvider implement
         // get the assertion ID and add it to the canceled assertions set.
         String assertionId = assertionElement.getAttribute("ID");
         this.revocationRegistry.revokeToken(SAMLUtil.SAML2_TOKEN_TYPE, assertionId);
+        // tokens validated by clients running in this VM must be checked again.
+        ValidatedTokenCache.getInstance().invalidate(assertionId);
     }
 
     /*
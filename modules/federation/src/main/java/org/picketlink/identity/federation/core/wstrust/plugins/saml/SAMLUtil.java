@@ -33,6 +33,7 @@ import org.picketlink.identity.federation.saml.v2.assertion.AssertionType;
 import org.w3c.dom.Document;
 import org.w3c.dom.Element;
 
+import javax.xml.transform.dom.DOMResult;
 import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
 import java.security.GeneralSecurityException;
@@ -80,14 +81,10 @@ public class SAMLUtil {
      * @throws Exception if an error occurs while marshaling the assertion.
      */
     public static Element toElement(AssertionType assertion) throws Exception {
-        ByteArrayOutputStream baos = new ByteArrayOutputStream();
-        SAMLAssertionWriter writer = new SAMLAssertionWriter(StaxUtil.getXMLStreamWriter(baos));
+        Document document = DocumentUtil.createDocument();
+        SAMLAssertionWriter writer = new SAMLAssertionWriter(new DOMResult(document));
         writer.write(assertion);
 
-        byte[] assertionBytes = baos.toByteArray();
-        ByteArrayInputStream bis = new ByteArrayInputStream(assertionBytes);
-        Document document = DocumentUtil.getDocument(bis);
-
         if (logger.isTraceEnabled()) {
             logger.samlAssertion(DocumentUtil.asString(document));
         }
@@ -135,7 +132,7 @@ public class SAMLUtil {
         SAMLParser samlParser = new SAMLParser();
 
         JAXPValidationUtil.checkSchemaValidation(assertionElement);
-        AssertionType assertion = (AssertionType) samlParser.parse(DocumentUtil.getNodeAsStream(assertionElement));
+        AssertionType assertion = (AssertionType) samlParser.parse(assertionElement);
         return assertion;
     }
 
@@ -152,6 +149,6 @@ public class SAMLUtil {
         SAMLParser samlParser = new SAMLParser();
 
         JAXPValidationUtil.checkSchemaValidation(assertionElement);
-        return (SAML11AssertionType) samlParser.parse(DocumentUtil.getNodeAsStream(assertionElement));
+        return (SAML11AssertionType) samlParser.parse(assertionElement);
     }
 }
\ No newline at end of file
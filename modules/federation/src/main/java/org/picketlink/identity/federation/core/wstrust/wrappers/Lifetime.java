@@ -60,7 +60,7 @@ public class Lifetime {
      */
     public Lifetime(GregorianCalendar created, GregorianCalendar expires) {
         try {
-            this.factory = XMLTimeUtil.newDatatypeFactory();
+            this.factory = XMLTimeUtil.getDatatypeFactory();
         } catch (DatatypeConfigurationException dce) {
             throw logger.wsTrustUnableToGetDataTypeFactory(dce);
         }
@@ -72,10 +72,10 @@ public class Lifetime {
         // set the delegate fields.
         this.delegate = new LifetimeType();
         AttributedDateTime dateTime = new AttributedDateTime();
-        dateTime.setValue(this.created.toXMLFormat());
+        dateTime.setValue(XMLTimeUtil.format(created.getTimeInMillis()));
         this.delegate.setCreated(dateTime);
         dateTime = new AttributedDateTime();
-        dateTime.setValue(this.expires.toXMLFormat());
+        dateTime.setValue(XMLTimeUtil.format(expires.getTimeInMillis()));
         this.delegate.setExpires(dateTime);
 
     }
@@ -93,7 +93,7 @@ public class Lifetime {
             throw logger.nullArgumentError("LifetimeType");
 
         try {
-            this.factory = XMLTimeUtil.newDatatypeFactory();
+            this.factory = XMLTimeUtil.getDatatypeFactory();
         } catch (DatatypeConfigurationException dce) {
             throw logger.wsTrustUnableToGetDataTypeFactory(dce);
         }
@@ -20,6 +20,7 @@ package org.picketlink.identity.federation.saml.v2.metadata;
 import org.picketlink.identity.xmlsec.w3.xmlenc.EncryptionMethodType;
 import org.w3c.dom.Element;
 
+import java.security.cert.X509Certificate;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
@@ -54,6 +55,8 @@ public class KeyDescriptorType {
 
     protected KeyTypes use;
 
+    private volatile X509Certificate certificate;
+
     /**
      * Gets the value of the keyInfo property.
      *
@@ -70,6 +73,25 @@ public class KeyDescriptorType {
      */
     public void setKeyInfo(Element value) {
         this.keyInfo = value;
+        this.certificate = null;
+    }
+
+    /**
+     * Gets the certificate already decoded from the keyInfo property, if any.
+     *
+     * @return the decoded certificate, or null if the keyInfo was not decoded yet
+     */
+    public X509Certificate getCertificate() {
+        return certificate;
+    }
+
+    /**
+     * Sets the certificate decoded from the keyInfo property, so that it is decoded only once.
+     *
+     * @param certificate
+     */
+    public void setCertificate(X509Certificate certificate) {
+        this.certificate = certificate;
     }
 
     /**
@@ -18,7 +18,15 @@
 package org.picketlink.identity.federation.web.core;
 
 /**
+ * <p>
  * A stack to register and deregister participants in the identity federation
+ * </p>
+ * <p>
+ * Implementations are called concurrently by all the requests of the IDP and must be thread safe. The whole state
+ * goes through this interface, so an implementation may keep it in a store shared by several IDP nodes. It can be
+ * configured with the <i>IdentityParticipantStack</i> attribute of the IDP configuration. Sessions are removed
+ * through {@link #removeSession(String)} when they expire.
+ * </p>
  *
  * @author Anil.Saldhana@redhat.com
  * @since Feb 25, 2011
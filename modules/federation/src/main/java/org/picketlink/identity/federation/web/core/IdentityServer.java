@@ -27,10 +27,10 @@ import javax.servlet.http.HttpSessionEvent;
 import javax.servlet.http.HttpSessionListener;
 import java.security.AccessController;
 import java.security.PrivilegedAction;
-import java.util.HashSet;
-import java.util.Set;
-import java.util.Stack;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReferenceFieldUpdater;
 
 /**
  * Represents an Identity Server
@@ -50,25 +50,44 @@ public class IdentityServer implements HttpSessionListener {
         }
     });
 
-    private static int activeSessionCount = 0;
+    // Shared by all the instances, so that the session listener and the filters report the same count
+    private static final AtomicInteger activeSessionCount = new AtomicInteger();
 
-    private IdentityParticipantStack stack = new STACK();
+    private volatile IdentityParticipantStack stack = new STACK();
 
+    /**
+     * <p>
+     * Default {@link IdentityParticipantStack}, kept in memory.
+     * </p>
+     * <p>
+     * Each session holds its participants and the participants in transit in small arrays that are replaced with a
+     * compare-and-set, so that concurrent logins and logouts neither block each other nor lose updates.
+     * </p>
+     */
     public static class STACK implements IdentityParticipantStack {
 
-        private final ConcurrentHashMap<String, Stack<String>> sessionParticipantsMap = new ConcurrentHashMap<String, Stack<String>>();
+        private static final String[] EMPTY = new String[0];
+
+        private static final AtomicReferenceFieldUpdater<ParticipantSession, String[]> PARTICIPANTS = AtomicReferenceFieldUpdater
+            .newUpdater(ParticipantSession.class, String[].class, "participants");
 
-        private final ConcurrentHashMap<String, Set<String>> inTransitMap = new ConcurrentHashMap<String, Set<String>>();
+        private static final AtomicReferenceFieldUpdater<ParticipantSession, String[]> IN_TRANSIT = AtomicReferenceFieldUpdater
+            .newUpdater(ParticipantSession.class, String[].class, "inTransit");
 
-        private final ConcurrentHashMap<String, Boolean> postBindingMap = new ConcurrentHashMap<String, Boolean>();
+        private final ConcurrentMap<String, ParticipantSession> sessions = new ConcurrentHashMap<String, ParticipantSession>();
+
+        private final ConcurrentMap<String, Boolean> postBindingMap = new ConcurrentHashMap<String, Boolean>();
 
         /**
          * @see org.picketlink.identity.federation.web.core.IdentityParticipantStack#peek(java.lang.String)
          */
         public String peek(String sessionID) {
-            Stack<String> stack = sessionParticipantsMap.get(sessionID);
-            if (stack != null)
-                return stack.peek();
+            ParticipantSession session = sessions.get(sessionID);
+            if (session != null) {
+                String[] participants = session.participants;
+                if (participants.length > 0)
+                    return participants[participants.length - 1];
+            }
             return "";
         }
 
@@ -76,12 +95,20 @@ public class IdentityServer implements HttpSessionListener {
          * @see org.picketlink.identity.federation.web.core.IdentityParticipantStack#pop(java.lang.String)
          */
         public String pop(String sessionID) {
-            String result = null;
-            Stack<String> stack = sessionParticipantsMap.get(sessionID);
-            if (stack != null && stack.isEmpty() == false) {
-                result = stack.pop();
+            ParticipantSession session = sessions.get(sessionID);
+            if (session == null)
+                return null;
+
+            while (true) {
+                String[] participants = session.participants;
+                if (participants.length == 0)
+                    return null;
+
+                String[] remaining = participants.length == 1 ? EMPTY : copyOf(participants, participants.length - 1);
+
+                if (PARTICIPANTS.compareAndSet(session, participants, remaining))
+                    return participants[participants.length - 1];
             }
-            return result;
         }
 
         /**
@@ -89,14 +116,20 @@ public class IdentityServer implements HttpSessionListener {
          *      java.lang.String, boolean)
          */
         public void register(String sessionID, String participant, boolean postBinding) {
-            Stack<String> stack = sessionParticipantsMap.get(sessionID);
-            if (stack == null) {
-                stack = new Stack<String>();
-                sessionParticipantsMap.put(sessionID, stack);
-            }
-            if (stack.contains(participant) == false) {
-                stack.push(participant);
-                postBindingMap.put(participant, Boolean.valueOf(postBinding));
+            ParticipantSession session = getOrCreateSession(sessionID);
+
+            while (true) {
+                String[] participants = session.participants;
+                if (indexOf(participants, participant) != -1)
+                    return;
+
+                String[] added = copyOf(participants, participants.length + 1);
+                added[participants.length] = participant;
+
+                if (PARTICIPANTS.compareAndSet(session, participants, added)) {
+                    postBindingMap.put(participant, Boolean.valueOf(postBinding));
+                    return;
+                }
             }
         }
 
@@ -104,9 +137,9 @@ public class IdentityServer implements HttpSessionListener {
          * @see org.picketlink.identity.federation.web.core.IdentityParticipantStack#getParticipants(java.lang.String)
          */
         public int getParticipants(String sessionID) {
-            Stack<String> stack = sessionParticipantsMap.get(sessionID);
-            if (stack != null)
-                return stack.size();
+            ParticipantSession session = sessions.get(sessionID);
+            if (session != null)
+                return session.participants.length;
 
             return 0;
         }
@@ -116,34 +149,59 @@ public class IdentityServer implements HttpSessionListener {
          *      java.lang.String)
          */
         public boolean registerTransitParticipant(String sessionID, String participant) {
-            Set<String> transitSet = inTransitMap.get(sessionID);
-            if (transitSet == null) {
-                transitSet = new HashSet<String>();
-                inTransitMap.put(sessionID, transitSet);
+            ParticipantSession session = getOrCreateSession(sessionID);
+
+            while (true) {
+                String[] inTransit = session.inTransit;
+                if (indexOf(inTransit, participant) != -1)
+                    return false;
+
+                String[] added = copyOf(inTransit, inTransit.length + 1);
+                added[inTransit.length] = participant;
+
+                if (IN_TRANSIT.compareAndSet(session, inTransit, added))
+                    return true;
             }
-            return transitSet.add(participant);
         }
 
         /**
+         * <p>
+         * The binding of the participant is kept, as the participant may still take part in other sessions.
+         * </p>
+         *
          * @see org.picketlink.identity.federation.web.core.IdentityParticipantStack#deRegisterTransitParticipant(java.lang.String,
          *      java.lang.String)
          */
         public boolean deRegisterTransitParticipant(String sessionID, String participant) {
-            Set<String> transitSet = inTransitMap.get(sessionID);
-            if (transitSet != null) {
-                postBindingMap.remove(participant);
-                return transitSet.remove(participant);
+            ParticipantSession session = sessions.get(sessionID);
+            if (session == null)
+                return false;
+
+            while (true) {
+                String[] inTransit = session.inTransit;
+                int index = indexOf(inTransit, participant);
+                if (index == -1)
+                    return false;
+
+                String[] remaining = EMPTY;
+                if (inTransit.length > 1) {
+                    remaining = new String[inTransit.length - 1];
+                    System.arraycopy(inTransit, 0, remaining, 0, index);
+                    System.arraycopy(inTransit, index + 1, remaining, index, remaining.length - index);
+                }
+
+                if (IN_TRANSIT.compareAndSet(session, inTransit, remaining))
+                    return true;
             }
-            return false;
         }
 
         /**
          * @see org.picketlink.identity.federation.web.core.IdentityParticipantStack#getNumOfParticipantsInTransit(java.lang.String)
          */
         public int getNumOfParticipantsInTransit(String sessionID) {
-            Set<String> transitSet = inTransitMap.get(sessionID);
-            if (transitSet != null)
-                return transitSet.size();
+            ParticipantSession session = sessions.get(sessionID);
+            if (session != null)
+                return session.inTransit.length;
             return 0;
         }
 
@@ -158,23 +216,60 @@ public class IdentityServer implements HttpSessionListener {
          * @see org.picketlink.identity.federation.web.core.IdentityParticipantStack#totalSessions()
          */
         public int totalSessions() {
-            return sessionParticipantsMap.keySet().size();
+            return sessions.size();
         }
 
         /**
          * @see org.picketlink.identity.federation.web.core.IdentityParticipantStack#createSession(java.lang.String)
          */
         public void createSession(String id) {
-            sessionParticipantsMap.put(id, new Stack<String>());
-            inTransitMap.put(id, new HashSet<String>());
+            sessions.put(id, new ParticipantSession());
         }
 
         /**
          * @see org.picketlink.identity.federation.web.core.IdentityParticipantStack#removeSession(java.lang.String)
          */
         public void removeSession(String id) {
-            sessionParticipantsMap.remove(id);
-            inTransitMap.remove(id);
+            sessions.remove(id);
+        }
+
+        private ParticipantSession getOrCreateSession(String sessionID) {
+            ParticipantSession session = sessions.get(sessionID);
+
+            if (session == null) {
+                ParticipantSession created = new ParticipantSession();
+
+                session = sessions.putIfAbsent(sessionID, created);
+
+                if (session == null)
+                    session = created;
+            }
+
+            return session;
+        }
+
+        private static int indexOf(String[] values, String value) {
+            for (int i = 0; i < values.length; i++) {
+                if (values[i].equals(value))
+                    return i;
+            }
+            return -1;
+        }
+
+        private static String[] copyOf(String[] values, int length) {
+            String[] copy = new String[length];
+            System.arraycopy(values, 0, copy, 0, Math.min(values.length, length));
+            return copy;
+        }
+
+        /**
+         * The participants of a session, most recent last, and the participants in transit during a logout.
+         */
+        private static class ParticipantSession {
+
+            volatile String[] participants = EMPTY;
+
+            volatile String[] inTransit = EMPTY;
         }
     }
 
@@ -184,7 +279,7 @@ public class IdentityServer implements HttpSessionListener {
      * @return
      */
     public int getActiveSessionCount() {
-        return activeSessionCount;
+        return activeSessionCount.get();
     }
 
     /**
@@ -209,7 +304,7 @@ public class IdentityServer implements HttpSessionListener {
      * @see HttpSessionListener#sessionCreated(HttpSessionEvent)
      */
     public void sessionCreated(HttpSessionEvent sessionEvent) {
-        activeSessionCount++;
+        int activeSessionCount = IdentityServer.activeSessionCount.incrementAndGet();
 
         if (activeSessionCount % count == 0)
             logger.samlIdentityServerActiveSessionCount(activeSessionCount);
@@ -239,12 +334,13 @@ public class IdentityServer implements HttpSessionListener {
      * @see HttpSessionListener#sessionDestroyed(HttpSessionEvent)
      */
     public void sessionDestroyed(HttpSessionEvent sessionEvent) {
-        --activeSessionCount;
+        int activeSessionCount = IdentityServer.activeSessionCount.decrementAndGet();
 
         String id = sessionEvent.getSession().getId();
 
         logger.samlIdentityServerSessionDestroyed(id, activeSessionCount);
 
+        // participants of an expired or invalidated session are no longer needed for a logout
         stack.removeSession(id);
     }
 }
\ No newline at end of file
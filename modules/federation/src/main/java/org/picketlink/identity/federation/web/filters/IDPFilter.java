@@ -33,6 +33,8 @@ import org.picketlink.common.util.SystemPropertiesUtil;
 import org.picketlink.config.federation.AuthPropertyType;
 import org.picketlink.config.federation.IDPType;
 import org.picketlink.config.federation.KeyProviderType;
+import org.picketlink.config.federation.KeyValueType;
+import org.picketlink.config.federation.MetadataProviderType;
 import org.picketlink.config.federation.PicketLinkType;
 import org.picketlink.config.federation.handler.Handlers;
 import org.picketlink.identity.federation.api.saml.v2.request.SAML2Request;
@@ -44,18 +46,22 @@ import org.picketlink.identity.federation.core.interfaces.AttributeManager;
 import org.picketlink.identity.federation.core.interfaces.ProtocolContext;
 import org.picketlink.identity.federation.core.interfaces.RoleGenerator;
 import org.picketlink.identity.federation.core.interfaces.TrustKeyManager;
+import org.picketlink.identity.federation.core.saml.md.providers.AbstractFileBasedMetadataProvider;
 import org.picketlink.identity.federation.core.saml.v1.SAML11ProtocolContext;
 import org.picketlink.identity.federation.core.saml.v1.writers.SAML11ResponseWriter;
 import org.picketlink.identity.federation.core.saml.v2.common.IDGenerator;
 import org.picketlink.identity.federation.core.saml.v2.common.SAMLDocumentHolder;
 import org.picketlink.identity.federation.core.saml.v2.factories.SAML2HandlerChainFactory;
 import org.picketlink.identity.federation.core.saml.v2.holders.IssuerInfoHolder;
+import org.picketlink.identity.federation.core.saml.v2.impl.DefaultSAML2ArtifactStore;
 import org.picketlink.identity.federation.core.saml.v2.impl.DefaultSAML2HandlerChainConfig;
 import org.picketlink.identity.federation.core.saml.v2.impl.DefaultSAML2HandlerRequest;
 import org.picketlink.identity.federation.core.saml.v2.impl.DefaultSAML2HandlerResponse;
+import org.picketlink.identity.federation.core.saml.v2.interfaces.SAML2ArtifactStore;
 import org.picketlink.identity.federation.core.saml.v2.interfaces.SAML2Handler;
 import org.picketlink.identity.federation.core.saml.v2.interfaces.SAML2HandlerChain;
 import org.picketlink.identity.federation.core.saml.v2.interfaces.SAML2HandlerChainConfig;
+import org.picketlink.identity.federation.core.saml.v2.metadata.MetadataRegistry;
 import org.picketlink.identity.federation.core.saml.v2.interfaces.SAML2HandlerRequest;
 import org.picketlink.identity.federation.core.saml.v2.interfaces.SAML2HandlerResponse;
 import org.picketlink.identity.federation.core.saml.v2.util.AssertionUtil;
@@ -111,12 +117,11 @@ import java.io.FileInputStream;
 import java.io.FileNotFoundException;
 import java.io.IOException;
 import java.io.InputStream;
-import java.net.MalformedURLException;
 import java.net.URI;
-import java.net.URL;
 import java.security.GeneralSecurityException;
 import java.security.Principal;
 import java.security.PublicKey;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.HashMap;
 import java.util.List;
@@ -159,6 +164,15 @@ public class IDPFilter implements Filter {
 
     private transient SAML2HandlerChain chain = null;
 
+    /**
+     * The configuration, key manager and chain used by the requests. The init methods set the fields above, which are
+     * published at once when they are all loaded, so that a request never sees a configuration with the key manager or
+     * the chain of another one.
+     */
+    private transient volatile IDPState state;
+
+    private transient volatile SAML2ArtifactStore artifactStore;
+
     /**
      * The user can inject a fully qualified name of a {@link org.picketlink.identity.federation.web.util.SAMLConfigurationProvider}
      */
@@ -176,11 +190,11 @@ public class IDPFilter implements Filter {
     private String configFile;
 
     /**
-     * A Lock for Handler operations in the chain
+     * A Lock for Handler operations in the chain, only used when the handlers are configured with locking enabled
      */
     private final Lock chainLock = new ReentrantLock();
 
-    private Map<String, SPSSODescriptorType> spSSOMetadataMap = new HashMap<String, SPSSODescriptorType>();
+    private final MetadataRegistry spMetadataRegistry = new MetadataRegistry();
     private Handlers handlers;
 
     @Override
@@ -222,6 +236,11 @@ public class IDPFilter implements Filter {
 
     @Override
     public void destroy() {
+        spMetadataRegistry.stop();
+
+        if (auditHelper != null) {
+            auditHelper.close();
+        }
     }
 
     /**
@@ -302,7 +321,7 @@ public class IDPFilter implements Filter {
     private void forwardHosted(HttpServletRequest request, HttpServletResponse response) throws ServletException, IOException {
         logger.trace("SAML 1.1::Proceeding to IDP index page");
         RequestDispatcher dispatch = servletContext
-                .getRequestDispatcher(this.idpConfiguration.getHostedURI());
+                .getRequestDispatcher(this.state.idpConfiguration.getHostedURI());
 
         try {
             includeResource(request, response, dispatch);
@@ -342,14 +361,16 @@ public class IDPFilter implements Filter {
      * @throws ServletException
      */
     private void handleUnauthorizedResponse(HttpServletRequest request, HttpServletResponse response) throws IOException, ServletException {
-        IDPWebRequestUtil webRequestUtil = new IDPWebRequestUtil(request, idpConfiguration, keyManager);
+        IDPState state = this.state;
+        IDPType idpConfiguration = state.idpConfiguration;
+        IDPWebRequestUtil webRequestUtil = new IDPWebRequestUtil(request, idpConfiguration, state.keyManager);
         Document samlErrorResponse = null;
         String referer = request.getHeader("Referer");
         String relayState = request.getParameter(GeneralConstants.RELAY_STATE);
 
         try {
             samlErrorResponse = webRequestUtil.getErrorResponse(referer, JBossSAMLURIConstants.STATUS_AUTHNFAILED.get(),
-                    getIdentityURL(), this.idpConfiguration.isSupportsSignature());
+                    idpConfiguration.getIdentityURL(), idpConfiguration.isSupportsSignature());
 
             IDPWebRequestUtil.WebRequestUtilHolder holder = webRequestUtil.getHolder();
             holder.setResponseDoc(samlErrorResponse).setDestination(referer).setRelayState(relayState)
@@ -357,11 +378,11 @@ public class IDPFilter implements Filter {
                     .setErrorResponse(true);
             holder.setPostBindingRequested(webRequestUtil.hasSAMLRequestInPostProfile());
 
-            if (this.idpConfiguration.isSupportsSignature()) {
-                holder.setSupportSignature(true).setPrivateKey(keyManager.getSigningKey());
+            if (idpConfiguration.isSupportsSignature()) {
+                holder.setSupportSignature(true).setPrivateKey(state.keyManager.getSigningKey());
             }
 
-            holder.setStrictPostBinding(this.idpConfiguration.isStrictPostBinding());
+            holder.setStrictPostBinding(idpConfiguration.isStrictPostBinding());
 
             webRequestUtil.send(holder);
         } catch (GeneralSecurityException e) {
@@ -399,7 +420,9 @@ public class IDPFilter implements Filter {
         boolean isSecure = request.isSecure();
         String loginType = determineLoginType(isSecure);
 
-        IDPType idpConfiguration = this.idpConfiguration;
+        IDPState state = this.state;
+        IDPType idpConfiguration = state.idpConfiguration;
+        TrustKeyManager keyManager = state.keyManager;
         IDPWebRequestUtil webRequestUtil = new IDPWebRequestUtil(request, idpConfiguration, keyManager);
 
         SAMLDocumentHolder samlDocumentHolder = null;
@@ -439,7 +462,7 @@ public class IDPFilter implements Filter {
                 }
             }
 
-            IssuerInfoHolder idpIssuer = new IssuerInfoHolder(getIdentityURL());
+            IssuerInfoHolder idpIssuer = new IssuerInfoHolder(idpConfiguration.getIdentityURL());
             ProtocolContext protocolContext = new HTTPContext(request, response, servletContext);
             // Create the request/response
             SAML2HandlerRequest saml2HandlerRequest = new DefaultSAML2HandlerRequest(protocolContext, idpIssuer.getIssuer(),
@@ -461,9 +484,11 @@ public class IDPFilter implements Filter {
             }
 
             requestOptions.put(GeneralConstants.IGNORE_SIGNATURES, ignoreSignatures);
-            requestOptions.put(GeneralConstants.SP_SSO_METADATA_DESCRIPTOR, spSSOMetadataMap.get(issuer));
-            requestOptions.put(GeneralConstants.SSO_METADATA_DESCRIPTOR, spSSOMetadataMap.get(issuer));
-            requestOptions.put(GeneralConstants.ROLE_GENERATOR, roleGenerator);
+            SPSSODescriptorType spSSODescriptor = spMetadataRegistry.getSPDescriptor(issuer);
+
+            requestOptions.put(GeneralConstants.SP_SSO_METADATA_DESCRIPTOR, spSSODescriptor);
+            requestOptions.put(GeneralConstants.SSO_METADATA_DESCRIPTOR, spSSODescriptor);
+            requestOptions.put(GeneralConstants.ROLE_GENERATOR, state.roleGenerator);
             requestOptions.put(GeneralConstants.CONFIGURATION, idpConfiguration);
             requestOptions.put(GeneralConstants.SAML_IDP_STRICT_POST_BINDING, idpConfiguration.isStrictPostBinding());
             requestOptions.put(GeneralConstants.SUPPORTS_SIGNATURES, idpConfiguration.isSupportsSignature());
@@ -472,18 +497,18 @@ public class IDPFilter implements Filter {
                 requestOptions.put(GeneralConstants.ASSERTION_ID, assertionID);
             }
 
-            if (this.keyManager != null) {
-                PublicKey validatingKey = getIssuerPublicKey(request, issuer);
+            if (keyManager != null) {
+                PublicKey validatingKey = getIssuerPublicKey(request, issuer, keyManager);
                 requestOptions.put(GeneralConstants.SENDER_PUBLIC_KEY, validatingKey);
                 requestOptions.put(GeneralConstants.DECRYPTING_KEY, keyManager.getEncryptionKey());
             }
 
             // if this is a SAML AuthnRequest load the roles using the generator.
             if (requestAbstractType instanceof AuthnRequestType) {
-                List<String> roles = roleGenerator.generateRoles(userPrincipal);
+                List<String> roles = state.roleGenerator.generateRoles(userPrincipal);
                 session.setAttribute(GeneralConstants.ROLES_ID, roles);
 
-                Set<AttributeStatementType> attribs = this.attribManager.getAttributes((AuthnRequestType) requestAbstractType, userPrincipal);
+                Set<AttributeStatementType> attribs = state.attribManager.getAttributes((AuthnRequestType) requestAbstractType, userPrincipal);
                 requestOptions.put(GeneralConstants.ATTRIBUTES, attribs);
             }
 
@@ -496,13 +521,15 @@ public class IDPFilter implements Filter {
 
             SAML2HandlerResponse saml2HandlerResponse = new DefaultSAML2HandlerResponse();
 
-            Set<SAML2Handler> handlers = chain.handlers();
+            Set<SAML2Handler> handlers = state.chain.handlers();
 
             logger.trace("Handlers are=" + handlers);
 
             if (handlers != null) {
+                boolean locking = state.isLocking();
+
                 try {
-                    if (getConfiguration().getHandlers().isLocking()) {
+                    if (locking) {
                         chainLock.lock();
                     }
                     for (SAML2Handler handler : handlers) {
@@ -510,7 +537,7 @@ public class IDPFilter implements Filter {
                         willSendRequest = saml2HandlerResponse.getSendRequest();
                     }
                 } finally {
-                    if (getConfiguration().getHandlers().isLocking()) {
+                    if (locking) {
                         chainLock.unlock();
                     }
                 }
@@ -529,7 +556,7 @@ public class IDPFilter implements Filter {
                 status = JBossSAMLURIConstants.STATUS_REQUEST_DENIED.get();
             }
             logger.samlIDPRequestProcessingError(e);
-            samlResponse = webRequestUtil.getErrorResponse(responseDestination, status, getIdentityURL(),
+            samlResponse = webRequestUtil.getErrorResponse(responseDestination, status, idpConfiguration.getIdentityURL(),
                     idpConfiguration.isSupportsSignature());
             isErrorResponse = true;
         }
@@ -553,7 +580,7 @@ public class IDPFilter implements Filter {
             // will be probably redirected to the idp hosted page.
             if (destination == null) {
                 if (!response.isCommitted()) {
-                    response.sendRedirect(getIdentityURL());
+                    response.sendRedirect(idpConfiguration.getIdentityURL());
                 }
             } else if (samlResponse != null) {
                 IDPWebRequestUtil.WebRequestUtilHolder holder = webRequestUtil.getHolder();
@@ -574,6 +601,11 @@ public class IDPFilter implements Filter {
                     holder.setPrivateKey(keyManager.getSigningKey()).setSupportSignature(true);
                 }
 
+                if (isArtifactBindingRequested(samlObject)) {
+                    holder.setArtifactStore(this.artifactStore).setArtifactRecipient(
+                            ((AuthnRequestType) samlObject).getIssuer().getValue());
+                }
+
                 if (enableAudit) {
                     PicketLinkAuditEvent auditEvent = new PicketLinkAuditEvent(AuditLevel.INFO);
                     auditEvent.setType(PicketLinkAuditEventType.RESPONSE_TO_SP);
@@ -599,44 +631,36 @@ public class IDPFilter implements Filter {
         }
     }
 
+    /**
+     * Checks whether the SP asked for the response to be sent with the HTTP-Artifact binding.
+     *
+     * @param samlObject the request of the SP
+     * @return
+     */
+    private boolean isArtifactBindingRequested(SAML2Object samlObject) {
+        if (samlObject instanceof AuthnRequestType) {
+            URI protocolBinding = ((AuthnRequestType) samlObject).getProtocolBinding();
+
+            return protocolBinding != null
+                    && JBossSAMLURIConstants.SAML_HTTP_ARTIFACT_BINDING.get().equals(protocolBinding.toString());
+        }
+
+        return false;
+    }
+
     /**
      * Returns the PublicKey to be used for the token's signature verification. This key is related with the issuer of the SAML
      * message received by the IDP.
      *
      * @param request
      * @param issuer
+     * @param keyManager
      * @return
      * @throws org.picketlink.common.exceptions.ProcessingException
      * @throws org.picketlink.common.exceptions.ConfigurationException
      */
-    private PublicKey getIssuerPublicKey(HttpServletRequest request, String issuer) throws ConfigurationException, ProcessingException {
-        String issuerHost = null;
-        PublicKey issuerPublicKey = null;
-
-        try {
-            issuerHost = new URL(issuer).getHost();
-        } catch (MalformedURLException e) {
-            logger.trace("Token issuer is not a valid URL: " + issuer, e);
-            issuerHost = issuer;
-        }
-
-        logger.trace("Trying to find a PK for issuer: " + issuerHost);
-        try {
-            issuerPublicKey = CoreConfigUtil.getValidatingKey(keyManager, issuerHost);
-        } catch (IllegalStateException ise) {
-            logger.trace("Token issuer is not found for: " + issuer, ise);
-        }
-
-        if (issuerPublicKey == null) {
-            issuerHost = request.getRemoteAddr();
-
-            logger.trace("Trying to find a PK for issuer " + issuerHost);
-            issuerPublicKey = CoreConfigUtil.getValidatingKey(keyManager, issuerHost);
-        }
-
-        logger.trace("Using Validating Alias=" + issuerHost + " to check signatures.");
-
-        return issuerPublicKey;
+    private PublicKey getIssuerPublicKey(HttpServletRequest request, String issuer, TrustKeyManager keyManager) throws ConfigurationException, ProcessingException {
+        return IDPWebRequestUtil.getIssuerPublicKey(keyManager, issuer, request.getRemoteAddr());
     }
 
     protected void processSAMLResponseMessage(HttpServletRequest request, HttpServletResponse response) throws ServletException, IOException {
@@ -664,7 +688,9 @@ public class IDPFilter implements Filter {
 
         //cleanUpSessionNote(request);
 
-        IDPWebRequestUtil webRequestUtil = new IDPWebRequestUtil(request, idpConfiguration, keyManager);
+        IDPState state = this.state;
+        IDPType idpConfiguration = state.idpConfiguration;
+        IDPWebRequestUtil webRequestUtil = new IDPWebRequestUtil(request, idpConfiguration, state.keyManager);
 
         try {
             samlDocumentHolder = webRequestUtil.getSAMLDocumentHolder(samlResponseMessage);
@@ -682,20 +708,20 @@ public class IDPFilter implements Filter {
             if (!isValid)
                 throw logger.samlIDPValidationCheckFailed();
 
-            IssuerInfoHolder idpIssuer = new IssuerInfoHolder(getIdentityURL());
+            IssuerInfoHolder idpIssuer = new IssuerInfoHolder(idpConfiguration.getIdentityURL());
             ProtocolContext protocolContext = new HTTPContext(request, response, servletContext);
             // Create the request/response
             SAML2HandlerRequest saml2HandlerRequest = new DefaultSAML2HandlerRequest(protocolContext, idpIssuer.getIssuer(),
                     samlDocumentHolder, SAML2Handler.HANDLER_TYPE.IDP);
             Map<String, Object> options = new HashMap<String, Object>();
 
-            if (this.idpConfiguration.isSupportsSignature() || this.idpConfiguration.isEncrypt()) {
-                PublicKey publicKey = getIssuerPublicKey(request, issuer);
+            if (idpConfiguration.isSupportsSignature() || idpConfiguration.isEncrypt()) {
+                PublicKey publicKey = getIssuerPublicKey(request, issuer, state.keyManager);
                 options.put(GeneralConstants.SENDER_PUBLIC_KEY, publicKey);
             }
 
-            options.put(GeneralConstants.SAML_IDP_STRICT_POST_BINDING, this.idpConfiguration.isStrictPostBinding());
-            options.put(GeneralConstants.SUPPORTS_SIGNATURES, this.idpConfiguration.isSupportsSignature());
+            options.put(GeneralConstants.SAML_IDP_STRICT_POST_BINDING, idpConfiguration.isStrictPostBinding());
+            options.put(GeneralConstants.SUPPORTS_SIGNATURES, idpConfiguration.isSupportsSignature());
             if (auditHelper != null) {
                 options.put(GeneralConstants.AUDIT_HELPER, auditHelper);
                 options.put(GeneralConstants.CONTEXT_PATH, contextPath);
@@ -706,21 +732,27 @@ public class IDPFilter implements Filter {
 
             SAML2HandlerResponse saml2HandlerResponse = new DefaultSAML2HandlerResponse();
 
-            Set<SAML2Handler> handlers = chain.handlers();
+            Set<SAML2Handler> handlers = state.chain.handlers();
 
             // the trusted domains is done by a handler
             // webRequestUtil.isTrusted(issuer);
 
             if (handlers != null) {
+                boolean locking = state.isLocking();
+
                 try {
-                    chainLock.lock();
+                    if (locking) {
+                        chainLock.lock();
+                    }
                     for (SAML2Handler handler : handlers) {
                         handler.reset();
                         handler.handleStatusResponseType(saml2HandlerRequest, saml2HandlerResponse);
                         willSendRequest = saml2HandlerResponse.getSendRequest();
                     }
                 } finally {
-                    chainLock.unlock();
+                    if (locking) {
+                        chainLock.unlock();
+                    }
                 }
             }
 
@@ -736,8 +768,8 @@ public class IDPFilter implements Filter {
                 status = JBossSAMLURIConstants.STATUS_REQUEST_DENIED.get();
             }
             logger.samlIDPRequestProcessingError(e);
-            samlResponse = webRequestUtil.getErrorResponse(referer, status, getIdentityURL(),
-                    this.idpConfiguration.isSupportsSignature());
+            samlResponse = webRequestUtil.getErrorResponse(referer, status, idpConfiguration.getIdentityURL(),
+                    idpConfiguration.isSupportsSignature());
             isErrorResponse = true;
         } finally {
             try {
@@ -755,11 +787,11 @@ public class IDPFilter implements Filter {
                  * holder.setPostBindingRequested(postProfile);
                  */
 
-                if (this.idpConfiguration.isSupportsSignature()) {
-                    holder.setPrivateKey(keyManager.getSigningKey()).setSupportSignature(true);
+                if (idpConfiguration.isSupportsSignature()) {
+                    holder.setPrivateKey(state.keyManager.getSigningKey()).setSupportSignature(true);
                 }
 
-                holder.setStrictPostBinding(this.idpConfiguration.isStrictPostBinding());
+                holder.setStrictPostBinding(idpConfiguration.isStrictPostBinding());
 
                 if (enableAudit) {
                     PicketLinkAuditEvent auditEvent = new PicketLinkAuditEvent(AuditLevel.INFO);
@@ -822,9 +854,11 @@ public class IDPFilter implements Filter {
         logger.trace("About to send error response to SP:" + referrer);
 
         String contextPath = servletContext.getContextPath();
+        IDPState state = this.state;
+        IDPType idpConfiguration = state.idpConfiguration;
 
         Document samlResponse = webRequestUtil.getErrorResponse(referrer, JBossSAMLURIConstants.STATUS_RESPONDER.get(),
-                getIdentityURL(), this.idpConfiguration.isSupportsSignature());
+                idpConfiguration.getIdentityURL(), idpConfiguration.isSupportsSignature());
         try {
 
             IDPWebRequestUtil.WebRequestUtilHolder holder = webRequestUtil.getHolder();
@@ -832,11 +866,11 @@ public class IDPFilter implements Filter {
                     .setAreWeSendingRequest(false).setPrivateKey(null).setSupportSignature(false).setServletResponse(response);
             holder.setPostBindingRequested(webRequestUtil.hasSAMLRequestInPostProfile());
 
-            if (this.idpConfiguration.isSupportsSignature()) {
-                holder.setPrivateKey(keyManager.getSigningKey()).setSupportSignature(true);
+            if (idpConfiguration.isSupportsSignature()) {
+                holder.setPrivateKey(state.keyManager.getSigningKey()).setSupportSignature(true);
             }
 
-            holder.setStrictPostBinding(this.idpConfiguration.isStrictPostBinding());
+            holder.setStrictPostBinding(idpConfiguration.isStrictPostBinding());
 
             if (enableAudit) {
                 PicketLinkAuditEvent auditEvent = new PicketLinkAuditEvent(AuditLevel.INFO);
@@ -881,6 +915,37 @@ public class IDPFilter implements Filter {
         }
     }
 
+    /**
+     * <p>
+     * Initializes the {@link SAML2ArtifactStore} keeping the responses sent with the HTTP-Artifact binding. The store
+     * is shared through the servlet context with the {@link org.picketlink.identity.federation.web.servlets.saml.ArtifactResolutionServlet}
+     * resolving their artifacts.
+     * </p>
+     */
+    protected void initArtifactStore() {
+        SAML2ArtifactStore store = (SAML2ArtifactStore) servletContext.getAttribute(GeneralConstants.ARTIFACT_STORE);
+
+        if (store == null) {
+            store = new DefaultSAML2ArtifactStore();
+
+            if (StringUtil.isNotNull(this.idpConfiguration.getArtifactStore())) {
+                try {
+                    Class<?> clazz = SecurityActions.loadClass(getClass(), this.idpConfiguration.getArtifactStore());
+                    if (clazz == null)
+                        throw logger.classNotLoadedError(this.idpConfiguration.getArtifactStore());
+
+                    store = (SAML2ArtifactStore) clazz.newInstance();
+                } catch (Exception e) {
+                    throw logger.samlIDPConfigurationError(e);
+                }
+            }
+
+            servletContext.setAttribute(GeneralConstants.ARTIFACT_STORE, store);
+        }
+
+        this.artifactStore = store;
+    }
+
     /**
      * <p>
      * Initialize the Handlers chain.
@@ -992,6 +1057,8 @@ public class IDPFilter implements Filter {
     @SuppressWarnings("deprecation")
     protected void initIDPConfiguration() {
         InputStream is = null;
+        PicketLinkType picketLinkConfiguration = null;
+        IDPType idpConfiguration = null;
 
         if (isNullOrEmpty(this.configFile)) {
             is = servletContext.getResourceAsStream(CONFIG_FILE_LOCATION);
@@ -1063,6 +1130,9 @@ public class IDPFilter implements Filter {
             }
         }
 
+        this.picketLinkConfiguration = picketLinkConfiguration;
+        this.idpConfiguration = idpConfiguration;
+
         try {
             if (this.picketLinkConfiguration != null) {
                 enableAudit = picketLinkConfiguration.isEnableAudit();
@@ -1110,16 +1180,7 @@ public class IDPFilter implements Filter {
             }
 
             // Read SP Metadata if provided
-            List<EntityDescriptorType> entityDescriptors = CoreConfigUtil.getMetadataConfiguration(idpConfiguration,
-                    servletContext);
-            if (entityDescriptors != null) {
-                for (EntityDescriptorType entityDescriptorType : entityDescriptors) {
-                    SPSSODescriptorType spSSODescriptor = CoreConfigUtil.getSPDescriptor(entityDescriptorType);
-                    if (spSSODescriptor != null) {
-                        spSSOMetadataMap.put(entityDescriptorType.getEntityID(), spSSODescriptor);
-                    }
-                }
-            }
+            initSPMetadata();
         } catch (Exception e) {
             throw logger.samlIDPConfigurationError(e);
         }
@@ -1180,13 +1241,11 @@ public class IDPFilter implements Filter {
             timer.scheduleAtFixedRate(new TimerTask() {
                 @Override
                 public void run() {
-                    // Clear the configuration
-                    picketLinkConfiguration = null;
-                    idpConfiguration = null;
-
+                    // Requests keep using the current state until the new one is fully loaded
                     initIDPConfiguration();
                     initKeyManager();
                     initHandlersChain();
+                    publishState();
                 }
             }, timerInterval, timerInterval);
         }
@@ -1196,6 +1255,7 @@ public class IDPFilter implements Filter {
         initKeyManager();
         initHandlersChain();
         initIdentityServer();
+        initArtifactStore();
 
         if (this.picketLinkConfiguration == null) {
             this.picketLinkConfiguration = new PicketLinkType();
@@ -1203,6 +1263,23 @@ public class IDPFilter implements Filter {
             this.picketLinkConfiguration.setIdpOrSP(this.idpConfiguration);
             this.picketLinkConfiguration.setHandlers(this.handlers);
         }
+
+        publishState();
+    }
+
+    /**
+     * Makes the configuration, key manager and chain loaded by the init methods visible to the requests.
+     */
+    private void publishState() {
+        this.state = new IDPState(this.picketLinkConfiguration, this.idpConfiguration, this.keyManager, this.chain,
+                this.roleGenerator, this.attribManager);
+
+        // the ArtifactResolve requests of the SPs must be signed when the IDP supports signatures
+        if (this.idpConfiguration.isSupportsSignature() && this.keyManager != null) {
+            servletContext.setAttribute(GeneralConstants.ARTIFACT_RESOLUTION_KEY_MANAGER, this.keyManager);
+        } else {
+            servletContext.removeAttribute(GeneralConstants.ARTIFACT_RESOLUTION_KEY_MANAGER);
+        }
     }
 
     /**
@@ -1224,6 +1301,41 @@ public class IDPFilter implements Filter {
         return attrStatement;
     }
 
+    /**
+     * Loads the SP metadata. When the metadata provider sets the {@code ReloadInterval} option and its file is
+     * available on disk, the file is checked for changes every interval milliseconds and loaded again.
+     *
+     * @throws IOException
+     * @throws ParsingException
+     */
+    private void initSPMetadata() throws IOException, ParsingException {
+        MetadataProviderType metadataProvider = idpConfiguration.getMetaDataProvider();
+        String fileName = null;
+        long reloadInterval = 0;
+
+        if (metadataProvider != null) {
+            for (KeyValueType option : metadataProvider.getOption()) {
+                if (AbstractFileBasedMetadataProvider.FILENAME_KEY.equals(option.getKey())) {
+                    fileName = option.getValue();
+                } else if (AbstractFileBasedMetadataProvider.RELOAD_INTERVAL_KEY.equals(option.getKey())) {
+                    reloadInterval = Long.parseLong(option.getValue());
+                }
+            }
+        }
+
+        String metadataPath = fileName != null && reloadInterval > 0 ? servletContext.getRealPath(fileName) : null;
+
+        if (metadataPath != null && new File(metadataPath).exists()) {
+            spMetadataRegistry.watch(new File(metadataPath), reloadInterval);
+        } else {
+            List<EntityDescriptorType> entityDescriptors = CoreConfigUtil.getMetadataConfiguration(idpConfiguration,
+                    servletContext);
+
+            spMetadataRegistry.stop();
+            spMetadataRegistry.register(entityDescriptors != null ? entityDescriptors : new ArrayList<EntityDescriptorType>());
+        }
+    }
+
     /**
      * We will ignore signatures of current SAMLRequest if SP Metadata are provided for current SP and if metadata specifies
      * that SAMLRequest is not signed for this SP.
@@ -1232,7 +1344,7 @@ public class IDPFilter implements Filter {
      * @return true if signature is not expected in SAMLRequest and so signature validation should be ignored
      */
     private Boolean willIgnoreSignatureOfCurrentRequest(String spIssuer) {
-        SPSSODescriptorType currentSPMetadata = spSSOMetadataMap.get(spIssuer);
+        SPSSODescriptorType currentSPMetadata = spMetadataRegistry.getSPDescriptor(spIssuer);
 
         if (currentSPMetadata == null) {
             return false;
@@ -1313,8 +1425,9 @@ public class IDPFilter implements Filter {
      */
     private HttpServletRequestWrapper prepareLocalGlobalLogoutRequest(HttpServletRequest request, Principal userPrincipal) {
         try {
+            String identityURL = this.state.idpConfiguration.getIdentityURL();
             SAML2Request saml2Request = new SAML2Request();
-            LogoutRequestType lort = saml2Request.createLogoutRequest(getIdentityURL());
+            LogoutRequestType lort = saml2Request.createLogoutRequest(identityURL);
 
             NameIDType nameID = new NameIDType();
 
@@ -1322,7 +1435,7 @@ public class IDPFilter implements Filter {
             nameID.setFormat(URI.create(JBossSAMLURIConstants.NAMEID_FORMAT_PERSISTENT.get()));
 
             lort.setNameID(nameID);
-            lort.setDestination(URI.create(getIdentityURL()));
+            lort.setDestination(URI.create(identityURL));
 
             byte[] responseBytes = DocumentUtil.getDocumentAsString(saml2Request.convert(lort)).getBytes("UTF-8");
             final String samlRequest = RedirectBindingUtil.deflateBase64Encode(responseBytes);
@@ -1376,6 +1489,8 @@ public class IDPFilter implements Filter {
 
             if ("POST".equalsIgnoreCase(requestedBinding)) {
                 authn.setProtocolBinding(URI.create(JBossSAMLURIConstants.SAML_HTTP_POST_BINDING.get()));
+            } else if ("ARTIFACT".equalsIgnoreCase(requestedBinding)) {
+                authn.setProtocolBinding(URI.create(JBossSAMLURIConstants.SAML_HTTP_ARTIFACT_BINDING.get()));
             } else {
                 authn.setProtocolBinding(URI.create(JBossSAMLURIConstants.SAML_HTTP_REDIRECT_BINDING.get()));
             }
@@ -1388,7 +1503,8 @@ public class IDPFilter implements Filter {
 
     protected void handleSAML11UnsolicitedResponse(HttpServletRequest request, HttpServletResponse response) throws ServletException, IOException {
         try {
-            IDPWebRequestUtil webRequestUtil = new IDPWebRequestUtil(request, idpConfiguration, keyManager);
+            IDPState state = this.state;
+            IDPWebRequestUtil webRequestUtil = new IDPWebRequestUtil(request, state.idpConfiguration, state.keyManager);
 
             Principal userPrincipal = request.getUserPrincipal();
             String contextPath = servletContext.getContextPath();
@@ -1399,7 +1515,7 @@ public class IDPFilter implements Filter {
             SAML11AssertionType saml11Assertion = (SAML11AssertionType) session.getAttribute("SAML11");
             if (saml11Assertion == null) {
                 SAML11ProtocolContext saml11Protocol = new SAML11ProtocolContext();
-                saml11Protocol.setIssuerID(getIdentityURL());
+                saml11Protocol.setIssuerID(state.idpConfiguration.getIdentityURL());
                 SAML11SubjectType subject = new SAML11SubjectType();
                 SAML11SubjectType.SAML11SubjectTypeChoice subjectChoice = new SAML11SubjectType.SAML11SubjectTypeChoice(new SAML11NameIdentifierType(
                         userPrincipal.getName()));
@@ -1417,7 +1533,7 @@ public class IDPFilter implements Filter {
                     session.setAttribute("SAML11", saml11Assertion);
                 }
             }
-            List<String> roles = this.roleGenerator.generateRoles(userPrincipal);
+            List<String> roles = state.roleGenerator.generateRoles(userPrincipal);
             SAML11AttributeStatementType attributeStatement = this.createAttributeStatement(roles);
 
             if (attributeStatement != null) {
@@ -1461,4 +1577,41 @@ public class IDPFilter implements Filter {
             throw new ServletException();
         }
     }
+
+    /**
+     * An immutable view of the configuration used to process a request.
+     */
+    private static final class IDPState {
+
+        private final PicketLinkType picketLinkConfiguration;
+
+        private final IDPType idpConfiguration;
+
+        private final TrustKeyManager keyManager;
+
+        private final SAML2HandlerChain chain;
+
+        private final RoleGenerator roleGenerator;
+
+        private final DelegatedAttributeManager attribManager;
+
+        private IDPState(PicketLinkType picketLinkConfiguration, IDPType idpConfiguration, TrustKeyManager keyManager,
+                         SAML2HandlerChain chain, RoleGenerator roleGenerator, DelegatedAttributeManager attribManager) {
+            this.picketLinkConfiguration = picketLinkConfiguration;
+            this.idpConfiguration = idpConfiguration;
+            this.keyManager = keyManager;
+            this.chain = chain;
+            this.roleGenerator = roleGenerator;
+            this.attribManager = attribManager;
+        }
+
+        /**
+         * The chain is locked as configured by {@link Handlers#isLocking()}, the same way as on the SP.
+         */
+        private boolean isLocking() {
+            Handlers handlers = this.picketLinkConfiguration != null ? this.picketLinkConfiguration.getHandlers() : null;
+
+            return handlers == null || handlers.isLocking();
+        }
+    }
 }
@@ -43,12 +43,12 @@ import org.picketlink.identity.federation.core.interfaces.TrustKeyManager;
 import org.picketlink.identity.federation.core.parsers.saml.SAMLParser;
 import org.picketlink.identity.federation.core.saml.v2.common.IDGenerator;
 import org.picketlink.identity.federation.core.saml.v2.factories.SAML2HandlerChainFactory;
-import org.picketlink.identity.federation.core.saml.v2.holders.DestinationInfoHolder;
 import org.picketlink.identity.federation.core.saml.v2.impl.DefaultSAML2HandlerChainConfig;
 import org.picketlink.identity.federation.core.saml.v2.interfaces.SAML2Handler;
 import org.picketlink.identity.federation.core.saml.v2.interfaces.SAML2HandlerChain;
 import org.picketlink.identity.federation.core.saml.v2.interfaces.SAML2HandlerChainConfig;
 import org.picketlink.identity.federation.core.saml.v2.interfaces.SAML2HandlerResponse;
+import org.picketlink.identity.federation.core.saml.v2.util.ArtifactUtil;
 import org.picketlink.identity.federation.core.saml.v2.util.AssertionUtil;
 import org.picketlink.identity.federation.core.saml.v2.util.HandlerUtil;
 import org.picketlink.identity.federation.core.util.CoreConfigUtil;
@@ -70,6 +70,7 @@ import org.picketlink.identity.federation.web.process.ServiceProviderBaseProcess
 import org.picketlink.identity.federation.web.process.ServiceProviderSAMLRequestProcessor;
 import org.picketlink.identity.federation.web.process.ServiceProviderSAMLResponseProcessor;
 import org.picketlink.identity.federation.web.roles.DefaultRoleValidator;
+import org.picketlink.identity.federation.web.util.ArtifactBindingUtil;
 import org.picketlink.identity.federation.web.util.ConfigurationUtil;
 import org.picketlink.identity.federation.web.util.HTTPRedirectUtil;
 import org.picketlink.identity.federation.web.util.PostBindingUtil;
@@ -171,6 +172,9 @@ public class SPFilter implements Filter {
     private Map<String, Object> chainConfigOptions;
 
     public void destroy() {
+        if (auditHelper != null) {
+            auditHelper.close();
+        }
     }
 
     public void doFilter(ServletRequest servletRequest, ServletResponse servletResponse, FilterChain filterChain)
@@ -203,16 +207,18 @@ public class SPFilter implements Filter {
 
             String samlRequest = request.getParameter(GeneralConstants.SAML_REQUEST_KEY);
             String samlResponse = request.getParameter(GeneralConstants.SAML_RESPONSE_KEY);
+            String samlArtifact = request.getParameter(GeneralConstants.SAML_ARTIFACT_KEY);
 
             Principal principal = request.getUserPrincipal();
 
             // If we have already authenticated the user and there is no request from IDP or logout from user
-            if (principal != null && !(isGlobalLogout(request) || isNotNull(samlRequest) || isNotNull(samlResponse))) {
+            if (principal != null
+                    && !(isGlobalLogout(request) || isNotNull(samlRequest) || isNotNull(samlResponse) || isNotNull(samlArtifact))) {
                 filterChain.doFilter(request, response);
             } else {
 
                 // General User Request
-                if (!isNotNull(samlRequest) && !isNotNull(samlResponse)) {
+                if (!isNotNull(samlRequest) && !isNotNull(samlResponse) && !isNotNull(samlArtifact)) {
                     generalUserRequest(request, response);
                 }
 
@@ -221,6 +227,11 @@ public class SPFilter implements Filter {
                     handleSAMLResponse(request, response);
                 }
 
+                // Handle a SAML Response from IDP sent with the Artifact Binding
+                if (isNotNull(samlArtifact)) {
+                    handleSAMLArtifact(request, response);
+                }
+
                 // Handle SAML Requests from IDP
                 if (isNotNull(samlRequest)) {
                     handleSAMLRequest(request, response);
@@ -311,8 +322,7 @@ public class SPFilter implements Filter {
             KeyPair keypair = keyManager.getSigningKeyPair();
             samlSignature.signSAMLDocument(samlDocument, keypair);
         }
-        String samlMessage = PostBindingUtil.base64Encode(DocumentUtil.getDocumentAsString(samlDocument));
-        PostBindingUtil.sendPost(new DestinationInfoHolder(destination, samlMessage, relayState), response, request);
+        PostBindingUtil.sendPost(samlDocument, destination, relayState, response, request);
     }
 
     private boolean handleSAMLResponse(HttpServletRequest request, HttpServletResponse response) throws IOException {
@@ -329,6 +339,50 @@ public class SPFilter implements Filter {
         return handleSAML2Response(request, response);
     }
 
+    private boolean handleSAMLArtifact(HttpServletRequest request, HttpServletResponse response) throws IOException {
+        String samlArtifact = request.getParameter(GeneralConstants.SAML_ARTIFACT_KEY);
+        Document samlResponse;
+
+        // only the artifacts of the IDP are sent to its resolution endpoint
+        if (!ArtifactUtil.isIssuedBy(samlArtifact, getIdentityURL())) {
+            throw new IOException(ErrorCodes.VALIDATION_CHECK_FAILED + "Artifact not issued by " + getIdentityURL());
+        }
+
+        try {
+            KeyPair signingKeyPair = doSupportSignature() ? keyManager.getSigningKeyPair() : null;
+
+            samlResponse = ArtifactBindingUtil.resolveArtifact(getArtifactResolutionServiceURL(), samlArtifact,
+                issuerID != null ? issuerID : serviceURL, signingKeyPair);
+        } catch (Exception e) {
+            logger.samlSPHandleRequestError(e);
+            throw logger.samlSPProcessingExceptionError(e);
+        }
+
+        if (samlResponse == null) {
+            throw new IOException(ErrorCodes.VALIDATION_CHECK_FAILED + "Unknown or expired artifact");
+        }
+
+        return handleSAML2Response(request, response, samlResponse);
+    }
+
+    /**
+     * Returns the SOAP endpoint resolving the artifacts of the IDP, from the configuration or from the IDP metadata.
+     */
+    private String getArtifactResolutionServiceURL() {
+        String artifactResolutionServiceURL = getConfiguration().getArtifactResolutionServiceURL();
+
+        if (artifactResolutionServiceURL == null && this.idpMetadata != null
+            && !this.idpMetadata.getArtifactResolutionService().isEmpty()) {
+            artifactResolutionServiceURL = this.idpMetadata.getArtifactResolutionService().get(0).getLocation().toString();
+        }
+
+        if (artifactResolutionServiceURL == null) {
+            throw logger.nullValueError("ArtifactResolutionServiceURL");
+        }
+
+        return artifactResolutionServiceURL;
+    }
+
     private boolean isLocalLogout(HttpServletRequest request) {
         String lloStr = request.getParameter(GeneralConstants.LOCAL_LOGOUT);
         return isNotNull(lloStr) && "true".equalsIgnoreCase(lloStr);
@@ -469,11 +523,7 @@ public class SPFilter implements Filter {
     protected void sendHttpPostBindingRequest(String destination, Document samlDocument, String relayState, HttpServletResponse response,
         boolean willSendRequest) throws ProcessingException, IOException,
         ConfigurationException {
-        String samlMessage = PostBindingUtil.base64Encode(DocumentUtil.getDocumentAsString(samlDocument));
-
-        DestinationInfoHolder destinationHolder = new DestinationInfoHolder(destination, samlMessage, relayState);
-
-        PostBindingUtil.sendPost(destinationHolder, response, willSendRequest);
+        PostBindingUtil.sendPost(samlDocument, destination, relayState, response, willSendRequest);
     }
 
     protected void sendHttpRedirectRequest(String destination, Document samlDocument, String relayState, HttpServletResponse response,
@@ -485,8 +535,7 @@ public class SPFilter implements Filter {
         if (destinationQueryStringWithSignature != null) {
             destinationQueryString = destinationQueryStringWithSignature;
         } else {
-            String samlMessage = DocumentUtil.getDocumentAsString(samlDocument);
-            String base64Request = RedirectBindingUtil.deflateBase64URLEncode(samlMessage.getBytes("UTF-8"));
+            String base64Request = RedirectBindingUtil.deflateBase64URLEncode(samlDocument);
             destinationQueryString = RedirectBindingUtil.getDestinationQueryString(base64Request, relayState, willSendRequest);
         }
 
@@ -551,6 +600,8 @@ public class SPFilter implements Filter {
         } catch (Exception e) {
             logger.samlResponseFromIDPParsingFailed();
             throw new ParsingException("", e);
+        } finally {
+            RedirectBindingUtil.close(dataStream);
         }
     }
 
@@ -579,9 +630,9 @@ public class SPFilter implements Filter {
                 throw new IOException(ErrorCodes.VALIDATION_CHECK_FAILED);
             }
 
-            try {
-                InputStream base64DecodedResponse = null;
+            InputStream base64DecodedResponse = null;
 
+            try {
                 if ("GET".equalsIgnoreCase(request.getMethod())) {
                     base64DecodedResponse = RedirectBindingUtil.base64DeflateDecode(samlResponse);
                 } else {
@@ -614,6 +665,8 @@ public class SPFilter implements Filter {
                 return true;
             } catch (Exception e) {
                 logger.samlSPHandleRequestError(e);
+            } finally {
+                RedirectBindingUtil.close(base64DecodedResponse);
             }
         }
 
@@ -621,6 +674,15 @@ public class SPFilter implements Filter {
     }
 
     private boolean handleSAML2Response(HttpServletRequest request, HttpServletResponse response) throws IOException {
+        return handleSAML2Response(request, response, null);
+    }
+
+    /**
+     * Handles a SAML 2.0 response, taken from the request parameters or, when it was sent with the Artifact Binding,
+     * resolved from its artifact.
+     */
+    private boolean handleSAML2Response(HttpServletRequest request, HttpServletResponse response, Document samlArtifactResponse)
+            throws IOException {
         HttpSession session = request.getSession(true);
         String samlResponse = request.getParameter(GeneralConstants.SAML_RESPONSE_KEY);
         HTTPContext httpContext = new HTTPContext(request, response, this.servletContext);
@@ -639,8 +701,13 @@ public class SPFilter implements Filter {
 
             responseProcessor.setTrustKeyManager(keyManager);
 
-            SAML2HandlerResponse saml2HandlerResponse = responseProcessor.process(samlResponse, httpContext, handlers,
-                chainLock);
+            SAML2HandlerResponse saml2HandlerResponse;
+
+            if (samlArtifactResponse != null) {
+                saml2HandlerResponse = responseProcessor.process(samlArtifactResponse, httpContext, handlers, chainLock);
+            } else {
+                saml2HandlerResponse = responseProcessor.process(samlResponse, httpContext, handlers, chainLock);
+            }
 
             Document samlResponseDocument = saml2HandlerResponse.getResultingDocument();
             String relayState = saml2HandlerResponse.getRelayState();
@@ -793,7 +860,7 @@ public class SPFilter implements Filter {
         try {
             Document samlDocument = DocumentUtil.getDocument(is);
             SAMLParser parser = new SAMLParser();
-            metadata = parser.parse(DocumentUtil.getNodeAsStream(samlDocument));
+            metadata = parser.parse(samlDocument);
         } catch (Exception e) {
             throw new RuntimeException(e);
         }
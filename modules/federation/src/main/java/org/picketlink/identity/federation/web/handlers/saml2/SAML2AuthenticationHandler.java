@@ -269,7 +269,11 @@ public class SAML2AuthenticationHandler extends BaseSAML2Handler {
                 // Check whether we use POST binding for response
                 boolean strictPostBinding = request.getOptions().get(GeneralConstants.SAML_IDP_STRICT_POST_BINDING) != null
                         && (Boolean) request.getOptions().get(GeneralConstants.SAML_IDP_STRICT_POST_BINDING);
-                boolean postBindingForResponse = isPost || strictPostBinding;
+                // A response sent with an artifact is signed like a POST binding response
+                URI protocolBinding = art.getProtocolBinding();
+                boolean artifactBinding = protocolBinding != null
+                        && JBossSAMLURIConstants.SAML_HTTP_ARTIFACT_BINDING.get().equals(protocolBinding.toString());
+                boolean postBindingForResponse = isPost || strictPostBinding || artifactBinding;
 
                 response.setResultingDocument(samlResponse);
                 response.setRelayState(request.getRelayState());
@@ -450,7 +454,9 @@ public class SAML2AuthenticationHandler extends BaseSAML2Handler {
                 String bindingType = getSPConfiguration().getBindingType();
                 boolean isIdpUsesPostBinding = getSPConfiguration().isIdpUsesPostBinding();
 
-                if (bindingType != null) {
+                if (getSPConfiguration().isIdpUsesArtifactBinding()) {
+                    authn.setProtocolBinding(URI.create(JBossSAMLURIConstants.SAML_HTTP_ARTIFACT_BINDING.get()));
+                } else if (bindingType != null) {
                     if (bindingType.equals("POST") || isIdpUsesPostBinding) {
                         authn.setProtocolBinding(URI.create(JBossSAMLURIConstants.SAML_HTTP_POST_BINDING.get()));
                     } else if (bindingType.equals("REDIRECT")) {
@@ -564,8 +570,7 @@ public class SAML2AuthenticationHandler extends BaseSAML2Handler {
                 SAMLParser parser = new SAMLParser();
 
                 JAXPValidationUtil.checkSchemaValidation(decryptedDocumentElement);
-                AssertionType assertion = (AssertionType) parser.parse(StaxParserUtil.getXMLEventReader(DocumentUtil
-                        .getNodeAsStream(decryptedDocumentElement)));
+                AssertionType assertion = (AssertionType) parser.parse(StaxParserUtil.getXMLEventReader(decryptedDocumentElement));
 
                 responseType.replaceAssertion(oldID, new RTChoiceType(assertion));
                 return responseType;
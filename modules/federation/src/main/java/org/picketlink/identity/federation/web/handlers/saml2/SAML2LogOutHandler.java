@@ -42,6 +42,7 @@ import org.picketlink.identity.federation.core.saml.v2.interfaces.SAML2HandlerRe
 import org.picketlink.identity.federation.core.saml.v2.util.DocumentUtil;
 import org.picketlink.identity.federation.core.saml.v2.util.XMLTimeUtil;
 import org.picketlink.identity.federation.core.sts.PicketLinkCoreSTS;
+import org.picketlink.identity.federation.core.util.SOAPUtil;
 import org.picketlink.identity.federation.core.wstrust.plugins.saml.SAMLUtil;
 import org.picketlink.identity.federation.saml.v2.SAML2Object;
 import org.picketlink.identity.federation.saml.v2.assertion.AssertionType;
@@ -65,16 +66,32 @@ import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
 import javax.servlet.http.HttpSession;
 import javax.xml.parsers.ParserConfigurationException;
-import java.io.DataOutputStream;
+import javax.xml.soap.SOAPMessage;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.OutputStream;
 import java.net.HttpURLConnection;
 import java.net.URI;
 import java.net.URL;
 import java.net.URLEncoder;
+import java.security.AccessController;
 import java.security.Principal;
+import java.security.PrivilegedAction;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /**
  * SAML2 LogOut Profile
@@ -86,6 +103,28 @@ public class SAML2LogOutHandler extends BaseSAML2Handler {
 
     public static final String BACK_CHANNEL_LOGOUT = "BACK_CHANNEL_LOGOUT";
 
+    /**
+     * Binding used to send the back-channel logout requests: POST (default) or SOAP.
+     */
+    public static final String BACK_CHANNEL_LOGOUT_BINDING = "BACK_CHANNEL_LOGOUT_BINDING";
+
+    /**
+     * How long, in milliseconds, to wait for each participant during a back-channel logout. Defaults to 5000.
+     */
+    public static final String BACK_CHANNEL_LOGOUT_TIMEOUT = "BACK_CHANNEL_LOGOUT_TIMEOUT";
+
+    private static final String SOAP_ACTION = "http://www.oasis-open.org/committees/security";
+
+    // Configurable number of threads sending back-channel logout requests
+    private static final int backChannelLogoutThreads = AccessController.doPrivileged(new PrivilegedAction<Integer>() {
+        public Integer run() {
+            String val = System.getProperty("picketlink.backchannel.logout.threads", "20");
+            return Integer.parseInt(val);
+        }
+    });
+
+    private static final ExecutorService backChannelLogoutExecutor = createBackChannelLogoutExecutor();
+
     private final IDPLogOutHandler idp = new IDPLogOutHandler();
 
     private final SPLogOutHandler sp = new SPLogOutHandler();
@@ -146,6 +185,138 @@ public class SAML2LogOutHandler extends BaseSAML2Handler {
         return httpServletRequest.getParameter(BACK_CHANNEL_LOGOUT) != null;
     }
 
+    private static ExecutorService createBackChannelLogoutExecutor() {
+        ThreadPoolExecutor executor = new ThreadPoolExecutor(backChannelLogoutThreads, backChannelLogoutThreads, 60L,
+                TimeUnit.SECONDS, new LinkedBlockingQueue<Runnable>(), new ThreadFactory() {
+                    private final AtomicInteger count = new AtomicInteger();
+
+                    public Thread newThread(Runnable runnable) {
+                        Thread thread = new Thread(runnable, "picketlink-backchannel-logout-" + count.incrementAndGet());
+                        thread.setDaemon(true);
+                        return thread;
+                    }
+                });
+
+        executor.allowCoreThreadTimeOut(true);
+
+        return executor;
+    }
+
+    /**
+     * Sends a logout request to a single participant, using either a form POST, as understood by the PicketLink service
+     * providers, or the SAML SOAP binding.
+     */
+    private static class BackChannelLogoutRequest implements Callable<Boolean> {
+
+        private final String participant;
+
+        private final Document logoutRequest;
+
+        private final boolean soapBinding;
+
+        private final int timeout;
+
+        BackChannelLogoutRequest(String participant, Document logoutRequest, boolean soapBinding, int timeout) {
+            this.participant = participant;
+            this.logoutRequest = logoutRequest;
+            this.soapBinding = soapBinding;
+            this.timeout = timeout;
+        }
+
+        public Boolean call() throws Exception {
+            HttpURLConnection urlConnection = (HttpURLConnection) new URL(this.participant).openConnection();
+
+            try {
+                urlConnection.setRequestMethod("POST");
+                urlConnection.setDoOutput(true);
+                urlConnection.setAllowUserInteraction(false);
+                urlConnection.setConnectTimeout(this.timeout);
+                urlConnection.setReadTimeout(this.timeout);
+
+                if (this.soapBinding) {
+                    return sendSOAP(urlConnection);
+                }
+
+                return sendPOST(urlConnection);
+            } finally {
+                urlConnection.disconnect();
+            }
+        }
+
+        private boolean sendPOST(HttpURLConnection urlConnection) throws Exception {
+            String samlRequest = PostBindingUtil.base64Encode(DocumentUtil.getDocumentAsString(this.logoutRequest));
+
+            StringBuilder parameterBuilder = new StringBuilder();
+
+            parameterBuilder
+                .append(GeneralConstants.SAML_REQUEST_KEY)
+                .append("=")
+                .append(URLEncoder.encode(samlRequest, "UTF-8"))
+                .append("&")
+                .append(BACK_CHANNEL_LOGOUT)
+                .append("=")
+                .append(BACK_CHANNEL_LOGOUT);
+
+            byte[] parameters = parameterBuilder.toString().getBytes("UTF-8");
+
+            urlConnection.setRequestProperty("Content-Type", "application/x-www-form-urlencoded");
+            urlConnection.setRequestProperty("Content-Length", Integer.toString(parameters.length));
+
+            OutputStream outputStream = urlConnection.getOutputStream();
+
+            try {
+                outputStream.write(parameters);
+            } finally {
+                outputStream.close();
+            }
+
+            int responseCode = urlConnection.getResponseCode();
+
+            return responseCode < HttpURLConnection.HTTP_BAD_REQUEST;
+        }
+
+        private boolean sendSOAP(HttpURLConnection urlConnection) throws Exception {
+            SOAPMessage soapRequest = SOAPUtil.create();
+
+            soapRequest.getSOAPBody().addDocument(this.logoutRequest);
+
+            urlConnection.setRequestProperty("Content-Type", "text/xml; charset=utf-8");
+            urlConnection.setRequestProperty("SOAPAction", SOAP_ACTION);
+
+            OutputStream outputStream = urlConnection.getOutputStream();
+
+            try {
+                soapRequest.writeTo(outputStream);
+            } finally {
+                outputStream.close();
+            }
+
+            if (urlConnection.getResponseCode() >= HttpURLConnection.HTTP_BAD_REQUEST) {
+                return false;
+            }
+
+            InputStream inputStream = urlConnection.getInputStream();
+            Document soapData;
+
+            try {
+                soapData = SOAPUtil.getSOAPData(SOAPUtil.getSOAPMessage(inputStream));
+            } finally {
+                inputStream.close();
+            }
+
+            SAML2Object samlObject = new SAML2Response().getSAML2ObjectFromStream(DocumentUtil.getNodeAsStream(soapData));
+
+            if (samlObject instanceof StatusResponseType == false) {
+                return false;
+            }
+
+            StatusType status = ((StatusResponseType) samlObject).getStatus();
+
+            return status != null && status.getStatusCode() != null && status.getStatusCode().getValue() != null
+                && JBossSAMLURIConstants.STATUS_SUCCESS.get().equals(status.getStatusCode().getValue().toString());
+        }
+    }
+
     private class IDPLogOutHandler {
 
         public void generateSAMLRequest(SAML2HandlerRequest request, SAML2HandlerResponse response) throws ProcessingException {
@@ -274,7 +445,7 @@ public class SAML2LogOutHandler extends BaseSAML2Handler {
                     throw logger.samlHandlerIdentityServerNotFoundError();
 
                 if (isBackChannelLogout()) {
-                    performBackChannelLogout(request, originalIssuer);
+                    performBackChannelLogout(request, response, logOutRequest, originalIssuer);
                 } else {
                     performFrontChannelLogout(request, response, logOutRequest, originalIssuer, relayState);
                 }
@@ -332,74 +503,100 @@ public class SAML2LogOutHandler extends BaseSAML2Handler {
             }
         }
 
-        private void performBackChannelLogout(SAML2HandlerRequest request, String originalIssuer) throws ProcessingException {
-            String partitipant = originalIssuer;
+        /**
+         * Sends the logout requests to all the participants of the session at once, then answers the issuer of the
+         * logout with a single response. The response carries a PartialLogout status if any participant failed or did
+         * not answer in time.
+         */
+        private void performBackChannelLogout(SAML2HandlerRequest request, SAML2HandlerResponse response,
+                                              LogoutRequestType logOutRequest, String originalIssuer) throws ConfigurationException,
+                ParserConfigurationException, ProcessingException, ParsingException {
             HTTPContext httpContext = (HTTPContext) request.getContext();
             HttpServletRequest httpServletRequest = httpContext.getRequest();
             HttpSession session = httpServletRequest.getSession(false);
             String sessionID = session.getId();
             ServletContext servletCtx = httpContext.getServletContext();
             IdentityServer server = getIdentityServer(servletCtx);
+            String identityURL = getProviderconfig().getIdentityURL();
+            boolean initiatedByIDP = originalIssuer.equals(identityURL);
+
+            List<String> participants = new ArrayList<String>();
+            String participant;
+
+            while ((participant = server.stack().pop(sessionID)) != null) {
+                // the issuer is answered through the front channel
+                if (!participant.equals(originalIssuer) && !participants.contains(participant)) {
+                    participants.add(participant);
+                }
+            }
+
+            int failures = sendBackChannelLogoutRequests(request, participants);
 
-            while (partitipant != null) {
-                HttpURLConnection urlConnection = null;
+            session.invalidate();
 
+            if (initiatedByIDP) {
                 try {
-                    URL participantURL = new URL(partitipant);
-                    urlConnection = (HttpURLConnection) participantURL.openConnection();
-
-                    urlConnection.setRequestMethod("POST");
-                    urlConnection.setDoOutput(true);
-                    urlConnection.setAllowUserInteraction(false);
-                    urlConnection.setRequestProperty("Content-Type", "application/x-www-form-urlencoded");
-
-                    LogoutRequestType logoutRequest = createLogoutRequest(request, partitipant);
-                    Document logoutRequestDocument = new SAML2Request().convert(logoutRequest);
-
-                    byte[] responseBytes = DocumentUtil.getDocumentAsString(logoutRequestDocument).getBytes("UTF-8");
-                    String samlResponse = PostBindingUtil.base64Encode(new String(responseBytes));
-
-                    StringBuilder parameterBuilder = new StringBuilder();
-
-                    parameterBuilder
-                        .append(GeneralConstants.SAML_REQUEST_KEY)
-                        .append("=")
-                        .append(URLEncoder.encode(samlResponse, "UTF-8"))
-                        .append("&")
-                        .append(BACK_CHANNEL_LOGOUT)
-                        .append("=")
-                        .append(BACK_CHANNEL_LOGOUT);
-
-                    urlConnection.setRequestProperty("Content-Length", Integer.toString(parameterBuilder.length()));
-
-                    DataOutputStream wr = new DataOutputStream(urlConnection.getOutputStream());
-
-                    wr.writeBytes(parameterBuilder.toString());
-                    wr.flush();
-                    wr.close();
-
-                    InputStream inputStream = urlConnection.getInputStream();
-                    inputStream.close();
-                } catch (Exception ignore) {
-                    logger.warn("Could not perform global logout from service provider [" + partitipant + "].");
-                    logger.samlLogoutError(ignore);
-                } finally {
-                    if (urlConnection != null) {
-                        urlConnection.disconnect();
-                    }
+                    HttpServletResponse httpServletResponse = httpContext.getResponse();
+                    httpServletResponse.sendRedirect(identityURL);
+                } catch (IOException e) {
+                    throw new ProcessingException("Could not redirect to IdP after a successful logout.", e);
                 }
+            } else {
+                generateStatusResponseType(logOutRequest.getID(), request, response, originalIssuer, failures == 0);
 
-                partitipant = server.stack().pop(sessionID);
+                boolean isPost = isPostBindingForResponse(server, originalIssuer, request);
+                response.setPostBindingForResponse(isPost);
             }
+        }
 
-            session.invalidate();
+        /**
+         * Sends a logout request to each participant concurrently, waiting at most the configured timeout.
+         *
+         * @return the number of participants that did not confirm the logout.
+         */
+        private int sendBackChannelLogoutRequests(SAML2HandlerRequest request, List<String> participants)
+                throws ConfigurationException, ProcessingException, ParserConfigurationException, ParsingException {
+            boolean soapBinding = "SOAP".equalsIgnoreCase(getBackChannelLogoutBinding());
+            int timeout = getBackChannelLogoutTimeout();
+            Map<String, Future<Boolean>> results = new LinkedHashMap<String, Future<Boolean>>();
+
+            for (String participant : participants) {
+                Document logoutRequest = new SAML2Request().convert(createLogoutRequest(request, participant));
+
+                results.put(participant, backChannelLogoutExecutor.submit(
+                        new BackChannelLogoutRequest(participant, logoutRequest, soapBinding, timeout)));
+            }
 
-            try {
-                HttpServletResponse httpServletResponse = httpContext.getResponse();
-                httpServletResponse.sendRedirect(getProviderconfig().getIdentityURL());
-            } catch (IOException e) {
-                throw new ProcessingException("Could not redirect to IdP after a successful logout.", e);
+            long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeout);
+            int failures = 0;
+
+            for (Map.Entry<String, Future<Boolean>> result : results.entrySet()) {
+                String participant = result.getKey();
+                Future<Boolean> future = result.getValue();
+
+                try {
+                    if (!future.get(Math.max(0, deadline - System.nanoTime()), TimeUnit.NANOSECONDS)) {
+                        logger.warn("Service provider [" + participant + "] did not confirm the global logout.");
+                        failures++;
+                    }
+                } catch (TimeoutException e) {
+                    future.cancel(true);
+                    logger.warn("Timed out performing global logout from service provider [" + participant + "].");
+                    failures++;
+                } catch (InterruptedException e) {
+                    future.cancel(true);
+                    Thread.currentThread().interrupt();
+                    failures++;
+                } catch (ExecutionException e) {
+                    logger.warn("Could not perform global logout from service provider [" + participant + "].");
+                    logger.samlLogoutError(e.getCause());
+                    failures++;
+                }
             }
+
+            logger.trace("Back-channel logout sent to " + results.size() + " participants, " + failures + " failed");
+
+            return failures;
         }
 
         private IdentityServer getIdentityServer(ServletContext servletCtx) {
@@ -437,9 +634,25 @@ public class SAML2LogOutHandler extends BaseSAML2Handler {
             return handlerConfig.getParameter(BACK_CHANNEL_LOGOUT) != null ? Boolean.valueOf(handlerConfig.getParameter(BACK_CHANNEL_LOGOUT).toString()) : false;
         }
 
+        private String getBackChannelLogoutBinding() {
+            Object binding = handlerConfig.getParameter(BACK_CHANNEL_LOGOUT_BINDING);
+            return binding != null ? binding.toString() : "POST";
+        }
+
+        private int getBackChannelLogoutTimeout() {
+            Object timeout = handlerConfig.getParameter(BACK_CHANNEL_LOGOUT_TIMEOUT);
+            return timeout != null ? Integer.parseInt(timeout.toString()) : 5000;
+        }
+
         private void generateSuccessStatusResponseType(String logOutRequestID, SAML2HandlerRequest request,
                                                        SAML2HandlerResponse response, String originalIssuer) throws ConfigurationException,
                 ParserConfigurationException, ProcessingException {
+            generateStatusResponseType(logOutRequestID, request, response, originalIssuer, true);
+        }
+
+        private void generateStatusResponseType(String logOutRequestID, SAML2HandlerRequest request,
+                                                SAML2HandlerResponse response, String originalIssuer, boolean complete) throws ConfigurationException,
+                ParserConfigurationException, ProcessingException {
 
             logger.trace("Generating Success Status Response for " + originalIssuer);
 
@@ -449,6 +662,12 @@ public class SAML2LogOutHandler extends BaseSAML2Handler {
             StatusType statusType = new StatusType();
             StatusCodeType statusCodeType = new StatusCodeType();
             statusCodeType.setValue(URI.create(JBossSAMLURIConstants.STATUS_SUCCESS.get()));
+            if (!complete) {
+                // the issuer is logged out, but some of the other participants may not be
+                StatusCodeType partialLogout = new StatusCodeType();
+                partialLogout.setValue(URI.create(JBossSAMLURIConstants.STATUS_PARTIAL_LOGOUT.get()));
+                statusCodeType.setStatusCode(partialLogout);
+            }
             statusType.setStatusCode(statusCodeType);
 
             statusResponse.setStatus(statusType);
@@ -175,8 +175,7 @@ public class SAML2SignatureGenerationHandler extends AbstractSignatureHandler {
                                 boolean willSendRequest)
             throws ProcessingException {
         try {
-            String samlMessage = DocumentUtil.getDocumentAsString(samlDocument);
-            String base64Request = RedirectBindingUtil.deflateBase64URLEncode(samlMessage.getBytes("UTF-8"));
+            String base64Request = RedirectBindingUtil.deflateBase64URLEncode(samlDocument);
             PrivateKey signingKey = keypair.getPrivate();
 
             String url;
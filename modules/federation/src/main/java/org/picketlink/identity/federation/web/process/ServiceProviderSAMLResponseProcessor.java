@@ -32,6 +32,7 @@ import org.picketlink.identity.federation.saml.v2.metadata.IDPSSODescriptorType;
 import org.picketlink.identity.federation.web.core.HTTPContext;
 import org.picketlink.identity.federation.web.util.PostBindingUtil;
 import org.picketlink.identity.federation.web.util.RedirectBindingUtil;
+import org.w3c.dom.Document;
 
 import java.io.IOException;
 import java.io.InputStream;
@@ -90,6 +91,38 @@ public class ServiceProviderSAMLResponseProcessor extends ServiceProviderBasePro
         return saml2HandlerResponse;
     }
 
+    /**
+     * Process a message resolved with the HTTP-Artifact binding
+     *
+     * @param samlResponse the message carried by the {@code ArtifactResponse}
+     * @param httpContext
+     * @param handlers
+     * @param chainLock a lock that needs to be used to process the chain of handlers
+     *
+     * @return
+     *
+     * @throws ProcessingException
+     * @throws IOException
+     * @throws ParsingException
+     * @throws ConfigurationException
+     */
+    public SAML2HandlerResponse process(Document samlResponse, HTTPContext httpContext, Set<SAML2Handler> handlers,
+                                        Lock chainLock) throws ProcessingException, IOException, ParsingException, ConfigurationException {
+        SAML2Response saml2Response = new SAML2Response();
+
+        try {
+            saml2Response.getSAML2ObjectFromDocument(samlResponse);
+        } catch (ProcessingException pe) {
+            logger.samlResponseFromIDPParsingFailed();
+            throw pe;
+        } catch (ParsingException pe) {
+            logger.samlResponseFromIDPParsingFailed();
+            throw pe;
+        }
+
+        return processHandlersChain(httpContext, handlers, chainLock, saml2Response.getSamlDocumentHolder());
+    }
+
     private SAML2HandlerResponse processHandlersChain(HTTPContext httpContext, Set<SAML2Handler> handlers, Lock chainLock,
                                                       SAMLDocumentHolder documentHolder) throws ConfigurationException, ProcessingException, IOException {
         // Create the request/response
@@ -135,9 +168,10 @@ public class ServiceProviderSAMLResponseProcessor extends ServiceProviderBasePro
         } catch (ParsingException pe) {
             logger.samlResponseFromIDPParsingFailed();
             throw pe;
+        } finally {
+            RedirectBindingUtil.close(dataStream);
         }
 
-
         return saml2Response.getSamlDocumentHolder();
     }
 }
\ No newline at end of file
@@ -0,0 +1,166 @@
+/*
+ * JBoss, Home of Professional Open Source
+ *
+ * Copyright 2013 Red Hat, Inc. and/or its affiliates.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.picketlink.identity.federation.web.servlets.saml;
+
+import org.picketlink.common.PicketLinkLogger;
+import org.picketlink.common.PicketLinkLoggerFactory;
+import org.picketlink.common.constants.GeneralConstants;
+import org.picketlink.common.constants.JBossSAMLConstants;
+import org.picketlink.common.exceptions.ConfigurationException;
+import org.picketlink.common.exceptions.ProcessingException;
+import org.picketlink.common.util.DocumentUtil;
+import org.picketlink.identity.federation.api.saml.v2.sig.SAML2Signature;
+import org.picketlink.identity.federation.core.interfaces.TrustKeyManager;
+import org.picketlink.identity.federation.core.parsers.saml.SAMLParser;
+import org.picketlink.identity.federation.core.saml.v2.interfaces.SAML2ArtifactStore;
+import org.picketlink.identity.federation.core.util.SOAPUtil;
+import org.picketlink.identity.federation.saml.v2.protocol.ArtifactResolveType;
+import org.picketlink.identity.federation.web.util.ArtifactBindingUtil;
+import org.picketlink.identity.federation.web.util.IDPWebRequestUtil;
+import org.w3c.dom.Document;
+import org.w3c.dom.Node;
+
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServlet;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import javax.xml.soap.SOAPException;
+import javax.xml.soap.SOAPMessage;
+import java.io.IOException;
+import java.security.GeneralSecurityException;
+import java.security.PublicKey;
+
+/**
+ * <p>
+ * SOAP endpoint of the IDP answering the {@code ArtifactResolve} requests of the SPs, for the responses sent with the
+ * HTTP-Artifact binding. The responses are taken from the {@link SAML2ArtifactStore} the
+ * {@link org.picketlink.identity.federation.web.filters.IDPFilter} of the same application shares through the servlet
+ * context. An artifact can only be resolved once, by the SP which sent the request answered by the response.
+ * </p>
+ * <p>
+ * When the IDP supports signatures, the {@code ArtifactResolve} requests must be signed with the key of their issuer,
+ * found in the key manager of the IDP as for the other messages of the SPs.
+ * </p>
+ * <p>
+ * The servlet must be mapped to an URL which is not protected by the login configuration of the IDP.
+ * </p>
+ */
+public class ArtifactResolutionServlet extends HttpServlet {
+
+    private static final long serialVersionUID = 1L;
+
+    private static final PicketLinkLogger logger = PicketLinkLoggerFactory.getLogger();
+
+    @Override
+    protected void doPost(HttpServletRequest req, HttpServletResponse resp) throws ServletException, IOException {
+        SOAPMessage returnSOAPMessage;
+
+        try {
+            SOAPMessage soapMessage = SOAPUtil.getSOAPMessage(req.getInputStream());
+            Node artifactResolveNode = getArtifactResolve(soapMessage);
+
+            if (artifactResolveNode == null) {
+                throw logger.nullValueError("ArtifactResolve");
+            }
+
+            Document artifactResolveDocument = DocumentUtil.createDocument();
+
+            artifactResolveDocument.appendChild(artifactResolveDocument.importNode(artifactResolveNode, true));
+
+            ArtifactResolveType artifactResolve = (ArtifactResolveType) new SAMLParser().parse(artifactResolveDocument);
+
+            if (artifactResolve.getIssuer() == null) {
+                throw logger.nullValueError("ArtifactResolve Issuer");
+            }
+
+            String issuer = artifactResolve.getIssuer().getValue();
+
+            validateSignature(artifactResolveDocument, issuer, req);
+
+            Document message = getArtifactStore().resolve(artifactResolve.getArtifact(), issuer);
+
+            if (message == null) {
+                logger.trace("Unknown or expired artifact " + artifactResolve.getArtifact() + ", or not sent to " + issuer);
+            }
+
+            returnSOAPMessage = SOAPUtil.create();
+            returnSOAPMessage.getSOAPBody().addDocument(ArtifactBindingUtil.createArtifactResponse(artifactResolve,
+                    message));
+        } catch (Exception e) {
+            logger.error(e);
+
+            try {
+                returnSOAPMessage = SOAPUtil.createFault("Server Error");
+            } catch (SOAPException se) {
+                throw new ServletException(se);
+            }
+        }
+
+        resp.setContentType("text/xml;charset=utf-8");
+
+        try {
+            returnSOAPMessage.writeTo(resp.getOutputStream());
+        } catch (SOAPException e) {
+            throw new ServletException(e);
+        }
+    }
+
+    private SAML2ArtifactStore getArtifactStore() {
+        SAML2ArtifactStore store = (SAML2ArtifactStore) getServletContext().getAttribute(GeneralConstants.ARTIFACT_STORE);
+
+        if (store == null) {
+            throw logger.nullValueError("Artifact Store");
+        }
+
+        return store;
+    }
+
+    /**
+     * Checks the signature of the request with the key of its issuer, when the IDP supports signatures.
+     */
+    private void validateSignature(Document artifactResolveDocument, String issuer, HttpServletRequest req)
+            throws ConfigurationException, ProcessingException, GeneralSecurityException {
+        TrustKeyManager keyManager = (TrustKeyManager) getServletContext().getAttribute(
+                GeneralConstants.ARTIFACT_RESOLUTION_KEY_MANAGER);
+
+        if (keyManager == null) {
+            return;
+        }
+
+        PublicKey publicKey = IDPWebRequestUtil.getIssuerPublicKey(keyManager, issuer, req.getRemoteAddr());
+
+        if (publicKey == null) {
+            throw logger.nullValueError("Validating key of " + issuer);
+        }
+
+        if (!new SAML2Signature().validate(artifactResolveDocument, publicKey)) {
+            throw logger.samlIDPValidationCheckFailed();
+        }
+    }
+
+    private Node getArtifactResolve(SOAPMessage soapMessage) throws SOAPException {
+        for (Node child = soapMessage.getSOAPBody().getFirstChild(); child != null; child = child.getNextSibling()) {
+            if (child.getNodeType() == Node.ELEMENT_NODE
+                    && JBossSAMLConstants.ARTIFACT_RESOLVE.get().equals(child.getLocalName())) {
+                return child;
+            }
+        }
+
+        return null;
+    }
+}
@@ -0,0 +1,301 @@
+/*
+ * JBoss, Home of Professional Open Source
+ *
+ * Copyright 2013 Red Hat, Inc. and/or its affiliates.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.picketlink.identity.federation.web.util;
+
+import org.picketlink.common.ErrorCodes;
+import org.picketlink.common.PicketLinkLogger;
+import org.picketlink.common.PicketLinkLoggerFactory;
+import org.picketlink.common.constants.GeneralConstants;
+import org.picketlink.common.constants.JBossSAMLConstants;
+import org.picketlink.common.constants.JBossSAMLURIConstants;
+import org.picketlink.common.exceptions.ConfigurationException;
+import org.picketlink.common.exceptions.ParsingException;
+import org.picketlink.common.exceptions.ProcessingException;
+import org.picketlink.common.util.DocumentUtil;
+import org.picketlink.identity.federation.api.saml.v2.request.SAML2Request;
+import org.picketlink.identity.federation.api.saml.v2.sig.SAML2Signature;
+import org.picketlink.identity.federation.core.saml.v2.common.IDGenerator;
+import org.picketlink.identity.federation.core.saml.v2.factories.JBossSAMLAuthnResponseFactory;
+import org.picketlink.identity.federation.core.saml.v2.interfaces.SAML2ArtifactStore;
+import org.picketlink.identity.federation.core.saml.v2.util.ArtifactUtil;
+import org.picketlink.identity.federation.core.saml.v2.util.XMLTimeUtil;
+import org.picketlink.identity.federation.core.saml.v2.writers.SAMLResponseWriter;
+import org.picketlink.identity.federation.core.util.SOAPUtil;
+import org.picketlink.identity.federation.saml.v2.assertion.NameIDType;
+import org.picketlink.identity.federation.saml.v2.protocol.ArtifactResolveType;
+import org.picketlink.identity.federation.saml.v2.protocol.ArtifactResponseType;
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+import org.w3c.dom.Node;
+
+import javax.servlet.http.HttpServletResponse;
+import javax.xml.soap.SOAPConnection;
+import javax.xml.soap.SOAPConnectionFactory;
+import javax.xml.soap.SOAPException;
+import javax.xml.soap.SOAPMessage;
+import javax.xml.transform.dom.DOMResult;
+import java.io.IOException;
+import java.net.URI;
+import java.net.URL;
+import java.security.KeyPair;
+
+import static org.picketlink.common.util.StringUtil.isNotNull;
+
+/**
+ * <p>
+ * Utility class for the SAML HTTP-Artifact binding.
+ * </p>
+ * <p>
+ * The sender keeps the message in a {@link SAML2ArtifactStore} and redirects the browser to the receiver with a
+ * short artifact instead of the message. The receiver gets the message from the sender with an {@code ArtifactResolve}
+ * request sent over SOAP, without going through the browser.
+ * </p>
+ */
+public class ArtifactBindingUtil {
+
+    private static final PicketLinkLogger logger = PicketLinkLoggerFactory.getLogger();
+
+    /**
+     * Stores the given message and redirects the browser to the destination with its artifact.
+     *
+     * @param store the store keeping the message until the receiver resolves it.
+     * @param message the message, whose issuer identifies the sender of the artifact.
+     * @param recipient the entity ID of the receiver, the only one allowed to resolve the artifact.
+     * @param destination
+     * @param relayState
+     * @param response
+     *
+     * @throws IOException
+     */
+    public static void sendArtifact(SAML2ArtifactStore store, Document message, String recipient, String destination,
+                                    String relayState, HttpServletResponse response) throws IOException {
+        String issuer = getIssuer(message.getDocumentElement());
+
+        if (issuer == null) {
+            throw logger.nullValueError("Issuer");
+        }
+
+        if (recipient == null) {
+            throw logger.nullValueError("Artifact recipient");
+        }
+
+        String artifact = ArtifactUtil.createArtifact(issuer, 0);
+
+        store.store(artifact, message, recipient);
+
+        StringBuilder location = new StringBuilder(destination);
+
+        location.append(destination.indexOf('?') < 0 ? '?' : '&');
+        location.append(GeneralConstants.SAML_ARTIFACT_KEY).append('=').append(RedirectBindingUtil.urlEncode(artifact));
+
+        if (isNotNull(relayState)) {
+            location.append('&').append(GeneralConstants.RELAY_STATE).append('=')
+                    .append(RedirectBindingUtil.urlEncode(relayState));
+        }
+
+        HTTPRedirectUtil.sendRedirectForResponder(location.toString(), response);
+    }
+
+    /**
+     * Creates an {@code ArtifactResolve} request for the given artifact.
+     *
+     * @param artifact
+     * @param issuer the entity ID of the requester.
+     * @param destination the artifact resolution endpoint.
+     *
+     * @return
+     *
+     * @throws ProcessingException
+     * @throws ConfigurationException
+     * @throws ParsingException
+     */
+    public static Document createArtifactResolve(String artifact, String issuer, String destination)
+            throws ProcessingException, ConfigurationException, ParsingException {
+        ArtifactResolveType artifactResolve = new ArtifactResolveType(IDGenerator.create("ID_"),
+                XMLTimeUtil.getIssueInstant());
+
+        NameIDType nameIDType = new NameIDType();
+        nameIDType.setValue(issuer);
+
+        artifactResolve.setIssuer(nameIDType);
+        artifactResolve.setArtifact(artifact);
+
+        if (destination != null) {
+            artifactResolve.setDestination(URI.create(destination));
+        }
+
+        return new SAML2Request().convert(artifactResolve);
+    }
+
+    /**
+     * Sends an {@code ArtifactResolve} request to the given SOAP endpoint and returns the message identified by the
+     * artifact.
+     *
+     * @param endpoint the artifact resolution endpoint of the sender of the artifact.
+     * @param artifact
+     * @param issuer the entity ID of the requester.
+     * @param signingKeyPair the key pair signing the request, or null if the request is not signed.
+     *
+     * @return the message, or null if the artifact is unknown or expired.
+     *
+     * @throws ProcessingException if the artifact could not be resolved.
+     */
+    public static Document resolveArtifact(String endpoint, String artifact, String issuer, KeyPair signingKeyPair)
+            throws ProcessingException {
+        try {
+            Document artifactResolve = createArtifactResolve(artifact, issuer, endpoint);
+
+            if (signingKeyPair != null) {
+                SAML2Signature samlSignature = new SAML2Signature();
+                Node nextSibling = samlSignature.getNextSiblingOfIssuer(artifactResolve);
+
+                if (nextSibling != null) {
+                    samlSignature.setNextSibling(nextSibling);
+                }
+
+                samlSignature.signSAMLDocument(artifactResolve, signingKeyPair);
+            }
+
+            SOAPMessage soapMessage = SOAPUtil.create();
+
+            soapMessage.getSOAPBody().addDocument(artifactResolve);
+
+            SOAPConnection connection = SOAPConnectionFactory.newInstance().createConnection();
+            SOAPMessage soapResponse;
+
+            try {
+                soapResponse = connection.call(soapMessage, new URL(endpoint));
+            } finally {
+                connection.close();
+            }
+
+            if (soapResponse.getSOAPBody().hasFault()) {
+                throw new ProcessingException(ErrorCodes.PROCESSING_EXCEPTION + "Artifact resolution failed: "
+                        + soapResponse.getSOAPBody().getFault().getFaultString());
+            }
+
+            Element artifactResponse = getChildElement(soapResponse.getSOAPBody(),
+                    JBossSAMLConstants.ARTIFACT_RESPONSE.get());
+
+            if (artifactResponse == null) {
+                throw logger.nullValueError("ArtifactResponse");
+            }
+
+            return getArtifactResponseMessage(artifactResponse);
+        } catch (ProcessingException e) {
+            throw e;
+        } catch (SOAPException e) {
+            throw logger.processingError(e);
+        } catch (IOException e) {
+            throw logger.processingError(e);
+        } catch (ConfigurationException e) {
+            throw logger.processingError(e);
+        } catch (ParsingException e) {
+            throw logger.processingError(e);
+        }
+    }
+
+    /**
+     * Creates the {@code ArtifactResponse} answering the given request.
+     *
+     * @param artifactResolve
+     * @param message the message identified by the artifact, or null if the artifact could not be resolved.
+     *
+     * @return
+     *
+     * @throws ProcessingException
+     * @throws ConfigurationException
+     */
+    public static Document createArtifactResponse(ArtifactResolveType artifactResolve, Document message)
+            throws ProcessingException, ConfigurationException {
+        ArtifactResponseType artifactResponse = new ArtifactResponseType(IDGenerator.create("ID_"),
+                XMLTimeUtil.getIssueInstant());
+
+        artifactResponse.setInResponseTo(artifactResolve.getID());
+        artifactResponse.setStatus(JBossSAMLAuthnResponseFactory.createStatusType(JBossSAMLURIConstants.STATUS_SUCCESS
+                .get()));
+
+        String issuer = message != null ? getIssuer(message.getDocumentElement()) : null;
+
+        if (issuer != null) {
+            NameIDType nameIDType = new NameIDType();
+            nameIDType.setValue(issuer);
+            artifactResponse.setIssuer(nameIDType);
+        }
+
+        Document document = DocumentUtil.createDocument();
+
+        new SAMLResponseWriter(new DOMResult(document)).write(artifactResponse);
+
+        if (message != null) {
+            document.getDocumentElement().appendChild(document.importNode(message.getDocumentElement(), true));
+        }
+
+        return document;
+    }
+
+    /**
+     * Returns the message carried by the given {@code ArtifactResponse}, as a new document.
+     *
+     * @param artifactResponse
+     *
+     * @return the message, or null if the response does not carry any.
+     *
+     * @throws ProcessingException if the status of the response is not a success.
+     * @throws ConfigurationException
+     */
+    public static Document getArtifactResponseMessage(Element artifactResponse) throws ProcessingException,
+            ConfigurationException {
+        Element status = getChildElement(artifactResponse, JBossSAMLConstants.STATUS.get());
+        Element statusCode = status != null ? getChildElement(status, JBossSAMLConstants.STATUS_CODE.get()) : null;
+        String statusValue = statusCode != null ? statusCode.getAttribute(JBossSAMLConstants.VALUE.get()) : null;
+
+        if (!JBossSAMLURIConstants.STATUS_SUCCESS.get().equals(statusValue)) {
+            throw new ProcessingException(ErrorCodes.PROCESSING_EXCEPTION + "Artifact resolution failed with status "
+                    + statusValue);
+        }
+
+        for (Node child = status.getNextSibling(); child != null; child = child.getNextSibling()) {
+            if (child.getNodeType() == Node.ELEMENT_NODE) {
+                Document message = DocumentUtil.createDocument();
+
+                message.appendChild(message.importNode(child, true));
+
+                return message;
+            }
+        }
+
+        return null;
+    }
+
+    private static String getIssuer(Element message) {
+        Element issuer = getChildElement(message, JBossSAMLConstants.ISSUER.get());
+
+        return issuer != null ? issuer.getTextContent().trim() : null;
+    }
+
+    private static Element getChildElement(Node parent, String localName) {
+        for (Node child = parent.getFirstChild(); child != null; child = child.getNextSibling()) {
+            if (child.getNodeType() == Node.ELEMENT_NODE && localName.equals(child.getLocalName())) {
+                return (Element) child;
+            }
+        }
+
+        return null;
+    }
+}
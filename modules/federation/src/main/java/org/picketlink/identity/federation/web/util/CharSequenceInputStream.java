@@ -0,0 +1,101 @@
+/*
+ * JBoss, Home of Professional Open Source
+ *
+ * Copyright 2013 Red Hat, Inc. and/or its affiliates.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.picketlink.identity.federation.web.util;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * Reads the characters of an encoded SAML message, such as a request parameter, as bytes, so that the message can be
+ * decoded while it is parsed instead of being copied first. Only ASCII characters are accepted, as the Base64 and URL
+ * encodings only produce those.
+ */
+class CharSequenceInputStream extends InputStream {
+
+    private final CharSequence chars;
+
+    private final boolean urlDecode;
+
+    private int position;
+
+    /**
+     * @param chars the encoded message
+     * @param urlDecode whether the message is URL encoded, in which case {@code %XX} sequences and {@code +} are decoded
+     */
+    CharSequenceInputStream(CharSequence chars, boolean urlDecode) {
+        this.chars = chars;
+        this.urlDecode = urlDecode;
+    }
+
+    @Override
+    public int read() throws IOException {
+        if (this.position >= this.chars.length()) {
+            return -1;
+        }
+
+        char c = this.chars.charAt(this.position++);
+
+        if (this.urlDecode) {
+            if (c == '+') {
+                return ' ';
+            }
+
+            if (c == '%') {
+                if (this.position + 2 > this.chars.length()) {
+                    throw new IOException("Incomplete escape sequence in URL encoded data.");
+                }
+
+                int high = Character.digit(this.chars.charAt(this.position++), 16);
+                int low = Character.digit(this.chars.charAt(this.position++), 16);
+
+                if (high < 0 || low < 0) {
+                    throw new IOException("Invalid escape sequence in URL encoded data.");
+                }
+
+                return (high << 4) | low;
+            }
+        }
+
+        if (c > 0x7f) {
+            throw new IOException("Invalid character in encoded data: " + c);
+        }
+
+        return c;
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+        if (len == 0) {
+            return 0;
+        }
+
+        int count = 0;
+
+        while (count < len) {
+            int c = read();
+
+            if (c < 0) {
+                break;
+            }
+
+            b[off + count++] = (byte) c;
+        }
+
+        return count == 0 ? -1 : count;
+    }
+}
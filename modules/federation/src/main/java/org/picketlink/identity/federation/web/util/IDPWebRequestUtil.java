@@ -37,11 +37,12 @@ import org.picketlink.identity.federation.core.interfaces.TrustKeyManager;
 import org.picketlink.identity.federation.core.saml.v2.common.IDGenerator;
 import org.picketlink.identity.federation.core.saml.v2.common.SAMLDocumentHolder;
 import org.picketlink.identity.federation.core.saml.v2.factories.JBossSAMLAuthnResponseFactory;
-import org.picketlink.identity.federation.core.saml.v2.holders.DestinationInfoHolder;
 import org.picketlink.identity.federation.core.saml.v2.holders.IDPInfoHolder;
 import org.picketlink.identity.federation.core.saml.v2.holders.IssuerInfoHolder;
 import org.picketlink.identity.federation.core.saml.v2.holders.SPInfoHolder;
+import org.picketlink.identity.federation.core.saml.v2.interfaces.SAML2ArtifactStore;
 import org.picketlink.identity.federation.core.saml.v2.util.DocumentUtil;
+import org.picketlink.identity.federation.core.util.CoreConfigUtil;
 import org.picketlink.identity.federation.saml.v2.protocol.RequestAbstractType;
 import org.picketlink.identity.federation.saml.v2.protocol.ResponseType;
 import org.w3c.dom.Document;
@@ -53,9 +54,11 @@ import java.io.ByteArrayInputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.StringWriter;
+import java.net.MalformedURLException;
 import java.net.URL;
 import java.security.GeneralSecurityException;
 import java.security.PrivateKey;
+import java.security.PublicKey;
 import java.util.StringTokenizer;
 
 import static org.picketlink.common.util.StringUtil.isNotNull;
@@ -124,6 +127,8 @@ public class IDPWebRequestUtil {
             return saml2Request.getSamlDocumentHolder();
         } catch (Exception rte) {
             logger.samlBase64DecodingError(rte);
+        } finally {
+            RedirectBindingUtil.close(is);
         }
 
         return null;
@@ -143,7 +148,11 @@ public class IDPWebRequestUtil {
         } else {
             is = parseSAMLRequestPostBinding(samlMessage);
         }
-        return saml2Request.getRequestType(is);
+        try {
+            return saml2Request.getRequestType(is);
+        } finally {
+            RedirectBindingUtil.close(is);
+        }
     }
 
     /**
@@ -202,7 +211,14 @@ public class IDPWebRequestUtil {
         HttpServletResponse response = holder.getServletResponse();
         boolean isErrorResponse = holder.isErrorResponse();
 
-        if (!holder.isPostBinding()) {
+        if (holder.getArtifactStore() != null) {
+            if (logger.isTraceEnabled()) {
+                logger.trace("SAML Response Document sent with an artifact: " + DocumentUtil.asString(responseDoc));
+            }
+
+            ArtifactBindingUtil.sendArtifact(holder.getArtifactStore(), responseDoc, holder.getArtifactRecipient(),
+                    destination, relayState, response);
+        } else if (!holder.isPostBinding()) {
             String finalDest = null;
 
             // This is the case with whole queryString including signature already generated by SAML2SignatureGenerationHandler
@@ -211,9 +227,7 @@ public class IDPWebRequestUtil {
             }
             // This is the case without signature
             else {
-                byte[] responseBytes = DocumentUtil.getDocumentAsString(responseDoc).getBytes("UTF-8");
-
-                String urlEncodedResponse = RedirectBindingUtil.deflateBase64URLEncode(responseBytes);
+                String urlEncodedResponse = RedirectBindingUtil.deflateBase64URLEncode(responseDoc);
 
                 if (isNotNull(relayState))
                     relayState = RedirectBindingUtil.urlEncode(relayState);
@@ -229,11 +243,7 @@ public class IDPWebRequestUtil {
                 logger.trace("SAML Response Document: " + DocumentUtil.asString(responseDoc));
             }
 
-            byte[] responseBytes = DocumentUtil.getDocumentAsString(responseDoc).getBytes("UTF-8");
-
-            String samlResponse = PostBindingUtil.base64Encode(new String(responseBytes));
-
-            PostBindingUtil.sendPost(new DestinationInfoHolder(destination, samlResponse, relayState), response, sendRequest);
+            PostBindingUtil.sendPost(responseDoc, destination, relayState, response, sendRequest);
         }
     }
 
@@ -347,12 +357,58 @@ public class IDPWebRequestUtil {
      *
      * @throws IOException
      */
+    /**
+     * Returns the key validating the signatures of the given issuer: the key of the host of the issuer or, when the key
+     * manager has none, the key of the address the message came from.
+     *
+     * @param keyManager
+     * @param issuer the entity ID of the issuer
+     * @param remoteAddress the address of the client which sent the message
+     * @return
+     * @throws ConfigurationException
+     * @throws ProcessingException
+     */
+    public static PublicKey getIssuerPublicKey(TrustKeyManager keyManager, String issuer, String remoteAddress)
+            throws ConfigurationException, ProcessingException {
+        String issuerHost = null;
+        PublicKey issuerPublicKey = null;
+
+        try {
+            issuerHost = new URL(issuer).getHost();
+        } catch (MalformedURLException e) {
+            logger.trace("Token issuer is not a valid URL: " + issuer, e);
+            issuerHost = issuer;
+        }
+
+        logger.trace("Trying to find a PK for issuer: " + issuerHost);
+        try {
+            issuerPublicKey = CoreConfigUtil.getValidatingKey(keyManager, issuerHost);
+        } catch (IllegalStateException ise) {
+            logger.trace("Token issuer is not found for: " + issuer, ise);
+        }
+
+        if (issuerPublicKey == null) {
+            issuerHost = remoteAddress;
+
+            logger.trace("Trying to find a PK for issuer " + issuerHost);
+            issuerPublicKey = CoreConfigUtil.getValidatingKey(keyManager, issuerHost);
+        }
+
+        logger.trace("Using Validating Alias=" + issuerHost + " to check signatures.");
+
+        return issuerPublicKey;
+    }
+
     private static String getDomain(String domainURL) throws IOException {
         URL url = new URL(domainURL);
         return url.getHost();
     }
 
     private InputStream parseSAMLRequestPostBinding(String samlMessage) {
+        if (!logger.isTraceEnabled()) {
+            return PostBindingUtil.base64DecodeAsStream(samlMessage);
+        }
+
         InputStream is;
         byte[] samlBytes = PostBindingUtil.base64Decode(samlMessage);
         logger.trace("SAML Request Document: " + new String(samlBytes));
@@ -392,6 +448,12 @@ public class IDPWebRequestUtil {
         // Cater to SAML Web Browser SSO Profile demand that we do not reply in Redirect Binding
         private boolean strictPostBinding = false;
 
+        // Keeps the response until the SP resolves its artifact. Only set when the Artifact Binding is requested.
+        private SAML2ArtifactStore artifactStore;
+
+        // The entity ID of the SP allowed to resolve the artifact
+        private String artifactRecipient;
+
         public boolean isStrictPostBinding() {
             return strictPostBinding;
         }
@@ -493,5 +555,29 @@ public class IDPWebRequestUtil {
         public String getDestinationQueryStringWithSignature() {
             return this.destinationQueryStringWithSignature;
         }
+
+        public SAML2ArtifactStore getArtifactStore() {
+            return this.artifactStore;
+        }
+
+        /**
+         * Sends the response with the HTTP-Artifact binding, keeping it in the given store until the SP resolves it.
+         */
+        public WebRequestUtilHolder setArtifactStore(SAML2ArtifactStore artifactStore) {
+            this.artifactStore = artifactStore;
+            return this;
+        }
+
+        public String getArtifactRecipient() {
+            return this.artifactRecipient;
+        }
+
+        /**
+         * Sets the entity ID of the SP, the only one allowed to resolve the artifact of the response.
+         */
+        public WebRequestUtilHolder setArtifactRecipient(String artifactRecipient) {
+            this.artifactRecipient = artifactRecipient;
+            return this;
+        }
     }
 }
\ No newline at end of file
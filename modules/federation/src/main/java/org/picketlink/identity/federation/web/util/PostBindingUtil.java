@@ -24,12 +24,16 @@ package org.picketlink.identity.federation.web.util;
 import org.picketlink.common.PicketLinkLogger;
 import org.picketlink.common.PicketLinkLoggerFactory;
 import org.picketlink.common.constants.GeneralConstants;
+import org.picketlink.common.exceptions.ConfigurationException;
+import org.picketlink.common.exceptions.ProcessingException;
 import org.picketlink.common.util.Base64;
+import org.picketlink.common.util.DocumentUtil;
 import org.picketlink.identity.federation.core.saml.v2.holders.DestinationInfoHolder;
+import org.w3c.dom.Document;
 
 import javax.servlet.ServletOutputStream;
 import javax.servlet.http.HttpServletResponse;
-import java.io.ByteArrayInputStream;
+import java.io.FilterOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 
@@ -81,7 +85,8 @@ public class PostBindingUtil {
         if (encodedString == null)
             throw logger.nullArgumentError("encodedString");
 
-        return new ByteArrayInputStream(base64Decode(encodedString));
+        // decoded as it is read, instead of copying the message twice up front
+        return new Base64.InputStream(new CharSequenceInputStream(encodedString, false), Base64.DECODE);
     }
 
     /**
@@ -95,8 +100,6 @@ public class PostBindingUtil {
      * @throws IOException
      */
     public static void sendPost(DestinationInfoHolder holder, HttpServletResponse response, boolean request) throws IOException {
-        String key = request ? GeneralConstants.SAML_REQUEST_KEY : GeneralConstants.SAML_RESPONSE_KEY;
-
         String relayState = holder.getRelayState();
         String destination = holder.getDestination();
         String samlMessage = holder.getSamlMessage();
@@ -105,10 +108,83 @@ public class PostBindingUtil {
             throw logger.nullValueError("Destination is null");
         }
 
-        destination = escapeHTML(destination);
-
         response.setContentType("text/html");
         common(holder.getDestination(), response);
+
+        String str = getFormStart(destination, request) + samlMessage + getFormEnd(relayState);
+
+        logger.trace(str);
+
+        ServletOutputStream outputStream = response.getOutputStream();
+
+        // we need to re-configure the content length, because Tomcat may have written some content.
+        response.resetBuffer();
+
+        outputStream.print(str);
+
+        response.setContentLength(str.length());
+        outputStream.close();
+    }
+
+    /**
+     * <p>Same as {@link #sendPost(DestinationInfoHolder, HttpServletResponse, boolean)}, but the SAML message is
+     * serialized and base64 encoded directly to the output stream of the response, without creating intermediate copies
+     * of the message.</p>
+     *
+     * @param samlDocument the SAML message, already signed if necessary.
+     * @param destination Destination URI where the response needs to redirect
+     * @param relayState
+     * @param response HttpServletResponse
+     * @param request
+     *
+     * @throws IOException
+     * @throws ConfigurationException
+     * @throws ProcessingException
+     */
+    public static void sendPost(Document samlDocument, String destination, String relayState, HttpServletResponse response,
+                                boolean request) throws IOException, ConfigurationException, ProcessingException {
+        if (destination == null) {
+            throw logger.nullValueError("Destination is null");
+        }
+
+        response.setContentType("text/html");
+        common(destination, response);
+
+        if (logger.isTraceEnabled()) {
+            // the message is only serialized as a String when it is going to be logged
+            logger.trace(getFormStart(destination, request) + base64Encode(DocumentUtil.asString(samlDocument))
+                + getFormEnd(relayState));
+        }
+
+        ServletOutputStream outputStream = response.getOutputStream();
+
+        // we need to re-configure the content length, because Tomcat may have written some content.
+        response.resetBuffer();
+
+        outputStream.write(getFormStart(destination, request).getBytes("UTF-8"));
+
+        Base64.OutputStream base64OutputStream = new Base64.OutputStream(new FilterOutputStream(outputStream) {
+            @Override
+            public void write(byte[] b, int off, int len) throws IOException {
+                this.out.write(b, off, len);
+            }
+
+            @Override
+            public void close() {
+                // the response stream is closed after writing the rest of the form
+            }
+        }, Base64.ENCODE | Base64.DONT_BREAK_LINES);
+
+        DocumentUtil.writeNode(samlDocument, base64OutputStream);
+
+        base64OutputStream.close();
+
+        outputStream.write(getFormEnd(relayState).getBytes("UTF-8"));
+        outputStream.close();
+    }
+
+    private static String getFormStart(String destination, boolean request) {
+        String key = request ? GeneralConstants.SAML_REQUEST_KEY : GeneralConstants.SAML_RESPONSE_KEY;
         StringBuilder builder = new StringBuilder();
 
         builder.append("<HTML>");
@@ -122,8 +198,16 @@ public class PostBindingUtil {
         builder.append("</HEAD>");
         builder.append("<BODY Onload=\"document.forms[0].submit()\">");
 
-        builder.append("<FORM METHOD=\"POST\" ACTION=\"" + destination + "\">");
-        builder.append("<INPUT TYPE=\"HIDDEN\" NAME=\"" + key + "\"" + " VALUE=\"" + samlMessage + "\"/>");
+        builder.append("<FORM METHOD=\"POST\" ACTION=\"" + escapeHTML(destination) + "\">");
+        builder.append("<INPUT TYPE=\"HIDDEN\" NAME=\"" + key + "\"" + " VALUE=\"");
+
+        return builder.toString();
+    }
+
+    private static String getFormEnd(String relayState) {
+        StringBuilder builder = new StringBuilder();
+
+        builder.append("\"/>");
 
         if (isNotNull(relayState)) {
             relayState = escapeHTML(relayState);
@@ -137,19 +221,7 @@ public class PostBindingUtil {
 
         builder.append("</FORM></BODY></HTML>");
 
-        String str = builder.toString();
-
-        logger.trace(str);
-
-        ServletOutputStream outputStream = response.getOutputStream();
-
-        // we need to re-configure the content length, because Tomcat may have written some content.
-        response.resetBuffer();
-
-        outputStream.print(str);
-
-        response.setContentLength(str.length());
-        outputStream.close();
+        return builder.toString();
     }
 
     private static void common(String destination, HttpServletResponse response) {
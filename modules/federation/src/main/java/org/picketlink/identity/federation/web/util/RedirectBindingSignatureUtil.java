@@ -33,6 +33,7 @@ import org.w3c.dom.Document;
 import org.xml.sax.SAXException;
 
 import java.io.IOException;
+import java.io.InputStream;
 import java.io.StringWriter;
 import java.io.UnsupportedEncodingException;
 import java.net.URLEncoder;
@@ -180,7 +181,13 @@ public class RedirectBindingSignatureUtil {
         String samlRequestTokenValue = getTokenValue(signedURL, GeneralConstants.SAML_REQUEST_KEY);
 
         SAML2Request saml2Request = new SAML2Request();
-        return saml2Request.getAuthnRequestType(RedirectBindingUtil.urlBase64DeflateDecode(samlRequestTokenValue));
+        InputStream is = RedirectBindingUtil.urlBase64DeflateDecode(samlRequestTokenValue);
+
+        try {
+            return saml2Request.getAuthnRequestType(is);
+        } finally {
+            is.close();
+        }
     }
 
     /**
@@ -17,11 +17,16 @@
  */
 package org.picketlink.identity.federation.web.util;
 
+import org.picketlink.common.exceptions.ConfigurationException;
+import org.picketlink.common.exceptions.ProcessingException;
 import org.picketlink.common.util.Base64;
+import org.picketlink.common.util.DocumentUtil;
 import org.picketlink.identity.federation.api.util.DeflateUtil;
+import org.w3c.dom.Document;
 
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.OutputStream;
 import java.net.URLDecoder;
 import java.net.URLEncoder;
 
@@ -71,8 +76,13 @@ public class RedirectBindingUtil {
      * @throws IOException
      */
     public static String base64URLEncode(byte[] stringToEncode) throws IOException {
-        String base64Request = Base64.encodeBytes(stringToEncode, Base64.DONT_BREAK_LINES);
-        return urlEncode(base64Request);
+        StringBuilder builder = new StringBuilder(stringToEncode.length * 2);
+        OutputStream outputStream = base64Encode(builder, true);
+
+        outputStream.write(stringToEncode);
+        outputStream.close();
+
+        return builder.toString();
     }
 
     /**
@@ -112,8 +122,33 @@ public class RedirectBindingUtil {
      * @throws IOException
      */
     public static String deflateBase64URLEncode(byte[] stringToEncode) throws IOException {
-        byte[] deflatedMsg = DeflateUtil.encode(stringToEncode);
-        return base64URLEncode(deflatedMsg);
+        return deflateBase64Encode(stringToEncode, true);
+    }
+
+    /**
+     * Serialize the document and apply deflate compression followed by base64 encoding and URL encoding, without
+     * creating intermediate copies of the message
+     *
+     * @param document
+     *
+     * @return
+     *
+     * @throws IOException
+     * @throws ConfigurationException
+     * @throws ProcessingException
+     */
+    public static String deflateBase64URLEncode(Document document) throws IOException, ConfigurationException,
+            ProcessingException {
+        StringBuilder builder = new StringBuilder(1024);
+        OutputStream outputStream = DeflateUtil.encode(base64Encode(builder, true));
+
+        try {
+            DocumentUtil.writeNode(document, outputStream);
+        } finally {
+            outputStream.close();
+        }
+
+        return builder.toString();
     }
 
     /**
@@ -126,12 +161,12 @@ public class RedirectBindingUtil {
      * @throws IOException
      */
     public static String deflateBase64Encode(byte[] stringToEncode) throws IOException {
-        byte[] deflatedMsg = DeflateUtil.encode(stringToEncode);
-        return Base64.encodeBytes(deflatedMsg);
+        return deflateBase64Encode(stringToEncode, false);
     }
 
     /**
-     * Apply URL decoding, followed by base64 decoding followed by deflate decompression
+     * Apply URL decoding, followed by base64 decoding followed by deflate decompression. The returned stream must be
+     * closed, see {@link #close(InputStream)}.
      *
      * @param encodedString
      *
@@ -140,20 +175,65 @@ public class RedirectBindingUtil {
      * @throws IOException
      */
     public static InputStream urlBase64DeflateDecode(String encodedString) throws IOException {
-        byte[] deflatedString = urlBase64Decode(encodedString);
-        return DeflateUtil.decode(deflatedString);
+        return base64DeflateDecode(encodedString, true);
     }
 
     /**
-     * Base64 decode followed by Deflate decoding
+     * Base64 decode followed by Deflate decoding. The returned stream must be closed, see {@link #close(InputStream)}.
      *
      * @param encodedString
      *
      * @return
      */
     public static InputStream base64DeflateDecode(String encodedString) {
-        byte[] base64decodedMsg = Base64.decode(encodedString);
-        return DeflateUtil.decode(base64decodedMsg);
+        return base64DeflateDecode(encodedString, false);
+    }
+
+    /**
+     * Closes a stream returned by {@link #base64DeflateDecode(String)} or {@link #urlBase64DeflateDecode(String)}, so
+     * that its {@link java.util.zip.Inflater} is reused. Does nothing if the stream is null.
+     *
+     * @param decodedStream
+     */
+    public static void close(InputStream decodedStream) {
+        if (decodedStream == null) {
+            return;
+        }
+
+        try {
+            decodedStream.close();
+        } catch (IOException ignore) {
+            // the message is decoded from memory
+        }
+    }
+
+    /**
+     * Returns a stream decoding the message as it is read, instead of decoding the whole message up front
+     */
+    private static InputStream base64DeflateDecode(String encodedString, boolean urlDecode) {
+        return DeflateUtil.decode(new Base64.InputStream(new CharSequenceInputStream(encodedString, urlDecode), Base64.DECODE));
+    }
+
+    private static String deflateBase64Encode(byte[] stringToEncode, boolean urlEncode) throws IOException {
+        StringBuilder builder = new StringBuilder(Math.max(64, stringToEncode.length));
+        OutputStream outputStream = DeflateUtil.encode(base64Encode(builder, urlEncode));
+
+        try {
+            outputStream.write(stringToEncode);
+        } finally {
+            outputStream.close();
+        }
+
+        return builder.toString();
+    }
+
+    /**
+     * Returns a stream appending the base64 encoding of the bytes written to it to the builder. Lines are only broken
+     * when the result is not meant for a URL.
+     */
+    private static OutputStream base64Encode(StringBuilder builder, boolean urlEncode) {
+        return new Base64.OutputStream(new StringBuilderOutputStream(builder, urlEncode), urlEncode ? Base64.ENCODE
+                | Base64.DONT_BREAK_LINES : Base64.ENCODE);
     }
 
     /**
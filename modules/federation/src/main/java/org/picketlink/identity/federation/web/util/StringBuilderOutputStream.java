@@ -0,0 +1,74 @@
+/*
+ * JBoss, Home of Professional Open Source
+ *
+ * Copyright 2013 Red Hat, Inc. and/or its affiliates.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.picketlink.identity.federation.web.util;
+
+import java.io.OutputStream;
+
+/**
+ * Collects the bytes of an encoded SAML message as the characters of a string, so that the Base64 encoding is written
+ * straight into the query string or form value instead of going through intermediate arrays and strings.
+ */
+class StringBuilderOutputStream extends OutputStream {
+
+    private final StringBuilder builder;
+
+    private final boolean urlEncode;
+
+    /**
+     * @param builder receives the characters
+     * @param urlEncode whether the characters of the Base64 alphabet which are not allowed in a URL, {@code +}, {@code /}
+     * and {@code =}, are URL encoded
+     */
+    StringBuilderOutputStream(StringBuilder builder, boolean urlEncode) {
+        this.builder = builder;
+        this.urlEncode = urlEncode;
+    }
+
+    @Override
+    public void write(int b) {
+        char c = (char) (b & 0xff);
+
+        if (this.urlEncode) {
+            switch (c) {
+                case '+':
+                    this.builder.append("%2B");
+                    return;
+                case '/':
+                    this.builder.append("%2F");
+                    return;
+                case '=':
+                    this.builder.append("%3D");
+                    return;
+            }
+        }
+
+        this.builder.append(c);
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) {
+        for (int i = off; i < off + len; i++) {
+            write(b[i]);
+        }
+    }
+
+    @Override
+    public String toString() {
+        return this.builder.toString();
+    }
+}
@@ -21,10 +21,13 @@ import junit.framework.TestCase;
 import org.picketlink.identity.federation.core.wstrust.STSClient;
 import org.picketlink.identity.federation.core.wstrust.STSClientConfig;
 import org.picketlink.identity.federation.core.wstrust.SamlCredential;
+import org.picketlink.common.exceptions.fed.WSTrustException;
 import org.w3c.dom.Element;
 
 import javax.security.auth.Subject;
 import javax.security.auth.callback.CallbackHandler;
+import javax.security.auth.login.LoginException;
+import javax.xml.ws.BindingProvider;
 import java.util.HashMap;
 import java.util.Map;
 import java.util.Set;
@@ -71,6 +74,29 @@ public class STSIssuingLoginModuleTestCase extends TestCase {
         assertEquals(1, samlCredentials.size());
     }
 
+    public void testPooledClientWithWrongPassword() throws Exception {
+        final Map<String, String> options = allOptions();
+        options.put(AbstractSTSLoginModule.INITIAL_CLIENTS_IN_POOL, "1");
+
+        final STSIssuingLoginModule loginModule = new PasswordCheckingLoginModule();
+
+        loginModule.initialize(new Subject(), new TestCallbackHandler("admin", "admin"), new HashMap<String, Object>(),
+                options);
+        assertTrue(loginModule.login());
+
+        // the pooled client of the first login must not be reused with the credentials of the second
+        final STSIssuingLoginModule wrongLoginModule = new PasswordCheckingLoginModule();
+
+        wrongLoginModule.initialize(new Subject(), new TestCallbackHandler("admin", "wrong"), new HashMap<String, Object>(),
+                options);
+
+        try {
+            wrongLoginModule.login();
+            fail("The login with a wrong password should fail.");
+        } catch (LoginException expected) {
+        }
+    }
+
     public void testUseFirstPass() {
         final String username = "Fletch";
         final String password = "letMeIn";
@@ -98,6 +124,23 @@ public class STSIssuingLoginModuleTestCase extends TestCase {
         return options;
     }
 
+    /**
+     * Issues a token only when the client authenticates with the admin password, as the STS would.
+     */
+    private class PasswordCheckingLoginModule extends STSIssuingLoginModule {
+
+        @Override
+        public Element invokeSTS(final STSClient stsClient) throws WSTrustException {
+            final Object password = stsClient.getDispatch().getRequestContext().get(BindingProvider.PASSWORD_PROPERTY);
+
+            try {
+                return "admin".equals(password) ? Util.createSamlToken() : null;
+            } catch (Exception e) {
+                throw new WSTrustException(e.getMessage(), e);
+            }
+        }
+    }
+
     private class FakeSTSIssuingLoginModule extends STSIssuingLoginModule {
 
         private STSClient client;
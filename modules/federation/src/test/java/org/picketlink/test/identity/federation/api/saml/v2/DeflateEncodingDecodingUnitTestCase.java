@@ -19,15 +19,22 @@ package org.picketlink.test.identity.federation.api.saml.v2;
 
 import junit.framework.TestCase;
 import org.picketlink.common.util.Base64;
+import org.picketlink.common.util.DocumentUtil;
 import org.picketlink.identity.federation.api.saml.v2.request.SAML2Request;
 import org.picketlink.identity.federation.api.util.DeflateUtil;
 import org.picketlink.identity.federation.core.saml.v2.common.IDGenerator;
 import org.picketlink.identity.federation.saml.v2.protocol.AuthnRequestType;
+import org.picketlink.identity.federation.web.util.PostBindingUtil;
+import org.picketlink.identity.federation.web.util.RedirectBindingUtil;
 
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
 import java.io.InputStream;
 import java.io.StringWriter;
 import java.net.URLDecoder;
 import java.net.URLEncoder;
+import java.util.Arrays;
+import java.util.Random;
 
 /**
  * Unit test the DEFLATE compression encoding/decoding cycles
@@ -58,4 +65,111 @@ public class DeflateEncodingDecodingUnitTestCase extends TestCase {
 
         assertNotNull(decodedRequestType);
     }
-}
\ No newline at end of file
+
+    public void testStreamingEncodingMatchesArrays() throws Exception {
+        Random random = new Random(7);
+
+        for (int size : new int[] {0, 1, 2, 3, 100, 5000}) {
+            byte[] message = new byte[size];
+
+            random.nextBytes(message);
+
+            byte[] deflatedMsg = DeflateUtil.encode(message);
+
+            assertEquals(URLEncoder.encode(Base64.encodeBytes(deflatedMsg, Base64.DONT_BREAK_LINES), "UTF-8"),
+                    RedirectBindingUtil.deflateBase64URLEncode(message));
+            assertEquals(Base64.encodeBytes(deflatedMsg), RedirectBindingUtil.deflateBase64Encode(message));
+            assertEquals(URLEncoder.encode(Base64.encodeBytes(message, Base64.DONT_BREAK_LINES), "UTF-8"),
+                    RedirectBindingUtil.base64URLEncode(message));
+
+            assertTrue(Arrays.equals(message, readFully(RedirectBindingUtil.urlBase64DeflateDecode(
+                    RedirectBindingUtil.deflateBase64URLEncode(message)))));
+            assertTrue(Arrays.equals(message, readFully(RedirectBindingUtil.base64DeflateDecode(
+                    RedirectBindingUtil.deflateBase64Encode(message)))));
+            assertTrue(Arrays.equals(message, readFully(PostBindingUtil.base64DecodeAsStream(
+                    Base64.encodeBytes(message)))));
+        }
+    }
+
+    public void testStreamingDocumentEncoding() throws Exception {
+        SAML2Request request = new SAML2Request();
+        AuthnRequestType authnRequest = request.createAuthnRequestType(IDGenerator.create("ID_"), "http://sp",
+                "http://localhost:8080/idp", "http://sp");
+
+        String encodedRequest = RedirectBindingUtil.deflateBase64URLEncode(request.convert(authnRequest));
+        InputStream is = RedirectBindingUtil.urlBase64DeflateDecode(encodedRequest);
+        AuthnRequestType decodedRequestType = request.getAuthnRequestType(is);
+
+        is.close();
+
+        assertEquals(authnRequest.getID(), decodedRequestType.getID());
+
+        // the streams release their inflater when closed, so they cannot be read anymore
+        try {
+            is.read();
+            fail("The stream is closed.");
+        } catch (IOException expected) {
+        }
+
+        assertEquals(DocumentUtil.getDocumentAsString(request.convert(authnRequest)), new String(readFully(
+                RedirectBindingUtil.urlBase64DeflateDecode(encodedRequest)), "UTF-8"));
+    }
+
+    public void testInflaterReleasedAtEndOfStream() throws Exception {
+        Random random = new Random(7);
+        byte[] message1 = new byte[3000];
+        byte[] message2 = new byte[3000];
+
+        random.nextBytes(message1);
+        random.nextBytes(message2);
+
+        // a stream read to its end, but never closed, releases its inflater only once
+        InputStream unclosed = DeflateUtil.decode(DeflateUtil.encode(message1));
+
+        while (unclosed.read() != -1) {
+        }
+
+        assertEquals(-1, unclosed.read(new byte[10], 0, 10));
+        assertEquals(0, unclosed.available());
+
+        unclosed.close();
+
+        // streams read at the same time each get their own inflater
+        InputStream is1 = DeflateUtil.decode(DeflateUtil.encode(message1));
+        InputStream is2 = DeflateUtil.decode(DeflateUtil.encode(message2));
+        ByteArrayOutputStream out1 = new ByteArrayOutputStream();
+        ByteArrayOutputStream out2 = new ByteArrayOutputStream();
+        int read1 = 0;
+        int read2 = 0;
+
+        while (read1 != -1 || read2 != -1) {
+            if (read1 != -1 && (read1 = is1.read()) != -1) {
+                out1.write(read1);
+            }
+
+            if (read2 != -1 && (read2 = is2.read()) != -1) {
+                out2.write(read2);
+            }
+        }
+
+        is1.close();
+        is2.close();
+
+        assertTrue(Arrays.equals(message1, out1.toByteArray()));
+        assertTrue(Arrays.equals(message2, out2.toByteArray()));
+    }
+
+    private byte[] readFully(InputStream is) throws IOException {
+        ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        byte[] buffer = new byte[512];
+        int read;
+
+        while ((read = is.read(buffer)) != -1) {
+            baos.write(buffer, 0, read);
+        }
+
+        is.close();
+
+        return baos.toByteArray();
+    }
+}
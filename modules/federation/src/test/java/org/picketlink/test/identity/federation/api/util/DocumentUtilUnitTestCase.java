@@ -18,6 +18,8 @@
 package org.picketlink.test.identity.federation.api.util;
 
 import org.junit.Test;
+import org.picketlink.common.exceptions.ParsingException;
+import org.picketlink.common.util.TransformerUtil;
 import org.picketlink.identity.federation.core.saml.v2.util.DocumentUtil;
 import org.w3c.dom.Document;
 import org.w3c.dom.Element;
@@ -26,11 +28,25 @@ import org.w3c.dom.Node;
 import org.w3c.dom.NodeList;
 import org.w3c.dom.Text;
 
+import javax.xml.transform.OutputKeys;
+import javax.xml.transform.Transformer;
+import javax.xml.transform.TransformerFactory;
+import java.io.ByteArrayOutputStream;
 import java.io.InputStream;
+import java.lang.ref.WeakReference;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.security.CodeSource;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
 import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import static org.junit.Assume.assumeNotNull;
 
 /**
  * Unit Test the DocumentUtil
@@ -119,6 +135,130 @@ public class DocumentUtilUnitTestCase {
         assertEquals("idp", securityDomain);
     }
 
+    @Test
+    public void testParseAfterFailure() throws Exception {
+        String xxe = "<!DOCTYPE foo [<!ENTITY xxe SYSTEM \"file:///etc/passwd\">]><foo>&xxe;</foo>";
+
+        for (int i = 0; i < 2; i++) {
+            try {
+                DocumentUtil.getDocument("<a><b></a>");
+                fail("Malformed document should not be parsed.");
+            } catch (ParsingException expected) {
+            }
+
+            try {
+                DocumentUtil.getDocument(xxe);
+                fail("Document type declarations should not be allowed.");
+            } catch (ParsingException expected) {
+            }
+
+            assertEquals("a", DocumentUtil.getDocument("<a><b/></a>").getDocumentElement().getNodeName());
+        }
+    }
+
+    @Test
+    public void testThreadLocalTransformerIsReset() throws Exception {
+        Document document = DocumentUtil.getDocument("<a><b/></a>");
+
+        Transformer transformer = TransformerUtil.getThreadLocalTransformer();
+
+        transformer.setOutputProperty(OutputKeys.OMIT_XML_DECLARATION, "no");
+        transformer.setOutputProperty(OutputKeys.INDENT, "yes");
+
+        TransformerUtil.releaseThreadLocalTransformer(transformer);
+
+        Transformer reused = TransformerUtil.getThreadLocalTransformer();
+
+        assertSame(transformer, reused);
+        assertEquals("yes", reused.getOutputProperty(OutputKeys.OMIT_XML_DECLARATION));
+
+        TransformerUtil.releaseThreadLocalTransformer(reused);
+
+        assertEquals("<a><b/></a>", DocumentUtil.getDocumentAsString(document));
+
+        ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+
+        DocumentUtil.writeNode(document, outputStream);
+
+        assertEquals("<a><b/></a>", new String(outputStream.toByteArray(), "UTF-8"));
+        assertFalse(DocumentUtil.getNodeAsString(document).startsWith("<?xml"));
+    }
+
+    @Test
+    public void testThreadLocalTransformerInUse() throws Exception {
+        Document document = DocumentUtil.getDocument("<a><b/></a>");
+
+        Transformer transformer = TransformerUtil.getThreadLocalTransformer();
+
+        transformer.setOutputProperty(OutputKeys.INDENT, "yes");
+
+        try {
+            // a nested transformation gets its own transformer, and does not reset the one in use
+            Transformer nested = TransformerUtil.getThreadLocalTransformer();
+
+            assertNotSame(transformer, nested);
+            TransformerUtil.releaseThreadLocalTransformer(nested);
+
+            assertEquals("<a><b/></a>", DocumentUtil.getDocumentAsString(document));
+            assertEquals("yes", transformer.getOutputProperty(OutputKeys.INDENT));
+        } finally {
+            TransformerUtil.releaseThreadLocalTransformer(transformer);
+        }
+    }
+
+    @Test
+    public void testTransformerFactoryPerClassLoader() throws Exception {
+        Thread thread = Thread.currentThread();
+        ClassLoader tccl = thread.getContextClassLoader();
+        ClassLoader otherClassLoader = new URLClassLoader(new URL[0], tccl);
+        TransformerFactory factory = TransformerUtil.getTransformerFactory();
+
+        assertSame(factory, TransformerUtil.getTransformerFactory());
+
+        try {
+            thread.setContextClassLoader(otherClassLoader);
+
+            TransformerFactory otherFactory = TransformerUtil.getTransformerFactory();
+
+            assertNotSame(factory, otherFactory);
+            assertSame(otherFactory, TransformerUtil.getTransformerFactory());
+        } finally {
+            thread.setContextClassLoader(tccl);
+        }
+
+        assertSame(factory, TransformerUtil.getTransformerFactory());
+    }
+
+    @Test
+    public void testTransformerFactoryDoesNotKeepClassLoader() throws Exception {
+        CodeSource codeSource = TransformerUtil.getTransformerFactory().getClass().getProtectionDomain().getCodeSource();
+
+        // the implementation must not come from the JDK, to be loaded again by the class loader of the application
+        assumeNotNull(codeSource);
+
+        Thread thread = Thread.currentThread();
+        ClassLoader tccl = thread.getContextClassLoader();
+        ClassLoader otherClassLoader = new URLClassLoader(new URL[] { codeSource.getLocation() }, null);
+        WeakReference<ClassLoader> reference = new WeakReference<ClassLoader>(otherClassLoader);
+
+        try {
+            thread.setContextClassLoader(otherClassLoader);
+
+            assertSame(otherClassLoader, TransformerUtil.getTransformerFactory().getClass().getClassLoader());
+        } finally {
+            thread.setContextClassLoader(tccl);
+        }
+
+        otherClassLoader = null;
+
+        for (int i = 0; i < 50 && reference.get() != null; i++) {
+            System.gc();
+            Thread.sleep(10);
+        }
+
+        assertNull(reference.get());
+    }
+
     private Document getDocument(String fileName) throws Exception {
         InputStream is = Thread.currentThread().getContextClassLoader().getResourceAsStream(fileName);
         if (is == null)
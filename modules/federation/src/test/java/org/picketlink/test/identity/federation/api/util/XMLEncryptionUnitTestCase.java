@@ -48,6 +48,10 @@ import java.security.PrivateKey;
 import java.security.PublicKey;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 /**
  * Unit Test the XML Encryption Utility
@@ -145,6 +149,75 @@ public class XMLEncryptionUnitTestCase extends TestCase {
         assertTrue(nl != null && nl.getLength() == 1);
     }
 
+    public void testConcurrentEncryption() throws Exception {
+        final KeyPair kp = this.getKeyPair("RSA");
+        final SecretKey sk = this.getSecretKey();
+        int threads = 4;
+
+        ExecutorService executorService = Executors.newFixedThreadPool(threads);
+        List<Future<Integer>> results = new ArrayList<Future<Integer>>();
+
+        try {
+            for (int i = 0; i < threads; i++) {
+                final int thread = i;
+
+                results.add(executorService.submit(new Callable<Integer>() {
+                    @Override
+                    public Integer call() throws Exception {
+                        for (int j = 0; j < 20; j++) {
+                            String value = thread + "-" + j;
+                            Document doc = DocumentUtil.getDocument("<somexml><a><b>" + value + "</b></a></somexml>");
+
+                            XMLEncryptionUtil.encryptElement(new QName("a"), doc, kp.getPublic(), sk, 128,
+                                    new QName("urn:test", "encryptedA", "someprefix"), true);
+
+                            assertEquals(0, doc.getElementsByTagName("b").getLength());
+
+                            Element decryptedElement = XMLEncryptionUtil.decryptElementInDocument(doc, kp.getPrivate());
+
+                            assertEquals(value, decryptedElement.getTextContent());
+                        }
+
+                        return 20;
+                    }
+                }));
+            }
+
+            for (Future<Integer> result : results) {
+                assertEquals(Integer.valueOf(20), result.get());
+            }
+        } finally {
+            executorService.shutdown();
+        }
+    }
+
+    public void testDecryptSameContentKey() throws Exception {
+        KeyPair kp = this.getKeyPair("RSA");
+        SecretKey sk = this.getSecretKey();
+        QName qname = new QName("urn:test", "encryptedA", "someprefix");
+
+        Document doc = DocumentUtil.getDocument("<somexml><a><b></b></a></somexml>");
+
+        XMLEncryptionUtil.encryptElement(new QName("a"), doc, kp.getPublic(), sk, 128, qname, true);
+
+        String encrypted = DocumentUtil.asString(doc);
+
+        // the same encrypted key can be unwrapped again, but only with the key it was wrapped for
+        for (int i = 0; i < 2; i++) {
+            Element decryptedElement = XMLEncryptionUtil.decryptElementInDocument(DocumentUtil.getDocument(encrypted),
+                    kp.getPrivate());
+
+            assertEquals("a", decryptedElement.getLocalName());
+        }
+
+        try {
+            XMLEncryptionUtil.decryptElementInDocument(DocumentUtil.getDocument(encrypted), this.getKeyPair("RSA")
+                    .getPrivate());
+            fail("The content key should not be unwrapped with another private key.");
+        } catch (Exception expected) {
+        }
+    }
+
     private ResponseType createResponse() throws Exception {
         List<String> roles = new ArrayList<String>();
         roles.add("roleA");
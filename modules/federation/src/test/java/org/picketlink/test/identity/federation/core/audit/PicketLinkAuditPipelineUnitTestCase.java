@@ -0,0 +1,271 @@
+/*
+ * JBoss, Home of Professional Open Source
+ *
+ * Copyright 2013 Red Hat, Inc. and/or its affiliates.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.picketlink.test.identity.federation.core.audit;
+
+import org.jboss.security.audit.AuditEvent;
+import org.jboss.security.audit.AuditManager;
+import org.junit.Test;
+import org.picketlink.identity.federation.core.audit.PicketLinkAuditPipeline;
+import org.picketlink.identity.federation.core.audit.PicketLinkAuditPipeline.OverflowPolicy;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Unit test the {@link PicketLinkAuditPipeline}: events are written off the calling thread, the overflow policies
+ * apply once the queue is full, and closing the pipeline writes the pending events.
+ */
+public class PicketLinkAuditPipelineUnitTestCase {
+
+    @Test
+    public void testEventsAreWrittenOnClose() throws Exception {
+        RecordingAuditManager auditManager = new RecordingAuditManager();
+        PicketLinkAuditPipeline pipeline = new PicketLinkAuditPipeline(auditManager, 1000, 10, OverflowPolicy.BLOCK, 1);
+
+        for (int i = 0; i < 500; i++) {
+            pipeline.submit(new AuditEvent("Info"));
+        }
+
+        pipeline.close();
+
+        assertTrue(pipeline.isClosed());
+        assertEquals(500, auditManager.events.size());
+        assertEquals(500, pipeline.getWrittenCount());
+        assertEquals(0, pipeline.getDroppedCount());
+        assertEquals(0, pipeline.getPendingCount());
+        assertNotSame(Thread.currentThread(), auditManager.threads.get(0));
+    }
+
+    @Test
+    public void testSubmitAfterCloseIsSynchronous() throws Exception {
+        RecordingAuditManager auditManager = new RecordingAuditManager();
+        PicketLinkAuditPipeline pipeline = new PicketLinkAuditPipeline(auditManager);
+
+        pipeline.close();
+        pipeline.submit(new AuditEvent("Info"));
+
+        assertEquals(1, auditManager.events.size());
+        assertSame(Thread.currentThread(), auditManager.threads.get(0));
+    }
+
+    @Test
+    public void testSubmitWhileClosing() throws Exception {
+        for (int run = 0; run < 20; run++) {
+            RecordingAuditManager auditManager = new RecordingAuditManager();
+            final PicketLinkAuditPipeline pipeline = new PicketLinkAuditPipeline(auditManager, 10, 5, OverflowPolicy.BLOCK, 1);
+            final CountDownLatch start = new CountDownLatch(1);
+            Thread[] submitters = new Thread[4];
+
+            for (int i = 0; i < submitters.length; i++) {
+                submitters[i] = new Thread(new Runnable() {
+                    public void run() {
+                        try {
+                            start.await();
+                        } catch (InterruptedException e) {
+                            return;
+                        }
+
+                        for (int j = 0; j < 250; j++) {
+                            pipeline.submit(new AuditEvent("Info"));
+                        }
+                    }
+                });
+                submitters[i].start();
+            }
+
+            start.countDown();
+            pipeline.close();
+
+            for (Thread submitter : submitters) {
+                submitter.join(10000);
+            }
+
+            // no event is left in the queue once the pipeline is closed
+            assertEquals(1000, auditManager.events.size());
+            assertEquals(0, pipeline.getPendingCount());
+        }
+    }
+
+    @Test
+    public void testDropPolicy() throws Exception {
+        RecordingAuditManager auditManager = new RecordingAuditManager();
+        PicketLinkAuditPipeline pipeline = new PicketLinkAuditPipeline(auditManager, 2, 10, OverflowPolicy.DROP, 1);
+
+        fillQueue(pipeline, auditManager);
+
+        for (int i = 0; i < 10; i++) {
+            pipeline.submit(new AuditEvent("Info"));
+        }
+
+        assertEquals(10, pipeline.getDroppedCount());
+
+        auditManager.release.countDown();
+        pipeline.close();
+
+        assertEquals(3, auditManager.events.size());
+    }
+
+    @Test
+    public void testSamplePolicy() throws Exception {
+        RecordingAuditManager auditManager = new RecordingAuditManager();
+        final PicketLinkAuditPipeline pipeline = new PicketLinkAuditPipeline(auditManager, 2, 10, OverflowPolicy.SAMPLE, 5);
+
+        fillQueue(pipeline, auditManager);
+
+        for (int i = 0; i < 4; i++) {
+            pipeline.submit(new AuditEvent("Info"));
+        }
+
+        assertEquals(4, pipeline.getDroppedCount());
+
+        // the fifth overflowing event is kept, and waits for room in the queue
+        Thread submitter = new Thread(new Runnable() {
+            public void run() {
+                pipeline.submit(new AuditEvent("Info"));
+            }
+        });
+
+        submitter.start();
+        submitter.join(200);
+
+        assertTrue(submitter.isAlive());
+
+        auditManager.release.countDown();
+        submitter.join(5000);
+
+        assertFalse(submitter.isAlive());
+
+        pipeline.close();
+
+        assertEquals(4, pipeline.getDroppedCount());
+        assertEquals(4, auditManager.events.size());
+    }
+
+    @Test
+    public void testFailingAuditManager() throws Exception {
+        RecordingAuditManager auditManager = new RecordingAuditManager() {
+            @Override
+            public void audit(AuditEvent auditEvent) {
+                super.audit(auditEvent);
+
+                if (events.size() % 2 == 0) {
+                    throw new RuntimeException("audit backend failure");
+                }
+            }
+        };
+        PicketLinkAuditPipeline pipeline = new PicketLinkAuditPipeline(auditManager, 100, 10, OverflowPolicy.BLOCK, 1);
+
+        for (int i = 0; i < 10; i++) {
+            pipeline.submit(new AuditEvent("Info"));
+        }
+
+        pipeline.close();
+
+        assertEquals(10, auditManager.events.size());
+        assertEquals(5, pipeline.getWrittenCount());
+    }
+
+    @Test
+    public void testSystemProperties() throws Exception {
+        System.setProperty(PicketLinkAuditPipeline.QUEUE_SIZE_PROPERTY, "50");
+        System.setProperty(PicketLinkAuditPipeline.BATCH_SIZE_PROPERTY, "many");
+        System.setProperty(PicketLinkAuditPipeline.OVERFLOW_POLICY_PROPERTY, "drop");
+        System.setProperty(PicketLinkAuditPipeline.SAMPLE_RATE_PROPERTY, "-1");
+
+        try {
+            // the properties are read when the pipeline is created, invalid values are replaced by the defaults
+            PicketLinkAuditPipeline pipeline = new PicketLinkAuditPipeline(new RecordingAuditManager());
+
+            assertEquals(50, pipeline.getQueueSize());
+            assertEquals(PicketLinkAuditPipeline.DEFAULT_BATCH_SIZE, pipeline.getBatchSize());
+            assertEquals(OverflowPolicy.DROP, pipeline.getOverflowPolicy());
+            assertEquals(PicketLinkAuditPipeline.DEFAULT_SAMPLE_RATE, pipeline.getSampleRate());
+
+            pipeline.close();
+
+            System.setProperty(PicketLinkAuditPipeline.OVERFLOW_POLICY_PROPERTY, "wait");
+            pipeline = new PicketLinkAuditPipeline(new RecordingAuditManager());
+
+            assertEquals(PicketLinkAuditPipeline.DEFAULT_OVERFLOW_POLICY, pipeline.getOverflowPolicy());
+
+            pipeline.close();
+        } finally {
+            System.clearProperty(PicketLinkAuditPipeline.QUEUE_SIZE_PROPERTY);
+            System.clearProperty(PicketLinkAuditPipeline.BATCH_SIZE_PROPERTY);
+            System.clearProperty(PicketLinkAuditPipeline.OVERFLOW_POLICY_PROPERTY);
+            System.clearProperty(PicketLinkAuditPipeline.SAMPLE_RATE_PROPERTY);
+        }
+    }
+
+    /**
+     * Blocks the writer thread on a first event and fills the queue behind it.
+     */
+    private void fillQueue(PicketLinkAuditPipeline pipeline, RecordingAuditManager auditManager) throws Exception {
+        auditManager.blocking = true;
+
+        pipeline.submit(new AuditEvent("Info"));
+
+        assertTrue(auditManager.blocked.await(5, TimeUnit.SECONDS));
+
+        pipeline.submit(new AuditEvent("Info"));
+        pipeline.submit(new AuditEvent("Info"));
+
+        assertEquals(2, pipeline.getPendingCount());
+    }
+
+    private static class RecordingAuditManager implements AuditManager {
+
+        final List<AuditEvent> events = new CopyOnWriteArrayList<AuditEvent>();
+
+        final List<Thread> threads = new CopyOnWriteArrayList<Thread>();
+
+        final CountDownLatch blocked = new CountDownLatch(1);
+
+        final CountDownLatch release = new CountDownLatch(1);
+
+        volatile boolean blocking;
+
+        public void audit(AuditEvent auditEvent) {
+            this.events.add(auditEvent);
+            this.threads.add(Thread.currentThread());
+
+            if (this.blocking) {
+                this.blocking = false;
+                this.blocked.countDown();
+
+                try {
+                    this.release.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+        }
+
+        public String getSecurityDomain() {
+            return "test";
+        }
+    }
+}
@@ -103,5 +103,8 @@ public class PicketLinkConsolidatedConfigParserUnitTestCase {
         assertNotNull(handlers);
         assertNotNull(handlers.getHandlerChainClass());
         assertFalse(handlers.getHandler().isEmpty());
+
+        // the chain is locked unless the configuration says otherwise
+        assertTrue(handlers.isLocking());
     }
 }
\ No newline at end of file
@@ -0,0 +1,183 @@
+/*
+ * JBoss, Home of Professional Open Source
+ *
+ * Copyright 2013 Red Hat, Inc. and/or its affiliates.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.picketlink.test.identity.federation.core.impl;
+
+import org.junit.Test;
+import org.picketlink.common.exceptions.TrustKeyProcessingException;
+import org.picketlink.config.federation.AuthPropertyType;
+import org.picketlink.config.federation.KeyValueType;
+import org.picketlink.identity.federation.core.impl.KeyStoreKeyManager;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.security.KeyStore;
+import java.security.PrivateKey;
+import java.security.PublicKey;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.fail;
+
+/**
+ * Unit test the {@link KeyStoreKeyManager}
+ */
+public class KeyStoreKeyManagerUnitTestCase {
+
+    private static final String KEYSTORE = "keystore/sts_keystore.jks";
+
+    private static final String PROVIDER1 = "http://services.testcorp.org/provider1";
+
+    private static final String PROVIDER2 = "http://services.testcorp.org/provider2";
+
+    @Test
+    public void testKeysAreCached() throws Exception {
+        KeyStoreKeyManager keyManager = createKeyManager(KEYSTORE, null);
+
+        PrivateKey signingKey = keyManager.getSigningKey();
+        PublicKey validatingKey = keyManager.getValidatingKey(PROVIDER1);
+
+        assertNotNull(signingKey);
+        assertNotNull(validatingKey);
+
+        for (int i = 0; i < 10; i++) {
+            assertSame(signingKey, keyManager.getSigningKey());
+            assertSame(validatingKey, keyManager.getValidatingKey(PROVIDER1));
+        }
+
+        assertEquals(22, keyManager.getKeyLookupCount());
+        assertEquals(2, keyManager.getKeyLoadCount());
+    }
+
+    @Test
+    public void testCachedKeyRequiresPassword() throws Exception {
+        KeyStoreKeyManager keyManager = createKeyManager(KEYSTORE, null);
+
+        assertNotNull(keyManager.getSigningKey());
+
+        List<AuthPropertyType> authProperties = new ArrayList<AuthPropertyType>();
+
+        authProperties.add(createAuthProperty(KeyStoreKeyManager.SIGNING_KEY_PASS, "wrongpass"));
+
+        keyManager.setAuthProperties(authProperties);
+
+        try {
+            keyManager.getSigningKey();
+            fail("The signing key must not be returned for a wrong password.");
+        } catch (TrustKeyProcessingException expected) {
+        }
+    }
+
+    @Test
+    public void testReloadModifiedKeyStore() throws Exception {
+        File file = File.createTempFile("keystore", ".jks");
+
+        file.deleteOnExit();
+
+        KeyStore keyStore = KeyStore.getInstance("JKS");
+        InputStream is = Thread.currentThread().getContextClassLoader().getResourceAsStream(KEYSTORE);
+
+        try {
+            keyStore.load(is, "testpass".toCharArray());
+        } finally {
+            is.close();
+        }
+
+        store(keyStore, file);
+
+        KeyStoreKeyManager keyManager = createKeyManager(file.getAbsolutePath(), "1");
+
+        PrivateKey signingKey = keyManager.getSigningKey();
+
+        assertNotNull(keyManager.getValidatingKey(PROVIDER2));
+        assertEquals(0, keyManager.getKeyStoreReloadCount());
+
+        keyStore.deleteEntry("service2");
+        store(keyStore, file);
+        file.setLastModified(file.lastModified() + 2000);
+
+        Thread.sleep(10);
+
+        assertNull(keyManager.getValidatingKey(PROVIDER2));
+        assertNotNull(keyManager.getValidatingKey(PROVIDER1));
+        assertEquals(1, keyManager.getKeyStoreReloadCount());
+
+        PrivateKey reloadedSigningKey = keyManager.getSigningKey();
+
+        assertEquals(signingKey, reloadedSigningKey);
+        assertSame(reloadedSigningKey, keyManager.getSigningKey());
+    }
+
+    private KeyStoreKeyManager createKeyManager(String keyStore, String reloadInterval) throws Exception {
+        List<AuthPropertyType> authProperties = new ArrayList<AuthPropertyType>();
+
+        authProperties.add(createAuthProperty(KeyStoreKeyManager.KEYSTORE_URL, keyStore));
+        authProperties.add(createAuthProperty(KeyStoreKeyManager.KEYSTORE_PASS, "testpass"));
+        authProperties.add(createAuthProperty(KeyStoreKeyManager.SIGNING_KEY_ALIAS, "sts"));
+        authProperties.add(createAuthProperty(KeyStoreKeyManager.SIGNING_KEY_PASS, "keypass"));
+
+        if (reloadInterval != null) {
+            authProperties.add(createAuthProperty(KeyStoreKeyManager.KEYSTORE_RELOAD_INTERVAL, reloadInterval));
+        }
+
+        List<KeyValueType> validatingAliases = new ArrayList<KeyValueType>();
+
+        validatingAliases.add(createValidatingAlias(PROVIDER1, "service1"));
+        validatingAliases.add(createValidatingAlias(PROVIDER2, "service2"));
+
+        KeyStoreKeyManager keyManager = new KeyStoreKeyManager();
+
+        keyManager.setAuthProperties(authProperties);
+        keyManager.setValidatingAlias(validatingAliases);
+
+        return keyManager;
+    }
+
+    private AuthPropertyType createAuthProperty(String key, String value) {
+        AuthPropertyType authProperty = new AuthPropertyType();
+
+        authProperty.setKey(key);
+        authProperty.setValue(value);
+
+        return authProperty;
+    }
+
+    private KeyValueType createValidatingAlias(String key, String value) {
+        KeyValueType keyValue = new KeyValueType();
+
+        keyValue.setKey(key);
+        keyValue.setValue(value);
+
+        return keyValue;
+    }
+
+    private void store(KeyStore keyStore, File file) throws Exception {
+        OutputStream os = new FileOutputStream(file);
+
+        try {
+            keyStore.store(os, "testpass".toCharArray());
+        } finally {
+            os.close();
+        }
+    }
+}
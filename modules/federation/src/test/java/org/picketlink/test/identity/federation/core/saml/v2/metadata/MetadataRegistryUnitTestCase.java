@@ -0,0 +1,161 @@
+/*
+ * JBoss, Home of Professional Open Source
+ *
+ * Copyright 2013 Red Hat, Inc. and/or its affiliates.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.picketlink.test.identity.federation.core.saml.v2.metadata;
+
+import org.junit.Test;
+import org.picketlink.identity.federation.core.saml.v2.metadata.MetadataRegistry;
+import org.picketlink.identity.federation.core.saml.v2.util.SAMLMetadataUtil;
+import org.picketlink.identity.federation.saml.v2.metadata.EntityDescriptorType;
+import org.picketlink.identity.federation.saml.v2.metadata.KeyTypes;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Unit test the {@link MetadataRegistry}
+ */
+public class MetadataRegistryUnitTestCase {
+
+    private static final String IDP = "https://idp.testshib.org/idp/shibboleth";
+
+    private static final String SP = "https://sp.testshib.org/shibboleth-sp";
+
+    @Test
+    public void testLoadAggregate() throws Exception {
+        MetadataRegistry registry = new MetadataRegistry();
+
+        registry.load(getResource("saml2/metadata/testshib.org.idp-metadata.xml"));
+
+        assertEquals(2, registry.getEntityCount());
+        assertEquals(IDP, registry.getEntityDescriptor(IDP).getEntityID());
+        assertNotNull(registry.getIDPDescriptor(IDP));
+        assertNull(registry.getSPDescriptor(IDP));
+        assertNotNull(registry.getSPDescriptor(SP));
+        assertNull(registry.getEntityDescriptor("https://unknown"));
+
+        assertEquals(IDP, registry.getEntityDescriptorByEndpoint("https://idp.testshib.org/idp/profile/SAML2/POST/SSO")
+            .getEntityID());
+        assertEquals(SP, registry.getEntityDescriptorByEndpoint("https://sp.testshib.org/Shibboleth.sso/SAML2/POST")
+            .getEntityID());
+        assertEquals(SP, registry.getEntityDescriptorByEndpoint("https://sp.testshib.org/Shibboleth.sso/SLO/Redirect")
+            .getEntityID());
+
+        assertEquals(8, registry.getLookupCount());
+    }
+
+    @Test
+    public void testCertificates() throws Exception {
+        MetadataRegistry registry = new MetadataRegistry();
+
+        registry.load(getResource("saml2/metadata/testshib.org.idp-metadata.xml"));
+
+        assertNotNull(registry.getSigningCertificate(IDP));
+        assertNotNull(registry.getEncryptionCertificate(SP));
+
+        // the handlers get the same certificate, without decoding it again
+        assertSame(registry.getSigningCertificate(IDP),
+            SAMLMetadataUtil.getCertificate(KeyTypes.SIGNING, registry.getIDPDescriptor(IDP)));
+    }
+
+    @Test
+    public void testReloadModifiedFile() throws Exception {
+        File file = File.createTempFile("metadata", ".xml");
+
+        try {
+            copy("saml2/metadata/testshib.org.idp-metadata.xml", file);
+
+            MetadataRegistry registry = new MetadataRegistry();
+
+            registry.watch(file, 0);
+
+            EntityDescriptorType idp = registry.getEntityDescriptor(IDP);
+
+            assertNotNull(idp);
+            assertFalse(registry.reloadIfModified());
+
+            copy("saml2/metadata/sp-two-salesforce-googleapps.xml", file);
+            file.setLastModified(file.lastModified() + 2000);
+
+            assertTrue(registry.reloadIfModified());
+            assertEquals(1, registry.getReloadCount());
+            assertEquals(2, registry.getEntityCount());
+            assertNull(registry.getEntityDescriptor(IDP));
+            assertNotNull(registry.getSPDescriptor("https://saml.salesforce.com"));
+
+            // a broken file keeps the entities previously loaded
+            OutputStream os = new FileOutputStream(file);
+            os.write("<EntitiesDescriptor".getBytes());
+            os.close();
+            file.setLastModified(file.lastModified() + 4000);
+
+            assertFalse(registry.reloadIfModified());
+            assertEquals(1, registry.getReloadCount());
+            assertNotNull(registry.getSPDescriptor("https://saml.salesforce.com"));
+
+            registry.stop();
+        } finally {
+            file.delete();
+        }
+    }
+
+    @Test
+    public void testRegister() throws Exception {
+        MetadataRegistry registry = new MetadataRegistry();
+
+        registry.load(getResource("saml2/metadata/sp-two-salesforce-googleapps.xml"));
+
+        MetadataRegistry copy = new MetadataRegistry();
+
+        copy.register(registry.getEntityDescriptors());
+
+        assertEquals(2, copy.getEntityCount());
+        assertSame(registry.getSPDescriptor("google.com/a/somedomain.com"),
+            copy.getSPDescriptor("google.com/a/somedomain.com"));
+    }
+
+    private void copy(String resource, File file) throws IOException {
+        InputStream is = getResource(resource);
+        OutputStream os = new FileOutputStream(file);
+
+        try {
+            byte[] buffer = new byte[4096];
+            int read;
+
+            while ((read = is.read(buffer)) != -1) {
+                os.write(buffer, 0, read);
+            }
+        } finally {
+            is.close();
+            os.close();
+        }
+    }
+
+    private InputStream getResource(String name) {
+        return Thread.currentThread().getContextClassLoader().getResourceAsStream(name);
+    }
+}
@@ -64,6 +64,16 @@ public class SAMLMetadataParsingUnitTestCase {
         X509Certificate cert = SAMLMetadataUtil.getCertificate(keyDescriptor);
         Assert.assertNotNull(cert);
         Assert.assertEquals("CN=test, OU=OpenSSO, O=Sun, L=Santa Clara, ST=California, C=US", cert.getIssuerDN().getName());
+
+        // the certificate is decoded once, and decoded again when the key info changes
+        Assert.assertSame(cert, SAMLMetadataUtil.getCertificate(keyDescriptor));
+
+        Assert.assertSame(cert, keyDescriptor.getCertificate());
+
+        keyDescriptor.setKeyInfo(keyDescriptor.getKeyInfo());
+
+        Assert.assertNull(keyDescriptor.getCertificate());
+        Assert.assertEquals(cert, SAMLMetadataUtil.getCertificate(keyDescriptor));
     }
 
     @Test
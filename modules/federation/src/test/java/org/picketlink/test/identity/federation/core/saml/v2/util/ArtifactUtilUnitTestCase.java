@@ -0,0 +1,136 @@
+/*
+ * JBoss, Home of Professional Open Source
+ *
+ * Copyright 2013 Red Hat, Inc. and/or its affiliates.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.picketlink.test.identity.federation.core.saml.v2.util;
+
+import org.junit.Test;
+import org.picketlink.common.util.DocumentUtil;
+import org.picketlink.identity.federation.core.parsers.saml.SAMLParser;
+import org.picketlink.identity.federation.core.saml.v2.impl.DefaultSAML2ArtifactStore;
+import org.picketlink.identity.federation.core.saml.v2.util.ArtifactUtil;
+import org.picketlink.identity.federation.saml.v2.protocol.ArtifactResolveType;
+import org.picketlink.identity.federation.web.util.ArtifactBindingUtil;
+import org.w3c.dom.Document;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Unit test the artifacts of the HTTP-Artifact binding, their store and the {@code ArtifactResolve} /
+ * {@code ArtifactResponse} exchange.
+ */
+public class ArtifactUtilUnitTestCase {
+
+    private static final String IDP = "http://localhost:8080/idp/";
+
+    private static final String SP = "http://localhost:8080/sales/";
+
+    private static final String RESPONSE = "<samlp:Response xmlns:samlp=\"urn:oasis:names:tc:SAML:2.0:protocol\" "
+            + "xmlns:saml=\"urn:oasis:names:tc:SAML:2.0:assertion\" ID=\"ID_response\" Version=\"2.0\" "
+            + "IssueInstant=\"2013-01-01T00:00:00Z\"><saml:Issuer>" + IDP + "</saml:Issuer><samlp:Status>"
+            + "<samlp:StatusCode Value=\"urn:oasis:names:tc:SAML:2.0:status:Success\"/></samlp:Status></samlp:Response>";
+
+    @Test
+    public void testCreateArtifact() throws Exception {
+        String artifact = ArtifactUtil.createArtifact(IDP, 3);
+
+        assertTrue(ArtifactUtil.isIssuedBy(artifact, IDP));
+        assertFalse(ArtifactUtil.isIssuedBy(artifact, "http://localhost:8080/other-idp/"));
+        assertFalse(artifact.equals(ArtifactUtil.createArtifact(IDP, 3)));
+    }
+
+    @Test
+    public void testInvalidArtifact() throws Exception {
+        assertFalse(ArtifactUtil.isIssuedBy(null, IDP));
+        assertFalse(ArtifactUtil.isIssuedBy("not an artifact", IDP));
+        assertFalse(ArtifactUtil.isIssuedBy("AAQAAA==", IDP));
+    }
+
+    @Test
+    public void testStoreResolvesOnce() throws Exception {
+        DefaultSAML2ArtifactStore store = new DefaultSAML2ArtifactStore();
+        Document message = DocumentUtil.getDocument(RESPONSE);
+        String artifact = ArtifactUtil.createArtifact(IDP, 0);
+
+        store.store(artifact, message, SP);
+
+        // the message is kept for its recipient
+        assertNull(store.resolve(artifact, "http://localhost:8080/employee/"));
+        assertNull(store.resolve(artifact, null));
+        assertSame(message, store.resolve(artifact, SP));
+        assertNull(store.resolve(artifact, SP));
+        assertNull(store.resolve(ArtifactUtil.createArtifact(IDP, 0), SP));
+    }
+
+    @Test
+    public void testStoreExpiry() throws Exception {
+        DefaultSAML2ArtifactStore store = new DefaultSAML2ArtifactStore();
+
+        store.setTimeout(50);
+
+        String artifact = ArtifactUtil.createArtifact(IDP, 0);
+
+        store.store(artifact, DocumentUtil.getDocument(RESPONSE), SP);
+
+        Thread.sleep(100);
+
+        // the next store removes the expired message
+        store.store(ArtifactUtil.createArtifact(IDP, 0), DocumentUtil.getDocument(RESPONSE), SP);
+
+        assertEquals(1, store.size());
+        assertNull(store.resolve(artifact, SP));
+    }
+
+    @Test
+    public void testArtifactResolution() throws Exception {
+        String artifact = ArtifactUtil.createArtifact(IDP, 0);
+        Document artifactResolveDocument = ArtifactBindingUtil.createArtifactResolve(artifact,
+                SP, IDP + "artifact");
+
+        ArtifactResolveType artifactResolve = (ArtifactResolveType) new SAMLParser().parse(artifactResolveDocument);
+
+        assertEquals(artifact, artifactResolve.getArtifact());
+
+        Document message = DocumentUtil.getDocument(RESPONSE);
+        Document artifactResponse = ArtifactBindingUtil.createArtifactResponse(artifactResolve, message);
+
+        assertEquals(artifactResolve.getID(), artifactResponse.getDocumentElement().getAttribute("InResponseTo"));
+
+        Document resolved = ArtifactBindingUtil.getArtifactResponseMessage(artifactResponse.getDocumentElement());
+
+        assertNotNull(resolved);
+        assertNotSame(message, resolved);
+        assertEquals("Response", resolved.getDocumentElement().getLocalName());
+        assertEquals("ID_response", resolved.getDocumentElement().getAttribute("ID"));
+    }
+
+    @Test
+    public void testArtifactResolutionOfUnknownArtifact() throws Exception {
+        Document artifactResolveDocument = ArtifactBindingUtil.createArtifactResolve(ArtifactUtil.createArtifact(IDP, 0),
+                SP, null);
+        ArtifactResolveType artifactResolve = (ArtifactResolveType) new SAMLParser().parse(artifactResolveDocument);
+
+        Document artifactResponse = ArtifactBindingUtil.createArtifactResponse(artifactResolve, null);
+
+        assertNull(ArtifactBindingUtil.getArtifactResponseMessage(artifactResponse.getDocumentElement()));
+    }
+}
@@ -0,0 +1,233 @@
+/*
+ * JBoss, Home of Professional Open Source
+ *
+ * Copyright 2013 Red Hat, Inc. and/or its affiliates.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.picketlink.test.identity.federation.core.saml.v2.writers;
+
+import org.apache.xml.security.c14n.Canonicalizer;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.picketlink.common.constants.JBossSAMLURIConstants;
+import org.picketlink.common.util.DocumentUtil;
+import org.picketlink.common.util.StaxUtil;
+import org.picketlink.identity.federation.api.saml.v2.request.SAML2Request;
+import org.picketlink.identity.federation.api.saml.v2.response.SAML2Response;
+import org.picketlink.identity.federation.api.saml.v2.sig.SAML2Signature;
+import org.picketlink.identity.federation.core.saml.v2.common.IDGenerator;
+import org.picketlink.identity.federation.core.saml.v2.holders.IssuerInfoHolder;
+import org.picketlink.identity.federation.core.saml.v2.util.StatementUtil;
+import org.picketlink.identity.federation.core.saml.v2.util.XMLTimeUtil;
+import org.picketlink.identity.federation.core.saml.v2.writers.SAMLAssertionWriter;
+import org.picketlink.identity.federation.core.saml.v2.writers.SAMLRequestWriter;
+import org.picketlink.identity.federation.core.saml.v2.writers.SAMLResponseWriter;
+import org.picketlink.identity.federation.core.util.XMLSignatureUtil;
+import org.picketlink.identity.federation.saml.v2.assertion.AssertionType;
+import org.picketlink.identity.federation.saml.v2.protocol.AuthnRequestType;
+import org.picketlink.identity.federation.saml.v2.protocol.LogoutRequestType;
+import org.picketlink.identity.federation.saml.v2.protocol.ResponseType;
+import org.w3c.dom.Attr;
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+import org.w3c.dom.NamedNodeMap;
+import org.w3c.dom.Node;
+import org.w3c.dom.NodeList;
+
+import javax.xml.stream.XMLStreamWriter;
+import javax.xml.transform.dom.DOMResult;
+import java.io.ByteArrayOutputStream;
+import java.security.KeyPair;
+import java.security.KeyPairGenerator;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Unit test the SAML writers building a DOM tree through a {@link DOMResult}: the tree must be the same as the one
+ * parsed from the output of a stream writer, and signatures made over it must validate.
+ */
+public class SAMLDOMResultWriterUnitTestCase {
+
+    private static KeyPair keyPair;
+
+    @BeforeClass
+    public static void onBeforeClass() throws Exception {
+        org.apache.xml.security.Init.init();
+
+        KeyPairGenerator kpg = KeyPairGenerator.getInstance("RSA");
+
+        kpg.initialize(1024);
+        keyPair = kpg.genKeyPair();
+    }
+
+    @Test
+    public void testResponseWriterEquivalence() throws Exception {
+        ResponseType responseType = createResponseType();
+
+        ByteArrayOutputStream baos = new ByteArrayOutputStream();
+
+        new SAMLResponseWriter(StaxUtil.getXMLStreamWriter(baos)).write(responseType);
+
+        Document domDocument = DocumentUtil.createDocument();
+
+        new SAMLResponseWriter(new DOMResult(domDocument)).write(responseType);
+
+        assertEquivalent(DocumentUtil.getDocument(baos.toString("UTF-8")), domDocument);
+    }
+
+    @Test
+    public void testRequestWriterEquivalence() throws Exception {
+        SAML2Request saml2Request = new SAML2Request();
+        AuthnRequestType authnRequest = saml2Request.createAuthnRequestType(IDGenerator.create("ID_"), "http://sp",
+                "http://idp", "http://sp");
+
+        ByteArrayOutputStream baos = new ByteArrayOutputStream();
+
+        new SAMLRequestWriter(StaxUtil.getXMLStreamWriter(baos)).write(authnRequest);
+
+        Document domDocument = DocumentUtil.createDocument();
+
+        new SAMLRequestWriter(new DOMResult(domDocument)).write(authnRequest);
+
+        assertEquivalent(DocumentUtil.getDocument(baos.toString("UTF-8")), domDocument);
+
+        LogoutRequestType logoutRequest = saml2Request.createLogoutRequest("http://sp");
+
+        baos = new ByteArrayOutputStream();
+
+        new SAMLRequestWriter(StaxUtil.getXMLStreamWriter(baos)).write(logoutRequest);
+
+        domDocument = DocumentUtil.createDocument();
+
+        new SAMLRequestWriter(new DOMResult(domDocument)).write(logoutRequest);
+
+        assertEquivalent(DocumentUtil.getDocument(baos.toString("UTF-8")), domDocument);
+    }
+
+    @Test
+    public void testAssertionWriterEquivalence() throws Exception {
+        AssertionType assertion = createAssertion();
+
+        ByteArrayOutputStream baos = new ByteArrayOutputStream();
+
+        new SAMLAssertionWriter(StaxUtil.getXMLStreamWriter(baos)).write(assertion);
+
+        Document domDocument = DocumentUtil.createDocument();
+
+        new SAMLAssertionWriter(new DOMResult(domDocument)).write(assertion);
+
+        assertEquivalent(DocumentUtil.getDocument(baos.toString("UTF-8")), domDocument);
+    }
+
+    @Test
+    public void testSignAndValidate() throws Exception {
+        SAML2Response saml2Response = new SAML2Response();
+        Document domDocument = saml2Response.convert(createResponseType());
+
+        // the attributes written through a DOMResult are created with DOM Level 1 methods
+        assertTrue(hasDOMLevel1Attribute(domDocument.getDocumentElement()));
+
+        SAML2Signature signature = new SAML2Signature();
+
+        signature.signSAMLDocument(domDocument, keyPair);
+
+        assertTrue(XMLSignatureUtil.validate(domDocument, keyPair.getPublic()));
+
+        // as received by the other party
+        Document reparsed = DocumentUtil.getDocument(DocumentUtil.asString(domDocument));
+
+        assertTrue(signature.validate(reparsed, keyPair.getPublic()));
+
+        // a change to the signed content must be detected
+        Element issuer = (Element) reparsed.getElementsByTagNameNS(JBossSAMLURIConstants.ASSERTION_NSURI.get(), "Issuer")
+                .item(0);
+
+        issuer.setTextContent("http://attacker");
+
+        assertFalse(signature.validate(reparsed, keyPair.getPublic()));
+    }
+
+    @Test
+    public void testWriteDOMLevel1Element() throws Exception {
+        Document domDocument = DocumentUtil.createDocument();
+
+        new SAMLAssertionWriter(new DOMResult(domDocument)).write(createAssertion());
+
+        // serialize the DOM built tree again through a stream writer, as done when an assertion is embedded in a response
+        ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        XMLStreamWriter writer = StaxUtil.getXMLStreamWriter(baos);
+
+        StaxUtil.writeDOMElement(writer, domDocument.getDocumentElement());
+        StaxUtil.flush(writer);
+
+        assertEquivalent(domDocument, DocumentUtil.getDocument(baos.toString("UTF-8")));
+    }
+
+    private ResponseType createResponseType() throws Exception {
+        SAML2Response saml2Response = new SAML2Response();
+
+        return saml2Response.createResponseType(IDGenerator.create("ID_"), new IssuerInfoHolder("http://idp"),
+                createAssertion());
+    }
+
+    private AssertionType createAssertion() throws Exception {
+        SAML2Response saml2Response = new SAML2Response();
+        AssertionType assertion = saml2Response.createAssertion(IDGenerator.create("ID_"),
+                new IssuerInfoHolder("http://idp").getIssuer());
+
+        assertion.addStatement(saml2Response.createAuthnStatement(JBossSAMLURIConstants.AC_PASSWORD_PROTECTED_TRANSPORT.get(),
+                XMLTimeUtil.getIssueInstant()));
+
+        Map<String, Object> attributes = new HashMap<String, Object>();
+
+        attributes.put("email", "john@picketlink.org");
+        attributes.put("role", Arrays.asList("manager", "sales"));
+
+        assertion.addStatement(StatementUtil.createAttributeStatement(attributes));
+
+        return assertion;
+    }
+
+    private void assertEquivalent(Node expected, Node actual) throws Exception {
+        Canonicalizer canonicalizer = Canonicalizer.getInstance(Canonicalizer.ALGO_ID_C14N_EXCL_OMIT_COMMENTS);
+
+        assertEquals(new String(canonicalizer.canonicalizeSubtree(expected), "UTF-8"),
+                new String(canonicalizer.canonicalizeSubtree(actual), "UTF-8"));
+    }
+
+    private boolean hasDOMLevel1Attribute(Element element) {
+        NamedNodeMap attributes = element.getAttributes();
+
+        for (int i = 0; i < attributes.getLength(); i++) {
+            if (((Attr) attributes.item(i)).getLocalName() == null) {
+                return true;
+            }
+        }
+
+        NodeList children = element.getChildNodes();
+
+        for (int i = 0; i < children.getLength(); i++) {
+            if (children.item(i) instanceof Element && hasDOMLevel1Attribute((Element) children.item(i))) {
+                return true;
+            }
+        }
+
+        return false;
+    }
+}
@@ -0,0 +1,155 @@
+/*
+ * JBoss, Home of Professional Open Source
+ *
+ * Copyright 2013 Red Hat, Inc. and/or its affiliates.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.picketlink.test.identity.federation.core.stax;
+
+import org.junit.Test;
+import org.picketlink.common.util.DocumentUtil;
+import org.picketlink.common.util.StaxParserUtil;
+import org.picketlink.identity.federation.core.parsers.saml.SAMLParser;
+import org.picketlink.identity.federation.core.parsers.wst.WSTrustParser;
+import org.picketlink.identity.federation.core.wstrust.wrappers.RequestSecurityToken;
+import org.picketlink.identity.federation.saml.v2.assertion.AssertionType;
+import org.picketlink.identity.federation.saml.v2.protocol.ResponseType;
+import org.w3c.dom.Document;
+
+import javax.xml.namespace.QName;
+import javax.xml.stream.XMLEventReader;
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.events.Attribute;
+import javax.xml.stream.events.StartElement;
+import javax.xml.stream.events.XMLEvent;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+
+/**
+ * Test the reading of StAX events from a DOM node
+ */
+public class DOMXMLEventReaderTestCase {
+
+    private static final String[] DOCUMENTS = new String[] { "parser/saml2/saml2-response.xml",
+        "parser/saml2/saml2-response-adfs-claims.xml", "parser/saml2/saml2-assertion-x500attrib.xml",
+        "parser/saml2/saml2-authnrequest.xml", "parser/saml2/saml2-logout-request.xml",
+        "parser/saml1/saml1-assertion-keyinfo.xml", "parser/wst/wst-issue-onbehalfof.xml",
+        "parser/wst/wst-batch-issue.xml" };
+
+    @Test
+    public void testSameEventsAsStreamReader() throws Exception {
+        for (String document : DOCUMENTS) {
+            List<String> streamEvents = describe(StaxParserUtil.getXMLEventReader(getResource(document)));
+            List<String> domEvents = describe(StaxParserUtil.getXMLEventReader(DocumentUtil.getDocument(getResource(document))));
+
+            assertFalse(streamEvents.isEmpty());
+            assertEquals(document, streamEvents, domEvents);
+        }
+    }
+
+    @Test
+    public void testReadElement() throws Exception {
+        Document document = DocumentUtil.getDocument("<a xmlns='urn:a'><b:b xmlns:b='urn:b' b:c='d'>te<![CDATA[x]]>t</b:b></a>");
+        XMLEventReader xmlEventReader = StaxParserUtil.getXMLEventReader(document.getDocumentElement().getFirstChild());
+
+        StartElement startElement = xmlEventReader.nextEvent().asStartElement();
+
+        assertEquals("urn:b", startElement.getName().getNamespaceURI());
+        assertEquals("b", startElement.getName().getLocalPart());
+        assertEquals("d", startElement.getAttributeByName(new QName("urn:b", "c")).getValue());
+        assertEquals("urn:a", startElement.getNamespaceContext().getNamespaceURI(""));
+        assertEquals("text", xmlEventReader.getElementText());
+        assertFalse(xmlEventReader.hasNext());
+    }
+
+    @Test
+    public void testGetProperty() throws Exception {
+        Document document = DocumentUtil.getDocument("<a xmlns='urn:a'/>");
+        XMLEventReader xmlEventReader = StaxParserUtil.getXMLEventReader(document);
+
+        assertEquals(Boolean.TRUE, xmlEventReader.getProperty(XMLInputFactory.IS_NAMESPACE_AWARE));
+        assertEquals(Boolean.TRUE, xmlEventReader.getProperty(XMLInputFactory.IS_COALESCING));
+        assertNull(xmlEventReader.getProperty(XMLInputFactory.IS_VALIDATING));
+        assertNull(xmlEventReader.getProperty("urn:unknown"));
+    }
+
+    @Test
+    public void testParseNode() throws Exception {
+        SAMLParser samlParser = new SAMLParser();
+        Document document = DocumentUtil.getDocument(getResource("parser/saml2/saml2-response.xml"));
+
+        ResponseType fromStream = (ResponseType) samlParser.parse(getResource("parser/saml2/saml2-response.xml"));
+        ResponseType fromNode = (ResponseType) samlParser.parse(document);
+
+        assertEquals(fromStream.getID(), fromNode.getID());
+        assertEquals(fromStream.getIssueInstant(), fromNode.getIssueInstant());
+        assertEquals(fromStream.getIssuer().getValue(), fromNode.getIssuer().getValue());
+        assertEquals(fromStream.getAssertions().size(), fromNode.getAssertions().size());
+
+        AssertionType expected = fromStream.getAssertions().get(0).getAssertion();
+        AssertionType assertion = fromNode.getAssertions().get(0).getAssertion();
+
+        assertEquals(expected.getID(), assertion.getID());
+        assertEquals(expected.getStatements().size(), assertion.getStatements().size());
+
+        RequestSecurityToken request = (RequestSecurityToken) new WSTrustParser().parse(
+            DocumentUtil.getDocument(getResource("parser/wst/wst-issue-onbehalfof.xml")).getDocumentElement());
+
+        assertNotNull(request.getOnBehalfOf());
+    }
+
+    private List<String> describe(XMLEventReader xmlEventReader) throws Exception {
+        List<String> events = new ArrayList<String>();
+
+        while (xmlEventReader.hasNext()) {
+            XMLEvent xmlEvent = xmlEventReader.nextEvent();
+
+            if (xmlEvent.isStartElement()) {
+                StartElement startElement = xmlEvent.asStartElement();
+                List<String> attributes = new ArrayList<String>();
+
+                for (Iterator<?> iterator = startElement.getAttributes(); iterator.hasNext(); ) {
+                    Attribute attribute = (Attribute) iterator.next();
+                    attributes.add(attribute.getName() + "=" + attribute.getValue());
+                }
+
+                Collections.sort(attributes);
+
+                events.add("start " + startElement.getName() + " " + attributes);
+            } else if (xmlEvent.isEndElement()) {
+                events.add("end " + xmlEvent.asEndElement().getName());
+            } else if (xmlEvent.isCharacters()) {
+                String data = xmlEvent.asCharacters().getData();
+
+                if (data.trim().length() > 0) {
+                    events.add("characters " + data.trim());
+                }
+            }
+        }
+
+        return events;
+    }
+
+    private InputStream getResource(String name) {
+        return Thread.currentThread().getContextClassLoader().getResourceAsStream(name);
+    }
+}
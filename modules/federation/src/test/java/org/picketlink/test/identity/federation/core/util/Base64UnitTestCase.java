@@ -0,0 +1,214 @@
+/*
+ * JBoss, Home of Professional Open Source
+ *
+ * Copyright 2013 Red Hat, Inc. and/or its affiliates.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.picketlink.test.identity.federation.core.util;
+
+import org.junit.Test;
+import org.picketlink.common.util.Base64;
+
+import javax.xml.bind.DatatypeConverter;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+/**
+ * Unit test {@link Base64}, comparing its output with the one of {@link DatatypeConverter} and with the formats of
+ * the previous implementation: lines broken after 76 characters and base64url without padding.
+ */
+public class Base64UnitTestCase {
+
+    private static final String[][] RFC4648_VECTORS = {{"", ""}, {"f", "Zg=="}, {"fo", "Zm8="}, {"foo", "Zm9v"},
+            {"foob", "Zm9vYg=="}, {"fooba", "Zm9vYmE="}, {"foobar", "Zm9vYmFy"}};
+
+    private final Random random = new Random(7);
+
+    @Test
+    public void testVectors() throws Exception {
+        for (String[] vector : RFC4648_VECTORS) {
+            byte[] data = vector[0].getBytes("US-ASCII");
+
+            assertEquals(vector[1], Base64.encodeBytes(data));
+            assertEquals(vector[1].replace("=", ""), Base64.encodeBytes(data, Base64.URL_SAFE | Base64.NO_PADDING));
+            assertArrayEquals(data, Base64.decode(vector[1]));
+            assertArrayEquals(data, Base64.decode(vector[1].replace("=", ""), Base64.URL_SAFE));
+        }
+    }
+
+    @Test
+    public void testEncodeAndDecode() throws Exception {
+        for (int length = 0; length < 2000; length += 1 + length / 10) {
+            byte[] data = randomBytes(length);
+            String expected = DatatypeConverter.printBase64Binary(data);
+
+            assertEquals(expected, Base64.encodeBytes(data, Base64.DONT_BREAK_LINES));
+            assertEquals(breakLines(expected), Base64.encodeBytes(data));
+            assertEquals(toBase64Url(expected), Base64.encodeBytes(data, Base64.URL_SAFE | Base64.NO_PADDING
+                    | Base64.DONT_BREAK_LINES));
+
+            assertArrayEquals(data, Base64.decode(expected));
+            assertArrayEquals(data, Base64.decode(breakLines(expected).replace("\n", "\r\n ")));
+            assertArrayEquals(data, Base64.decode(toBase64Url(expected), Base64.URL_SAFE));
+
+            byte[] encoded = breakLines(expected).getBytes("US-ASCII");
+
+            assertArrayEquals(data, Base64.decode(encoded, 0, encoded.length));
+            assertArrayEquals(data, Base64.decode(Base64.encodeBytes(data, Base64.GZIP)));
+        }
+    }
+
+    @Test
+    public void testEncodeAndDecodeIntoBuffers() throws Exception {
+        byte[] data = randomBytes(1000);
+        int encodedLength = Base64.getEncodedLength(100, Base64.NO_OPTIONS);
+        byte[] encoded = new byte[encodedLength + 10];
+
+        assertEquals(encodedLength, Base64.encode(data, 50, 100, encoded, 5, Base64.NO_OPTIONS));
+        assertEquals(Base64.encodeBytes(data, 50, 100), new String(encoded, 5, encodedLength, "US-ASCII"));
+
+        byte[] decoded = new byte[Base64.getMaxDecodedLength(encodedLength) + 3];
+
+        assertEquals(100, Base64.decode(encoded, 5, encodedLength, decoded, 3, Base64.NO_OPTIONS));
+        assertArrayEquals(Arrays.copyOfRange(data, 50, 150), Arrays.copyOfRange(decoded, 3, 103));
+    }
+
+    @Test
+    public void testInvalidCharacters() throws Exception {
+        String[] invalid = {"Zm9v*mFy", "Zm9vémFy", "Z=9vYmFy"};
+
+        for (String value : invalid) {
+            try {
+                Base64.decode(value);
+                fail("Invalid Base64 data was decoded: " + value);
+            } catch (IllegalStateException expected) {
+            }
+        }
+
+        try {
+            Base64.decode("Zm9vY", Base64.URL_SAFE);
+            fail("A single character cannot be decoded");
+        } catch (IllegalStateException expected) {
+        }
+    }
+
+    @Test
+    public void testStreams() throws Exception {
+        for (int length : new int[] {0, 1, 2, 56, 57, 58, 114, 5000, 20000}) {
+            byte[] data = randomBytes(length);
+            String expected = DatatypeConverter.printBase64Binary(data);
+
+            // writes of random sizes, including single bytes
+            for (int options : new int[] {Base64.NO_OPTIONS, Base64.DONT_BREAK_LINES}) {
+                ByteArrayOutputStream out = new ByteArrayOutputStream();
+                Base64.OutputStream b64os = new Base64.OutputStream(out, Base64.ENCODE | options);
+
+                for (int off = 0, len; off < length; off += len) {
+                    len = Math.min(length - off, this.random.nextInt(100));
+
+                    if (len == 1) {
+                        b64os.write(data[off]);
+                    } else {
+                        b64os.write(data, off, len);
+                    }
+                }
+
+                b64os.close();
+
+                assertEquals(options == Base64.NO_OPTIONS ? breakLines(expected) : expected, out.toString("US-ASCII"));
+            }
+
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            Base64.OutputStream b64os = new Base64.OutputStream(out, Base64.DECODE);
+
+            b64os.write(breakLines(expected).getBytes("US-ASCII"));
+            b64os.close();
+
+            assertArrayEquals(data, out.toByteArray());
+
+            InputStream encoded = new ByteArrayInputStream(breakLines(expected).getBytes("US-ASCII"));
+
+            assertArrayEquals(data, readFully(new Base64.InputStream(encoded, Base64.DECODE)));
+
+            // the input stream does not end the last line
+            String encodedData = new String(readFully(new Base64.InputStream(new ByteArrayInputStream(data),
+                    Base64.ENCODE)), "US-ASCII");
+
+            assertEquals(breakLines(expected).trim(), encodedData);
+        }
+    }
+
+    @Test
+    public void testImproperlyPaddedStream() throws Exception {
+        try {
+            readFully(new Base64.InputStream(new ByteArrayInputStream("Zm9vYmF".getBytes("US-ASCII"))));
+            fail("The stream is not properly padded.");
+        } catch (IOException expected) {
+        }
+    }
+
+    private byte[] randomBytes(int length) {
+        byte[] data = new byte[length];
+
+        this.random.nextBytes(data);
+
+        return data;
+    }
+
+    /**
+     * Breaks the lines after 76 characters, including the last line when it is not followed by an incomplete
+     * quantum, like the previous implementation.
+     */
+    private static String breakLines(String encoded) {
+        StringBuilder builder = new StringBuilder();
+
+        for (int i = 0; i < encoded.length(); i += 76) {
+            String line = encoded.substring(i, Math.min(encoded.length(), i + 76));
+
+            builder.append(line);
+
+            if (line.length() == 76 && !line.endsWith("=")) {
+                builder.append('\n');
+            }
+        }
+
+        return builder.toString();
+    }
+
+    private static String toBase64Url(String encoded) {
+        return encoded.replace('+', '-').replace('/', '_').replace("=", "");
+    }
+
+    private static byte[] readFully(InputStream is) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        byte[] buffer = new byte[1000];
+        int read;
+
+        while ((read = is.read(buffer)) != -1) {
+            out.write(buffer, 0, read);
+        }
+
+        is.close();
+
+        return out.toByteArray();
+    }
+}
@@ -0,0 +1,128 @@
+/*
+ * JBoss, Home of Professional Open Source
+ *
+ * Copyright 2013 Red Hat, Inc. and/or its affiliates.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.picketlink.test.identity.federation.core.util;
+
+import org.junit.Test;
+import org.picketlink.common.util.DocumentUtil;
+import org.picketlink.identity.federation.core.util.JAXPValidationUtil;
+import org.w3c.dom.Document;
+import org.xml.sax.SAXException;
+
+import javax.xml.validation.Validator;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.fail;
+
+/**
+ * Unit test {@link JAXPValidationUtil}
+ */
+public class JAXPValidationUtilTestCase {
+
+    private static final int THREADS = 8;
+
+    private static final int ITERATIONS = 50;
+
+    @Test
+    public void testValidateNode() throws Exception {
+        JAXPValidationUtil.validate(getAuthnRequest());
+
+        try {
+            JAXPValidationUtil.validate(getInvalidAuthnRequest());
+            fail("AuthnRequest without ID should not be valid.");
+        } catch (SAXException expected) {
+        }
+    }
+
+    @Test
+    public void testValidatorPerThread() throws Exception {
+        final Validator validator = JAXPValidationUtil.validator();
+
+        assertSame(validator, JAXPValidationUtil.validator());
+
+        ExecutorService executorService = Executors.newSingleThreadExecutor();
+
+        try {
+            assertNotSame(validator, executorService.submit(new Callable<Validator>() {
+                @Override
+                public Validator call() throws Exception {
+                    return JAXPValidationUtil.validator();
+                }
+            }).get());
+        } finally {
+            executorService.shutdown();
+        }
+    }
+
+    @Test
+    public void testConcurrentValidation() throws Exception {
+        ExecutorService executorService = Executors.newFixedThreadPool(THREADS);
+        List<Future<Integer>> results = new ArrayList<Future<Integer>>();
+
+        try {
+            for (int i = 0; i < THREADS; i++) {
+                results.add(executorService.submit(new Callable<Integer>() {
+                    @Override
+                    public Integer call() throws Exception {
+                        Document valid = getAuthnRequest();
+                        Document invalid = getInvalidAuthnRequest();
+                        int failures = 0;
+
+                        for (int j = 0; j < ITERATIONS; j++) {
+                            JAXPValidationUtil.validate(valid);
+
+                            try {
+                                JAXPValidationUtil.validate(invalid);
+                            } catch (SAXException expected) {
+                                failures++;
+                            }
+                        }
+
+                        return failures;
+                    }
+                }));
+            }
+
+            for (Future<Integer> result : results) {
+                assertEquals(Integer.valueOf(ITERATIONS), result.get());
+            }
+        } finally {
+            executorService.shutdown();
+        }
+    }
+
+    private Document getAuthnRequest() throws Exception {
+        return DocumentUtil.getDocument(Thread.currentThread().getContextClassLoader()
+            .getResourceAsStream("parser/saml2/saml2-authnrequest.xml"));
+    }
+
+    private Document getInvalidAuthnRequest() throws Exception {
+        Document document = getAuthnRequest();
+
+        document.getDocumentElement().removeAttribute("ID");
+
+        return document;
+    }
+}
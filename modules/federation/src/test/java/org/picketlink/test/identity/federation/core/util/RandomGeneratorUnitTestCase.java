@@ -0,0 +1,197 @@
+/*
+ * JBoss, Home of Professional Open Source
+ *
+ * Copyright 2013 Red Hat, Inc. and/or its affiliates.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.picketlink.test.identity.federation.core.util;
+
+import org.junit.Test;
+import org.picketlink.common.random.RandomGenerator;
+import org.picketlink.common.random.SecureRandomProvider;
+
+import java.security.SecureRandom;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.UUID;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * Unit test the {@link RandomGenerator}: the format of the UUIDs and ids it generates, and the {@link SecureRandom}
+ * instance each thread uses.
+ */
+public class RandomGeneratorUnitTestCase {
+
+    private static final String UUID_PATTERN = "[0-9a-f]{8}-[0-9a-f]{4}-4[0-9a-f]{3}-[89ab][0-9a-f]{3}-[0-9a-f]{12}";
+
+    @Test
+    public void testGenerateUUID() throws Exception {
+        RandomGenerator generator = new RandomGenerator();
+
+        for (int i = 0; i < 1000; i++) {
+            String uuid = generator.generateUUID();
+
+            assertTrue(uuid, uuid.matches(UUID_PATTERN));
+
+            UUID parsed = UUID.fromString(uuid);
+
+            assertEquals(4, parsed.version());
+            assertEquals(2, parsed.variant());
+            assertEquals(uuid, parsed.toString());
+        }
+    }
+
+    @Test
+    public void testUUIDVersionAndVariantBits() throws Exception {
+        // only the version and variant bits are set on random bytes
+        assertEquals("00000000-0000-4000-8000-000000000000",
+            new RandomGenerator(new FixedSecureRandomProvider((byte) 0x00), 1).generateUUID());
+        assertEquals("ffffffff-ffff-4fff-bfff-ffffffffffff",
+            new RandomGenerator(new FixedSecureRandomProvider((byte) 0xff), 1).generateUUID());
+    }
+
+    @Test
+    public void testGenerateId() throws Exception {
+        RandomGenerator generator = new RandomGenerator();
+
+        for (int size = 0; size < 64; size++) {
+            String id = generator.generateId(size);
+
+            assertEquals(size * 2, id.length());
+            assertTrue(id, id.matches("[0-9a-f]*"));
+        }
+
+        assertEquals("7f7f7f", new RandomGenerator(new FixedSecureRandomProvider((byte) 0x7f), 1).generateId(3));
+        assertEquals("8080", new RandomGenerator(new FixedSecureRandomProvider((byte) 0x80), 1).generateId(2));
+        assertEquals(16, new RandomGenerator().generateBytes(16).length);
+    }
+
+    @Test
+    public void testThreadStriping() throws Exception {
+        final RecordingSecureRandomProvider provider = new RecordingSecureRandomProvider();
+        final RandomGenerator generator = new RandomGenerator(provider, 3);
+
+        // the concurrency is rounded up to a power of two
+        assertEquals(4, provider.created.size());
+        assertSame(getStripe(provider, Thread.currentThread()), generator.getSecureRandom());
+        assertSame(generator.getSecureRandom(), generator.getSecureRandom());
+
+        final List<Thread> threads = new ArrayList<Thread>();
+        final List<Throwable> failures = new ArrayList<Throwable>();
+
+        for (int i = 0; i < 8; i++) {
+            Thread thread = new Thread(new Runnable() {
+                public void run() {
+                    try {
+                        assertSame(getStripe(provider, Thread.currentThread()), generator.getSecureRandom());
+                    } catch (Throwable t) {
+                        synchronized (failures) {
+                            failures.add(t);
+                        }
+                    }
+                }
+            });
+
+            threads.add(thread);
+        }
+
+        for (Thread thread : threads) {
+            thread.start();
+        }
+
+        for (Thread thread : threads) {
+            thread.join();
+        }
+
+        assertTrue(failures.toString(), failures.isEmpty());
+
+        // threads whose ids fall in different stripes use different instances
+        assertNotSame(provider.created.get(0), provider.created.get(1));
+
+        // a single instance is shared by all the threads
+        RecordingSecureRandomProvider singleProvider = new RecordingSecureRandomProvider();
+
+        assertSame(new RandomGenerator(singleProvider, 0).getSecureRandom(), singleProvider.created.get(0));
+        assertEquals(1, singleProvider.created.size());
+    }
+
+    @Test
+    public void testSetInstance() throws Exception {
+        RandomGenerator defaultInstance = RandomGenerator.getInstance();
+        RandomGenerator generator = new RandomGenerator(new FixedSecureRandomProvider((byte) 0x01), 1);
+
+        try {
+            RandomGenerator.setInstance(generator);
+
+            assertSame(generator, RandomGenerator.getInstance());
+            assertEquals("0101", RandomGenerator.getInstance().generateId(2));
+        } finally {
+            RandomGenerator.setInstance(defaultInstance);
+        }
+
+        assertSame(defaultInstance, RandomGenerator.getInstance());
+
+        try {
+            RandomGenerator.setInstance(null);
+            fail("A null generator should be rejected.");
+        } catch (IllegalArgumentException expected) {
+        }
+
+        assertSame(defaultInstance, RandomGenerator.getInstance());
+    }
+
+    private static SecureRandom getStripe(RecordingSecureRandomProvider provider, Thread thread) {
+        return provider.created.get((int) thread.getId() & (provider.created.size() - 1));
+    }
+
+    private static class RecordingSecureRandomProvider implements SecureRandomProvider {
+
+        final List<SecureRandom> created = new ArrayList<SecureRandom>();
+
+        public SecureRandom getSecureRandom() {
+            SecureRandom secureRandom = new SecureRandom();
+
+            this.created.add(secureRandom);
+
+            return secureRandom;
+        }
+    }
+
+    /**
+     * Provides {@link SecureRandom} instances returning the same byte over and over.
+     */
+    private static class FixedSecureRandomProvider implements SecureRandomProvider {
+
+        private final byte value;
+
+        FixedSecureRandomProvider(byte value) {
+            this.value = value;
+        }
+
+        public SecureRandom getSecureRandom() {
+            return new SecureRandom() {
+                @Override
+                public synchronized void nextBytes(byte[] bytes) {
+                    Arrays.fill(bytes, value);
+                }
+            };
+        }
+    }
+}
@@ -20,6 +20,7 @@ package org.picketlink.test.identity.federation.core.util;
 import org.junit.Assert;
 import org.junit.Test;
 import org.picketlink.common.constants.GeneralConstants;
+import org.picketlink.common.exceptions.ParsingException;
 import org.picketlink.identity.federation.core.saml.v2.util.XMLTimeUtil;
 
 import javax.xml.datatype.DatatypeConstants;
@@ -27,7 +28,9 @@ import javax.xml.datatype.DatatypeFactory;
 import javax.xml.datatype.Duration;
 import javax.xml.datatype.XMLGregorianCalendar;
 import java.util.Calendar;
+import java.util.Date;
 import java.util.GregorianCalendar;
+import java.util.Random;
 import java.util.TimeZone;
 
 /**
@@ -118,4 +121,71 @@ public class XMLTimeUtilUnitTestCase {
         System.setProperty(GeneralConstants.TIMEZONE, GeneralConstants.TIMEZONE_DEFAULT);
         Assert.assertEquals(XMLTimeUtil.getCurrentTimeZoneID(), TimeZone.getDefault().getID());
     }
-}
\ No newline at end of file
+
+    @Test
+    public void testFormatAndParseTimeInMillis() throws Exception {
+        DatatypeFactory dt = DatatypeFactory.newInstance();
+        Random random = new Random(42);
+        GregorianCalendar calendar = new GregorianCalendar(TimeZone.getTimeZone("UTC"));
+
+        // the proleptic Gregorian calendar, as used by xs:dateTime
+        calendar.setGregorianChange(new Date(Long.MIN_VALUE));
+
+        long min = -62135596800000L; // 0001-01-01T00:00:00Z
+        long max = 253402300799999L; // 9999-12-31T23:59:59.999Z
+
+        for (int i = 0; i < 10000; i++) {
+            long time = min + (long) (random.nextDouble() * (max - min));
+
+            calendar.setTimeInMillis(time);
+
+            String expected = dt.newXMLGregorianCalendar(calendar).toXMLFormat();
+
+            Assert.assertEquals(expected, XMLTimeUtil.format(time));
+            Assert.assertEquals(time, XMLTimeUtil.parseTimeInMillis(expected));
+        }
+
+        Assert.assertEquals("1970-01-01T00:00:00.000Z", XMLTimeUtil.format(0));
+        Assert.assertEquals("2000-02-29T23:59:59.999Z", XMLTimeUtil.format(951868799999L));
+
+        String[] values = {"2009-06-03T17:42:09.322-04:00", "2009-06-03T17:42:09+05:30", "2009-06-03T17:42:09.3Z",
+                "2009-06-03T17:42:09.3229Z", "2009-06-03T24:00:00Z", "2009-06-03T17:42:09.322"};
+
+        for (String value : values) {
+            Assert.assertEquals(value, dt.newXMLGregorianCalendar(value).toGregorianCalendar().getTimeInMillis(),
+                    XMLTimeUtil.parseTimeInMillis(value));
+        }
+    }
+
+    @Test(expected = ParsingException.class)
+    public void testParseInvalidTimeInMillis() throws Exception {
+        XMLTimeUtil.parseTimeInMillis("2009-13-03T17:42:09Z");
+    }
+
+    @Test
+    public void testIssueInstantTimezone() throws Exception {
+        DatatypeFactory dt = DatatypeFactory.newInstance();
+        String[] timezones = {"GMT", "GMT+5", "GMT-03:30", "America/New_York", "Asia/Kolkata"};
+
+        for (String timezone : timezones) {
+            long before = System.currentTimeMillis();
+            XMLGregorianCalendar issueInstant = XMLTimeUtil.getIssueInstant(timezone);
+            long after = System.currentTimeMillis();
+            TimeZone tz = TimeZone.getTimeZone(timezone);
+
+            Assert.assertEquals(tz.getOffset(before) / 60000, issueInstant.getTimezone());
+
+            long time = issueInstant.toGregorianCalendar().getTimeInMillis();
+
+            Assert.assertTrue(before <= time && time <= after);
+
+            GregorianCalendar calendar = new GregorianCalendar(tz);
+
+            calendar.setTimeInMillis(time);
+
+            Assert.assertEquals(dt.newXMLGregorianCalendar(calendar).toXMLFormat(), issueInstant.toXMLFormat());
+        }
+
+        Assert.assertSame(XMLTimeUtil.getDatatypeFactory(), XMLTimeUtil.getDatatypeFactory());
+    }
+}
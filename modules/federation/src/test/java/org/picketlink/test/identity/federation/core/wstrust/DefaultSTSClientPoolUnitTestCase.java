@@ -0,0 +1,310 @@
+/*
+ * JBoss, Home of Professional Open Source
+ *
+ * Copyright 2013 Red Hat, Inc. and/or its affiliates.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.picketlink.test.identity.federation.core.wstrust;
+
+import org.junit.Test;
+import org.picketlink.identity.federation.core.wstrust.DefaultSTSClientPool;
+import org.picketlink.identity.federation.core.wstrust.STSClient;
+import org.picketlink.identity.federation.core.wstrust.STSClientConfig;
+
+import javax.xml.ws.BindingProvider;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * Unit test the {@link DefaultSTSClientPool}
+ */
+public class DefaultSTSClientPoolUnitTestCase {
+
+    private static final String ENDPOINT = "http://localhost:8080/picketlink-sts/PicketLinkSTS";
+
+    @Test
+    public void testReturnedClientIsReused() throws Exception {
+        DefaultSTSClientPool pool = new DefaultSTSClientPool();
+        STSClientConfig config = createConfig(ENDPOINT);
+
+        assertFalse(pool.configExists(config));
+
+        final STSClient client = pool.getClient(config);
+
+        assertTrue(pool.configExists(config));
+        assertEquals(1, pool.getActiveCount(config));
+        assertNotSame(client, pool.getClient(createConfig(ENDPOINT + "2")));
+
+        pool.returnClient(client);
+
+        assertEquals(0, pool.getActiveCount(config));
+        assertEquals(1, pool.getIdleCount(config));
+
+        // returning twice, or returning a client which does not belong to the pool, does nothing
+        pool.returnClient(client);
+        pool.returnClient(new STSClient(config));
+
+        assertEquals(1, pool.getIdleCount(config));
+
+        STSClient borrowed = pool.getClient(config);
+
+        assertSame(client, borrowed);
+
+        ExecutorService executorService = Executors.newSingleThreadExecutor();
+
+        try {
+            // the client can be used by a thread other than the one which created it
+            assertNotNull(executorService.submit(new Callable<Object>() {
+                @Override
+                public Object call() throws Exception {
+                    return client.getDispatch();
+                }
+            }).get());
+        } finally {
+            executorService.shutdown();
+        }
+    }
+
+    @Test
+    public void testClientsArePooledByPassword() throws Exception {
+        DefaultSTSClientPool pool = new DefaultSTSClientPool();
+        STSClient client = pool.getClient(createConfig(ENDPOINT, "admin"));
+
+        pool.returnClient(client);
+
+        // a client authenticated with the right password must not be lent to a caller with a wrong one
+        STSClientConfig wrongConfig = createConfig(ENDPOINT, "wrong");
+        STSClient wrongClient = pool.getClient(wrongConfig);
+
+        assertNotSame(client, wrongClient);
+        assertEquals("wrong", wrongClient.getDispatch().getRequestContext().get(BindingProvider.PASSWORD_PROPERTY));
+        assertEquals(1, pool.getIdleCount(createConfig(ENDPOINT, "admin")));
+        assertEquals(1, pool.getActiveCount(wrongConfig));
+    }
+
+    @Test
+    public void testMaxPools() throws Exception {
+        DefaultSTSClientPool pool = new DefaultSTSClientPool();
+
+        pool.setMaxPools(2);
+
+        STSClient client1 = pool.getClient(createConfig(ENDPOINT, "password1"));
+        STSClient client2 = pool.getClient(createConfig(ENDPOINT, "password2"));
+
+        pool.returnClient(client1);
+
+        // the unused sub pool makes room for the new one
+        STSClient client3 = pool.getClient(createConfig(ENDPOINT, "password3"));
+
+        assertEquals(2, pool.getPoolCount());
+        assertFalse(pool.configExists(createConfig(ENDPOINT, "password1")));
+
+        // when all the sub pools are in use, clients are not pooled
+        STSClientConfig config4 = createConfig(ENDPOINT, "password4");
+        STSClient client4 = pool.getClient(config4);
+
+        assertNotNull(client4);
+        assertFalse(pool.configExists(config4));
+
+        pool.returnClient(client4);
+        pool.returnClient(client2);
+        pool.returnClient(client3);
+
+        pool.setIdleTimeout(1);
+        Thread.sleep(10);
+        pool.evict();
+
+        assertEquals(0, pool.getPoolCount());
+    }
+
+    @Test
+    public void testInitialClients() throws Exception {
+        DefaultSTSClientPool pool = new DefaultSTSClientPool();
+        STSClientConfig config = createConfig(ENDPOINT);
+
+        pool.createPool(3, config);
+        pool.createPool(5, config);
+
+        assertEquals(3, pool.getIdleCount(config));
+
+        pool.getClient(config);
+
+        assertEquals(2, pool.getIdleCount(config));
+
+        pool.setMaxClients(2);
+
+        try {
+            pool.createPool(3, createConfig(ENDPOINT + "2"));
+            fail("More initial clients than the maximum should not be accepted.");
+        } catch (RuntimeException expected) {
+        }
+
+        try {
+            pool.setMaxClients(-1);
+            fail("Negative pool size should not be accepted.");
+        } catch (RuntimeException expected) {
+        }
+    }
+
+    @Test
+    public void testBorrowTimeout() throws Exception {
+        DefaultSTSClientPool pool = new DefaultSTSClientPool();
+        STSClientConfig config = createConfig(ENDPOINT);
+
+        pool.setMaxClients(1);
+        pool.setBorrowTimeout(50);
+
+        STSClient client = pool.getClient(config);
+
+        try {
+            pool.getClient(config);
+            fail("All the clients are in use.");
+        } catch (RuntimeException expected) {
+        }
+
+        pool.returnClient(client);
+
+        assertSame(client, pool.getClient(config));
+    }
+
+    @Test
+    public void testValidationAndEviction() throws Exception {
+        DefaultSTSClientPool pool = new DefaultSTSClientPool() {
+            @Override
+            protected boolean validate(STSClient client) {
+                return false;
+            }
+        };
+        STSClientConfig config = createConfig(ENDPOINT);
+        STSClient client = pool.getClient(config);
+
+        pool.returnClient(client);
+
+        STSClient newClient = pool.getClient(config);
+
+        assertNotSame(client, newClient);
+
+        client = newClient;
+
+        pool.setValidateOnBorrow(false);
+        pool.returnClient(client);
+
+        assertSame(client, pool.getClient(config));
+
+        pool.setIdleTimeout(20);
+        pool.returnClient(client);
+
+        assertEquals(1, pool.getIdleCount(config));
+
+        Thread.sleep(50);
+        pool.evict();
+
+        assertEquals(0, pool.getIdleCount(config));
+    }
+
+    @Test
+    public void testDestroyPool() throws Exception {
+        DefaultSTSClientPool pool = new DefaultSTSClientPool();
+        STSClientConfig config = createConfig(ENDPOINT);
+        STSClientConfig otherConfig = createConfig(ENDPOINT + "2");
+
+        STSClient client = pool.getClient(config);
+
+        pool.createPool(1, otherConfig);
+        pool.destroyPool(config);
+
+        assertFalse(pool.configExists(config));
+        assertTrue(pool.configExists(otherConfig));
+
+        // clients borrowed from a destroyed pool are discarded when returned
+        pool.returnClient(client);
+
+        assertEquals(0, pool.getIdleCount(config));
+
+        pool.destroyPool((String) null);
+
+        assertFalse(pool.configExists(otherConfig));
+    }
+
+    @Test
+    public void testConcurrentBorrow() throws Exception {
+        final DefaultSTSClientPool pool = new DefaultSTSClientPool();
+        final STSClientConfig config = createConfig(ENDPOINT);
+        final Set<STSClient> inUse = Collections.synchronizedSet(Collections.newSetFromMap(
+            new IdentityHashMap<STSClient, Boolean>()));
+        final Set<STSClient> created = Collections.synchronizedSet(Collections.newSetFromMap(
+            new IdentityHashMap<STSClient, Boolean>()));
+        int threads = 8;
+
+        pool.setMaxClients(4);
+
+        ExecutorService executorService = Executors.newFixedThreadPool(threads);
+        List<Future<Integer>> results = new ArrayList<Future<Integer>>();
+
+        try {
+            for (int i = 0; i < threads; i++) {
+                results.add(executorService.submit(new Callable<Integer>() {
+                    @Override
+                    public Integer call() throws Exception {
+                        for (int j = 0; j < 100; j++) {
+                            STSClient client = pool.getClient(config);
+
+                            created.add(client);
+                            assertTrue("Client lent to two threads.", inUse.add(client));
+                            Thread.yield();
+                            inUse.remove(client);
+
+                            pool.returnClient(client);
+                        }
+
+                        return 100;
+                    }
+                }));
+            }
+
+            for (Future<Integer> result : results) {
+                assertEquals(Integer.valueOf(100), result.get());
+            }
+        } finally {
+            executorService.shutdown();
+        }
+
+        assertTrue(created.size() <= 4);
+        assertEquals(0, pool.getActiveCount(config));
+    }
+
+    private STSClientConfig createConfig(String endpointAddress) {
+        return createConfig(endpointAddress, "admin");
+    }
+
+    private STSClientConfig createConfig(String endpointAddress, String password) {
+        return new STSClientConfig.Builder().serviceName("PicketLinkSTS").portName("PicketLinkSTSPort")
+            .endpointAddress(endpointAddress).username("admin").password(password).build();
+    }
+}
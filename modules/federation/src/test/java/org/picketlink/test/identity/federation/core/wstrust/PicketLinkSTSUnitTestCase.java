@@ -17,6 +17,9 @@
  */
 package org.picketlink.test.identity.federation.core.wstrust;
 
+import org.jboss.security.SecurityContext;
+import org.jboss.security.SecurityContextAssociation;
+import org.jboss.security.SecurityContextFactory;
 import org.junit.Before;
 import org.junit.Test;
 import org.picketlink.common.ErrorCodes;
@@ -35,10 +38,13 @@ import org.picketlink.identity.federation.core.parsers.wst.WSTrustParser;
 import org.picketlink.identity.federation.core.saml.v1.SAML11Constants;
 import org.picketlink.identity.federation.core.saml.v2.common.IDGenerator;
 import org.picketlink.identity.federation.core.util.SOAPUtil;
+import org.picketlink.identity.federation.core.wstrust.IssuedTokenCache;
 import org.picketlink.identity.federation.core.wstrust.PicketLinkSTS;
 import org.picketlink.identity.federation.core.wstrust.PicketLinkSTSConfiguration;
+import org.picketlink.identity.federation.core.wstrust.STSClient;
 import org.picketlink.identity.federation.core.wstrust.STSConfiguration;
 import org.picketlink.identity.federation.core.wstrust.StandardRequestHandler;
+import org.picketlink.identity.federation.core.wstrust.ValidatedTokenCache;
 import org.picketlink.identity.federation.core.wstrust.WSTrustRequestHandler;
 import org.picketlink.identity.federation.core.wstrust.WSTrustUtil;
 import org.picketlink.identity.federation.core.wstrust.plugins.saml.SAML11TokenProvider;
@@ -47,6 +53,7 @@ import org.picketlink.identity.federation.core.wstrust.plugins.saml.SAMLUtil;
 import org.picketlink.identity.federation.core.wstrust.wrappers.BaseRequestSecurityTokenResponse;
 import org.picketlink.identity.federation.core.wstrust.wrappers.Lifetime;
 import org.picketlink.identity.federation.core.wstrust.wrappers.RequestSecurityToken;
+import org.picketlink.identity.federation.core.wstrust.wrappers.RequestSecurityTokenCollection;
 import org.picketlink.identity.federation.core.wstrust.wrappers.RequestSecurityTokenResponse;
 import org.picketlink.identity.federation.core.wstrust.wrappers.RequestSecurityTokenResponseCollection;
 import org.picketlink.identity.federation.core.wstrust.writers.WSTrustRequestWriter;
@@ -93,7 +100,12 @@ import javax.xml.soap.SOAPMessage;
 import javax.xml.transform.Source;
 import javax.xml.transform.dom.DOMResult;
 import javax.xml.transform.dom.DOMSource;
+import javax.xml.ws.AsyncHandler;
+import javax.xml.ws.Binding;
+import javax.xml.ws.BindingProvider;
+import javax.xml.ws.Dispatch;
 import javax.xml.ws.EndpointReference;
+import javax.xml.ws.Response;
 import javax.xml.ws.WebServiceContext;
 import javax.xml.ws.WebServiceException;
 import javax.xml.ws.handler.MessageContext;
@@ -102,6 +114,7 @@ import java.io.InputStream;
 import java.math.BigInteger;
 import java.net.URI;
 import java.net.URL;
+import java.net.URLClassLoader;
 import java.security.KeyFactory;
 import java.security.KeyStore;
 import java.security.Principal;
@@ -109,12 +122,17 @@ import java.security.cert.Certificate;
 import java.security.cert.CertificateFactory;
 import java.security.interfaces.RSAPublicKey;
 import java.security.spec.RSAPublicKeySpec;
+import java.util.Arrays;
+import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Future;
 
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNotSame;
 import static org.junit.Assert.assertNull;
 import static org.junit.Assert.assertTrue;
 import static org.junit.Assert.fail;
@@ -1669,6 +1687,298 @@ public class PicketLinkSTSUnitTestCase {
      *
      * @throws Exception if one of the validation performed fail.
      */
+    /**
+     * <p>
+     * This test sends several token requests in a single {@code RequestSecurityTokenCollection}. The STS must answer
+     * with a {@code RequestSecurityTokenResponseCollection} containing a response for each request, in the same order.
+     * </p>
+     *
+     * @throws Exception if an error occurs while running the test.
+     */
+    @Test
+    public void testInvokeCollection() throws Exception {
+        RequestSecurityTokenCollection collection = new RequestSecurityTokenCollection();
+        collection.addRequestSecurityToken(this.createRequest("context1", WSTrustConstants.ISSUE_REQUEST,
+                SAMLUtil.SAML2_TOKEN_TYPE, null));
+        collection.addRequestSecurityToken(this.createRequest("testcontext", WSTrustConstants.ISSUE_REQUEST, null,
+                "http://services.testcorp.org/provider1"));
+        collection.addRequestSecurityToken(this.createRequest("context3", WSTrustConstants.ISSUE_REQUEST,
+                SAMLUtil.SAML11_TOKEN_TYPE, null));
+
+        // invoke the token service.
+        Source responseMessage = this.tokenService.invoke(this.createSourceFromRequest(collection));
+        InputStream is = DocumentUtil.getSourceAsStream(responseMessage);
+        BaseRequestSecurityTokenResponse baseResponse = (BaseRequestSecurityTokenResponse) new WSTrustParser().parse(is);
+
+        assertTrue("Unexpected response type", baseResponse instanceof RequestSecurityTokenResponseCollection);
+        List<RequestSecurityTokenResponse> responses = ((RequestSecurityTokenResponseCollection) baseResponse)
+                .getRequestSecurityTokenResponses();
+        assertEquals("Unexpected number of responses", 3, responses.size());
+
+        // validate each response on its own.
+        this.validateSAMLAssertionResponse(this.createResponseCollection(responses.get(0)), "context1", "jduke",
+                SAMLUtil.SAML2_BEARER_URI);
+        this.validateCustomTokenResponse(this.createResponseCollection(responses.get(1)));
+        this.validateSAML11AssertionResponse(this.createResponseCollection(responses.get(2)), "context3", "jduke",
+                SAMLUtil.SAML11_BEARER_URI);
+    }
+
+    /**
+     * <p>
+     * This test verifies that a collection containing an invalid request is rejected as a whole.
+     * </p>
+     *
+     * @throws Exception if an error occurs while running the test.
+     */
+    @Test
+    public void testInvalidCollectionRequest() throws Exception {
+        RequestSecurityTokenCollection collection = new RequestSecurityTokenCollection();
+        collection.addRequestSecurityToken(this.createRequest("context1", WSTrustConstants.ISSUE_REQUEST,
+                SAMLUtil.SAML2_TOKEN_TYPE, null));
+        collection.addRequestSecurityToken(this.createRequest("context2", WSTrustConstants.ISSUE_REQUEST, null, null));
+
+        try {
+            this.tokenService.invoke(this.createSourceFromRequest(collection));
+            fail("An exception should have been raised by the security token service");
+        } catch (WebServiceException we) {
+            assertNotNull("Unexpected null cause", we.getCause());
+            assertTrue("Unexpected cause type", we.getCause() instanceof WSTrustException);
+        }
+    }
+
+    /**
+     * <p>
+     * This test uses the {@code STSClient} to issue the tokens of several service providers in one round trip.
+     * </p>
+     *
+     * @throws Exception if an error occurs while running the test.
+     */
+    @Test
+    public void testSTSClientIssueTokens() throws Exception {
+        STSClient client = new STSClient();
+        client.setDispatch(new TestDispatch(this.tokenService));
+
+        List<Element> tokens = client.issueTokensForEndpoints(Arrays.asList("http://services.testcorp.org/provider2",
+                "http://services.testcorp.org/provider1"));
+
+        assertEquals(2, tokens.size());
+        assertEquals("Assertion", tokens.get(0).getLocalName());
+        assertEquals(JBossSAMLURIConstants.ASSERTION_NSURI.get(), tokens.get(0).getNamespaceURI());
+        assertEquals("SpecialToken", tokens.get(1).getLocalName());
+    }
+
+    /**
+     * <p>
+     * Tests the reuse of the tokens issued to an {@code STSClient} until they are about to expire.
+     * </p>
+     *
+     * @throws Exception if an error occurs while running the test.
+     */
+    @Test
+    public void testSTSClientIssuedTokenCache() throws Exception {
+        STSClient client = new STSClient();
+        client.setDispatch(new TestDispatch(this.tokenService));
+
+        IssuedTokenCache cache = new IssuedTokenCache();
+        cache.setRefreshAhead(0);
+        client.setIssuedTokenCache(cache);
+
+        Element token = client.issueTokenForEndpoint("http://services.testcorp.org/provider1");
+        Element cachedToken = client.issueTokenForEndpoint("http://services.testcorp.org/provider1");
+
+        assertEquals(1, cache.getMissCount());
+        assertEquals(1, cache.getHitCount());
+        assertNotSame(token, cachedToken);
+        assertEquals(token.getAttribute("ID"), cachedToken.getAttribute("ID"));
+
+        // a token for another endpoint is requested from the STS
+        client.issueTokenForEndpoint("http://services.testcorp.org/provider2");
+        assertEquals(2, cache.getMissCount());
+        assertEquals(2, cache.size());
+
+        // tokens expiring within the clock skew are not reused
+        cache.clear();
+        cache.setClockSkew(24 * 60 * 60 * 1000L);
+        client.issueTokenForEndpoint("http://services.testcorp.org/provider1");
+        client.issueTokenForEndpoint("http://services.testcorp.org/provider1");
+        assertEquals(4, cache.getMissCount());
+        assertEquals(0, cache.size());
+
+        // tokens in use close to their expiry are issued again by the caller, with its own client
+        cache.setClockSkew(0);
+        cache.setRefreshAhead(24 * 60 * 60 * 1000L);
+        token = client.issueTokenForEndpoint("http://services.testcorp.org/provider1");
+        Element refreshedToken = client.issueTokenForEndpoint("http://services.testcorp.org/provider1");
+
+        assertEquals(1, cache.getRefreshCount());
+        assertFalse(token.getAttribute("ID").equals(refreshedToken.getAttribute("ID")));
+
+        // the tokens issued with other credentials are not shared
+        cache.clear();
+        cache.setRefreshAhead(0);
+        client.getDispatch().getRequestContext().put(BindingProvider.USERNAME_PROPERTY, "admin");
+        client.getDispatch().getRequestContext().put(BindingProvider.PASSWORD_PROPERTY, "admin");
+        token = client.issueTokenForEndpoint("http://services.testcorp.org/provider1");
+
+        STSClient otherClient = new STSClient();
+        otherClient.setDispatch(new TestDispatch(this.tokenService));
+        otherClient.setIssuedTokenCache(cache);
+        otherClient.getDispatch().getRequestContext().put(BindingProvider.USERNAME_PROPERTY, "admin");
+        otherClient.getDispatch().getRequestContext().put(BindingProvider.PASSWORD_PROPERTY, "wrong");
+
+        assertFalse(token.getAttribute("ID").equals(
+            otherClient.issueTokenForEndpoint("http://services.testcorp.org/provider1").getAttribute("ID")));
+        assertEquals(2, cache.size());
+    }
+
+    /**
+     * <p>
+     * Tests that an {@code STSClient} remembers the tokens validated by the STS until they are canceled.
+     * </p>
+     *
+     * @throws Exception if an error occurs while running the test.
+     */
+    @Test
+    public void testSTSClientValidatedTokenCache() throws Exception {
+        STSClient client = new STSClient();
+        client.setDispatch(new TestDispatch(this.tokenService));
+
+        ValidatedTokenCache cache = new ValidatedTokenCache();
+        client.setValidatedTokenCache(cache);
+
+        Element token = client.issueTokenForEndpoint("http://services.testcorp.org/provider2");
+
+        assertTrue(client.validateToken(token));
+        assertEquals(1, cache.size());
+        assertTrue(client.validateToken(token));
+        assertEquals(1, cache.getHitCount());
+
+        // the same token, serialized differently, is found in the cache
+        Element copy = (Element) DocumentUtil.getDocument(DocumentUtil.getNodeAsString(token)).getDocumentElement();
+        assertTrue(client.validateToken(copy));
+        assertEquals(2, cache.getHitCount());
+
+        // a token validated for other credentials is validated by the STS again
+        STSClient otherClient = new STSClient();
+        otherClient.setDispatch(new TestDispatch(this.tokenService));
+        otherClient.setValidatedTokenCache(cache);
+        otherClient.getDispatch().getRequestContext().put(BindingProvider.USERNAME_PROPERTY, "admin");
+        otherClient.getDispatch().getRequestContext().put(BindingProvider.PASSWORD_PROPERTY, "admin");
+
+        assertTrue(otherClient.validateToken(token));
+        assertEquals(2, cache.getHitCount());
+        assertEquals(2, cache.size());
+
+        // canceling the token removes it for all the credentials
+        assertTrue(client.cancelToken(token));
+        assertEquals(0, cache.size());
+        assertFalse(client.validateToken(token));
+        assertEquals(0, cache.size());
+
+        // once the cache is full, the oldest tokens make room for the new ones
+        cache.setMaxEntries(2);
+
+        Element token1 = client.issueTokenForEndpoint("http://services.testcorp.org/provider2");
+        Element token2 = client.issueTokenForEndpoint("http://services.testcorp.org/provider2");
+        Element token3 = client.issueTokenForEndpoint("http://services.testcorp.org/provider2");
+
+        assertTrue(client.validateToken(token1));
+        assertTrue(client.validateToken(token2));
+        assertTrue(client.validateToken(token3));
+        assertEquals(2, cache.size());
+
+        long hitCount = cache.getHitCount();
+
+        assertTrue(client.validateToken(token3));
+        assertTrue(client.validateToken(token2));
+        assertEquals(hitCount + 2, cache.getHitCount());
+        assertTrue(client.validateToken(token1));
+        assertEquals(hitCount + 2, cache.getHitCount());
+    }
+
+    /**
+     * <p>
+     * This test verifies that the requests of a collection, handled on other threads, each get a copy of their own
+     * element and run with the class loader and security context of the caller.
+     * </p>
+     *
+     * @throws Exception if an error occurs while running the test.
+     */
+    @Test
+    public void testCollectionRequestsContext() throws Exception {
+        final List<Document> rstDocuments = new CopyOnWriteArrayList<Document>();
+        final List<ClassLoader> classLoaders = new CopyOnWriteArrayList<ClassLoader>();
+        final List<SecurityContext> securityContexts = new CopyOnWriteArrayList<SecurityContext>();
+
+        // records what the requests of the collection see
+        final StandardRequestHandler handler = new StandardRequestHandler() {
+            @Override
+            public RequestSecurityTokenResponse issue(RequestSecurityToken request, Principal callerPrincipal)
+                    throws WSTrustException {
+                rstDocuments.add(request.getRSTDocument());
+                classLoaders.add(Thread.currentThread().getContextClassLoader());
+                securityContexts.add(SecurityContextAssociation.getSecurityContext());
+                return super.issue(request, callerPrincipal);
+            }
+        };
+        InputStream stream = Thread.currentThread().getContextClassLoader().getResourceAsStream("sts/picketlink-sts.xml");
+        final STSConfiguration configuration = new PicketLinkSTSConfiguration((STSType) new STSConfigParser().parse(stream)) {
+            @Override
+            public WSTrustRequestHandler getRequestHandler() {
+                return handler;
+            }
+        };
+
+        handler.initialize(configuration);
+
+        TestSTS tokenService = new TestSTS() {
+            @Override
+            public STSConfiguration getConfiguration() throws ConfigurationException {
+                return configuration;
+            }
+        };
+        TestContext context = new TestContext();
+        context.setUserPrincipal(new TestPrincipal("jduke"));
+        tokenService.setContext(context);
+
+        RequestSecurityTokenCollection collection = new RequestSecurityTokenCollection();
+        collection.addRequestSecurityToken(this.createRequest("context1", WSTrustConstants.ISSUE_REQUEST,
+                SAMLUtil.SAML2_TOKEN_TYPE, null));
+        collection.addRequestSecurityToken(this.createRequest("context2", WSTrustConstants.ISSUE_REQUEST,
+                SAMLUtil.SAML2_TOKEN_TYPE, null));
+
+        Thread thread = Thread.currentThread();
+        ClassLoader tccl = thread.getContextClassLoader();
+        ClassLoader callerClassLoader = new URLClassLoader(new URL[0], tccl);
+        SecurityContext callerSecurityContext = SecurityContextFactory.createSecurityContext("test");
+
+        try {
+            thread.setContextClassLoader(callerClassLoader);
+            SecurityContextAssociation.setSecurityContext(callerSecurityContext);
+
+            tokenService.invoke(this.createSourceFromRequest(collection));
+        } finally {
+            SecurityContextAssociation.clearSecurityContext();
+            thread.setContextClassLoader(tccl);
+        }
+
+        assertEquals(2, rstDocuments.size());
+        assertNotSame(rstDocuments.get(0), rstDocuments.get(1));
+
+        for (Document rstDocument : rstDocuments) {
+            assertEquals(WSTrustConstants.RST, rstDocument.getDocumentElement().getLocalName());
+        }
+
+        assertEquals(Arrays.asList(callerClassLoader, callerClassLoader), classLoaders);
+        assertEquals(Arrays.asList(callerSecurityContext, callerSecurityContext), securityContexts);
+    }
+
+    private RequestSecurityTokenResponseCollection createResponseCollection(RequestSecurityTokenResponse response) {
+        RequestSecurityTokenResponseCollection collection = new RequestSecurityTokenResponseCollection();
+        collection.addRequestSecurityTokenResponse(response);
+        return collection;
+    }
+
     private void validateCustomTokenResponse(BaseRequestSecurityTokenResponse baseResponse) throws Exception {
 
         // =============================== WS-Trust Security Token Response Validation ===============================//
@@ -1998,6 +2308,13 @@ public class PicketLinkSTSUnitTestCase {
         return new DOMSource(result.getNode());
     }
 
+    private Source createSourceFromRequest(RequestSecurityTokenCollection collection) throws Exception {
+        DOMResult result = new DOMResult(DocumentUtil.createDocument());
+        WSTrustRequestWriter writer = new WSTrustRequestWriter(result);
+        writer.write(collection);
+        return new DOMSource(result.getNode());
+    }
+
     /**
      * <p>
      * Helper class that exposes the PicketLinkSTS methods as public for the tests to work.
@@ -2128,4 +2445,56 @@ public class PicketLinkSTSUnitTestCase {
             return false;
         }
     }
+
+    /**
+     * <p>
+     * Helper class that sends the {@code STSClient} requests straight to a {@code TestSTS}.
+     * </p>
+     */
+    class TestDispatch implements Dispatch<Source> {
+
+        private final TestSTS sts;
+
+        private final Map<String, Object> requestContext = new HashMap<String, Object>();
+
+        TestDispatch(TestSTS sts) {
+            this.sts = sts;
+        }
+
+        public Source invoke(Source msg) {
+            return this.sts.invoke(msg);
+        }
+
+        public Response<Source> invokeAsync(Source msg) {
+            throw new UnsupportedOperationException();
+        }
+
+        public Future<?> invokeAsync(Source msg, AsyncHandler<Source> handler) {
+            throw new UnsupportedOperationException();
+        }
+
+        public void invokeOneWay(Source msg) {
+            throw new UnsupportedOperationException();
+        }
+
+        public Map<String, Object> getRequestContext() {
+            return this.requestContext;
+        }
+
+        public Map<String, Object> getResponseContext() {
+            return null;
+        }
+
+        public Binding getBinding() {
+            return null;
+        }
+
+        public EndpointReference getEndpointReference() {
+            return null;
+        }
+
+        public <T extends EndpointReference> T getEndpointReference(Class<T> clazz) {
+            return null;
+        }
+    }
 }
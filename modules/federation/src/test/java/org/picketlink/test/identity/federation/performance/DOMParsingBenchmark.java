@@ -0,0 +1,86 @@
+/*
+ * JBoss, Home of Professional Open Source
+ *
+ * Copyright 2013 Red Hat, Inc. and/or its affiliates.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.picketlink.test.identity.federation.performance;
+
+import org.picketlink.common.parsers.AbstractParser;
+import org.picketlink.common.util.DocumentUtil;
+import org.picketlink.identity.federation.core.parsers.saml.SAMLParser;
+import org.picketlink.identity.federation.core.parsers.wst.WSTrustParser;
+import org.w3c.dom.Document;
+
+import java.io.InputStream;
+
+/**
+ * <p>Measures the parsing of documents that were already parsed into a DOM, as inbound messages are to validate their
+ * signatures: either by reading the DOM nodes directly, or by serializing the DOM and parsing it again with the stream
+ * reader.</p>
+ *
+ * <p>Not a test case, run it from the federation module with:</p>
+ *
+ * <pre>
+ * mvn test-compile exec:java -Dexec.mainClass=org.picketlink.test.identity.federation.performance.DOMParsingBenchmark -Dexec.classpathScope=test
+ * </pre>
+ *
+ * <p>The number of warm up and measured iterations can be given as the first and second arguments.</p>
+ */
+public class DOMParsingBenchmark {
+
+    private static final String[] DOCUMENTS = new String[] { "parser/saml2/saml2-response.xml",
+        "parser/saml2/saml2-response-adfs-claims.xml", "parser/saml2/saml2-authnrequest.xml",
+        "parser/wst/wst-batch-issue.xml" };
+
+    public static void main(String[] args) throws Exception {
+        int warmUpIterations = args.length > 0 ? Integer.parseInt(args[0]) : 5000;
+        int iterations = args.length > 1 ? Integer.parseInt(args[1]) : 20000;
+
+        for (String name : DOCUMENTS) {
+            Document document = DocumentUtil.getDocument(getResource(name));
+            AbstractParser parser = name.startsWith("parser/wst") ? new WSTrustParser() : new SAMLParser();
+
+            run(parser, document, false, warmUpIterations);
+            run(parser, document, true, warmUpIterations);
+
+            long serialized = run(parser, document, false, iterations);
+            long dom = run(parser, document, true, iterations);
+
+            System.out.printf("%-45s serialized: %7.1f us/op   dom: %7.1f us/op%n", name,
+                serialized / 1000.0 / iterations, dom / 1000.0 / iterations);
+        }
+    }
+
+    /**
+     * <p>Parses the document the given number of times and returns the elapsed time in nanoseconds.</p>
+     */
+    private static long run(AbstractParser parser, Document document, boolean fromNode, int iterations) throws Exception {
+        long start = System.nanoTime();
+
+        for (int i = 0; i < iterations; i++) {
+            if (fromNode) {
+                parser.parse(document);
+            } else {
+                parser.parse(DocumentUtil.getNodeAsStream(document));
+            }
+        }
+
+        return System.nanoTime() - start;
+    }
+
+    private static InputStream getResource(String name) {
+        return Thread.currentThread().getContextClassLoader().getResourceAsStream(name);
+    }
+}
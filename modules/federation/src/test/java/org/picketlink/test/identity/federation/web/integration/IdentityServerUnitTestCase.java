@@ -18,11 +18,18 @@
 package org.picketlink.test.identity.federation.web.integration;
 
 import junit.framework.TestCase;
+import org.picketlink.identity.federation.web.core.IdentityParticipantStack;
 import org.picketlink.identity.federation.web.core.IdentityServer;
 import org.picketlink.test.identity.federation.web.mock.MockHttpSession;
 import org.picketlink.test.identity.federation.web.mock.MockServletContext;
 
 import javax.servlet.http.HttpSessionEvent;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 /**
  * Unit test the Identity Server
@@ -54,5 +61,113 @@ public class IdentityServerUnitTestCase extends TestCase {
 
         server.sessionDestroyed(event);
         assertEquals(5, server.getActiveSessionCount());
+
+        // the count is shared by all the instances, as the session listener and the filters use different ones
+        assertEquals(5, new IdentityServer().getActiveSessionCount());
+
+        for (int i = 0; i < 5; i++) {
+            server.sessionDestroyed(event);
+        }
+    }
+
+    public void testStack() {
+        IdentityParticipantStack stack = new IdentityServer.STACK();
+
+        assertEquals("", stack.peek("session"));
+        assertNull(stack.pop("session"));
+
+        stack.register("session", "sp1", true);
+        stack.register("session", "sp2", false);
+        stack.register("session", "sp1", true);
+
+        assertEquals(2, stack.getParticipants("session"));
+        assertEquals("sp2", stack.peek("session"));
+        assertEquals(Boolean.FALSE, stack.getBinding("sp2"));
+
+        assertTrue(stack.registerTransitParticipant("session", "sp2"));
+        assertFalse(stack.registerTransitParticipant("session", "sp2"));
+        assertEquals(1, stack.getNumOfParticipantsInTransit("session"));
+
+        assertEquals("sp2", stack.pop("session"));
+        assertTrue(stack.deRegisterTransitParticipant("session", "sp2"));
+        assertFalse(stack.deRegisterTransitParticipant("session", "sp2"));
+        assertEquals(0, stack.getNumOfParticipantsInTransit("session"));
+
+        // still known for the other sessions the participant takes part in
+        assertEquals(Boolean.FALSE, stack.getBinding("sp2"));
+
+        assertEquals("sp1", stack.pop("session"));
+        assertNull(stack.pop("session"));
+        assertEquals(1, stack.totalSessions());
+
+        stack.removeSession("session");
+
+        assertEquals(0, stack.totalSessions());
+    }
+
+    /**
+     * Logs sessions in and out of several participants from many threads, the way the IDP does for a single logout.
+     */
+    public void testConcurrentLogout() throws Exception {
+        final IdentityServer server = new IdentityServer();
+        final MockServletContext servletContext = new MockServletContext();
+        // the count is shared with the sessions of the other tests
+        int activeSessionCount = server.getActiveSessionCount();
+        final int threads = 8;
+        final int sessions = 500;
+        final int participants = 4;
+
+        ExecutorService executorService = Executors.newFixedThreadPool(threads);
+        List<Future<Integer>> results = new ArrayList<Future<Integer>>();
+
+        try {
+            for (int i = 0; i < threads; i++) {
+                results.add(executorService.submit(new Callable<Integer>() {
+                    public Integer call() throws Exception {
+                        IdentityParticipantStack stack = server.stack();
+                        int loggedOut = 0;
+
+                        for (int j = 0; j < sessions; j++) {
+                            MockHttpSession session = new MockHttpSession();
+                            session.setServletContext(servletContext);
+                            HttpSessionEvent event = new HttpSessionEvent(session);
+                            String id = session.getId();
+
+                            server.sessionCreated(event);
+
+                            for (int k = 0; k < participants; k++) {
+                                stack.register(id, "http://sp" + k + "/", k % 2 == 0);
+                            }
+
+                            assertEquals(participants, stack.getParticipants(id));
+
+                            String participant;
+
+                            while ((participant = stack.pop(id)) != null) {
+                                assertTrue(stack.registerTransitParticipant(id, participant));
+                                assertTrue(stack.deRegisterTransitParticipant(id, participant));
+                                assertNotNull(stack.getBinding(participant));
+                                loggedOut++;
+                            }
+
+                            assertEquals(0, stack.getNumOfParticipantsInTransit(id));
+
+                            server.sessionDestroyed(event);
+                        }
+
+                        return loggedOut;
+                    }
+                }));
+            }
+
+            for (Future<Integer> result : results) {
+                assertEquals(sessions * participants, result.get().intValue());
+            }
+        } finally {
+            executorService.shutdown();
+        }
+
+        assertEquals(activeSessionCount, server.getActiveSessionCount());
+        assertEquals(0, server.stack().totalSessions());
     }
-}
\ No newline at end of file
+}
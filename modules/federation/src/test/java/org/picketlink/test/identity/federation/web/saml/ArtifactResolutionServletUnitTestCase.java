@@ -0,0 +1,223 @@
+/*
+ * JBoss, Home of Professional Open Source
+ *
+ * Copyright 2013 Red Hat, Inc. and/or its affiliates.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.picketlink.test.identity.federation.web.saml;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.picketlink.common.constants.GeneralConstants;
+import org.picketlink.common.constants.JBossSAMLConstants;
+import org.picketlink.common.util.DocumentUtil;
+import org.picketlink.config.federation.AuthPropertyType;
+import org.picketlink.config.federation.KeyValueType;
+import org.picketlink.identity.federation.api.saml.v2.sig.SAML2Signature;
+import org.picketlink.identity.federation.core.impl.KeyStoreKeyManager;
+import org.picketlink.identity.federation.core.saml.v2.impl.DefaultSAML2ArtifactStore;
+import org.picketlink.identity.federation.core.saml.v2.util.ArtifactUtil;
+import org.picketlink.identity.federation.core.util.SOAPUtil;
+import org.picketlink.identity.federation.web.servlets.saml.ArtifactResolutionServlet;
+import org.picketlink.identity.federation.web.util.ArtifactBindingUtil;
+import org.picketlink.test.identity.federation.web.mock.MockHttpServletRequest;
+import org.picketlink.test.identity.federation.web.mock.MockHttpServletResponse;
+import org.picketlink.test.identity.federation.web.mock.MockServletConfig;
+import org.picketlink.test.identity.federation.web.mock.MockServletContext;
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+import org.w3c.dom.Node;
+
+import javax.servlet.ServletInputStream;
+import javax.xml.soap.SOAPMessage;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Unit test the {@link ArtifactResolutionServlet}: an artifact is only resolved by the SP its response was sent to,
+ * with a signed request when the IDP supports signatures.
+ */
+public class ArtifactResolutionServletUnitTestCase {
+
+    private static final String IDP = "http://localhost:8080/idp/";
+
+    private static final String SP = "http://localhost:8080/sales/";
+
+    private static final String RESPONSE = "<samlp:Response xmlns:samlp=\"urn:oasis:names:tc:SAML:2.0:protocol\" "
+            + "xmlns:saml=\"urn:oasis:names:tc:SAML:2.0:assertion\" ID=\"ID_response\" Version=\"2.0\" "
+            + "IssueInstant=\"2013-01-01T00:00:00Z\"><saml:Issuer>" + IDP + "</saml:Issuer><samlp:Status>"
+            + "<samlp:StatusCode Value=\"urn:oasis:names:tc:SAML:2.0:status:Success\"/></samlp:Status></samlp:Response>";
+
+    private MockServletContext servletContext;
+
+    private DefaultSAML2ArtifactStore store;
+
+    private ArtifactResolutionServlet servlet;
+
+    @Before
+    public void onSetup() throws Exception {
+        this.servletContext = new MockServletContext();
+        this.store = new DefaultSAML2ArtifactStore();
+        this.servletContext.setAttribute(GeneralConstants.ARTIFACT_STORE, this.store);
+        this.servlet = new ArtifactResolutionServlet();
+        this.servlet.init(new MockServletConfig(this.servletContext));
+    }
+
+    @Test
+    public void testResolvedByRecipientOnly() throws Exception {
+        String artifact = ArtifactUtil.createArtifact(IDP, 0);
+
+        this.store.store(artifact, DocumentUtil.getDocument(RESPONSE), SP);
+
+        // another SP does not get the response, which is kept for its recipient
+        assertNull(resolve(ArtifactBindingUtil.createArtifactResolve(artifact, "http://localhost:8080/employee/", null)));
+        assertEquals(1, this.store.size());
+
+        Element response = resolve(ArtifactBindingUtil.createArtifactResolve(artifact, SP, null));
+
+        assertNotNull(response);
+        assertEquals("ID_response", response.getAttribute("ID"));
+        assertNull(resolve(ArtifactBindingUtil.createArtifactResolve(artifact, SP, null)));
+    }
+
+    @Test
+    public void testSignatureRequired() throws Exception {
+        KeyStoreKeyManager keyManager = createKeyManager();
+
+        this.servletContext.setAttribute(GeneralConstants.ARTIFACT_RESOLUTION_KEY_MANAGER, keyManager);
+
+        String artifact = ArtifactUtil.createArtifact(IDP, 0);
+
+        this.store.store(artifact, DocumentUtil.getDocument(RESPONSE), SP);
+
+        // unsigned requests are rejected without consuming the artifact
+        assertTrue(isFault(post(ArtifactBindingUtil.createArtifactResolve(artifact, SP, null))));
+        assertEquals(1, this.store.size());
+
+        Document artifactResolve = ArtifactBindingUtil.createArtifactResolve(artifact, SP, null);
+        SAML2Signature samlSignature = new SAML2Signature();
+
+        samlSignature.setNextSibling(samlSignature.getNextSiblingOfIssuer(artifactResolve));
+        samlSignature.signSAMLDocument(artifactResolve, keyManager.getSigningKeyPair());
+
+        Element response = resolve(artifactResolve);
+
+        assertNotNull(response);
+        assertEquals("ID_response", response.getAttribute("ID"));
+    }
+
+    private Element resolve(Document artifactResolve) throws Exception {
+        SOAPMessage soapResponse = post(artifactResolve);
+
+        assertFalse(isFault(soapResponse));
+
+        Element artifactResponse = null;
+
+        for (Node child = soapResponse.getSOAPBody().getFirstChild(); child != null; child = child.getNextSibling()) {
+            if (JBossSAMLConstants.ARTIFACT_RESPONSE.get().equals(child.getLocalName())) {
+                artifactResponse = (Element) child;
+            }
+        }
+
+        assertNotNull(artifactResponse);
+
+        Document message = ArtifactBindingUtil.getArtifactResponseMessage(artifactResponse);
+
+        return message != null ? message.getDocumentElement() : null;
+    }
+
+    private SOAPMessage post(Document artifactResolve) throws Exception {
+        SOAPMessage soapMessage = SOAPUtil.create();
+
+        soapMessage.getSOAPBody().addDocument(artifactResolve);
+
+        ByteArrayOutputStream requestBytes = new ByteArrayOutputStream();
+
+        soapMessage.writeTo(requestBytes);
+
+        final ByteArrayInputStream requestStream = new ByteArrayInputStream(requestBytes.toByteArray());
+
+        MockHttpServletRequest request = new MockHttpServletRequest("POST") {
+            @Override
+            public ServletInputStream getInputStream() throws IOException {
+                return new ServletInputStream() {
+                    @Override
+                    public int read() throws IOException {
+                        return requestStream.read();
+                    }
+                };
+            }
+
+            @Override
+            public String getRemoteAddr() {
+                return "127.0.0.1";
+            }
+        };
+
+        ByteArrayOutputStream responseBytes = new ByteArrayOutputStream();
+        MockHttpServletResponse response = new MockHttpServletResponse();
+
+        response.setOutputStream(responseBytes);
+
+        this.servlet.service(request, response);
+
+        return SOAPUtil.getSOAPMessage(new ByteArrayInputStream(responseBytes.toByteArray()));
+    }
+
+    private boolean isFault(SOAPMessage soapMessage) throws Exception {
+        return soapMessage.getSOAPBody().hasFault();
+    }
+
+    private KeyStoreKeyManager createKeyManager() throws Exception {
+        List<AuthPropertyType> authProperties = new ArrayList<AuthPropertyType>();
+
+        authProperties.add(createAuthProperty(KeyStoreKeyManager.KEYSTORE_URL, "keystore/sts_keystore.jks"));
+        authProperties.add(createAuthProperty(KeyStoreKeyManager.KEYSTORE_PASS, "testpass"));
+        authProperties.add(createAuthProperty(KeyStoreKeyManager.SIGNING_KEY_ALIAS, "sts"));
+        authProperties.add(createAuthProperty(KeyStoreKeyManager.SIGNING_KEY_PASS, "keypass"));
+
+        // the SP signs with the same key as the IDP
+        List<KeyValueType> validatingAliases = new ArrayList<KeyValueType>();
+        KeyValueType validatingAlias = new KeyValueType();
+
+        validatingAlias.setKey("localhost");
+        validatingAlias.setValue("sts");
+        validatingAliases.add(validatingAlias);
+
+        KeyStoreKeyManager keyManager = new KeyStoreKeyManager();
+
+        keyManager.setAuthProperties(authProperties);
+        keyManager.setValidatingAlias(validatingAliases);
+
+        return keyManager;
+    }
+
+    private AuthPropertyType createAuthProperty(String key, String value) {
+        AuthPropertyType authProperty = new AuthPropertyType();
+
+        authProperty.setKey(key);
+        authProperty.setValue(value);
+
+        return authProperty;
+    }
+}
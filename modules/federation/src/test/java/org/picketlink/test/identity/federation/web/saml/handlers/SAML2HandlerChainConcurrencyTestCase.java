@@ -0,0 +1,277 @@
+/*
+ * JBoss, Home of Professional Open Source
+ *
+ * Copyright 2013 Red Hat, Inc. and/or its affiliates.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.picketlink.test.identity.federation.web.saml.handlers;
+
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.picketlink.common.constants.GeneralConstants;
+import org.picketlink.common.constants.JBossSAMLURIConstants;
+import org.picketlink.config.federation.IDPType;
+import org.picketlink.identity.federation.api.saml.v2.request.SAML2Request;
+import org.picketlink.identity.federation.core.impl.EmptyRoleGenerator;
+import org.picketlink.identity.federation.core.saml.v2.common.IDGenerator;
+import org.picketlink.identity.federation.core.saml.v2.common.SAMLDocumentHolder;
+import org.picketlink.identity.federation.core.saml.v2.holders.IssuerInfoHolder;
+import org.picketlink.identity.federation.core.saml.v2.impl.DefaultSAML2HandlerChain;
+import org.picketlink.identity.federation.core.saml.v2.impl.DefaultSAML2HandlerChainConfig;
+import org.picketlink.identity.federation.core.saml.v2.impl.DefaultSAML2HandlerConfig;
+import org.picketlink.identity.federation.core.saml.v2.impl.DefaultSAML2HandlerRequest;
+import org.picketlink.identity.federation.core.saml.v2.impl.DefaultSAML2HandlerResponse;
+import org.picketlink.identity.federation.core.saml.v2.interfaces.SAML2Handler;
+import org.picketlink.identity.federation.core.saml.v2.interfaces.SAML2HandlerChain;
+import org.picketlink.identity.federation.core.saml.v2.interfaces.SAML2HandlerChainConfig;
+import org.picketlink.identity.federation.core.saml.v2.interfaces.SAML2HandlerRequest;
+import org.picketlink.identity.federation.core.saml.v2.interfaces.SAML2HandlerResponse;
+import org.picketlink.identity.federation.core.sts.PicketLinkCoreSTS;
+import org.picketlink.identity.federation.saml.v2.protocol.AuthnRequestType;
+import org.picketlink.identity.federation.web.core.HTTPContext;
+import org.picketlink.identity.federation.web.core.IdentityServer;
+import org.picketlink.identity.federation.web.handlers.saml2.RolesGenerationHandler;
+import org.picketlink.identity.federation.web.handlers.saml2.SAML2AuthenticationHandler;
+import org.picketlink.test.identity.federation.web.mock.MockHttpServletRequest;
+import org.picketlink.test.identity.federation.web.mock.MockHttpServletResponse;
+import org.picketlink.test.identity.federation.web.mock.MockHttpSession;
+import org.picketlink.test.identity.federation.web.mock.MockServletContext;
+import org.w3c.dom.Document;
+
+import java.security.Principal;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Runs the IDP handler chain from many threads without locking, while the chain is replaced as it is when the
+ * configuration is reloaded.
+ */
+public class SAML2HandlerChainConcurrencyTestCase {
+
+    private static final int ITERATIONS = 200;
+
+    private static final String ACS_URL = "http://localhost:8080/sp/";
+
+    private static final String IDP_URL = "http://localhost:8080/idp/";
+
+    private final MockServletContext servletContext = new MockServletContext();
+
+    private volatile SAML2HandlerChain chain;
+
+    private final AtomicInteger reloadCount = new AtomicInteger();
+
+    @BeforeClass
+    public static void installSTS() {
+        PicketLinkCoreSTS.instance().installDefaultConfiguration(null);
+    }
+
+    @Test
+    public void testConcurrentRequests() throws Exception {
+        this.servletContext.setAttribute(GeneralConstants.IDENTITY_SERVER, new IdentityServer());
+        this.chain = createChain();
+
+        int threads = Math.max(4, Runtime.getRuntime().availableProcessors());
+
+        assertEquals(threads * ITERATIONS, run(threads, ITERATIONS));
+        assertTrue(this.reloadCount.get() > 0);
+    }
+
+    @Test
+    public void testHandlersSnapshot() throws Exception {
+        final DefaultSAML2HandlerChain chain = new DefaultSAML2HandlerChain();
+        final SAML2Handler authentication = new SAML2AuthenticationHandler();
+        final SAML2Handler roles = new RolesGenerationHandler();
+
+        chain.add(roles);
+
+        final AtomicBoolean running = new AtomicBoolean(true);
+        ExecutorService executorService = Executors.newSingleThreadExecutor();
+
+        try {
+            Future<Integer> reader = executorService.submit(new Callable<Integer>() {
+                @Override
+                public Integer call() throws Exception {
+                    int iterations = 0;
+
+                    while (running.get()) {
+                        for (SAML2Handler handler : chain.handlers()) {
+                            assertTrue(handler == roles || handler == authentication);
+                        }
+
+                        iterations++;
+                    }
+
+                    return iterations;
+                }
+            });
+
+            for (int i = 0; i < 10000; i++) {
+                chain.add(authentication);
+                chain.remove(authentication);
+            }
+
+            running.set(false);
+
+            assertTrue(reader.get() > 0);
+        } finally {
+            executorService.shutdown();
+        }
+
+        chain.addAll(Arrays.asList(authentication));
+
+        assertEquals(2, chain.size());
+
+        chain.removeAll(Arrays.asList(roles, authentication));
+
+        assertTrue(chain.handlers().isEmpty());
+    }
+
+    /**
+     * Sends requests from the given number of threads while the chain is replaced, checking each response was created
+     * for its own request and user.
+     *
+     * @return the number of requests handled.
+     */
+    private int run(int threads, final int iterations) throws Exception {
+        ExecutorService executorService = Executors.newFixedThreadPool(threads);
+        List<Future<Integer>> results = new ArrayList<Future<Integer>>();
+        final AtomicBoolean running = new AtomicBoolean(true);
+
+        try {
+            for (int i = 0; i < threads; i++) {
+                final String userName = "user" + i;
+
+                results.add(executorService.submit(new Callable<Integer>() {
+                    @Override
+                    public Integer call() throws Exception {
+                        for (int j = 0; j < iterations; j++) {
+                            String requestID = IDGenerator.create("ID_");
+                            Document samlResponse = handle(userName, requestID);
+
+                            assertEquals(requestID, samlResponse.getDocumentElement().getAttribute("InResponseTo"));
+                            assertEquals(userName, samlResponse.getElementsByTagNameNS(
+                                JBossSAMLURIConstants.ASSERTION_NSURI.get(), "NameID").item(0).getTextContent());
+                        }
+
+                        return iterations;
+                    }
+                }));
+            }
+
+            Thread reloader = new Thread() {
+                @Override
+                public void run() {
+                    while (running.get()) {
+                        try {
+                            chain = createChain();
+                            reloadCount.incrementAndGet();
+                            Thread.sleep(5);
+                        } catch (Exception e) {
+                            return;
+                        }
+                    }
+                }
+            };
+
+            reloader.start();
+
+            int requests = 0;
+
+            try {
+                for (Future<Integer> result : results) {
+                    requests += result.get();
+                }
+            } finally {
+                running.set(false);
+                reloader.join();
+            }
+
+            assertFalse(reloader.isAlive());
+
+            return requests;
+        } finally {
+            executorService.shutdown();
+        }
+    }
+
+    private Document handle(String userName, String requestID) throws Exception {
+        MockHttpSession session = new MockHttpSession();
+
+        session.setServletContext(this.servletContext);
+        session.setAttribute(GeneralConstants.PRINCIPAL_ID, createPrincipal(userName));
+
+        MockHttpServletRequest servletRequest = new MockHttpServletRequest(session, "POST");
+        HTTPContext httpContext = new HTTPContext(servletRequest, new MockHttpServletResponse(), this.servletContext);
+
+        AuthnRequestType authnRequest = new SAML2Request().createAuthnRequestType(requestID, ACS_URL, IDP_URL, ACS_URL);
+
+        SAML2HandlerRequest request = new DefaultSAML2HandlerRequest(httpContext,
+            new IssuerInfoHolder(IDP_URL).getIssuer(),
+            new SAMLDocumentHolder(authnRequest, null), SAML2Handler.HANDLER_TYPE.IDP);
+        SAML2HandlerResponse response = new DefaultSAML2HandlerResponse();
+
+        // a request uses the chain it started with, even if it is replaced meanwhile
+        for (SAML2Handler handler : this.chain.handlers()) {
+            handler.handleRequestType(request, response);
+        }
+
+        return response.getResultingDocument();
+    }
+
+    private SAML2HandlerChain createChain() throws Exception {
+        SAML2HandlerChain chain = new DefaultSAML2HandlerChain();
+
+        chain.add(new RolesGenerationHandler());
+        chain.add(new SAML2AuthenticationHandler());
+
+        Map<String, Object> chainOptions = new HashMap<String, Object>();
+
+        IDPType idpType = new IDPType();
+
+        idpType.setRoleGenerator(EmptyRoleGenerator.class.getName());
+
+        chainOptions.put(GeneralConstants.CONFIGURATION, idpType);
+
+        SAML2HandlerChainConfig chainConfig = new DefaultSAML2HandlerChainConfig(chainOptions);
+
+        for (SAML2Handler handler : chain.handlers()) {
+            handler.initChainConfig(chainConfig);
+            handler.initHandlerConfig(new DefaultSAML2HandlerConfig());
+        }
+
+        return chain;
+    }
+
+    private Principal createPrincipal(final String name) {
+        return new Principal() {
+            @Override
+            public String getName() {
+                return name;
+            }
+        };
+    }
+}
@@ -17,12 +17,23 @@
  */
 package org.picketlink.test.identity.federation.web.saml.handlers;
 
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+import org.junit.After;
+import org.junit.Before;
 import org.junit.Test;
 import org.picketlink.common.constants.GeneralConstants;
 import org.picketlink.common.constants.JBossSAMLURIConstants;
+import org.picketlink.common.util.Base64;
+import org.picketlink.common.util.DocumentUtil;
+import org.picketlink.config.federation.IDPType;
 import org.picketlink.config.federation.ProviderType;
 import org.picketlink.config.federation.SPType;
+import org.picketlink.identity.federation.api.saml.v2.request.SAML2Request;
+import org.picketlink.identity.federation.api.saml.v2.response.SAML2Response;
 import org.picketlink.identity.federation.core.parsers.saml.SAMLParser;
+import org.picketlink.identity.federation.core.saml.v2.common.IDGenerator;
 import org.picketlink.identity.federation.core.saml.v2.common.SAMLDocumentHolder;
 import org.picketlink.identity.federation.core.saml.v2.holders.IssuerInfoHolder;
 import org.picketlink.identity.federation.core.saml.v2.impl.DefaultSAML2HandlerChainConfig;
@@ -34,17 +45,40 @@ import org.picketlink.identity.federation.core.saml.v2.interfaces.SAML2HandlerCh
 import org.picketlink.identity.federation.core.saml.v2.interfaces.SAML2HandlerConfig;
 import org.picketlink.identity.federation.core.saml.v2.interfaces.SAML2HandlerRequest;
 import org.picketlink.identity.federation.core.saml.v2.interfaces.SAML2HandlerResponse;
+import org.picketlink.identity.federation.core.saml.v2.util.XMLTimeUtil;
+import org.picketlink.identity.federation.core.sts.PicketLinkCoreSTS;
+import org.picketlink.identity.federation.core.util.SOAPUtil;
+import org.picketlink.identity.federation.saml.v2.protocol.LogoutRequestType;
+import org.picketlink.identity.federation.saml.v2.protocol.StatusCodeType;
 import org.picketlink.identity.federation.saml.v2.protocol.StatusResponseType;
+import org.picketlink.identity.federation.saml.v2.protocol.StatusType;
 import org.picketlink.identity.federation.web.core.HTTPContext;
+import org.picketlink.identity.federation.web.core.IdentityServer;
 import org.picketlink.identity.federation.web.handlers.saml2.SAML2LogOutHandler;
 import org.picketlink.test.identity.federation.web.mock.MockHttpServletRequest;
 import org.picketlink.test.identity.federation.web.mock.MockHttpServletResponse;
 import org.picketlink.test.identity.federation.web.mock.MockHttpSession;
 import org.picketlink.test.identity.federation.web.mock.MockServletContext;
 
+import javax.xml.soap.SOAPMessage;
+import javax.xml.transform.dom.DOMSource;
 import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.net.URLDecoder;
 import java.util.HashMap;
 import java.util.Map;
+import java.util.Scanner;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executors;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
 
 /**
  * Unit test the {@link SAML2LogoutHandler}
@@ -54,6 +88,87 @@ import java.util.Map;
  */
 public class SAML2LogOutHandlerUnitTestCase {
 
+    private static final String IDP_URL = "http://localhost:8080/idp/";
+
+    private HttpServer server;
+
+    private String baseURL;
+
+    private final ConcurrentMap<String, String> received = new ConcurrentHashMap<String, String>();
+
+    @Before
+    public void onSetup() throws Exception {
+        PicketLinkCoreSTS.instance().installDefaultConfiguration(null);
+
+        this.server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+        this.server.setExecutor(Executors.newCachedThreadPool());
+        this.server.start();
+        this.baseURL = "http://localhost:" + this.server.getAddress().getPort();
+    }
+
+    @After
+    public void onTearDown() {
+        this.server.stop(0);
+    }
+
+    @Test
+    public void backChannelLogoutIsSentToAllParticipantsConcurrently() throws Exception {
+        String[] participants = new String[] {addPostParticipant("/sp1/", 500), addPostParticipant("/sp2/", 500),
+            addPostParticipant("/sp3/", 500)};
+        String issuer = addPostParticipant("/issuer/", 0);
+
+        long start = System.currentTimeMillis();
+        StatusResponseType logoutResponse = performBackChannelLogout(issuer, participants, "POST", 5000);
+        long elapsed = System.currentTimeMillis() - start;
+
+        assertTrue("Participants were not called concurrently: " + elapsed + "ms", elapsed < 1400);
+
+        for (String participant : participants) {
+            LogoutRequestType logoutRequest = (LogoutRequestType) new SAML2Request().getSAML2ObjectFromStream(
+                new ByteArrayInputStream(this.received.get(participant).getBytes("UTF-8")));
+
+            assertEquals(participant, logoutRequest.getDestination().toString());
+            assertEquals("testuser", logoutRequest.getNameID().getValue());
+        }
+
+        // the issuer gets the logout response instead
+        assertNull(this.received.get(issuer));
+        assertEquals(issuer, logoutResponse.getDestination());
+        assertEquals(JBossSAMLURIConstants.STATUS_SUCCESS.get(), logoutResponse.getStatus().getStatusCode().getValue()
+            .toString());
+        assertNull(logoutResponse.getStatus().getStatusCode().getStatusCode());
+    }
+
+    @Test
+    public void backChannelLogoutOverSOAP() throws Exception {
+        String[] participants = new String[] {addSOAPParticipant("/sp1/", 0), addSOAPParticipant("/sp2/", 0)};
+
+        StatusResponseType logoutResponse = performBackChannelLogout(this.baseURL + "/issuer/", participants, "SOAP", 5000);
+
+        assertEquals(2, this.received.size());
+        assertEquals(JBossSAMLURIConstants.STATUS_SUCCESS.get(), logoutResponse.getStatus().getStatusCode().getValue()
+            .toString());
+        assertNull(logoutResponse.getStatus().getStatusCode().getStatusCode());
+    }
+
+    @Test
+    public void backChannelLogoutOverSOAPReportsPartialLogout() throws Exception {
+        String[] participants = new String[] {addSOAPParticipant("/sp1/", 0), addSOAPParticipant("/slow/", 3000)};
+        String issuer = this.baseURL + "/issuer/";
+
+        long start = System.currentTimeMillis();
+        StatusResponseType logoutResponse = performBackChannelLogout(issuer, participants, "SOAP", 500);
+        long elapsed = System.currentTimeMillis() - start;
+
+        assertTrue("Slow participant was not timed out: " + elapsed + "ms", elapsed < 2000);
+        assertTrue(this.received.containsKey(participants[0]));
+
+        StatusCodeType statusCode = logoutResponse.getStatus().getStatusCode();
+
+        assertEquals(JBossSAMLURIConstants.STATUS_SUCCESS.get(), statusCode.getValue().toString());
+        assertEquals(JBossSAMLURIConstants.STATUS_PARTIAL_LOGOUT.get(), statusCode.getStatusCode().getValue().toString());
+    }
+
     @Test
     public void handleIDPResponseWithSAMLResponderStatus() throws Exception {
         SAML2LogOutHandler handler = new SAML2LogOutHandler();
@@ -103,4 +218,150 @@ public class SAML2LogOutHandlerUnitTestCase {
         SAMLParser parser = new SAMLParser();
         return (StatusResponseType) parser.parse(bis);
     }
-}
\ No newline at end of file
+
+    private StatusResponseType performBackChannelLogout(String issuer, String[] participants, String binding, int timeout)
+        throws Exception {
+        SAML2LogOutHandler handler = new SAML2LogOutHandler();
+
+        SAML2HandlerChainConfig chainConfig = new DefaultSAML2HandlerChainConfig();
+        SAML2HandlerConfig handlerConfig = new DefaultSAML2HandlerConfig();
+        handlerConfig.addParameter(SAML2LogOutHandler.BACK_CHANNEL_LOGOUT, "true");
+        handlerConfig.addParameter(SAML2LogOutHandler.BACK_CHANNEL_LOGOUT_BINDING, binding);
+        handlerConfig.addParameter(SAML2LogOutHandler.BACK_CHANNEL_LOGOUT_TIMEOUT, String.valueOf(timeout));
+
+        Map<String, Object> chainOptions = new HashMap<String, Object>();
+        IDPType idpType = new IDPType();
+        idpType.setIdentityURL(IDP_URL);
+        chainOptions.put(GeneralConstants.CONFIGURATION, idpType);
+        chainOptions.put(GeneralConstants.ROLE_VALIDATOR_IGNORE, "true");
+        chainConfig.set(chainOptions);
+
+        handler.initChainConfig(chainConfig);
+        handler.initHandlerConfig(handlerConfig);
+
+        MockHttpSession session = new MockHttpSession();
+        MockServletContext servletContext = new MockServletContext();
+        session.setServletContext(servletContext);
+
+        IdentityServer identityServer = new IdentityServer();
+        servletContext.setAttribute(GeneralConstants.IDENTITY_SERVER, identityServer);
+
+        identityServer.stack().register(session.getId(), issuer, true);
+
+        for (String participant : participants) {
+            identityServer.stack().register(session.getId(), participant, true);
+        }
+
+        MockHttpServletRequest servletRequest = new MockHttpServletRequest(session, "POST");
+        MockHttpServletResponse servletResponse = new MockHttpServletResponse();
+        HTTPContext httpContext = new HTTPContext(servletRequest, servletResponse, servletContext);
+
+        LogoutRequestType logoutRequest = new SAML2Request().createLogoutRequest(issuer);
+        SAMLDocumentHolder docHolder = new SAMLDocumentHolder(logoutRequest, null);
+        IssuerInfoHolder issuerInfo = new IssuerInfoHolder(IDP_URL);
+
+        SAML2HandlerRequest request = new DefaultSAML2HandlerRequest(httpContext, issuerInfo.getIssuer(), docHolder,
+            SAML2Handler.HANDLER_TYPE.IDP);
+        SAML2HandlerResponse response = new DefaultSAML2HandlerResponse();
+
+        handler.handleRequestType(request, response);
+
+        assertTrue(session.isInvalidated());
+        assertEquals(0, identityServer.stack().getParticipants(session.getId()));
+
+        StatusResponseType logoutResponse = (StatusResponseType) new SAML2Response().getSAML2ObjectFromStream(
+            DocumentUtil.getNodeAsStream(response.getResultingDocument()));
+
+        assertEquals(logoutRequest.getID(), logoutResponse.getInResponseTo());
+
+        return logoutResponse;
+    }
+
+    /**
+     * Adds a service provider that accepts the logout request as a form POST, as the PicketLink service providers do.
+     */
+    private String addPostParticipant(final String path, final long delay) {
+        final String url = this.baseURL + path;
+
+        this.server.createContext(path, new HttpHandler() {
+            @Override
+            public void handle(HttpExchange exchange) throws IOException {
+                String body = read(exchange.getRequestBody());
+
+                for (String parameter : body.split("&")) {
+                    if (parameter.startsWith(GeneralConstants.SAML_REQUEST_KEY + "=")) {
+                        String samlRequest = URLDecoder.decode(parameter.substring(parameter.indexOf('=') + 1), "UTF-8");
+                        received.put(url, new String(Base64.decode(samlRequest), "UTF-8"));
+                    }
+                }
+
+                sleep(delay);
+                exchange.sendResponseHeaders(200, -1);
+                exchange.close();
+            }
+        });
+
+        return url;
+    }
+
+    /**
+     * Adds a service provider that accepts the logout request over the SOAP binding and answers with a successful
+     * logout response.
+     */
+    private String addSOAPParticipant(final String path, final long delay) {
+        final String url = this.baseURL + path;
+
+        this.server.createContext(path, new HttpHandler() {
+            @Override
+            public void handle(HttpExchange exchange) throws IOException {
+                try {
+                    SOAPMessage soapRequest = SOAPUtil.getSOAPMessage(exchange.getRequestBody());
+                    LogoutRequestType logoutRequest = (LogoutRequestType) new SAML2Request().getSAML2ObjectFromStream(
+                        DocumentUtil.getNodeAsStream(SOAPUtil.getSOAPData(soapRequest)));
+
+                    received.put(url, logoutRequest.getID());
+
+                    sleep(delay);
+
+                    StatusResponseType logoutResponse = new StatusResponseType(IDGenerator.create("ID_"),
+                        XMLTimeUtil.getIssueInstant());
+                    StatusType status = new StatusType();
+                    StatusCodeType statusCode = new StatusCodeType();
+                    statusCode.setValue(URI.create(JBossSAMLURIConstants.STATUS_SUCCESS.get()));
+                    status.setStatusCode(statusCode);
+                    logoutResponse.setStatus(status);
+                    logoutResponse.setInResponseTo(logoutRequest.getID());
+                    logoutResponse.setIssuer(new IssuerInfoHolder(url).getIssuer());
+
+                    SOAPMessage soapResponse = SOAPUtil.create();
+                    SOAPUtil.addData(new DOMSource(new SAML2Response().convert(logoutResponse)), soapResponse);
+
+                    exchange.getResponseHeaders().add("Content-Type", "text/xml; charset=utf-8");
+                    exchange.sendResponseHeaders(200, 0);
+
+                    OutputStream os = exchange.getResponseBody();
+                    soapResponse.writeTo(os);
+                    os.close();
+                } catch (Exception e) {
+                    exchange.sendResponseHeaders(500, -1);
+                } finally {
+                    exchange.close();
+                }
+            }
+        });
+
+        return url;
+    }
+
+    private String read(InputStream is) {
+        Scanner scanner = new Scanner(is, "UTF-8").useDelimiter("\\A");
+        return scanner.hasNext() ? scanner.next() : "";
+    }
+
+    private void sleep(long delay) {
+        try {
+            Thread.sleep(delay);
+        } catch (InterruptedException ignore) {
+        }
+    }
+}
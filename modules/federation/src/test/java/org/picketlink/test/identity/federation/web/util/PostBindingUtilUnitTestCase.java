@@ -0,0 +1,108 @@
+/*
+ * JBoss, Home of Professional Open Source
+ *
+ * Copyright 2013 Red Hat, Inc. and/or its affiliates.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.picketlink.test.identity.federation.web.util;
+
+import org.junit.Test;
+import org.picketlink.common.util.DocumentUtil;
+import org.picketlink.identity.federation.core.saml.v2.holders.DestinationInfoHolder;
+import org.picketlink.identity.federation.web.util.PostBindingUtil;
+import org.picketlink.test.identity.federation.web.mock.MockHttpServletResponse;
+import org.w3c.dom.Document;
+
+import java.io.ByteArrayOutputStream;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Unit test the HTTP POST binding: a message sent as a {@link Document} produces the same form as the same message sent
+ * as a base64 encoded String.
+ */
+public class PostBindingUtilUnitTestCase {
+
+    private static final String DESTINATION = "http://localhost:8080/sales/?a=1&b=<2>";
+
+    private static final String RELAY_STATE = "relay\"state";
+
+    private static final String RESPONSE = "<samlp:Response xmlns:samlp=\"urn:oasis:names:tc:SAML:2.0:protocol\" "
+            + "xmlns:saml=\"urn:oasis:names:tc:SAML:2.0:assertion\" ID=\"ID_response\" Version=\"2.0\" "
+            + "IssueInstant=\"2013-01-01T00:00:00Z\"><saml:Issuer>http://localhost:8080/idp/</saml:Issuer><samlp:Status>"
+            + "<samlp:StatusCode Value=\"urn:oasis:names:tc:SAML:2.0:status:Success\"/></samlp:Status></samlp:Response>";
+
+    @Test
+    public void testSendDocument() throws Exception {
+        Document samlDocument = DocumentUtil.getDocument(RESPONSE);
+
+        String stringForm = sendString(samlDocument, true);
+        String documentForm = sendDocument(samlDocument, true);
+
+        assertEquals(stripMessage(stringForm), stripMessage(documentForm));
+        assertTrue(documentForm.contains("NAME=\"SAMLResponse\""));
+        assertTrue(documentForm.contains("ACTION=\"http://localhost:8080/sales/?a=1&b=2\""));
+        assertTrue(documentForm.contains("VALUE=\"relaystate\""));
+
+        Document sent = DocumentUtil.getDocument(new String(PostBindingUtil.base64Decode(getMessage(documentForm)), "UTF-8"));
+
+        assertEquals(DocumentUtil.asString(samlDocument), DocumentUtil.asString(sent));
+    }
+
+    @Test
+    public void testSendRequestDocument() throws Exception {
+        Document samlDocument = DocumentUtil.getDocument(RESPONSE);
+
+        String documentForm = sendDocument(samlDocument, false);
+
+        assertEquals(stripMessage(sendString(samlDocument, false)), stripMessage(documentForm));
+        assertTrue(documentForm.contains("NAME=\"SAMLRequest\""));
+    }
+
+    private String sendString(Document samlDocument, boolean response) throws Exception {
+        MockHttpServletResponse servletResponse = new MockHttpServletResponse();
+        ByteArrayOutputStream baos = new ByteArrayOutputStream();
+
+        servletResponse.setOutputStream(baos);
+
+        String samlMessage = PostBindingUtil.base64Encode(DocumentUtil.asString(samlDocument));
+
+        PostBindingUtil.sendPost(new DestinationInfoHolder(DESTINATION, samlMessage, RELAY_STATE), servletResponse,
+                !response);
+
+        return baos.toString("UTF-8");
+    }
+
+    private String sendDocument(Document samlDocument, boolean response) throws Exception {
+        MockHttpServletResponse servletResponse = new MockHttpServletResponse();
+        ByteArrayOutputStream baos = new ByteArrayOutputStream();
+
+        servletResponse.setOutputStream(baos);
+
+        PostBindingUtil.sendPost(samlDocument, DESTINATION, RELAY_STATE, servletResponse, !response);
+
+        return baos.toString("UTF-8");
+    }
+
+    private String getMessage(String form) {
+        int start = form.indexOf("VALUE=\"") + "VALUE=\"".length();
+
+        return form.substring(start, form.indexOf('"', start));
+    }
+
+    private String stripMessage(String form) {
+        return form.replace(getMessage(form), "");
+    }
+}
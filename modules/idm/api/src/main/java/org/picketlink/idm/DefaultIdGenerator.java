@@ -19,7 +19,7 @@
 package org.picketlink.idm;
 
 
-import java.util.UUID;
+import org.picketlink.common.random.RandomGenerator;
 
 /**
  * Default IdGenerator implementation, used to generate unique identifier values for IdentityType implementations
@@ -31,7 +31,7 @@ public class DefaultIdGenerator implements IdGenerator {
 
     @Override
     public final String generate() {
-        return UUID.randomUUID().toString();
+        return RandomGenerator.getInstance().generateUUID();
     }
 
 }
@@ -140,6 +140,12 @@ public interface IDMMessages {
     @Message(value = "There is no Token.Consumer that supports this token [%s].")
     IdentityManagementException credentialNoConsumerForToken(Token token);
 
+    @Message(value = "Password hashing executor is saturated. Validation rejected for credentials [%s].")
+    IdentityManagementException credentialPasswordHashingRejected(Credentials credentials, @Cause Throwable t);
+
+    @Message(value = "Password hashing failed or did not complete within [%s] ms for credentials [%s].")
+    IdentityManagementException credentialPasswordHashingFailed(long timeout, Credentials credentials, @Cause Throwable t);
+
     // configuration api messages 700-799
     @Message(id = 700, value = "Could not create configuration.")
     SecurityConfigurationException configCouldNotCreateConfiguration(@Cause Exception sce);
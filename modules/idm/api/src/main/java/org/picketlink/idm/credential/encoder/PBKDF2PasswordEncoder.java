@@ -19,15 +19,16 @@ package org.picketlink.idm.credential.encoder;
 
 import java.security.NoSuchAlgorithmException;
 import java.security.spec.InvalidKeySpecException;
-import java.security.spec.KeySpec;
 
 import javax.crypto.SecretKey;
 import javax.crypto.SecretKeyFactory;
 import javax.crypto.spec.PBEKeySpec;
 
+import org.picketlink.idm.credential.util.CredentialUtils;
 
 /**
- * Implementation of {@link PasswordEncoder} that uses PBKDF2
+ * Implementation of {@link PasswordEncoder} that uses PBKDF2.
+ * The {@link SecretKeyFactory} is cached per thread.
  *
  * @author Anil Saldhana
  * @since June 18, 2013
@@ -36,6 +37,7 @@ public class PBKDF2PasswordEncoder implements PasswordEncoder {
     private final byte[] salt;
     private final int keyLength, iterationCount;
     public static final String ALGO = "PBKDF2WithHmacSHA1";
+    private final ThreadLocal<SecretKeyFactory> secretKeyFactory = new ThreadLocal<SecretKeyFactory>();
 
     public PBKDF2PasswordEncoder(byte[] salt, int iterationCount, int keyLength) {
         this.salt = salt;
@@ -45,22 +47,35 @@ public class PBKDF2PasswordEncoder implements PasswordEncoder {
 
     @Override
     public String encode(String rawPassword) {
+        final PBEKeySpec keySpec = new PBEKeySpec(rawPassword.toCharArray(), salt, iterationCount, keyLength);
         try {
-            final SecretKeyFactory secretKeyFactory = SecretKeyFactory.getInstance(ALGO);
-            final KeySpec keySpec = new PBEKeySpec(rawPassword.toCharArray(), salt, iterationCount, keyLength);
-            try {
-                final SecretKey secretKey = secretKeyFactory.generateSecret(keySpec);
-                return new String(secretKey.getEncoded());
-            } catch (InvalidKeySpecException ikse) {
-                throw new RuntimeException(ikse);
-            }
-        } catch (NoSuchAlgorithmException nsae) {
-            throw new RuntimeException(nsae);
+            final SecretKey secretKey = getSecretKeyFactory().generateSecret(keySpec);
+            return new String(secretKey.getEncoded());
+        } catch (InvalidKeySpecException ikse) {
+            throw new RuntimeException(ikse);
+        } finally {
+            keySpec.clearPassword();
         }
     }
 
     @Override
     public boolean verify(String rawPassword, String encodedPassword) {
-        return encode(rawPassword).equals(encodedPassword);
+        return CredentialUtils.isEqual(encode(rawPassword), encodedPassword);
+    }
+
+    private SecretKeyFactory getSecretKeyFactory() {
+        SecretKeyFactory factory = this.secretKeyFactory.get();
+
+        if (factory == null) {
+            try {
+                factory = SecretKeyFactory.getInstance(ALGO);
+            } catch (NoSuchAlgorithmException nsae) {
+                throw new RuntimeException(nsae);
+            }
+
+            this.secretKeyFactory.set(factory);
+        }
+
+        return factory;
     }
 }
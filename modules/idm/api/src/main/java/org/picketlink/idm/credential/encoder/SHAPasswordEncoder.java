@@ -20,6 +20,7 @@ package org.picketlink.idm.credential.encoder;
 
 import org.picketlink.common.util.Base64;
 import org.picketlink.idm.IDMMessages;
+import org.picketlink.idm.credential.util.CredentialUtils;
 
 import java.io.UnsupportedEncodingException;
 import java.security.MessageDigest;
@@ -33,6 +34,7 @@ import static org.picketlink.idm.IDMMessages.MESSAGES;
  * integer when creating a new instance.
  * </p>
  * <p>Passwords are returned with a Base64 encoding.</p>
+ * <p>{@link MessageDigest} instances are cached per thread, avoiding a provider lookup for every password being encoded.</p>
  *
  * @author <a href="mailto:psilva@redhat.com">Pedro Silva</a>
  *
@@ -41,6 +43,8 @@ public class SHAPasswordEncoder implements PasswordEncoder {
 
     private int strength;
 
+    private final ThreadLocal<MessageDigest> messageDigest = new ThreadLocal<MessageDigest>();
+
     public SHAPasswordEncoder(int strength) {
         this.strength = strength;
     }
@@ -63,17 +67,27 @@ public class SHAPasswordEncoder implements PasswordEncoder {
 
     @Override
     public boolean verify(String rawPassword, String encodedPassword) {
-        return encode(rawPassword).equals(encodedPassword);
+        return CredentialUtils.isEqual(encode(rawPassword), encodedPassword);
     }
 
     protected final MessageDigest getMessageDigest() throws IllegalArgumentException {
-        String algorithm = "SHA-" + this.strength;
+        MessageDigest messageDigest = this.messageDigest.get();
 
-        try {
-            return MessageDigest.getInstance(algorithm);
-        } catch (NoSuchAlgorithmException e) {
-            throw IDMMessages.MESSAGES.credentialInvalidEncodingAlgorithm(algorithm, this, e);
+        if (messageDigest == null) {
+            String algorithm = "SHA-" + this.strength;
+
+            try {
+                messageDigest = MessageDigest.getInstance(algorithm);
+            } catch (NoSuchAlgorithmException e) {
+                throw IDMMessages.MESSAGES.credentialInvalidEncodingAlgorithm(algorithm, this, e);
+            }
+
+            this.messageDigest.set(messageDigest);
+        } else {
+            messageDigest.reset();
         }
+
+        return messageDigest;
     }
 
     public int getStrength() {
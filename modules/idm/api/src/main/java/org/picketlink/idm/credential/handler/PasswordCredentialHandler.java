@@ -33,10 +33,21 @@ import org.picketlink.idm.model.Account;
 import org.picketlink.idm.spi.CredentialStore;
 import org.picketlink.idm.spi.IdentityContext;
 
+import java.io.Closeable;
 import java.security.SecureRandom;
 import java.util.Calendar;
 import java.util.Date;
 import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.atomic.AtomicLong;
 import java.util.concurrent.locks.Lock;
 import java.util.concurrent.locks.ReentrantLock;
@@ -48,7 +59,11 @@ import static org.picketlink.idm.IDMMessages.MESSAGES;
  * <p> This particular implementation supports the validation of {@link UsernamePasswordCredentials}, and updating
  * {@link Password} credentials. </p> <p> <p/> <p> How passwords are encoded can be changed by specifying a
  * configuration option using the <code>PASSWORD_ENCODER</code>. By default a SHA-512 encoding is performed. </p> <p/>
- * <p> Password are always salted before encoding. </p>
+ * <p> Password are always salted before encoding. </p> <p> Password verification can be offloaded to a dedicated and
+ * bounded thread pool by specifying the <code>HASHING_THREAD_POOL_SIZE</code> option. In this case, the number of
+ * concurrent hashing operations is limited to the pool size and at most <code>HASHING_QUEUE_SIZE</code> validations can
+ * wait for a thread. Validations exceeding this limit are rejected immediately, instead of consuming caller threads.
+ * The pool is shut down by {@link #close()}, which the partition manager calls when it is closed. </p>
  *
  * @author Shane Bryzak
  * @author <a href="mailto:psilva@redhat.com">Pedro Silva</a>
@@ -57,7 +72,7 @@ import static org.picketlink.idm.IDMMessages.MESSAGES;
         credentialClass = {UsernamePasswordCredentials.class, Password.class},
         credentialStorage = EncodedPasswordStorage.class)
 public class PasswordCredentialHandler<S extends CredentialStore<?>, V extends UsernamePasswordCredentials, U extends Password>
-        extends AbstractCredentialHandler<S, V, U> {
+        extends AbstractCredentialHandler<S, V, U> implements Closeable {
 
     private static final String DEFAULT_SALT_ALGORITHM = "SHA1PRNG";
 
@@ -86,8 +101,30 @@ public class PasswordCredentialHandler<S extends CredentialStore<?>, V extends U
      */
     public static final String KEY_LENGTH_RANDOM_NUMBER = "KEY_LENGTH_RANDOM_NUMBER";
 
+    /**
+     * <p>Number of threads dedicated to password hashing. If not provided, passwords are hashed by the caller
+     * thread.</p>
+     */
+    public static final String HASHING_THREAD_POOL_SIZE = "HASHING_THREAD_POOL_SIZE";
+
+    /**
+     * <p>Maximum number of validations waiting for a hashing thread. Defaults to 100.</p>
+     */
+    public static final String HASHING_QUEUE_SIZE = "HASHING_QUEUE_SIZE";
+
+    /**
+     * <p>Time in milliseconds to wait for a password to be verified by a hashing thread. Defaults to 10000.</p>
+     */
+    public static final String HASHING_TIMEOUT = "HASHING_TIMEOUT";
+
+    private static final int DEFAULT_HASHING_QUEUE_SIZE = 100;
+    private static final long DEFAULT_HASHING_TIMEOUT = 10000;
+
     private PasswordEncoder passwordEncoder = new SHAPasswordEncoder(512);
 
+    private volatile ThreadPoolExecutor hashingExecutor;
+    private long hashingTimeout = DEFAULT_HASHING_TIMEOUT;
+
     private final Lock lock = new ReentrantLock();
     private Integer renewRandomNumberGeneratorInterval = -1;
     private AtomicLong lastRenewTime = new AtomicLong();
@@ -138,6 +175,28 @@ public class PasswordCredentialHandler<S extends CredentialStore<?>, V extends U
 
                 this.secureRandomProvider = new DefaultSecureRandomProvider(saltAlgorithm.toString(), Integer.valueOf(keyLengthRandomNumber.toString()));
             }
+
+            Object hashingThreadPoolSize = options.get(HASHING_THREAD_POOL_SIZE);
+
+            if (hashingThreadPoolSize != null) {
+                Object hashingQueueSize = options.get(HASHING_QUEUE_SIZE);
+
+                if (hashingQueueSize == null) {
+                    hashingQueueSize = DEFAULT_HASHING_QUEUE_SIZE;
+                }
+
+                Object hashingTimeout = options.get(HASHING_TIMEOUT);
+
+                if (hashingTimeout != null) {
+                    this.hashingTimeout = Long.valueOf(hashingTimeout.toString());
+                }
+
+                // setup can be called again for the same handler, do not leak the previous pool
+                close();
+
+                this.hashingExecutor = createHashingExecutor(Integer.valueOf(hashingThreadPoolSize.toString()),
+                    Integer.valueOf(hashingQueueSize.toString()));
+            }
         }
 
         this.secureRandom = createSecureRandom();
@@ -157,9 +216,17 @@ public class PasswordCredentialHandler<S extends CredentialStore<?>, V extends U
     protected boolean validateCredential(IdentityContext context, final CredentialStorage storage, final V credentials, S store) {
         EncodedPasswordStorage hash = (EncodedPasswordStorage) storage;
 
-        if (hash != null) {
+        if (hash != null && hash.getEncodedHash() != null) {
             String rawPassword = new String(credentials.getPassword().getValue());
-            return this.passwordEncoder.verify(saltPassword(rawPassword, hash.getSalt()), hash.getEncodedHash());
+            String saltedPassword = saltPassword(rawPassword, hash.getSalt());
+
+            ThreadPoolExecutor executor = this.hashingExecutor;
+
+            if (executor == null) {
+                return this.passwordEncoder.verify(saltedPassword, hash.getEncodedHash());
+            }
+
+            return verifyUsingHashingExecutor(executor, saltedPassword, hash.getEncodedHash(), credentials);
         }
 
         return false;
@@ -191,6 +258,91 @@ public class PasswordCredentialHandler<S extends CredentialStore<?>, V extends U
         return hash;
     }
 
+    /**
+     * <p> Verifies the given password using the hashing executor, waiting at most <code>HASHING_TIMEOUT</code>
+     * milliseconds for the result. </p>
+     *
+     * @param executor
+     * @param saltedPassword
+     * @param encodedHash
+     * @param credentials
+     * @return
+     */
+    private boolean verifyUsingHashingExecutor(ThreadPoolExecutor executor, final String saltedPassword,
+                                               final String encodedHash, final V credentials) {
+        Future<Boolean> result;
+
+        try {
+            result = executor.submit(new Callable<Boolean>() {
+                @Override
+                public Boolean call() throws Exception {
+                    return passwordEncoder.verify(saltedPassword, encodedHash);
+                }
+            });
+        } catch (RejectedExecutionException ree) {
+            if (executor.isShutdown()) {
+                // the handler was closed while this validation was in progress
+                return this.passwordEncoder.verify(saltedPassword, encodedHash);
+            }
+
+            throw MESSAGES.credentialPasswordHashingRejected(credentials, ree);
+        }
+
+        try {
+            return result.get(this.hashingTimeout, TimeUnit.MILLISECONDS);
+        } catch (ExecutionException ee) {
+            if (RuntimeException.class.isInstance(ee.getCause())) {
+                throw (RuntimeException) ee.getCause();
+            }
+
+            throw MESSAGES.credentialPasswordHashingFailed(this.hashingTimeout, credentials, ee.getCause());
+        } catch (TimeoutException te) {
+            result.cancel(true);
+            throw MESSAGES.credentialPasswordHashingFailed(this.hashingTimeout, credentials, te);
+        } catch (InterruptedException ie) {
+            result.cancel(true);
+            Thread.currentThread().interrupt();
+            throw MESSAGES.credentialPasswordHashingFailed(this.hashingTimeout, credentials, ie);
+        }
+    }
+
+    /**
+     * <p> Shuts down the hashing thread pool, if any. Validations already queued are still performed, later ones are
+     * performed by the caller thread. </p>
+     */
+    @Override
+    public void close() {
+        ThreadPoolExecutor executor = this.hashingExecutor;
+
+        if (executor == null) {
+            return;
+        }
+
+        this.hashingExecutor = null;
+
+        executor.shutdown();
+    }
+
+    private ThreadPoolExecutor createHashingExecutor(int poolSize, int queueSize) {
+        ThreadPoolExecutor executor = new ThreadPoolExecutor(poolSize, poolSize, 60L, TimeUnit.SECONDS,
+            new ArrayBlockingQueue<Runnable>(queueSize), new ThreadFactory() {
+                private final AtomicInteger threadCount = new AtomicInteger();
+
+                @Override
+                public Thread newThread(Runnable runnable) {
+                    Thread thread = new Thread(runnable, "picketlink-password-hashing-" + this.threadCount.incrementAndGet());
+
+                    thread.setDaemon(true);
+
+                    return thread;
+                }
+            }, new ThreadPoolExecutor.AbortPolicy());
+
+        executor.allowCoreThreadTimeOut(true);
+
+        return executor;
+    }
+
     protected SecureRandomProvider getSecureRandomProvider() {
         return this.secureRandomProvider;
     }
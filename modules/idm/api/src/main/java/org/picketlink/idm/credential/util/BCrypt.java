@@ -583,6 +583,6 @@ public class BCrypt {
      * @return true if the passwords match, false otherwise
      */
     public static boolean checkpw(String plaintext, String hashed) {
-        return (hashed.compareTo(hashpw(plaintext, hashed)) == 0);
+        return CredentialUtils.isEqual(hashed, hashpw(plaintext, hashed));
     }
 }
\ No newline at end of file
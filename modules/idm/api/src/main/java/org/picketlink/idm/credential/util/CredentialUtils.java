@@ -23,8 +23,12 @@ import org.picketlink.idm.model.Account;
 import org.picketlink.idm.spi.CredentialStore;
 import org.picketlink.idm.spi.IdentityContext;
 
+import java.io.UnsupportedEncodingException;
+import java.security.MessageDigest;
 import java.util.Date;
 
+import static org.picketlink.idm.IDMMessages.MESSAGES;
+
 /**
  * <p>Utility class with helper methods for the Credential API.</p>
  *
@@ -90,4 +94,24 @@ public final class CredentialUtils {
     public static boolean isCredentialExpired(CredentialStorage credentialStorage) {
         return credentialStorage != null && credentialStorage.getExpiryDate() != null && new Date().compareTo(credentialStorage.getExpiryDate()) > 0;
     }
+
+    /**
+     * <p>Compares two encoded values in constant time, regardless of where the first mismatch occurs. Encoded passwords
+     * should always be compared using this method in order to avoid timing attacks.</p>
+     *
+     * @param expected
+     * @param actual
+     * @return
+     */
+    public static boolean isEqual(String expected, String actual) {
+        if (expected == null || actual == null) {
+            return false;
+        }
+
+        try {
+            return MessageDigest.isEqual(expected.getBytes("UTF-8"), actual.getBytes("UTF-8"));
+        } catch (UnsupportedEncodingException e) {
+            throw MESSAGES.credentialCouldNotEncodePassword(e);
+        }
+    }
 }
@@ -0,0 +1,294 @@
+/*
+ * JBoss, Home of Professional Open Source
+ *
+ * Copyright 2013 Red Hat, Inc. and/or its affiliates.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.picketlink.idm.event;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+import static org.picketlink.idm.IDMLog.ROOT_LOGGER;
+
+/**
+ * <p>An {@link EventBridge} that delivers events asynchronously to a delegate bridge.</p>
+ *
+ * <p>Events are stored in a bounded buffer and dispatched in batches by a single daemon thread, preserving the order in
+ * which they were raised. A delegate implementing {@link BatchEventBridge} receives each batch with a single call,
+ * other delegates receive the events of the batch one by one. When the buffer is full, the configured
+ * {@link OverflowPolicy} decides what happens to the event being raised.</p>
+ *
+ * <p>Some events may need to be observed before the operation that raised them returns. Those can be delivered on the
+ * caller thread by providing their types as synchronous event types. Events delivered synchronously, or by the
+ * {@link OverflowPolicy#CALLER_RUNS} policy, are not ordered with respect to events still in the buffer.</p>
+ */
+public class AsyncEventBridge implements EventBridge {
+
+    /**
+     * <p>Defines what happens when an event is raised and the buffer is full.</p>
+     */
+    public enum OverflowPolicy {
+
+        /**
+         * <p>Blocks the caller until there is space in the buffer.</p>
+         */
+        BLOCK,
+
+        /**
+         * <p>Discards the event.</p>
+         */
+        DROP,
+
+        /**
+         * <p>Delivers the event on the caller thread.</p>
+         */
+        CALLER_RUNS
+    }
+
+    public static final int DEFAULT_CAPACITY = 1024;
+    public static final int DEFAULT_BATCH_SIZE = 64;
+
+    private final EventBridge delegate;
+    private final BlockingQueue<Object> buffer;
+    private final int batchSize;
+    private final OverflowPolicy overflowPolicy;
+    private final List<Class<?>> synchronousEventTypes;
+    private final Thread dispatcher;
+    private final AtomicLong droppedEvents = new AtomicLong();
+
+    // raiseEvent enqueues under the read lock and close stops the bridge under the write lock, so that no event can be
+    // enqueued once the dispatcher may have finished
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+
+    private volatile boolean running = true;
+
+    public AsyncEventBridge(EventBridge delegate) {
+        this(delegate, DEFAULT_CAPACITY, DEFAULT_BATCH_SIZE, OverflowPolicy.BLOCK);
+    }
+
+    /**
+     * <p>Creates a new instance.</p>
+     *
+     * @param delegate The bridge to which events are delivered.
+     * @param capacity Maximum number of events waiting to be delivered.
+     * @param batchSize Maximum number of events delivered for each dispatch cycle.
+     * @param overflowPolicy What to do when the buffer is full.
+     * @param synchronousEventTypes Types of events that should always be delivered on the caller thread.
+     */
+    public AsyncEventBridge(EventBridge delegate, int capacity, int batchSize, OverflowPolicy overflowPolicy,
+                            Class<?>... synchronousEventTypes) {
+        if (delegate == null) {
+            throw new IllegalArgumentException("You must provide an EventBridge to delegate events.");
+        }
+
+        if (capacity <= 0 || batchSize <= 0) {
+            throw new IllegalArgumentException("Capacity and batch size must be greater than zero.");
+        }
+
+        if (overflowPolicy == null) {
+            throw new IllegalArgumentException("You must provide an overflow policy.");
+        }
+
+        this.delegate = delegate;
+        this.buffer = new ArrayBlockingQueue<Object>(capacity);
+        this.batchSize = batchSize;
+        this.overflowPolicy = overflowPolicy;
+        this.synchronousEventTypes = Collections.unmodifiableList(Arrays.asList(synchronousEventTypes));
+        this.dispatcher = new Thread(new Dispatcher(), "picketlink-event-dispatcher");
+        this.dispatcher.setDaemon(true);
+        this.dispatcher.start();
+    }
+
+    @Override
+    public void raiseEvent(Object event) {
+        // events raised by observers are delivered right away, the dispatcher must not wait for room in its own buffer
+        if (isSynchronous(event) || Thread.currentThread() == this.dispatcher || !enqueue(event)) {
+            this.delegate.raiseEvent(event);
+        }
+    }
+
+    /**
+     * <p>Stops accepting events and waits for the events already in the buffer to be delivered. Events raised after this
+     * method is called are delivered on the caller thread.</p>
+     *
+     * @param timeout Maximum time to wait, in milliseconds.
+     */
+    public void close(long timeout) {
+        this.lock.writeLock().lock();
+
+        try {
+            this.running = false;
+        } finally {
+            this.lock.writeLock().unlock();
+        }
+
+        try {
+            this.dispatcher.join(timeout);
+        } catch (InterruptedException ie) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * <p>Returns the number of events discarded by the {@link OverflowPolicy#DROP} policy.</p>
+     *
+     * @return
+     */
+    public long getDroppedEvents() {
+        return this.droppedEvents.get();
+    }
+
+    /**
+     * <p>Returns the number of events waiting to be delivered.</p>
+     *
+     * @return
+     */
+    public int getPendingEvents() {
+        return this.buffer.size();
+    }
+
+    /**
+     * <p>Returns the bridge to which events are delivered.</p>
+     *
+     * @return
+     */
+    public EventBridge getDelegate() {
+        return this.delegate;
+    }
+
+    /**
+     * <p>Returns whether the bridge was closed.</p>
+     *
+     * @return
+     */
+    public boolean isClosed() {
+        return !this.running;
+    }
+
+    /**
+     * <p>Puts the given event in the buffer, or applies the {@link OverflowPolicy} if the buffer is full.</p>
+     *
+     * @param event
+     * @return False if the event must be delivered on the caller thread.
+     */
+    private boolean enqueue(Object event) {
+        this.lock.readLock().lock();
+
+        try {
+            if (!this.running) {
+                return false;
+            }
+
+            if (this.buffer.offer(event)) {
+                return true;
+            }
+
+            switch (this.overflowPolicy) {
+                case BLOCK:
+                    try {
+                        // close waits for the read lock, so the dispatcher keeps running until the event is queued
+                        this.buffer.put(event);
+                        return true;
+                    } catch (InterruptedException ie) {
+                        Thread.currentThread().interrupt();
+                        return false;
+                    }
+                case DROP:
+                    this.droppedEvents.incrementAndGet();
+
+                    if (ROOT_LOGGER.isDebugEnabled()) {
+                        ROOT_LOGGER.debugf("Event buffer is full. Dropping event [%s].", event);
+                    }
+
+                    return true;
+                default:
+                    return false;
+            }
+        } finally {
+            this.lock.readLock().unlock();
+        }
+    }
+
+    private boolean isSynchronous(Object event) {
+        for (Class<?> synchronousEventType : this.synchronousEventTypes) {
+            if (synchronousEventType.isInstance(event)) {
+                return true;
+            }
+        }
+
+        return false;
+    }
+
+    private void dispatch(List<Object> batch) {
+        if (batch.isEmpty()) {
+            return;
+        }
+
+        if (this.delegate instanceof BatchEventBridge) {
+            try {
+                ((BatchEventBridge) this.delegate).raiseEvents(Collections.unmodifiableList(new ArrayList<Object>(batch)));
+            } catch (Exception e) {
+                ROOT_LOGGER.errorf(e, "Error while delivering a batch of [%s] events.", batch.size());
+            }
+
+            batch.clear();
+
+            return;
+        }
+
+        for (Object event : batch) {
+            try {
+                this.delegate.raiseEvent(event);
+            } catch (Exception e) {
+                ROOT_LOGGER.errorf(e, "Error while delivering event [%s].", event);
+            }
+        }
+
+        batch.clear();
+    }
+
+    private class Dispatcher implements Runnable {
+
+        @Override
+        public void run() {
+            List<Object> batch = new ArrayList<Object>(batchSize);
+
+            while (running || !buffer.isEmpty()) {
+                try {
+                    Object event = buffer.poll(100, TimeUnit.MILLISECONDS);
+
+                    if (event != null) {
+                        batch.add(event);
+                        buffer.drainTo(batch, batchSize - 1);
+                        dispatch(batch);
+                    }
+                } catch (InterruptedException ie) {
+                    // only close stops the dispatcher
+                }
+            }
+
+            buffer.drainTo(batch);
+            dispatch(batch);
+        }
+    }
+}
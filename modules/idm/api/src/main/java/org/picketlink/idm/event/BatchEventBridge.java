@@ -0,0 +1,38 @@
+/*
+ * JBoss, Home of Professional Open Source
+ *
+ * Copyright 2013 Red Hat, Inc. and/or its affiliates.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.picketlink.idm.event;
+
+import java.util.List;
+
+/**
+ * <p>An {@link EventBridge} able to receive several events at once.</p>
+ *
+ * <p>{@link AsyncEventBridge} delivers each of its batches with a single call to {@link #raiseEvents(java.util.List)}
+ * when its delegate implements this interface, so that observers such as audit or synchronization sinks can write a
+ * batch in one operation.</p>
+ */
+public interface BatchEventBridge extends EventBridge {
+
+    /**
+     * <p>Raises the given events, in order.</p>
+     *
+     * @param events An unmodifiable list of events.
+     */
+    void raiseEvents(List<Object> events);
+}
@@ -41,6 +41,11 @@ public interface IdentityContext {
      * specific operation.</p>
      */
     String CREDENTIALS = "CREDENTIALS";
+    /**
+     * <p>Name of the context parameter that provides a {@link java.util.concurrent.Executor} used to query multiple identity
+     * stores concurrently. If not set, stores are queried one after another.</p>
+     */
+    String QUERY_EXECUTOR = "QUERY_EXECUTOR";
 
     /**
      * Returns the parameter value with the specified name
@@ -30,6 +30,8 @@ import org.picketlink.idm.query.RelationshipQuery;
 import org.picketlink.idm.spi.IdentityContext;
 import org.picketlink.idm.spi.IdentityStore;
 
+import java.io.Closeable;
+import java.io.IOException;
 import java.util.Date;
 import java.util.HashMap;
 import java.util.Map;
@@ -130,6 +132,21 @@ public abstract class AbstractIdentityStore<C extends IdentityStoreConfiguration
         }
     }
 
+    /**
+     * <p>Releases the resources held by the credential handlers of this store, such as their thread pools.</p>
+     */
+    public void close() {
+        for (CredentialHandler credentialHandler : this.credentialHandlers.values()) {
+            if (Closeable.class.isInstance(credentialHandler)) {
+                try {
+                    ((Closeable) credentialHandler).close();
+                } catch (IOException ioe) {
+                    IDENTITY_STORE_LOGGER.debugf(ioe, "Could not close credential handler [%s].", credentialHandler);
+                }
+            }
+        }
+    }
+
     protected abstract void removeFromRelationships(IdentityContext context, IdentityType identityType);
     protected abstract void removeCredentials(IdentityContext context, Account account);
 
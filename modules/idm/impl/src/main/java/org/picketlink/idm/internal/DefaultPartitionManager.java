@@ -34,15 +34,17 @@ import org.picketlink.idm.config.JPAIdentityStoreConfiguration;
 import org.picketlink.idm.config.LDAPIdentityStoreConfiguration;
 import org.picketlink.idm.config.OperationNotSupportedException;
 import org.picketlink.idm.config.TokenStoreConfiguration;
-import org.picketlink.idm.credential.handler.CredentialHandler;
-import org.picketlink.idm.credential.handler.annotations.SupportsCredentials;
 import org.picketlink.idm.credential.storage.CredentialStorage;
+import org.picketlink.idm.event.AsyncEventBridge;
+import org.picketlink.idm.event.AsyncEventBridge.OverflowPolicy;
 import org.picketlink.idm.event.EventBridge;
 import org.picketlink.idm.event.PartitionCreatedEvent;
 import org.picketlink.idm.event.PartitionDeletedEvent;
 import org.picketlink.idm.event.PartitionUpdatedEvent;
 import org.picketlink.idm.file.internal.FileIdentityStore;
 import org.picketlink.idm.internal.util.RelationshipMetadata;
+import org.picketlink.idm.internal.util.StoreRoutingTable;
+import org.picketlink.idm.internal.util.StoreRoutingTable.Route;
 import org.picketlink.idm.jdbc.internal.JDBCIdentityStore;
 import org.picketlink.idm.jpa.internal.JPAIdentityStore;
 import org.picketlink.idm.ldap.internal.LDAPIdentityStore;
@@ -73,10 +75,12 @@ import java.util.Collection;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
 
 import static org.picketlink.common.util.StringUtil.isNullOrEmpty;
 import static org.picketlink.idm.IDMInternalMessages.MESSAGES;
@@ -115,6 +119,10 @@ public class DefaultPartitionManager implements PartitionManager, StoreSelector
      * The store instances for each IdentityConfiguration, mapped by their corresponding IdentityStoreConfiguration
      */
     private final Map<IdentityConfiguration, Map<IdentityStoreConfiguration, IdentityStore<?>>> stores;
+    /**
+     * The precomputed store routes for each IdentityConfiguration
+     */
+    private final Map<IdentityConfiguration, StoreRoutingTable> routingTables;
     /**
      * The IdentityConfiguration that is responsible for managing partition CRUD operations.  It is possible for this
      * value to be null, in which case partition management will not be supported.
@@ -125,10 +133,15 @@ public class DefaultPartitionManager implements PartitionManager, StoreSelector
      * value to be null, in which case attribute management will not be supported.
      */
     private final IdentityConfiguration attributeManagementConfig;
+    /**
+     * The IdentityConfiguration that is responsible for managing credentials when partition management is not
+     * supported.  It is possible for this value to be null, in which case credential management will not be supported.
+     */
+    private final IdentityConfiguration credentialManagementConfig;
     /**
      * The event bridge allows events to be "bridged" to an event bus, such as the CDI event bus
      */
-    private EventBridge eventBridge;
+    private volatile EventBridge eventBridge;
     /**
      * The ID generator is responsible for generating unique identifier values
      */
@@ -149,6 +162,11 @@ public class DefaultPartitionManager implements PartitionManager, StoreSelector
      */
     private PermissionHandlerPolicy permissionHandlerPolicy;
 
+    /**
+     * Executor used to query multiple identity stores concurrently. If null, stores are queried sequentially
+     */
+    private volatile Executor queryExecutor;
+
     public DefaultPartitionManager(IdentityConfiguration configuration) {
         this(Arrays.asList(configuration));
     }
@@ -196,6 +214,7 @@ public class DefaultPartitionManager implements PartitionManager, StoreSelector
 
             IdentityConfiguration partitionCfg = null;
             IdentityConfiguration attributeCfg = null;
+            IdentityConfiguration credentialCfg = null;
 
             for (IdentityConfiguration config : configurations) {
                 for (IdentityStoreConfiguration storeConfig : config.getStoreConfiguration()) {
@@ -206,6 +225,10 @@ public class DefaultPartitionManager implements PartitionManager, StoreSelector
                     if (storeConfig.supportsAttribute()) {
                         attributeCfg = config;
                     }
+
+                    if (storeConfig.supportsCredential()) {
+                        credentialCfg = config;
+                    }
                 }
             }
 
@@ -213,11 +236,14 @@ public class DefaultPartitionManager implements PartitionManager, StoreSelector
             // field will be null and partition management operations will not be supported
             this.partitionManagementConfig = partitionCfg;
             this.attributeManagementConfig = attributeCfg;
+            this.credentialManagementConfig = credentialCfg;
 
             logConfiguration(this.configurations);
 
             Map<IdentityConfiguration, Map<IdentityStoreConfiguration, IdentityStore<?>>> configuredStores =
                     new HashMap<IdentityConfiguration, Map<IdentityStoreConfiguration, IdentityStore<?>>>();
+            Map<IdentityConfiguration, StoreRoutingTable> configuredRoutingTables =
+                    new HashMap<IdentityConfiguration, StoreRoutingTable>();
 
             for (IdentityConfiguration config : configurations) {
                 Map<IdentityStoreConfiguration, IdentityStore<?>> storeMap = new HashMap<IdentityStoreConfiguration, IdentityStore<?>>();
@@ -234,9 +260,11 @@ public class DefaultPartitionManager implements PartitionManager, StoreSelector
                 }
 
                 configuredStores.put(config, Collections.unmodifiableMap(storeMap));
+                configuredRoutingTables.put(config, new StoreRoutingTable(config, storeMap));
             }
 
             this.stores = Collections.unmodifiableMap(configuredStores);
+            this.routingTables = Collections.unmodifiableMap(configuredRoutingTables);
         } catch (Exception e) {
             throw MESSAGES.partitionManagerInitializationFailed(this.getClass(), e);
         }
@@ -266,12 +294,91 @@ public class DefaultPartitionManager implements PartitionManager, StoreSelector
                 permissionManager = createPermissionManager(storedPartition);
             }
 
-            return new ContextualIdentityManager(storedPartition, eventBridge, idGenerator, this, createRelationshipManager(), permissionManager);
+            ContextualIdentityManager identityManager = new ContextualIdentityManager(storedPartition, eventBridge, idGenerator, this,
+                createRelationshipManager(), permissionManager);
+
+            if (this.queryExecutor != null) {
+                identityManager.setParameter(IdentityContext.QUERY_EXECUTOR, this.queryExecutor);
+            }
+
+            return identityManager;
         } catch (Exception e) {
             throw MESSAGES.partitionCouldNotCreateIdentityManager(storedPartition, e);
         }
     }
 
+    /**
+     * <p>Sets the {@link Executor} used by identity managers created after this call to query multiple identity stores
+     * concurrently. Stores selected for the same query must support concurrent access to their {@link IdentityContext}.
+     * </p>
+     *
+     * <p>By default, or if <code>null</code> is provided, stores are queried one after another.</p>
+     *
+     * @param queryExecutor
+     */
+    public void setQueryExecutor(Executor queryExecutor) {
+        this.queryExecutor = queryExecutor;
+    }
+
+    /**
+     * <p>Delivers the events raised by this partition manager, and by the managers created after this call, through an
+     * {@link AsyncEventBridge} wrapping the current event bridge. Observers are then notified on a dispatcher thread
+     * instead of the thread performing the operation. Managers created before this call keep delivering events
+     * synchronously.</p>
+     *
+     * <p>{@link #close(long)} must be called when this partition manager is no longer used, to deliver the pending
+     * events.</p>
+     *
+     * @param capacity Maximum number of events waiting to be delivered.
+     * @param batchSize Maximum number of events delivered for each dispatch cycle.
+     * @param overflowPolicy What to do when the buffer is full.
+     * @param synchronousEventTypes Types of events that should always be delivered on the caller thread.
+     * @return The asynchronous event bridge.
+     */
+    public synchronized AsyncEventBridge enableAsyncEvents(int capacity, int batchSize, OverflowPolicy overflowPolicy,
+                                                          Class<?>... synchronousEventTypes) {
+        EventBridge current = this.eventBridge;
+
+        if (current instanceof AsyncEventBridge) {
+            if (!((AsyncEventBridge) current).isClosed()) {
+                throw new IllegalStateException("Asynchronous event delivery is already enabled.");
+            }
+
+            // a closed bridge delivers on the caller thread, wrap its delegate instead of adding one more layer
+            current = ((AsyncEventBridge) current).getDelegate();
+        }
+
+        AsyncEventBridge asyncEventBridge = new AsyncEventBridge(current, capacity, batchSize, overflowPolicy,
+            synchronousEventTypes);
+
+        this.eventBridge = asyncEventBridge;
+
+        return asyncEventBridge;
+    }
+
+    /**
+     * <p>Releases the resources held by the identity stores, such as the thread pools of their credential handlers,
+     * and waits for the events raised asynchronously to be delivered, if {@link #enableAsyncEvents} was called. Events
+     * raised and credentials validated afterwards are processed on the caller thread.</p>
+     *
+     * @param timeout Maximum time to wait for the pending events, in milliseconds.
+     */
+    public void close(long timeout) {
+        for (Map<IdentityStoreConfiguration, IdentityStore<?>> storeMap : this.stores.values()) {
+            for (IdentityStore<?> store : storeMap.values()) {
+                if (AbstractIdentityStore.class.isInstance(store)) {
+                    ((AbstractIdentityStore<?>) store).close();
+                }
+            }
+        }
+
+        EventBridge current = this.eventBridge;
+
+        if (current instanceof AsyncEventBridge) {
+            ((AsyncEventBridge) current).close(timeout);
+        }
+    }
+
     @Override
     public PermissionManager createPermissionManager() {
         return createPermissionManager(DEFAULT_REALM);
@@ -485,6 +592,8 @@ public class DefaultPartitionManager implements PartitionManager, StoreSelector
 
             getStoreForPartitionOperation(context, partition.getClass()).remove(context, partition);
 
+            this.partitionConfigurations.remove(partition);
+
             this.eventBridge.raiseEvent(new PartitionDeletedEvent(partition, this));
         } catch (Exception e) {
             throw MESSAGES.partitionRemoveFailed(partition, e);
@@ -532,8 +641,6 @@ public class DefaultPartitionManager implements PartitionManager, StoreSelector
 
     @Override
     public Set<IdentityStore<?>> getStoresForIdentityQuery(final IdentityContext context, final Class<? extends IdentityType> identityType) {
-        Set<IdentityStore<?>> identityStores = new HashSet<IdentityStore<?>>();
-
         IdentityConfiguration identityConfiguration = null;
 
         if (this.partitionManagementConfig != null) {
@@ -542,80 +649,45 @@ public class DefaultPartitionManager implements PartitionManager, StoreSelector
             identityConfiguration = this.configurations.iterator().next();
         }
 
-        for (IdentityStoreConfiguration storeConfig : identityConfiguration.getStoreConfiguration()) {
-            if (storeConfig.supportsType(identityType, IdentityOperation.read)) {
-                identityStores.add(getIdentityStoreAndInitializeContext(context, identityConfiguration, storeConfig));
-            }
-        }
+        Route route = getRoutingTable(identityConfiguration).getTypeRoute(identityType, IdentityOperation.read);
 
-        if (identityStores.isEmpty()) {
+        if (route.isEmpty()) {
             throw MESSAGES.attributedTypeUnsupportedOperation(identityType, IdentityOperation.read, identityType, IdentityOperation.read);
         }
 
-        return identityStores;
+        return route.getStores(context);
     }
 
     public <T extends IdentityStore<?>> T lookupStore(IdentityContext context, IdentityConfiguration configuration,
                                                       Class<? extends AttributedType> type, IdentityOperation operation) {
-        for (IdentityStoreConfiguration storeConfig : configuration.getStoreConfiguration()) {
-            if (storeConfig.supportsType(type, operation)) {
-                return getIdentityStoreAndInitializeContext(context, configuration, storeConfig);
-            }
-        }
-
-        return null;
+        return getRoutingTable(configuration).getTypeRoute(type, operation).getFirstStore(context);
     }
 
     @Override
     public <T extends CredentialStore<?>> T getStoreForCredentialOperation(IdentityContext context, Class<?> credentialClass) {
-        T store = null;
-
-        IdentityConfiguration identityConfiguration = null;
+        IdentityConfiguration identityConfiguration;
 
         if (this.partitionManagementConfig != null) {
             identityConfiguration = getConfigurationForPartition(context.getPartition());
         } else {
-            for (IdentityConfiguration configuration : this.configurations) {
-                for (IdentityStoreConfiguration storeConfig : configuration.getStoreConfiguration()) {
-                    if (storeConfig.supportsCredential()) {
-                        identityConfiguration = configuration;
-                    }
-                }
-            }
+            identityConfiguration = this.credentialManagementConfig;
         }
 
-        if (identityConfiguration != null && identityConfiguration.supportsCredential()) {
-            for (IdentityStoreConfiguration storeConfig : identityConfiguration.getStoreConfiguration()) {
-                if (storeConfig.supportsCredential()) {
-                    for (@SuppressWarnings("rawtypes") Class<? extends CredentialHandler> handlerClass : storeConfig.getCredentialHandlers()) {
-                        if (handlerClass.isAnnotationPresent(SupportsCredentials.class)) {
-                            for (Class<?> cls : handlerClass.getAnnotation(SupportsCredentials.class).credentialClass()) {
-                                if (cls.isAssignableFrom(credentialClass)) {
-                                    IdentityStore<?> identityStore = getIdentityStoreAndInitializeContext(context, identityConfiguration, storeConfig);
-
-                                    try {
-                                        store = (T) identityStore;
-                                    } catch (ClassCastException cce) {
-                                        throw MESSAGES.storeUnexpectedType(CredentialStore.class, identityStore.getClass());
-                                    }
-
-                                    // if we found a specific handler for the credential, immediately return.
-                                    if (cls.equals(credentialClass)) {
-                                        return store;
-                                    }
-                                }
-                            }
-                        }
-                    }
-                }
-            }
+        IdentityStore<?> identityStore = null;
+
+        if (identityConfiguration != null) {
+            identityStore = getRoutingTable(identityConfiguration).getCredentialRoute(credentialClass).getFirstStore(context);
         }
 
-        if (store == null) {
+        if (identityStore == null) {
             throw MESSAGES.credentialNoStoreForCredentials(credentialClass);
         }
 
-        return store;
+        if (!CredentialStore.class.isInstance(identityStore)) {
+            throw MESSAGES.storeUnexpectedType(CredentialStore.class, identityStore.getClass());
+        }
+
+        return (T) identityStore;
     }
 
     @Override
@@ -637,21 +709,17 @@ public class DefaultPartitionManager implements PartitionManager, StoreSelector
             }
 
             if (config.getRelationshipPolicy().isSelfRelationshipSupported(relationshipClass)) {
-                for (IdentityStoreConfiguration storeConfig : config.getStoreConfiguration()) {
-                    if (storeConfig.supportsType(relationshipClass, operation)) {
-                        store = getIdentityStoreAndInitializeContext(context, config, storeConfig);
-                    }
-                }
+                store = getRoutingTable(config).getTypeRoute(relationshipClass, operation).getLastStore(context);
             }
         } else {
             // This is a multi-partition relationship - use the configuration that supports the global relationship type
             for (Partition partition : partitions) {
                 IdentityConfiguration config = getConfigurationForPartition(partition);
                 if (config.getRelationshipPolicy().isGlobalRelationshipSupported(relationshipClass)) {
-                    for (IdentityStoreConfiguration storeConfig : config.getStoreConfiguration()) {
-                        if (storeConfig.supportsType(relationshipClass, operation)) {
-                            store = getIdentityStoreAndInitializeContext(context, config, storeConfig);
-                        }
+                    IdentityStore<?> globalStore = getRoutingTable(config).getTypeRoute(relationshipClass, operation).getLastStore(context);
+
+                    if (globalStore != null) {
+                        store = globalStore;
                     }
                 }
             }
@@ -663,10 +731,10 @@ public class DefaultPartitionManager implements PartitionManager, StoreSelector
             for (IdentityConfiguration cfg : configurations) {
                 if (cfg.getRelationshipPolicy().isGlobalRelationshipSupported(relationshipClass)) {
                     // found one
-                    for (IdentityStoreConfiguration storeConfig : cfg.getStoreConfiguration()) {
-                        if (storeConfig.supportsType(relationshipClass, operation)) {
-                            store = getIdentityStoreAndInitializeContext(context, cfg, storeConfig);
-                        }
+                    IdentityStore<?> globalStore = getRoutingTable(cfg).getTypeRoute(relationshipClass, operation).getLastStore(context);
+
+                    if (globalStore != null) {
+                        store = globalStore;
                     }
                 }
             }
@@ -682,7 +750,8 @@ public class DefaultPartitionManager implements PartitionManager, StoreSelector
     @Override
     public Set<IdentityStore<?>> getStoresForRelationshipQuery(IdentityContext context, Class<? extends Relationship> relationshipClass,
                                                                Set<Partition> partitions) {
-        Set<IdentityStore<?>> identityStores = new HashSet<IdentityStore<?>>();
+        Set<IdentityStore<?>> identityStores = null;
+        Set<IdentityConfiguration> visitedConfigurations = null;
 
         // If _no_ parameters have been specified for the query at all, we return all stores that support the
         // specified relationship class
@@ -690,27 +759,27 @@ public class DefaultPartitionManager implements PartitionManager, StoreSelector
             for (IdentityConfiguration config : configurations) {
                 if (config.getRelationshipPolicy().isGlobalRelationshipSupported(relationshipClass) ||
                         config.getRelationshipPolicy().isSelfRelationshipSupported(relationshipClass)) {
-                    for (IdentityStoreConfiguration storeConfig : config.getStoreConfiguration()) {
-                        if (storeConfig.supportsType(relationshipClass, IdentityOperation.create) || Relationship.class.equals(relationshipClass)) {
-                            identityStores.add(getIdentityStoreAndInitializeContext(context, config, storeConfig));
-                        }
-                    }
+                    identityStores = addStores(identityStores, getRoutingTable(config).getRelationshipQueryRoute(relationshipClass), context);
                 }
             }
         } else {
             for (Partition partition : partitions) {
                 IdentityConfiguration config = getConfigurationForPartition(partition);
+
                 if (config.getRelationshipPolicy().isGlobalRelationshipSupported(relationshipClass)) {
-                    for (IdentityStoreConfiguration storeConfig : config.getStoreConfiguration()) {
-                        if (storeConfig.supportsType(relationshipClass, IdentityOperation.create) || Relationship.class.equals(relationshipClass)) {
-                            identityStores.add(getIdentityStoreAndInitializeContext(context, config, storeConfig));
-                        }
+                    if (visitedConfigurations == null) {
+                        visitedConfigurations = new HashSet<IdentityConfiguration>();
+                    }
+
+                    // partitions sharing the same configuration are routed to the same stores
+                    if (visitedConfigurations.add(config)) {
+                        identityStores = addStores(identityStores, getRoutingTable(config).getRelationshipQueryRoute(relationshipClass), context);
                     }
                 }
             }
         }
 
-        if (identityStores.isEmpty()) {
+        if (identityStores == null || identityStores.isEmpty()) {
             throw MESSAGES.attributedTypeUnsupportedOperation(relationshipClass, IdentityOperation.read, relationshipClass, IdentityOperation.read);
         }
 
@@ -719,38 +788,31 @@ public class DefaultPartitionManager implements PartitionManager, StoreSelector
 
     @Override
     public <T extends PartitionStore<?>> T getStoreForPartitionOperation(IdentityContext context, Class<? extends Partition> partitionClass) {
-        Map<IdentityStoreConfiguration, IdentityStore<?>> configStores = stores.get(this.partitionManagementConfig);
+        IdentityStore<?> store = getRoutingTable(this.partitionManagementConfig)
+            .getTypeRoute(partitionClass, IdentityOperation.create).getFirstStore(context);
 
-        for (IdentityStoreConfiguration cfg : configStores.keySet()) {
-            if (cfg.supportsType(partitionClass, IdentityOperation.create)) {
-                T store = getIdentityStoreAndInitializeContext(context, this.partitionManagementConfig, cfg);
-
-                if (!PartitionStore.class.isInstance(store)) {
-                    throw MESSAGES.storeUnexpectedType(store.getClass(), PartitionStore.class);
-                }
+        if (store == null) {
+            throw MESSAGES.storeNotFound(PartitionStore.class, partitionClass);
+        }
 
-                return store;
-            }
+        if (!PartitionStore.class.isInstance(store)) {
+            throw MESSAGES.storeUnexpectedType(store.getClass(), PartitionStore.class);
         }
 
-        throw MESSAGES.storeNotFound(PartitionStore.class, partitionClass);
+        return (T) store;
     }
 
     @Override
     public <T extends AttributeStore<?>> T getStoreForAttributeOperation(IdentityContext context) {
         if (attributeManagementConfig != null) {
-            Map<IdentityStoreConfiguration, IdentityStore<?>> configStores = stores.get(attributeManagementConfig);
+            IdentityStore<?> store = getRoutingTable(this.attributeManagementConfig).getAttributeStores().getFirstStore(context);
 
-            for (IdentityStoreConfiguration cfg : configStores.keySet()) {
-                if (cfg.supportsAttribute()) {
-                    T store = getIdentityStoreAndInitializeContext(context, this.attributeManagementConfig, cfg);
-
-                    if (!AttributeStore.class.isInstance(store)) {
-                        throw MESSAGES.storeUnexpectedType(store.getClass(), AttributeStore.class);
-                    }
-
-                    return store;
+            if (store != null) {
+                if (!AttributeStore.class.isInstance(store)) {
+                    throw MESSAGES.storeUnexpectedType(store.getClass(), AttributeStore.class);
                 }
+
+                return (T) store;
             }
         }
 
@@ -759,29 +821,14 @@ public class DefaultPartitionManager implements PartitionManager, StoreSelector
 
     @Override
     public Set<CredentialStore<?>> getStoresForCredentialStorage(final IdentityContext context, Class<? extends CredentialStorage> storageClass) {
-        Map<IdentityStoreConfiguration, IdentityStore<?>> storesConfig = this.stores.get(getConfigurationForPartition(context.getPartition()));
-
-        Set<CredentialStore<?>> credentialStores = new HashSet<CredentialStore<?>>();
-
-        if (storesConfig != null) {
-            for (IdentityStore identityStore : storesConfig.values()) {
-                if (CredentialStore.class.isInstance(identityStore) && identityStore.getConfig().supportsCredential()) {
-                    CredentialStore<?> credentialStore = (CredentialStore<?>) identityStore;
-
-                    for (Class<? extends CredentialHandler> credentialHandler : credentialStore.getConfig().getCredentialHandlers()) {
-                        SupportsCredentials supportedCredentials = credentialHandler.getAnnotation(SupportsCredentials.class);
+        StoreRoutingTable routingTable = this.routingTables.get(getConfigurationForPartition(context.getPartition()));
 
-                        if (supportedCredentials != null) {
-                            if (supportedCredentials.credentialStorage().equals(storageClass)) {
-                                credentialStores.add(credentialStore);
-                            }
-                        }
-                    }
-                }
-            }
+        if (routingTable == null) {
+            return Collections.emptySet();
         }
 
-        return credentialStores;
+        // the route only contains CredentialStore instances
+        return (Set) routingTable.getCredentialStorageRoute(storageClass).getStores();
     }
 
     @Override
@@ -796,17 +843,17 @@ public class DefaultPartitionManager implements PartitionManager, StoreSelector
 
         if (identityConfiguration == null) {
             for (IdentityConfiguration configuration : this.configurations) {
-                for (IdentityStoreConfiguration storeConfig : configuration.getStoreConfiguration()) {
-                    if (storeConfig.supportsPermissions()) {
-                        return (PermissionStore) getIdentityStoreAndInitializeContext(context, configuration, storeConfig);
-                    }
+                PermissionStore store = getRoutingTable(configuration).getPermissionStores().getFirstStore(context);
+
+                if (store != null) {
+                    return store;
                 }
             }
         } else {
-            for (IdentityStoreConfiguration storeConfig : identityConfiguration.getStoreConfiguration()) {
-                if (storeConfig.supportsPermissions()) {
-                    return (PermissionStore) getIdentityStoreAndInitializeContext(context, identityConfiguration, storeConfig);
-                }
+            PermissionStore store = getRoutingTable(identityConfiguration).getPermissionStores().getFirstStore(context);
+
+            if (store != null) {
+                return store;
             }
         }
 
@@ -991,6 +1038,29 @@ public class DefaultPartitionManager implements PartitionManager, StoreSelector
         return (T) store;
     }
 
+    private StoreRoutingTable getRoutingTable(IdentityConfiguration configuration) {
+        return this.routingTables.get(configuration);
+    }
+
+    private Set<IdentityStore<?>> addStores(Set<IdentityStore<?>> identityStores, Route route, IdentityContext context) {
+        if (route.isEmpty()) {
+            return identityStores;
+        }
+
+        Set<IdentityStore<?>> routeStores = route.getStores(context);
+
+        // most of the time a single route is involved, so we can just return its stores
+        if (identityStores == null) {
+            return routeStores;
+        }
+
+        Set<IdentityStore<?>> mergedStores = new LinkedHashSet<IdentityStore<?>>(identityStores);
+
+        mergedStores.addAll(routeStores);
+
+        return mergedStores;
+    }
+
     private <T extends Partition> void loadAttributes(final IdentityContext context, final T partition) {
         AttributeStore<?> attributeStore = getStoreForAttributeOperation(context);
 
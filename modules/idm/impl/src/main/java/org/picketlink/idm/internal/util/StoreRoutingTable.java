@@ -0,0 +1,375 @@
+/*
+ * JBoss, Home of Professional Open Source
+ *
+ * Copyright 2013 Red Hat, Inc. and/or its affiliates.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.picketlink.idm.internal.util;
+
+import org.picketlink.idm.config.IdentityConfiguration;
+import org.picketlink.idm.config.IdentityStoreConfiguration;
+import org.picketlink.idm.config.IdentityStoreConfiguration.IdentityOperation;
+import org.picketlink.idm.credential.handler.CredentialHandler;
+import org.picketlink.idm.credential.handler.annotations.SupportsCredentials;
+import org.picketlink.idm.credential.storage.CredentialStorage;
+import org.picketlink.idm.model.AttributedType;
+import org.picketlink.idm.model.Relationship;
+import org.picketlink.idm.spi.CredentialStore;
+import org.picketlink.idm.spi.IdentityContext;
+import org.picketlink.idm.spi.IdentityStore;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * <p>Maps types and operations to the {@link IdentityStore} instances of a single {@link IdentityConfiguration}.</p>
+ *
+ * <p>Routes for all types declared by the store configurations are computed when the table is created. Routes for
+ * other types (eg.: subtypes of the declared types) are computed on their first lookup and cached. Given that store
+ * configurations are immutable, a route never changes once computed and lookups do not allocate.</p>
+ */
+public class StoreRoutingTable {
+
+    private static final Route EMPTY_ROUTE = new Route(Collections.<IdentityStoreConfiguration>emptyList(),
+        Collections.<IdentityStoreConfiguration, IdentityStore<?>>emptyMap());
+
+    private final IdentityConfiguration configuration;
+    private final Map<IdentityStoreConfiguration, IdentityStore<?>> stores;
+    private final Map<IdentityOperation, ConcurrentMap<Class<?>, Route>> typeRoutes;
+    private final ConcurrentMap<Class<?>, Route> relationshipQueryRoutes = new ConcurrentHashMap<Class<?>, Route>();
+    private final ConcurrentMap<Class<?>, Route> credentialRoutes = new ConcurrentHashMap<Class<?>, Route>();
+    private final ConcurrentMap<Class<?>, Route> credentialStorageRoutes = new ConcurrentHashMap<Class<?>, Route>();
+    private final Route credentialStores;
+    private final Route permissionStores;
+    private final Route attributeStores;
+
+    public StoreRoutingTable(IdentityConfiguration configuration, Map<IdentityStoreConfiguration, IdentityStore<?>> stores) {
+        this.configuration = configuration;
+        this.stores = stores;
+        this.typeRoutes = new EnumMap<IdentityOperation, ConcurrentMap<Class<?>, Route>>(IdentityOperation.class);
+
+        for (IdentityOperation operation : IdentityOperation.values()) {
+            this.typeRoutes.put(operation, new ConcurrentHashMap<Class<?>, Route>());
+        }
+
+        List<IdentityStoreConfiguration> credentialStores = new ArrayList<IdentityStoreConfiguration>();
+        List<IdentityStoreConfiguration> permissionStores = new ArrayList<IdentityStoreConfiguration>();
+        List<IdentityStoreConfiguration> attributeStores = new ArrayList<IdentityStoreConfiguration>();
+
+        for (IdentityStoreConfiguration storeConfig : configuration.getStoreConfiguration()) {
+            if (storeConfig.supportsCredential()) {
+                credentialStores.add(storeConfig);
+            }
+
+            if (storeConfig.supportsPermissions()) {
+                permissionStores.add(storeConfig);
+            }
+
+            if (storeConfig.supportsAttribute()) {
+                attributeStores.add(storeConfig);
+            }
+
+            // precompute the routes for all declared types
+            for (Class<? extends AttributedType> supportedType : storeConfig.getSupportedTypes().keySet()) {
+                for (IdentityOperation operation : IdentityOperation.values()) {
+                    getTypeRoute(supportedType, operation);
+                }
+            }
+        }
+
+        this.credentialStores = createRoute(credentialStores);
+        this.permissionStores = createRoute(permissionStores);
+        this.attributeStores = createRoute(attributeStores);
+    }
+
+    /**
+     * <p>Returns the stores supporting the given type and operation, in the order they were configured.</p>
+     *
+     * @param type
+     * @param operation
+     *
+     * @return
+     */
+    public Route getTypeRoute(Class<? extends AttributedType> type, IdentityOperation operation) {
+        ConcurrentMap<Class<?>, Route> routes = this.typeRoutes.get(operation);
+        Route route = routes.get(type);
+
+        if (route == null) {
+            List<IdentityStoreConfiguration> storeConfigs = new ArrayList<IdentityStoreConfiguration>();
+
+            for (IdentityStoreConfiguration storeConfig : this.configuration.getStoreConfiguration()) {
+                if (storeConfig.supportsType(type, operation)) {
+                    storeConfigs.add(storeConfig);
+                }
+            }
+
+            route = cacheRoute(routes, type, storeConfigs);
+        }
+
+        return route;
+    }
+
+    /**
+     * <p>Returns the stores that should be queried for relationships of the given type.</p>
+     *
+     * @param relationshipClass
+     *
+     * @return
+     */
+    public Route getRelationshipQueryRoute(Class<? extends Relationship> relationshipClass) {
+        Route route = this.relationshipQueryRoutes.get(relationshipClass);
+
+        if (route == null) {
+            List<IdentityStoreConfiguration> storeConfigs = new ArrayList<IdentityStoreConfiguration>();
+
+            for (IdentityStoreConfiguration storeConfig : this.configuration.getStoreConfiguration()) {
+                if (storeConfig.supportsType(relationshipClass, IdentityOperation.create) || Relationship.class.equals(relationshipClass)) {
+                    storeConfigs.add(storeConfig);
+                }
+            }
+
+            route = cacheRoute(this.relationshipQueryRoutes, relationshipClass, storeConfigs);
+        }
+
+        return route;
+    }
+
+    /**
+     * <p>Returns the store that should be used to validate or update credentials of the given type. Stores providing a
+     * handler for the exact credential type are preferred over those providing a handler for one of its super types.</p>
+     *
+     * @param credentialClass
+     *
+     * @return
+     */
+    @SuppressWarnings("rawtypes")
+    public Route getCredentialRoute(Class<?> credentialClass) {
+        Route route = this.credentialRoutes.get(credentialClass);
+
+        if (route == null) {
+            IdentityStoreConfiguration selectedConfig = null;
+
+            if (this.configuration.supportsCredential()) {
+                lookup:
+                for (IdentityStoreConfiguration storeConfig : this.configuration.getStoreConfiguration()) {
+                    if (storeConfig.supportsCredential()) {
+                        for (Class<? extends CredentialHandler> handlerClass : storeConfig.getCredentialHandlers()) {
+                            if (handlerClass.isAnnotationPresent(SupportsCredentials.class)) {
+                                for (Class<?> cls : handlerClass.getAnnotation(SupportsCredentials.class).credentialClass()) {
+                                    if (cls.isAssignableFrom(credentialClass)) {
+                                        selectedConfig = storeConfig;
+
+                                        // if we found a specific handler for the credential, stop looking.
+                                        if (cls.equals(credentialClass)) {
+                                            break lookup;
+                                        }
+                                    }
+                                }
+                            }
+                        }
+                    }
+                }
+            }
+
+            List<IdentityStoreConfiguration> storeConfigs;
+
+            if (selectedConfig != null) {
+                storeConfigs = Collections.singletonList(selectedConfig);
+            } else {
+                storeConfigs = Collections.emptyList();
+            }
+
+            route = cacheRoute(this.credentialRoutes, credentialClass, storeConfigs);
+        }
+
+        return route;
+    }
+
+    /**
+     * <p>Returns the credential stores providing a handler that uses the given {@link CredentialStorage} type.</p>
+     *
+     * @param storageClass
+     *
+     * @return
+     */
+    @SuppressWarnings("rawtypes")
+    public Route getCredentialStorageRoute(Class<? extends CredentialStorage> storageClass) {
+        Route route = this.credentialStorageRoutes.get(storageClass);
+
+        if (route == null) {
+            List<IdentityStoreConfiguration> storeConfigs = new ArrayList<IdentityStoreConfiguration>();
+
+            for (IdentityStoreConfiguration storeConfig : this.configuration.getStoreConfiguration()) {
+                IdentityStore<?> identityStore = this.stores.get(storeConfig);
+
+                if (CredentialStore.class.isInstance(identityStore) && storeConfig.supportsCredential()) {
+                    for (Class<? extends CredentialHandler> credentialHandler : storeConfig.getCredentialHandlers()) {
+                        SupportsCredentials supportedCredentials = credentialHandler.getAnnotation(SupportsCredentials.class);
+
+                        if (supportedCredentials != null && supportedCredentials.credentialStorage().equals(storageClass)) {
+                            storeConfigs.add(storeConfig);
+                            break;
+                        }
+                    }
+                }
+            }
+
+            route = cacheRoute(this.credentialStorageRoutes, storageClass, storeConfigs);
+        }
+
+        return route;
+    }
+
+    /**
+     * <p>Returns the stores supporting credentials.</p>
+     *
+     * @return
+     */
+    public Route getCredentialStores() {
+        return this.credentialStores;
+    }
+
+    /**
+     * <p>Returns the stores supporting permissions.</p>
+     *
+     * @return
+     */
+    public Route getPermissionStores() {
+        return this.permissionStores;
+    }
+
+    /**
+     * <p>Returns the stores supporting attributes.</p>
+     *
+     * @return
+     */
+    public Route getAttributeStores() {
+        return this.attributeStores;
+    }
+
+    public IdentityConfiguration getConfiguration() {
+        return this.configuration;
+    }
+
+    private Route cacheRoute(ConcurrentMap<Class<?>, Route> routes, Class<?> key, List<IdentityStoreConfiguration> storeConfigs) {
+        Route route = createRoute(storeConfigs);
+        Route existing = routes.putIfAbsent(key, route);
+
+        if (existing != null) {
+            return existing;
+        }
+
+        return route;
+    }
+
+    private Route createRoute(List<IdentityStoreConfiguration> storeConfigs) {
+        if (storeConfigs.isEmpty()) {
+            return EMPTY_ROUTE;
+        }
+
+        return new Route(storeConfigs, this.stores);
+    }
+
+    /**
+     * <p>An immutable list of stores, and their configuration, selected for a given type and operation.</p>
+     */
+    public static class Route {
+
+        private final IdentityStoreConfiguration[] storeConfigs;
+        private final IdentityStore<?>[] stores;
+        private final Set<IdentityStore<?>> storeSet;
+
+        private Route(List<IdentityStoreConfiguration> storeConfigs, Map<IdentityStoreConfiguration, IdentityStore<?>> stores) {
+            this.storeConfigs = storeConfigs.toArray(new IdentityStoreConfiguration[storeConfigs.size()]);
+            this.stores = new IdentityStore<?>[this.storeConfigs.length];
+
+            Set<IdentityStore<?>> storeSet = new LinkedHashSet<IdentityStore<?>>();
+
+            for (int i = 0; i < this.storeConfigs.length; i++) {
+                this.stores[i] = stores.get(this.storeConfigs[i]);
+                storeSet.add(this.stores[i]);
+            }
+
+            this.storeSet = Collections.unmodifiableSet(storeSet);
+        }
+
+        public boolean isEmpty() {
+            return this.stores.length == 0;
+        }
+
+        /**
+         * <p>Returns all stores in this route, after initializing the given context for each one of them.</p>
+         *
+         * @param context
+         *
+         * @return
+         */
+        public Set<IdentityStore<?>> getStores(IdentityContext context) {
+            for (int i = 0; i < this.stores.length; i++) {
+                this.storeConfigs[i].initializeContext(context, this.stores[i]);
+            }
+
+            return this.storeSet;
+        }
+
+        /**
+         * <p>Returns all stores in this route without initializing any context.</p>
+         *
+         * @return
+         */
+        public Set<IdentityStore<?>> getStores() {
+            return this.storeSet;
+        }
+
+        /**
+         * <p>Returns the first store in this route, after initializing the given context for it.</p>
+         *
+         * @param context
+         *
+         * @return The first store or null if the route is empty.
+         */
+        public <T extends IdentityStore<?>> T getFirstStore(IdentityContext context) {
+            return getStore(context, 0);
+        }
+
+        /**
+         * <p>Returns the last store in this route, after initializing the given context for it.</p>
+         *
+         * @param context
+         *
+         * @return The last store or null if the route is empty.
+         */
+        public <T extends IdentityStore<?>> T getLastStore(IdentityContext context) {
+            return getStore(context, this.stores.length - 1);
+        }
+
+        @SuppressWarnings("unchecked")
+        private <T extends IdentityStore<?>> T getStore(IdentityContext context, int index) {
+            if (isEmpty()) {
+                return null;
+            }
+
+            this.storeConfigs[index].initializeContext(context, this.stores[index]);
+
+            return (T) this.stores[index];
+        }
+    }
+}
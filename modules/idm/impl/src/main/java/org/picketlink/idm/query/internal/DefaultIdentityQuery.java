@@ -19,6 +19,8 @@
 package org.picketlink.idm.query.internal;
 
 import org.picketlink.idm.PartitionManager;
+import org.picketlink.idm.config.FileIdentityStoreConfiguration;
+import org.picketlink.idm.config.JPAIdentityStoreConfiguration;
 import org.picketlink.idm.model.IdentityType;
 import org.picketlink.idm.query.Condition;
 import org.picketlink.idm.query.IdentityQuery;
@@ -32,13 +34,21 @@ import org.picketlink.idm.spi.StoreSelector;
 
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
 import java.util.HashMap;
 import java.util.LinkedHashMap;
 import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
+import java.util.PriorityQueue;
 import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.RejectedExecutionException;
 
 import static java.util.Collections.unmodifiableSet;
 import static org.picketlink.idm.IDMInternalMessages.MESSAGES;
@@ -81,16 +91,22 @@ public class DefaultIdentityQuery<T extends IdentityType> implements IdentityQue
         }
 
         parameters.put(queryParameter, value);
+        this.conditions.add(createCondition(this.queryBuilder, queryParameter, value[0]));
 
+        return this;
+    }
+
+    /**
+     * <p>Creates the {@link Condition} equivalent to a parameter set with {@link #setParameter(QueryParameter, Object...)}.</p>
+     */
+    static Condition createCondition(IdentityQueryBuilder queryBuilder, QueryParameter queryParameter, Object value) {
         if (IdentityType.CREATED_AFTER.equals(queryParameter) || IdentityType.EXPIRY_AFTER.equals(queryParameter)) {
-            this.conditions.add(queryBuilder.greaterThanOrEqualTo(queryParameter, value[0]));
+            return queryBuilder.greaterThanOrEqualTo(queryParameter, value);
         } else if (IdentityType.CREATED_BEFORE.equals(queryParameter) || IdentityType.EXPIRY_BEFORE.equals(queryParameter)) {
-            this.conditions.add(queryBuilder.lessThanOrEqualTo(queryParameter, value[0]));
-        } else {
-            this.conditions.add(queryBuilder.equal(queryParameter, value[0]));
+            return queryBuilder.lessThanOrEqualTo(queryParameter, value);
         }
 
-        return this;
+        return queryBuilder.equal(queryParameter, value);
     }
 
     @Override
@@ -184,6 +200,12 @@ public class DefaultIdentityQuery<T extends IdentityType> implements IdentityQue
         try {
             Set<IdentityStore<?>> identityStores = this.storeSelector.getStoresForIdentityQuery(this.context, this.getIdentityType());
             AttributeStore<?> attributeStore = this.storeSelector.getStoreForAttributeOperation(context);
+            Executor executor = getQueryExecutor(identityStores);
+
+            // a pagination context returned by a sequential query belongs to a store that cannot be told apart
+            if (executor != null && (this.paginationContext == null || StorePaginationContexts.class.isInstance(this.paginationContext))) {
+                return fetchConcurrently(identityStores, attributeStore, executor);
+            }
 
             for (IdentityStore<?> store : identityStores) {
                 for (T identityType : store.fetchQueryResults(this.context, this)) {
@@ -208,6 +230,28 @@ public class DefaultIdentityQuery<T extends IdentityType> implements IdentityQue
         int count = 0;
 
         Set<IdentityStore<?>> identityStores = this.storeSelector.getStoresForIdentityQuery(this.context, this.getIdentityType());
+        Executor executor = getQueryExecutor(identityStores);
+
+        if (executor != null) {
+            List<FutureTask<Integer>> tasks = new ArrayList<FutureTask<Integer>>(identityStores.size());
+
+            for (IdentityStore<?> store : identityStores) {
+                final StoreIdentityQuery<T> storeQuery = new StoreIdentityQuery<T>(this, this.queryBuilder, this.context, store, 0);
+
+                tasks.add(new FutureTask<Integer>(new Callable<Integer>() {
+                    @Override
+                    public Integer call() throws Exception {
+                        return storeQuery.getResultCount();
+                    }
+                }));
+            }
+
+            for (Integer storeCount : execute(tasks, executor)) {
+                count = count + storeCount;
+            }
+
+            return count;
+        }
 
         for (IdentityStore<?> store : identityStores) {
             count = count + store.countQueryResults(this.context, this);
@@ -251,8 +295,239 @@ public class DefaultIdentityQuery<T extends IdentityType> implements IdentityQue
         return unmodifiableSet(this.conditions);
     }
 
+    /**
+     * <p>Queries each store concurrently and merges their results.</p>
+     *
+     * <p>Each store is asked for the first <code>offset + limit</code> results, which is enough to build the requested
+     * page. If the query is sorted, only the stores known to sort their results are limited, the others return all
+     * their results. The results of each store are then sorted according to the query and merged, or concatenated in
+     * the order the stores were selected if the query is not sorted. Partitions and attributes are only loaded for the
+     * resulting page.</p>
+     *
+     * <p>Stores paging their results with a pagination context keep their own context. When a store returns one, each
+     * store has paged its own results, which are concatenated as when the stores are queried by the caller thread.</p>
+     */
+    private List<T> fetchConcurrently(Set<IdentityStore<?>> identityStores, AttributeStore<?> attributeStore, Executor executor) {
+        int storeLimit = 0;
+
+        if (this.limit > 0) {
+            storeLimit = this.offset + this.limit;
+        }
+
+        Map<IdentityStore<?>, Object> storeContexts = Collections.emptyMap();
+
+        if (this.paginationContext != null) {
+            storeContexts = ((StorePaginationContexts) this.paginationContext).contexts;
+        }
+
+        List<StoreIdentityQuery<T>> storeQueries = new ArrayList<StoreIdentityQuery<T>>(identityStores.size());
+        List<FutureTask<List<T>>> tasks = new ArrayList<FutureTask<List<T>>>(identityStores.size());
+
+        for (IdentityStore<?> store : identityStores) {
+            int limit = storeLimit;
+
+            // a store ignoring the sorting would return an arbitrary subset of its results
+            if (!this.ordering.isEmpty() && !supportsSorting(store)) {
+                limit = 0;
+            }
+
+            final StoreIdentityQuery<T> storeQuery = new StoreIdentityQuery<T>(this, this.queryBuilder, this.context, store, limit);
+
+            storeQuery.setPaginationContext(storeContexts.get(store));
+
+            storeQueries.add(storeQuery);
+            tasks.add(new FutureTask<List<T>>(new Callable<List<T>>() {
+                @Override
+                public List<T> call() throws Exception {
+                    return storeQuery.getResultList();
+                }
+            }));
+        }
+
+        List<List<T>> storeResults = execute(tasks, executor);
+
+        Map<IdentityStore<?>, Object> returnedContexts = new HashMap<IdentityStore<?>, Object>();
+
+        for (StoreIdentityQuery<T> storeQuery : storeQueries) {
+            if (storeQuery.getPaginationContext() != null) {
+                returnedContexts.put(storeQuery.getStore(), storeQuery.getPaginationContext());
+            }
+        }
+
+        boolean storePaging = !returnedContexts.isEmpty();
+
+        this.paginationContext = storePaging ? new StorePaginationContexts(returnedContexts) : null;
+
+        List<T> result = new ArrayList<T>();
+        List<IdentityStore<?>> resultStores = new ArrayList<IdentityStore<?>>();
+
+        if (this.ordering.isEmpty()) {
+            for (int i = 0; i < storeResults.size(); i++) {
+                for (T identityType : storeResults.get(i)) {
+                    result.add(identityType);
+                    resultStores.add(storeQueries.get(i).getStore());
+                }
+            }
+        } else {
+            merge(storeResults, storeQueries, result, resultStores);
+        }
+
+        int fromIndex = 0;
+        int toIndex = result.size();
+
+        if (!storePaging) {
+            fromIndex = Math.min(Math.max(this.offset, 0), result.size());
+
+            if (this.limit > 0) {
+                toIndex = Math.min(fromIndex + this.limit, toIndex);
+            }
+        }
+
+        List<T> page = new ArrayList<T>(result.subList(fromIndex, toIndex));
+
+        for (int i = 0; i < page.size(); i++) {
+            T identityType = page.get(i);
+
+            configureDefaultPartition(identityType, resultStores.get(fromIndex + i), getPartitionManager());
+
+            if (attributeStore != null) {
+                attributeStore.loadAttributes(this.context, identityType);
+            }
+        }
+
+        return page;
+    }
+
+    /**
+     * <p>Performs a k-way merge of the results returned by each store. The results of a store are sorted first, in case
+     * the store does not support some of the sorting parameters. Ties are resolved by the order in which the stores were
+     * selected.</p>
+     */
+    private void merge(List<List<T>> storeResults, List<StoreIdentityQuery<T>> storeQueries, List<T> result,
+                       List<IdentityStore<?>> resultStores) {
+        final SortingComparator<T> comparator = new SortingComparator<T>(this.ordering);
+        final List<List<T>> results = new ArrayList<List<T>>(storeResults.size());
+
+        for (List<T> storeResult : storeResults) {
+            List<T> sortedResult = new ArrayList<T>(storeResult);
+
+            Collections.sort(sortedResult, comparator);
+            results.add(sortedResult);
+        }
+
+        PriorityQueue<int[]> cursors = new PriorityQueue<int[]>(storeResults.size(), new Comparator<int[]>() {
+            @Override
+            public int compare(int[] cursor1, int[] cursor2) {
+                int sortResult = comparator.compare(results.get(cursor1[0]).get(cursor1[1]), results.get(cursor2[0]).get(cursor2[1]));
+
+                if (sortResult == 0) {
+                    return cursor1[0] - cursor2[0];
+                }
+
+                return sortResult;
+            }
+        });
+
+        for (int i = 0; i < results.size(); i++) {
+            if (!results.get(i).isEmpty()) {
+                // each cursor holds the index of the store and the index of its current result
+                cursors.add(new int[] {i, 0});
+            }
+        }
+
+        while (!cursors.isEmpty()) {
+            int[] cursor = cursors.poll();
+            List<T> storeResult = results.get(cursor[0]);
+
+            result.add(storeResult.get(cursor[1]));
+            resultStores.add(storeQueries.get(cursor[0]).getStore());
+
+            cursor[1]++;
+
+            if (cursor[1] < storeResult.size()) {
+                cursors.add(cursor);
+            }
+        }
+    }
+
+    /**
+     * <p>Executes the given tasks using the executor and waits for their results. Tasks rejected by the executor are
+     * executed by the caller thread.</p>
+     */
+    private <R> List<R> execute(List<FutureTask<R>> tasks, Executor executor) {
+        for (FutureTask<R> task : tasks) {
+            try {
+                executor.execute(task);
+            } catch (RejectedExecutionException ree) {
+                task.run();
+            }
+        }
+
+        List<R> results = new ArrayList<R>(tasks.size());
+
+        try {
+            for (FutureTask<R> task : tasks) {
+                results.add(task.get());
+            }
+        } catch (InterruptedException ie) {
+            Thread.currentThread().interrupt();
+            cancel(tasks);
+            throw MESSAGES.queryIdentityTypeFailed(this, ie);
+        } catch (ExecutionException ee) {
+            cancel(tasks);
+
+            // propagate store exceptions as if the stores were queried by the caller thread
+            if (RuntimeException.class.isInstance(ee.getCause())) {
+                throw (RuntimeException) ee.getCause();
+            }
+
+            throw MESSAGES.queryIdentityTypeFailed(this, ee.getCause());
+        }
+
+        return results;
+    }
+
+    private <R> void cancel(List<FutureTask<R>> tasks) {
+        for (FutureTask<R> task : tasks) {
+            task.cancel(true);
+        }
+    }
+
+    /**
+     * <p>Returns the executor used to query the given stores concurrently, if one was provided by the context and there
+     * is more than one store to query.</p>
+     */
+    private Executor getQueryExecutor(Set<IdentityStore<?>> identityStores) {
+        if (identityStores.size() > 1 && this.context.isParameterSet(IdentityContext.QUERY_EXECUTOR)) {
+            return this.context.getParameter(IdentityContext.QUERY_EXECUTOR);
+        }
+
+        return null;
+    }
+
+    /**
+     * <p>Returns whether the given store is known to sort its results according to the query, as the JPA and file
+     * stores do.</p>
+     */
+    private boolean supportsSorting(IdentityStore<?> store) {
+        return JPAIdentityStoreConfiguration.class.isInstance(store.getConfig())
+            || FileIdentityStoreConfiguration.class.isInstance(store.getConfig());
+    }
+
     private PartitionManager getPartitionManager() {
         return (PartitionManager) this.storeSelector;
     }
 
+    /**
+     * <p>The pagination contexts returned by each store when the stores are queried concurrently.</p>
+     */
+    private static class StorePaginationContexts {
+
+        private final Map<IdentityStore<?>, Object> contexts;
+
+        StorePaginationContexts(Map<IdentityStore<?>, Object> contexts) {
+            this.contexts = contexts;
+        }
+    }
+
 }
@@ -0,0 +1,140 @@
+/*
+ * JBoss, Home of Professional Open Source
+ *
+ * Copyright 2013 Red Hat, Inc. and/or its affiliates.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.picketlink.idm.query.internal;
+
+import org.picketlink.common.properties.Property;
+import org.picketlink.common.properties.query.NamedPropertyCriteria;
+import org.picketlink.common.properties.query.PropertyQueries;
+import org.picketlink.idm.model.Attribute;
+import org.picketlink.idm.model.IdentityType;
+import org.picketlink.idm.query.AttributeParameter;
+import org.picketlink.idm.query.QueryParameter;
+import org.picketlink.idm.query.Sort;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * <p>Compares identity types according to the {@link Sort} parameters of a query.</p>
+ *
+ * <p>Values are compared using their natural ordering, null values are placed last. Attribute parameters are resolved
+ * from the properties of the type and, if there is no such property, from its ad-hoc attributes. Instances are not
+ * thread-safe.</p>
+ *
+ * @param <T>
+ */
+class SortingComparator<T extends IdentityType> implements Comparator<T> {
+
+    private final List<Sort> sorting;
+    private final Map<Class<?>, Map<String, Property<Serializable>>> properties = new HashMap<Class<?>, Map<String, Property<Serializable>>>();
+
+    SortingComparator(Set<Sort> sorting) {
+        this.sorting = new ArrayList<Sort>(sorting);
+    }
+
+    @Override
+    public int compare(T o1, T o2) {
+        for (Sort sort : this.sorting) {
+            QueryParameter queryParameter = sort.getParameter();
+            int sortResult = compareValues(getValue(queryParameter, o1), getValue(queryParameter, o2));
+
+            if (sortResult != 0) {
+                // Negate result if descending order is required
+                if (!sort.isAscending()) {
+                    return -sortResult;
+                }
+
+                return sortResult;
+            }
+        }
+
+        return 0;
+    }
+
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    private int compareValues(Object value1, Object value2) {
+        if (value1 == value2) {
+            return 0;
+        }
+
+        if (value1 == null) {
+            return 1;
+        }
+
+        if (value2 == null) {
+            return -1;
+        }
+
+        if (Comparable.class.isInstance(value1) && value1.getClass().isInstance(value2)) {
+            return ((Comparable) value1).compareTo(value2);
+        }
+
+        return value1.toString().compareTo(value2.toString());
+    }
+
+    private Object getValue(QueryParameter queryParameter, T identityType) {
+        if (IdentityType.ID.equals(queryParameter)) {
+            return identityType.getId();
+        } else if (IdentityType.ENABLED.equals(queryParameter)) {
+            return identityType.isEnabled();
+        } else if (IdentityType.CREATED_DATE.equals(queryParameter)) {
+            return identityType.getCreatedDate();
+        } else if (IdentityType.EXPIRY_DATE.equals(queryParameter)) {
+            return identityType.getExpirationDate();
+        } else if (AttributeParameter.class.isInstance(queryParameter)) {
+            String name = ((AttributeParameter) queryParameter).getName();
+            Property<Serializable> property = getProperty(identityType.getClass(), name);
+
+            if (property != null) {
+                return property.getValue(identityType);
+            }
+
+            Attribute<Serializable> attribute = identityType.getAttribute(name);
+
+            if (attribute != null) {
+                return attribute.getValue();
+            }
+        }
+
+        return null;
+    }
+
+    private Property<Serializable> getProperty(Class<?> type, String name) {
+        Map<String, Property<Serializable>> typeProperties = this.properties.get(type);
+
+        if (typeProperties == null) {
+            typeProperties = new HashMap<String, Property<Serializable>>();
+            this.properties.put(type, typeProperties);
+        }
+
+        if (!typeProperties.containsKey(name)) {
+            List<Property<Serializable>> result = PropertyQueries.<Serializable>createQuery(type)
+                .addCriteria(new NamedPropertyCriteria(name)).getResultList();
+
+            typeProperties.put(name, result.isEmpty() ? null : result.get(0));
+        }
+
+        return typeProperties.get(name);
+    }
+}
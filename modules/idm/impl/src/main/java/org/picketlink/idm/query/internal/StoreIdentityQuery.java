@@ -0,0 +1,219 @@
+/*
+ * JBoss, Home of Professional Open Source
+ *
+ * Copyright 2013 Red Hat, Inc. and/or its affiliates.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.picketlink.idm.query.internal;
+
+import org.picketlink.idm.model.IdentityType;
+import org.picketlink.idm.query.Condition;
+import org.picketlink.idm.query.IdentityQuery;
+import org.picketlink.idm.query.IdentityQueryBuilder;
+import org.picketlink.idm.query.QueryParameter;
+import org.picketlink.idm.query.Sort;
+import org.picketlink.idm.spi.IdentityContext;
+import org.picketlink.idm.spi.IdentityStore;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.Set;
+
+import static java.util.Collections.unmodifiableSet;
+import static org.picketlink.idm.IDMInternalMessages.MESSAGES;
+
+/**
+ * <p>A view of an {@link IdentityQuery} that is executed against a single {@link IdentityStore}.</p>
+ *
+ * <p>Criteria and sorting are copied from the original query when the view is created. Pagination state is kept by
+ * the view, so each store can be queried concurrently with its own limit and offset. Changes made by a store to its
+ * view do not affect the original query or the other views.</p>
+ *
+ * @param <T>
+ */
+class StoreIdentityQuery<T extends IdentityType> implements IdentityQuery<T> {
+
+    private final Class<T> identityType;
+    private final IdentityQueryBuilder queryBuilder;
+    private final IdentityContext context;
+    private final IdentityStore<?> store;
+    private final Map<QueryParameter, Object[]> parameters;
+    private final Set<Condition> conditions;
+    private final Set<Sort> ordering;
+    private QueryParameter[] sortParameters;
+    private boolean sortAscending;
+    private int offset;
+    private int limit;
+    private Object paginationContext;
+
+    @SuppressWarnings("deprecation")
+    StoreIdentityQuery(IdentityQuery<T> query, IdentityQueryBuilder queryBuilder, IdentityContext context,
+                       IdentityStore<?> store, int limit) {
+        this.identityType = query.getIdentityType();
+        this.queryBuilder = queryBuilder;
+        this.context = context;
+        this.store = store;
+        this.parameters = new LinkedHashMap<QueryParameter, Object[]>(query.getParameters());
+        this.conditions = new LinkedHashSet<Condition>(query.getConditions());
+        this.ordering = new LinkedHashSet<Sort>(query.getSorting());
+        this.sortParameters = query.getSortParameters();
+        this.sortAscending = query.isSortAscending();
+        this.limit = limit;
+    }
+
+    IdentityStore<?> getStore() {
+        return this.store;
+    }
+
+    @Override
+    public List<T> getResultList() {
+        return this.store.fetchQueryResults(this.context, this);
+    }
+
+    @Override
+    public int getResultCount() {
+        return this.store.countQueryResults(this.context, this);
+    }
+
+    @Override
+    public int getOffset() {
+        return this.offset;
+    }
+
+    @Override
+    public IdentityQuery<T> setOffset(int offset) {
+        this.offset = offset;
+        return this;
+    }
+
+    @Override
+    public int getLimit() {
+        return this.limit;
+    }
+
+    @Override
+    public IdentityQuery<T> setLimit(int limit) {
+        this.limit = limit;
+        return this;
+    }
+
+    @Override
+    public Object getPaginationContext() {
+        return this.paginationContext;
+    }
+
+    @Override
+    public IdentityQuery<T> setPaginationContext(Object object) {
+        this.paginationContext = object;
+        return this;
+    }
+
+    @Deprecated
+    @Override
+    public QueryParameter[] getSortParameters() {
+        return this.sortParameters;
+    }
+
+    @Deprecated
+    @Override
+    public IdentityQuery<T> setSortParameters(QueryParameter... sortParameters) {
+        this.sortParameters = sortParameters;
+        return this;
+    }
+
+    @Deprecated
+    @Override
+    public boolean isSortAscending() {
+        return this.sortAscending;
+    }
+
+    @Deprecated
+    @Override
+    public IdentityQuery<T> setSortAscending(boolean sortAscending) {
+        this.sortAscending = sortAscending;
+        return this;
+    }
+
+    @Deprecated
+    @Override
+    public IdentityQuery<T> setParameter(QueryParameter queryParameter, Object... value) {
+        if (value == null || value.length == 0) {
+            throw MESSAGES.nullArgument("Query Parameter values null or empty");
+        }
+
+        this.parameters.put(queryParameter, value);
+        this.conditions.add(DefaultIdentityQuery.createCondition(this.queryBuilder, queryParameter, value[0]));
+
+        return this;
+    }
+
+    @Override
+    public IdentityQuery<T> where(Condition... condition) {
+        this.conditions.addAll(Arrays.asList(condition));
+        return this;
+    }
+
+    @Override
+    public IdentityQuery<T> sortBy(Sort... sorts) {
+        this.ordering.addAll(Arrays.asList(sorts));
+        return this;
+    }
+
+    @Override
+    public Class<T> getIdentityType() {
+        return this.identityType;
+    }
+
+    @Deprecated
+    @Override
+    public Map<QueryParameter, Object[]> getParameters() {
+        return this.parameters;
+    }
+
+    @Override
+    public Set<Condition> getConditions() {
+        return unmodifiableSet(this.conditions);
+    }
+
+    @Override
+    public Set<Sort> getSorting() {
+        return unmodifiableSet(this.ordering);
+    }
+
+    @Deprecated
+    @Override
+    public Object[] getParameter(QueryParameter queryParameter) {
+        return this.parameters.get(queryParameter);
+    }
+
+    @Deprecated
+    @Override
+    public Map<QueryParameter, Object[]> getParameters(Class<?> type) {
+        Map<QueryParameter, Object[]> typedParameters = new HashMap<QueryParameter, Object[]>();
+
+        for (Entry<QueryParameter, Object[]> entry : this.parameters.entrySet()) {
+            if (type.isInstance(entry.getKey())) {
+                typedParameters.put(entry.getKey(), entry.getValue());
+            }
+        }
+
+        return typedParameters;
+    }
+}
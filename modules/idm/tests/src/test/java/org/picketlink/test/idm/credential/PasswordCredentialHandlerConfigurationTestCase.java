@@ -45,13 +45,18 @@ import org.picketlink.idm.model.basic.User;
 import org.picketlink.idm.spi.CredentialStore;
 
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNotNull;
 import static org.junit.Assert.assertTrue;
 import static org.junit.Assert.fail;
@@ -139,6 +144,173 @@ public class PasswordCredentialHandlerConfigurationTestCase {
         assertEquals(Status.VALID, credential.getStatus());
     }
 
+    @Test
+    public void testHashingThreadPool() throws Exception {
+        final Set<String> hashingThreads = Collections.synchronizedSet(new HashSet<String>());
+
+        IdentityConfigurationBuilder builder = new IdentityConfigurationBuilder();
+
+        builder
+            .named("default")
+                .stores()
+                    .file()
+                        .setCredentialHandlerProperty(PasswordCredentialHandler.HASHING_THREAD_POOL_SIZE, 2)
+                        .setCredentialHandlerProperty(PasswordCredentialHandler.HASHING_QUEUE_SIZE, 10)
+                        .setCredentialHandlerProperty(PASSWORD_ENCODER, new SHAPasswordEncoder(512) {
+                            @Override
+                            public boolean verify(String rawPassword, String encodedPassword) {
+                                hashingThreads.add(Thread.currentThread().getName());
+                                return super.verify(rawPassword, encodedPassword);
+                            }
+                        })
+                        .supportAllFeatures();
+
+        PartitionManager partitionManager = new DefaultPartitionManager(builder.build());
+
+        partitionManager.add(new Realm(Realm.DEFAULT_REALM));
+
+        IdentityManager identityManager = partitionManager.createIdentityManager();
+
+        User user = new User("user");
+
+        identityManager.add(user);
+
+        user = getUser(identityManager, user.getLoginName());
+
+        assertNotNull(user);
+
+        Password password = new Password("123");
+
+        identityManager.updateCredential(user, password);
+
+        UsernamePasswordCredentials credential = new UsernamePasswordCredentials(user.getLoginName(), password);
+
+        identityManager.validateCredentials(credential);
+
+        assertEquals(Status.VALID, credential.getStatus());
+
+        credential = new UsernamePasswordCredentials(user.getLoginName(), new Password("bad_password"));
+
+        identityManager.validateCredentials(credential);
+
+        assertEquals(Status.INVALID, credential.getStatus());
+
+        assertFalse(hashingThreads.isEmpty());
+
+        for (String threadName : hashingThreads) {
+            assertTrue(threadName.startsWith("picketlink-password-hashing-"));
+        }
+
+        // closing the partition manager shuts the hashing pool down, later validations run on the caller thread
+        ((DefaultPartitionManager) partitionManager).close(1000);
+
+        hashingThreads.clear();
+
+        credential = new UsernamePasswordCredentials(user.getLoginName(), password);
+
+        identityManager.validateCredentials(credential);
+
+        assertEquals(Status.VALID, credential.getStatus());
+        assertEquals(Collections.singleton(Thread.currentThread().getName()), hashingThreads);
+    }
+
+    @Test
+    public void testHashingQueueRejection() throws Exception {
+        final CountDownLatch hashing = new CountDownLatch(1);
+        final CountDownLatch release = new CountDownLatch(1);
+
+        IdentityConfigurationBuilder builder = new IdentityConfigurationBuilder();
+
+        builder
+            .named("default")
+                .stores()
+                    .file()
+                        .setCredentialHandlerProperty(PasswordCredentialHandler.HASHING_THREAD_POOL_SIZE, 1)
+                        .setCredentialHandlerProperty(PasswordCredentialHandler.HASHING_QUEUE_SIZE, 1)
+                        .setCredentialHandlerProperty(PASSWORD_ENCODER, new SHAPasswordEncoder(512) {
+                            @Override
+                            public boolean verify(String rawPassword, String encodedPassword) {
+                                hashing.countDown();
+
+                                try {
+                                    release.await();
+                                } catch (InterruptedException e) {
+                                    Thread.currentThread().interrupt();
+                                }
+
+                                return super.verify(rawPassword, encodedPassword);
+                            }
+                        })
+                        .supportAllFeatures();
+
+        PartitionManager partitionManager = new DefaultPartitionManager(builder.build());
+
+        partitionManager.add(new Realm(Realm.DEFAULT_REALM));
+
+        final IdentityManager identityManager = partitionManager.createIdentityManager();
+
+        User user = new User("user");
+
+        identityManager.add(user);
+
+        final Password password = new Password("123");
+
+        identityManager.updateCredential(user, password);
+
+        final List<UsernamePasswordCredentials> credentials = Collections.synchronizedList(
+            new ArrayList<UsernamePasswordCredentials>());
+
+        Runnable validation = new Runnable() {
+            @Override
+            public void run() {
+                UsernamePasswordCredentials credential = new UsernamePasswordCredentials("user", password);
+
+                identityManager.validateCredentials(credential);
+
+                credentials.add(credential);
+            }
+        };
+
+        // the first validation keeps the only hashing thread busy, the second one waits in the queue
+        Thread running = new Thread(validation);
+
+        running.start();
+
+        assertTrue(hashing.await(10, TimeUnit.SECONDS));
+
+        Thread queued = new Thread(validation);
+
+        queued.start();
+
+        while (queued.getState() != Thread.State.TIMED_WAITING && queued.isAlive()) {
+            Thread.sleep(10);
+        }
+
+        try {
+            identityManager.validateCredentials(new UsernamePasswordCredentials("user", password));
+            fail("Validation should be rejected when the hashing queue is full.");
+        } catch (IdentityManagementException ime) {
+            Throwable cause = ime;
+
+            while (cause != null && !RejectedExecutionException.class.isInstance(cause)) {
+                cause = cause.getCause();
+            }
+
+            assertNotNull(cause);
+        } finally {
+            release.countDown();
+        }
+
+        running.join(10000);
+        queued.join(10000);
+
+        assertEquals(2, credentials.size());
+
+        for (UsernamePasswordCredentials credential : credentials) {
+            assertEquals(Status.VALID, credential.getStatus());
+        }
+    }
+
     @Test
     public void testCustomSHAPasswordEncoder() throws Exception {
         IdentityConfigurationBuilder builder = new IdentityConfigurationBuilder();
@@ -0,0 +1,414 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2012, Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+
+package org.picketlink.test.idm.event;
+
+import org.junit.Test;
+import org.picketlink.idm.IdentityManager;
+import org.picketlink.idm.config.IdentityConfigurationBuilder;
+import org.picketlink.idm.event.AsyncEventBridge;
+import org.picketlink.idm.event.AsyncEventBridge.OverflowPolicy;
+import org.picketlink.idm.event.BatchEventBridge;
+import org.picketlink.idm.event.EventBridge;
+import org.picketlink.idm.event.IdentityTypeCreatedEvent;
+import org.picketlink.idm.internal.DefaultPartitionManager;
+import org.picketlink.idm.model.basic.Realm;
+import org.picketlink.idm.model.basic.User;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * <p>Tests for the {@link AsyncEventBridge}.</p>
+ */
+public class AsyncEventBridgeTestCase {
+
+    @Test
+    public void testEventsDeliveredInOrder() throws Exception {
+        final List<Object> deliveredEvents = Collections.synchronizedList(new ArrayList<Object>());
+
+        AsyncEventBridge eventBridge = new AsyncEventBridge(new EventBridge() {
+            @Override
+            public void raiseEvent(Object event) {
+                deliveredEvents.add(event);
+            }
+        }, 16, 4, OverflowPolicy.BLOCK);
+
+        for (int i = 0; i < 100; i++) {
+            eventBridge.raiseEvent(i);
+        }
+
+        eventBridge.close(5000);
+
+        assertEquals(100, deliveredEvents.size());
+
+        for (int i = 0; i < 100; i++) {
+            assertEquals(i, deliveredEvents.get(i));
+        }
+    }
+
+    @Test
+    public void testSynchronousEventType() throws Exception {
+        final List<Thread> deliveryThreads = Collections.synchronizedList(new ArrayList<Thread>());
+
+        AsyncEventBridge eventBridge = new AsyncEventBridge(new EventBridge() {
+            @Override
+            public void raiseEvent(Object event) {
+                deliveryThreads.add(Thread.currentThread());
+            }
+        }, 16, 4, OverflowPolicy.BLOCK, IdentityTypeCreatedEvent.class);
+
+        eventBridge.raiseEvent(new IdentityTypeCreatedEvent(new User("user"), null));
+
+        assertEquals(1, deliveryThreads.size());
+        assertSame(Thread.currentThread(), deliveryThreads.get(0));
+
+        eventBridge.close(5000);
+    }
+
+    @Test
+    public void testDropWhenBufferIsFull() throws Exception {
+        final CountDownLatch blocker = new CountDownLatch(1);
+        final CountDownLatch dispatching = new CountDownLatch(1);
+
+        AsyncEventBridge eventBridge = new AsyncEventBridge(new EventBridge() {
+            @Override
+            public void raiseEvent(Object event) {
+                dispatching.countDown();
+
+                try {
+                    blocker.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+        }, 2, 1, OverflowPolicy.DROP);
+
+        eventBridge.raiseEvent("first");
+
+        assertTrue(dispatching.await(5, TimeUnit.SECONDS));
+
+        eventBridge.raiseEvent("second");
+        eventBridge.raiseEvent("third");
+        eventBridge.raiseEvent("fourth");
+
+        assertEquals(1, eventBridge.getDroppedEvents());
+
+        blocker.countDown();
+        eventBridge.close(5000);
+    }
+
+    @Test
+    public void testCallerRunsWhenBufferIsFull() throws Exception {
+        final CountDownLatch blocker = new CountDownLatch(1);
+        final CountDownLatch dispatching = new CountDownLatch(1);
+        final List<Object> callerEvents = Collections.synchronizedList(new ArrayList<Object>());
+        final Thread callerThread = Thread.currentThread();
+
+        AsyncEventBridge eventBridge = new AsyncEventBridge(new EventBridge() {
+            @Override
+            public void raiseEvent(Object event) {
+                if (Thread.currentThread() == callerThread) {
+                    callerEvents.add(event);
+                    return;
+                }
+
+                dispatching.countDown();
+
+                try {
+                    blocker.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+        }, 1, 1, OverflowPolicy.CALLER_RUNS);
+
+        eventBridge.raiseEvent("first");
+
+        assertTrue(dispatching.await(5, TimeUnit.SECONDS));
+
+        eventBridge.raiseEvent("second");
+        eventBridge.raiseEvent("third");
+
+        assertEquals(1, callerEvents.size());
+        assertEquals("third", callerEvents.get(0));
+
+        blocker.countDown();
+        eventBridge.close(5000);
+    }
+
+    @Test
+    public void testBlockWhenBufferIsFull() throws Exception {
+        final BlockingBridge delegate = new BlockingBridge();
+        final AsyncEventBridge eventBridge = new AsyncEventBridge(delegate, 1, 1, OverflowPolicy.BLOCK);
+
+        eventBridge.raiseEvent("first");
+
+        assertTrue(delegate.dispatching.await(5, TimeUnit.SECONDS));
+
+        eventBridge.raiseEvent("second");
+
+        Thread raiser = raiseInThread(eventBridge, "third");
+
+        raiser.join(200);
+
+        // the buffer is full, the caller waits for the dispatcher
+        assertTrue(raiser.isAlive());
+        assertEquals(0, eventBridge.getDroppedEvents());
+
+        delegate.blocker.countDown();
+        raiser.join(5000);
+
+        assertFalse(raiser.isAlive());
+
+        eventBridge.close(5000);
+
+        assertEquals(3, delegate.deliveredEvents.size());
+        assertEquals("first", delegate.deliveredEvents.get(0));
+        assertEquals("second", delegate.deliveredEvents.get(1));
+        assertEquals("third", delegate.deliveredEvents.get(2));
+    }
+
+    @Test
+    public void testCloseDeliversPendingEvents() throws Exception {
+        final BlockingBridge delegate = new BlockingBridge();
+        final AsyncEventBridge eventBridge = new AsyncEventBridge(delegate, 16, 4, OverflowPolicy.BLOCK);
+
+        eventBridge.raiseEvent(0);
+
+        assertTrue(delegate.dispatching.await(5, TimeUnit.SECONDS));
+
+        for (int i = 1; i < 10; i++) {
+            eventBridge.raiseEvent(i);
+        }
+
+        assertEquals(9, eventBridge.getPendingEvents());
+
+        delegate.blocker.countDown();
+        eventBridge.close(5000);
+
+        assertTrue(eventBridge.isClosed());
+        assertEquals(0, eventBridge.getPendingEvents());
+        assertEquals(10, delegate.deliveredEvents.size());
+
+        // events raised after close are delivered on the caller thread
+        eventBridge.raiseEvent("after close");
+
+        assertEquals(11, delegate.deliveredEvents.size());
+        assertSame(Thread.currentThread(), delegate.deliveryThreads.get(10));
+    }
+
+    @Test
+    public void testCloseWhileCallerIsBlocked() throws Exception {
+        final BlockingBridge delegate = new BlockingBridge();
+        final AsyncEventBridge eventBridge = new AsyncEventBridge(delegate, 1, 1, OverflowPolicy.BLOCK);
+
+        eventBridge.raiseEvent("first");
+
+        assertTrue(delegate.dispatching.await(5, TimeUnit.SECONDS));
+
+        eventBridge.raiseEvent("second");
+
+        Thread raiser = raiseInThread(eventBridge, "third");
+
+        while (raiser.getState() != Thread.State.WAITING && raiser.isAlive()) {
+            Thread.sleep(10);
+        }
+
+        Thread closer = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                eventBridge.close(5000);
+            }
+        });
+
+        closer.start();
+        closer.join(200);
+
+        // close waits for the blocked caller to enqueue its event
+        assertTrue(closer.isAlive());
+
+        delegate.blocker.countDown();
+
+        raiser.join(5000);
+        closer.join(5000);
+
+        assertFalse(closer.isAlive());
+        assertEquals(3, delegate.deliveredEvents.size());
+        assertEquals("third", delegate.deliveredEvents.get(2));
+    }
+
+    @Test
+    public void testBatchDelivery() throws Exception {
+        final CountDownLatch blocker = new CountDownLatch(1);
+        final CountDownLatch dispatching = new CountDownLatch(1);
+        final List<List<Object>> batches = Collections.synchronizedList(new ArrayList<List<Object>>());
+
+        AsyncEventBridge eventBridge = new AsyncEventBridge(new BatchEventBridge() {
+            @Override
+            public void raiseEvents(List<Object> events) {
+                batches.add(events);
+                dispatching.countDown();
+
+                try {
+                    blocker.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+
+            @Override
+            public void raiseEvent(Object event) {
+                raiseEvents(Collections.singletonList(event));
+            }
+        }, 16, 4, OverflowPolicy.BLOCK);
+
+        eventBridge.raiseEvent(0);
+
+        assertTrue(dispatching.await(5, TimeUnit.SECONDS));
+
+        for (int i = 1; i <= 10; i++) {
+            eventBridge.raiseEvent(i);
+        }
+
+        blocker.countDown();
+        eventBridge.close(5000);
+
+        assertEquals(4, batches.size());
+        assertEquals(1, batches.get(0).size());
+        assertEquals(4, batches.get(1).size());
+        assertEquals(4, batches.get(2).size());
+        assertEquals(2, batches.get(3).size());
+
+        int expected = 0;
+
+        for (List<Object> batch : batches) {
+            for (Object event : batch) {
+                assertEquals(expected++, event);
+            }
+        }
+    }
+
+    @Test
+    public void testPartitionManagerAsyncEvents() throws Exception {
+        final List<Object> deliveredEvents = Collections.synchronizedList(new ArrayList<Object>());
+        final List<Thread> deliveryThreads = Collections.synchronizedList(new ArrayList<Thread>());
+
+        IdentityConfigurationBuilder builder = new IdentityConfigurationBuilder();
+
+        builder
+            .named("default")
+                .stores()
+                    .file()
+                        .supportAllFeatures();
+
+        DefaultPartitionManager partitionManager = new DefaultPartitionManager(Collections.singletonList(builder.build()),
+            new EventBridge() {
+                @Override
+                public void raiseEvent(Object event) {
+                    deliveredEvents.add(event);
+                    deliveryThreads.add(Thread.currentThread());
+                }
+            }, null);
+
+        partitionManager.enableAsyncEvents(16, 4, OverflowPolicy.BLOCK);
+
+        partitionManager.add(new Realm(Realm.DEFAULT_REALM));
+
+        IdentityManager identityManager = partitionManager.createIdentityManager();
+
+        identityManager.add(new User("user"));
+
+        partitionManager.close(5000);
+
+        boolean userCreated = false;
+
+        for (Object event : deliveredEvents) {
+            if (event instanceof IdentityTypeCreatedEvent) {
+                userCreated = true;
+            }
+        }
+
+        assertTrue(userCreated);
+
+        for (Thread deliveryThread : deliveryThreads) {
+            assertEquals("picketlink-event-dispatcher", deliveryThread.getName());
+        }
+
+        // enabling asynchronous delivery again wraps the original bridge, not the closed one
+        EventBridge originalBridge = partitionManager.enableAsyncEvents(16, 4, OverflowPolicy.BLOCK).getDelegate();
+
+        partitionManager.close(5000);
+
+        assertSame(originalBridge, partitionManager.enableAsyncEvents(16, 4, OverflowPolicy.BLOCK).getDelegate());
+        assertFalse(AsyncEventBridge.class.isInstance(originalBridge));
+
+        partitionManager.close(5000);
+    }
+
+    private Thread raiseInThread(final EventBridge eventBridge, final Object event) {
+        Thread thread = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                eventBridge.raiseEvent(event);
+            }
+        });
+
+        thread.start();
+
+        return thread;
+    }
+
+    /**
+     * <p>Records the delivered events and blocks the dispatcher on the first one until {@link #blocker} is released.</p>
+     */
+    private static class BlockingBridge implements EventBridge {
+
+        final CountDownLatch blocker = new CountDownLatch(1);
+        final CountDownLatch dispatching = new CountDownLatch(1);
+        final List<Object> deliveredEvents = Collections.synchronizedList(new ArrayList<Object>());
+        final List<Thread> deliveryThreads = Collections.synchronizedList(new ArrayList<Thread>());
+
+        @Override
+        public void raiseEvent(Object event) {
+            this.deliveredEvents.add(event);
+            this.deliveryThreads.add(Thread.currentThread());
+            this.dispatching.countDown();
+
+            if (Thread.currentThread().getName().equals("picketlink-event-dispatcher")) {
+                try {
+                    this.blocker.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+        }
+    }
+}
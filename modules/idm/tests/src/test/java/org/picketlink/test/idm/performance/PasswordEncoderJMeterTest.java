@@ -0,0 +1,92 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2012, Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+
+package org.picketlink.test.idm.performance;
+
+import org.apache.jmeter.config.Arguments;
+import org.apache.jmeter.protocol.java.sampler.AbstractJavaSamplerClient;
+import org.apache.jmeter.protocol.java.sampler.JavaSamplerContext;
+import org.apache.jmeter.samplers.SampleResult;
+import org.picketlink.idm.credential.encoder.BCryptPasswordEncoder;
+import org.picketlink.idm.credential.encoder.PBKDF2PasswordEncoder;
+import org.picketlink.idm.credential.encoder.PasswordEncoder;
+import org.picketlink.idm.credential.encoder.SHAPasswordEncoder;
+
+/**
+ * <p>Measures the cost of verifying passwords with each {@link PasswordEncoder}. Useful to size the hashing thread
+ * pool and the number of iterations/rounds of each encoder.</p>
+ */
+public class PasswordEncoderJMeterTest extends AbstractJavaSamplerClient {
+
+    private PasswordEncoder passwordEncoder;
+    private String encodedPassword;
+    private String rawPassword;
+
+    @Override
+    public Arguments getDefaultParameters() {
+        Arguments arguments = new Arguments();
+
+        arguments.addArgument("encoder", "SHA");
+        arguments.addArgument("strength", "512");
+        arguments.addArgument("rawPassword", "Sample Password");
+
+        return arguments;
+    }
+
+    @Override
+    public void setupTest(JavaSamplerContext context) {
+        String encoder = context.getParameter("encoder", "SHA");
+        int strength = context.getIntParameter("strength", 512);
+
+        if ("BCRYPT".equalsIgnoreCase(encoder)) {
+            this.passwordEncoder = new BCryptPasswordEncoder(strength);
+        } else if ("PBKDF2".equalsIgnoreCase(encoder)) {
+            this.passwordEncoder = new PBKDF2PasswordEncoder("salty".getBytes(), strength, 128);
+        } else {
+            this.passwordEncoder = new SHAPasswordEncoder(strength);
+        }
+
+        this.rawPassword = context.getParameter("rawPassword", "Sample Password");
+        this.encodedPassword = this.passwordEncoder.encode(this.rawPassword);
+    }
+
+    @Override
+    public SampleResult runTest(JavaSamplerContext context) {
+        SampleResult result = new SampleResult();
+
+        result.sampleStart();
+
+        boolean success = false;
+
+        try {
+            success = this.passwordEncoder.verify(this.rawPassword, this.encodedPassword);
+        } catch (Exception e) {
+            e.printStackTrace();
+        } finally {
+            result.sampleEnd();
+            result.setSuccessful(success);
+        }
+
+        return result;
+    }
+
+}
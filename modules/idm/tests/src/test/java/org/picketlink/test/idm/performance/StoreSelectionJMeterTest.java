@@ -0,0 +1,122 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2012, Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+
+package org.picketlink.test.idm.performance;
+
+import org.apache.jmeter.config.Arguments;
+import org.apache.jmeter.protocol.java.sampler.AbstractJavaSamplerClient;
+import org.apache.jmeter.protocol.java.sampler.JavaSamplerContext;
+import org.apache.jmeter.samplers.SampleResult;
+import org.picketlink.idm.config.IdentityConfigurationBuilder;
+import org.picketlink.idm.config.IdentityStoreConfiguration.IdentityOperation;
+import org.picketlink.idm.credential.Password;
+import org.picketlink.idm.internal.DefaultPartitionManager;
+import org.picketlink.idm.model.Relationship;
+import org.picketlink.idm.model.basic.Realm;
+import org.picketlink.idm.model.basic.User;
+import org.picketlink.idm.spi.IdentityContext;
+import org.picketlink.idm.spi.IdentityStore;
+import org.picketlink.idm.spi.StoreSelector;
+
+import java.util.Collections;
+
+/**
+ * <p>Measures the cost of selecting the stores for the most common operations. This is executed for every operation
+ * performed by the identity, relationship and permission managers.</p>
+ */
+public class StoreSelectionJMeterTest extends AbstractJavaSamplerClient {
+
+    private static final DefaultPartitionManager partitionManager = createPartitionManager();
+
+    private IdentityContext identityContext;
+    private String operation;
+
+    @Override
+    public Arguments getDefaultParameters() {
+        Arguments arguments = new Arguments();
+
+        arguments.addArgument("operation", "identity");
+
+        return arguments;
+    }
+
+    @Override
+    public void setupTest(JavaSamplerContext context) {
+        this.operation = context.getParameter("operation", "identity");
+        this.identityContext = (IdentityContext) partitionManager.createIdentityManager();
+    }
+
+    @Override
+    public SampleResult runTest(JavaSamplerContext context) {
+        SampleResult result = new SampleResult();
+        StoreSelector storeSelector = partitionManager;
+
+        result.sampleStart();
+
+        boolean success = false;
+
+        try {
+            for (int i = 0; i < 1000; i++) {
+                if ("query".equals(this.operation)) {
+                    storeSelector.getStoresForIdentityQuery(this.identityContext, User.class);
+                } else if ("credential".equals(this.operation)) {
+                    storeSelector.getStoreForCredentialOperation(this.identityContext, Password.class);
+                } else if ("relationship".equals(this.operation)) {
+                    storeSelector.getStoresForRelationshipQuery(this.identityContext, Relationship.class,
+                        Collections.singleton(this.identityContext.getPartition()));
+                } else {
+                    storeSelector.getStoreForIdentityOperation(this.identityContext, IdentityStore.class, User.class,
+                        IdentityOperation.read);
+                }
+            }
+
+            success = true;
+        } catch (Exception e) {
+            e.printStackTrace();
+        } finally {
+            result.sampleEnd();
+            result.setSuccessful(success);
+        }
+
+        return result;
+    }
+
+    private static DefaultPartitionManager createPartitionManager() {
+        IdentityConfigurationBuilder builder = new IdentityConfigurationBuilder();
+
+        builder
+            .named("default")
+                .stores()
+                    .file()
+                        .preserveState(false)
+                        .supportAllFeatures();
+
+        DefaultPartitionManager partitionManager = new DefaultPartitionManager(builder.buildAll());
+
+        if (partitionManager.getPartition(Realm.class, Realm.DEFAULT_REALM) == null) {
+            partitionManager.add(new Realm(Realm.DEFAULT_REALM));
+        }
+
+        return partitionManager;
+    }
+
+}
@@ -0,0 +1,494 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2012, Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+
+package org.picketlink.test.idm.query;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.picketlink.idm.IdentityManager;
+import org.picketlink.idm.config.AbstractIdentityStoreConfiguration;
+import org.picketlink.idm.config.IdentityConfigurationBuilder;
+import org.picketlink.idm.config.IdentityStoreConfigurationBuilder;
+import org.picketlink.idm.config.IdentityStoresConfigurationBuilder;
+import org.picketlink.idm.credential.Credentials;
+import org.picketlink.idm.credential.handler.CredentialHandler;
+import org.picketlink.idm.internal.DefaultPartitionManager;
+import org.picketlink.idm.model.Account;
+import org.picketlink.idm.model.AttributedType;
+import org.picketlink.idm.model.IdentityType;
+import org.picketlink.idm.model.Partition;
+import org.picketlink.idm.model.Relationship;
+import org.picketlink.idm.model.basic.Realm;
+import org.picketlink.idm.model.basic.Role;
+import org.picketlink.idm.model.basic.User;
+import org.picketlink.idm.query.IdentityQuery;
+import org.picketlink.idm.query.IdentityQueryBuilder;
+import org.picketlink.idm.query.RelationshipQuery;
+import org.picketlink.idm.query.Sort;
+import org.picketlink.idm.spi.ContextInitializer;
+import org.picketlink.idm.spi.IdentityContext;
+import org.picketlink.idm.spi.IdentityStore;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * <p>Test case for querying multiple identity stores concurrently.</p>
+ */
+public class ConcurrentIdentityQueryTestCase {
+
+    private ExecutorService executorService;
+    private AtomicInteger executedTasks;
+    private DefaultPartitionManager partitionManager;
+    private List<String> expectedIds;
+
+    @Before
+    public void onBefore() {
+        this.executorService = Executors.newFixedThreadPool(2);
+        this.executedTasks = new AtomicInteger();
+
+        RoleStore.ignoreSorting = false;
+        RoleStore.changeQuery = false;
+        RoleStore.paginate = false;
+
+        IdentityConfigurationBuilder builder = new IdentityConfigurationBuilder();
+
+        builder
+            .named("default")
+                .stores()
+                    .file()
+                        .preserveState(false)
+                        .supportType(Partition.class, User.class)
+                    .add(RoleStoreConfiguration.class, RoleStoreConfigurationBuilder.class)
+                        .supportType(Role.class);
+
+        this.partitionManager = new DefaultPartitionManager(builder.buildAll());
+        this.partitionManager.add(new Realm(Realm.DEFAULT_REALM));
+
+        IdentityManager identityManager = this.partitionManager.createIdentityManager();
+
+        this.expectedIds = new ArrayList<String>();
+
+        for (int i = 0; i < 5; i++) {
+            User user = new User("user" + i);
+            Role role = new Role("role" + i);
+
+            identityManager.add(user);
+            identityManager.add(role);
+
+            this.expectedIds.add(user.getId());
+            this.expectedIds.add(role.getId());
+        }
+
+        Collections.sort(this.expectedIds);
+    }
+
+    @After
+    public void onAfter() {
+        this.executorService.shutdownNow();
+    }
+
+    @Test
+    public void testSortedPagination() throws Exception {
+        this.partitionManager.setQueryExecutor(new CountingExecutor(this.executorService));
+
+        IdentityManager identityManager = this.partitionManager.createIdentityManager();
+        IdentityQueryBuilder queryBuilder = identityManager.getQueryBuilder();
+
+        for (int offset = 0; offset < this.expectedIds.size(); offset++) {
+            for (int limit = 0; limit <= this.expectedIds.size(); limit++) {
+                IdentityQuery<IdentityType> query = queryBuilder.createIdentityQuery(IdentityType.class)
+                    .sortBy(queryBuilder.asc(IdentityType.ID))
+                    .setOffset(offset)
+                    .setLimit(limit);
+
+                // the offset also applies to queries without limit
+                int toIndex = limit > 0 ? Math.min(offset + limit, this.expectedIds.size()) : this.expectedIds.size();
+
+                assertEquals(this.expectedIds.subList(offset, toIndex), getIds(query.getResultList()));
+                assertEquals(offset, query.getOffset());
+                assertEquals(limit, query.getLimit());
+            }
+        }
+
+        IdentityQuery<IdentityType> query = queryBuilder.createIdentityQuery(IdentityType.class)
+            .sortBy(queryBuilder.desc(IdentityType.ID));
+
+        List<String> expectedDescending = new ArrayList<String>(this.expectedIds);
+
+        Collections.reverse(expectedDescending);
+
+        assertEquals(expectedDescending, getIds(query.getResultList()));
+        assertTrue(this.executedTasks.get() > 0);
+    }
+
+    @Test
+    public void testUnsortedQueryAndCount() throws Exception {
+        this.partitionManager.setQueryExecutor(new CountingExecutor(this.executorService));
+
+        IdentityManager identityManager = this.partitionManager.createIdentityManager();
+        IdentityQuery<IdentityType> query = identityManager.getQueryBuilder().createIdentityQuery(IdentityType.class);
+
+        List<String> ids = getIds(query.getResultList());
+
+        Collections.sort(ids);
+
+        assertEquals(this.expectedIds, ids);
+        assertEquals(this.expectedIds.size(), query.getResultCount());
+
+        for (IdentityType identityType : query.getResultList()) {
+            assertEquals(Realm.DEFAULT_REALM, identityType.getPartition().getName());
+        }
+
+        // a single store is queried by the caller thread
+        this.executedTasks.set(0);
+
+        assertEquals(5, identityManager.getQueryBuilder().createIdentityQuery(User.class).getResultList().size());
+        assertEquals(0, this.executedTasks.get());
+    }
+
+    @Test
+    public void testRejectedTasksRunOnCallerThread() throws Exception {
+        this.partitionManager.setQueryExecutor(new Executor() {
+            @Override
+            public void execute(Runnable command) {
+                throw new RejectedExecutionException();
+            }
+        });
+
+        IdentityManager identityManager = this.partitionManager.createIdentityManager();
+        IdentityQueryBuilder queryBuilder = identityManager.getQueryBuilder();
+        IdentityQuery<IdentityType> query = queryBuilder.createIdentityQuery(IdentityType.class)
+            .sortBy(queryBuilder.asc(IdentityType.ID))
+            .setLimit(3);
+
+        assertEquals(this.expectedIds.subList(0, 3), getIds(query.getResultList()));
+    }
+
+    @Test
+    public void testMergeResultsFromStoreIgnoringSorting() throws Exception {
+        this.partitionManager.setQueryExecutor(new CountingExecutor(this.executorService));
+
+        RoleStore.ignoreSorting = true;
+
+        IdentityManager identityManager = this.partitionManager.createIdentityManager();
+        IdentityQueryBuilder queryBuilder = identityManager.getQueryBuilder();
+        IdentityQuery<IdentityType> query = queryBuilder.createIdentityQuery(IdentityType.class)
+            .sortBy(queryBuilder.asc(IdentityType.ID));
+
+        assertEquals(this.expectedIds, getIds(query.getResultList()));
+
+        // the limit is not pushed down to a store ignoring the sorting, which would return arbitrary roles
+        query = queryBuilder.createIdentityQuery(IdentityType.class)
+            .sortBy(queryBuilder.asc(IdentityType.ID))
+            .setOffset(2)
+            .setLimit(3);
+
+        assertEquals(this.expectedIds.subList(2, 5), getIds(query.getResultList()));
+
+        query = queryBuilder.createIdentityQuery(IdentityType.class);
+        query.setSortParameters(IdentityType.ID);
+        query.setSortAscending(false);
+
+        List<String> expectedDescending = new ArrayList<String>(this.expectedIds);
+
+        Collections.reverse(expectedDescending);
+
+        assertEquals(expectedDescending, getIds(query.getResultList()));
+    }
+
+    @Test
+    public void testStoreChangesToTheQuery() throws Exception {
+        this.partitionManager.setQueryExecutor(new CountingExecutor(this.executorService));
+
+        RoleStore.changeQuery = true;
+
+        IdentityManager identityManager = this.partitionManager.createIdentityManager();
+        IdentityQueryBuilder queryBuilder = identityManager.getQueryBuilder();
+        IdentityQuery<IdentityType> query = queryBuilder.createIdentityQuery(IdentityType.class)
+            .sortBy(queryBuilder.asc(IdentityType.ID))
+            .setLimit(3);
+
+        assertEquals(this.expectedIds.subList(0, 3), getIds(query.getResultList()));
+
+        // the changes made by the store to its view of the query are not visible
+        assertTrue(query.getConditions().isEmpty());
+        assertEquals(1, query.getSorting().size());
+        assertTrue(query.isSortAscending());
+        assertNull(query.getPaginationContext());
+    }
+
+    @Test
+    public void testPaginationContextPerStore() throws Exception {
+        this.partitionManager.setQueryExecutor(new CountingExecutor(this.executorService));
+
+        RoleStore.paginate = true;
+
+        IdentityManager identityManager = this.partitionManager.createIdentityManager();
+        IdentityQueryBuilder queryBuilder = identityManager.getQueryBuilder();
+        IdentityQuery<Role> query = queryBuilder.createIdentityQuery(Role.class).setLimit(2);
+        List<Role> roles = new ArrayList<Role>();
+
+        // each page of the role store continues from the context it returned for the previous page
+        while (true) {
+            IdentityQuery<IdentityType> page = queryBuilder.createIdentityQuery(IdentityType.class).setLimit(2);
+
+            page.setPaginationContext(query.getPaginationContext());
+
+            List<IdentityType> result = page.getResultList();
+            int pageRoles = 0;
+
+            for (IdentityType identityType : result) {
+                if (Role.class.isInstance(identityType)) {
+                    roles.add((Role) identityType);
+                    pageRoles++;
+                }
+            }
+
+            // the users of the file store are paged by offset and limit, and are not dropped to make room for the roles
+            assertEquals(2 + pageRoles, result.size());
+
+            if (pageRoles == 0) {
+                break;
+            }
+
+            query.setPaginationContext(page.getPaginationContext());
+        }
+
+        assertEquals(5, roles.size());
+
+        for (int i = 0; i < roles.size(); i++) {
+            assertEquals("role" + i, roles.get(i).getName());
+        }
+
+        // a pagination context that does not come from a concurrent query is handled by the caller thread
+        this.executedTasks.set(0);
+
+        IdentityQuery<IdentityType> foreignContextQuery = queryBuilder.createIdentityQuery(IdentityType.class)
+            .setLimit(2)
+            .setPaginationContext(Integer.valueOf(4));
+
+        foreignContextQuery.getResultList();
+
+        assertEquals(0, this.executedTasks.get());
+    }
+
+    private List<String> getIds(List<IdentityType> result) {
+        List<String> ids = new ArrayList<String>();
+
+        for (IdentityType identityType : result) {
+            ids.add(identityType.getId());
+        }
+
+        return ids;
+    }
+
+    private class CountingExecutor implements Executor {
+
+        private final Executor delegate;
+
+        CountingExecutor(Executor delegate) {
+            this.delegate = delegate;
+        }
+
+        @Override
+        public void execute(Runnable command) {
+            executedTasks.incrementAndGet();
+            this.delegate.execute(command);
+        }
+    }
+
+    public static class RoleStoreConfigurationBuilder extends
+            IdentityStoreConfigurationBuilder<RoleStoreConfiguration, RoleStoreConfigurationBuilder> {
+
+        public RoleStoreConfigurationBuilder(IdentityStoresConfigurationBuilder builder) {
+            super(builder);
+        }
+
+        @Override
+        public RoleStoreConfiguration create() {
+            return new RoleStoreConfiguration(getSupportedTypes(), getUnsupportedTypes(), getContextInitializers(),
+                getCredentialHandlerProperties(), getCredentialHandlers());
+        }
+    }
+
+    public static class RoleStoreConfiguration extends AbstractIdentityStoreConfiguration {
+
+        protected RoleStoreConfiguration(Map<Class<? extends AttributedType>, Set<IdentityOperation>> supportedTypes,
+                                         Map<Class<? extends AttributedType>, Set<IdentityOperation>> unsupportedTypes,
+                                         List<ContextInitializer> contextInitializers,
+                                         Map<String, Object> credentialHandlerProperties,
+                                         Set<Class<? extends CredentialHandler>> credentialHandlers) {
+            super(supportedTypes, unsupportedTypes, contextInitializers, credentialHandlerProperties,
+                credentialHandlers, false, false, false);
+        }
+
+        @Override
+        public Class<? extends IdentityStore> getIdentityStoreType() {
+            return RoleStore.class;
+        }
+
+        @Override
+        public boolean supportsPartition() {
+            return false;
+        }
+    }
+
+    /**
+     * <p>Keeps roles in memory, sorting them by identifier when required. The store can also ignore the sorting of
+     * queries, change them, or page its roles with a pagination context.</p>
+     */
+    public static class RoleStore implements IdentityStore<RoleStoreConfiguration> {
+
+        static volatile boolean ignoreSorting;
+
+        static volatile boolean changeQuery;
+
+        static volatile boolean paginate;
+
+        private final List<Role> roles = new CopyOnWriteArrayList<Role>();
+        private RoleStoreConfiguration config;
+
+        @Override
+        public void setup(RoleStoreConfiguration config) {
+            this.config = config;
+        }
+
+        @Override
+        public RoleStoreConfiguration getConfig() {
+            return this.config;
+        }
+
+        @Override
+        public void add(IdentityContext context, AttributedType value) {
+            value.setId(context.getIdGenerator().generate());
+            this.roles.add((Role) value);
+        }
+
+        @Override
+        public void update(IdentityContext context, AttributedType value) {
+        }
+
+        @Override
+        public void remove(IdentityContext context, AttributedType value) {
+        }
+
+        @Override
+        public <V extends IdentityType> List<V> fetchQueryResults(IdentityContext context, IdentityQuery<V> identityQuery) {
+            List<V> result = new ArrayList<V>();
+
+            for (Role role : this.roles) {
+                if (identityQuery.getIdentityType().isInstance(role)) {
+                    result.add((V) role);
+                }
+            }
+
+            if (changeQuery) {
+                identityQuery.setParameter(Role.NAME, "role0");
+                identityQuery.setSortParameters(IdentityType.CREATED_DATE);
+                identityQuery.setSortAscending(false);
+            }
+
+            if (paginate && identityQuery.getLimit() > 0) {
+                // the context holds the index of the next role to return
+                int fromIndex = identityQuery.getPaginationContext() != null ? (Integer) identityQuery.getPaginationContext() : 0;
+                int toIndex = Math.min(fromIndex + identityQuery.getLimit(), result.size());
+
+                identityQuery.setPaginationContext(toIndex);
+
+                return new ArrayList<V>(result.subList(Math.min(fromIndex, toIndex), toIndex));
+            }
+
+            if (ignoreSorting) {
+                Collections.shuffle(result);
+            }
+
+            for (final Sort sort : ignoreSorting ? Collections.<Sort>emptySet() : identityQuery.getSorting()) {
+                Collections.sort(result, new Comparator<V>() {
+                    @Override
+                    public int compare(V o1, V o2) {
+                        int sortResult = o1.getId().compareTo(o2.getId());
+                        return sort.isAscending() ? sortResult : -sortResult;
+                    }
+                });
+            }
+
+            if (identityQuery.getLimit() > 0) {
+                int toIndex = Math.min(identityQuery.getOffset() + identityQuery.getLimit(), result.size());
+                result = result.subList(Math.min(identityQuery.getOffset(), toIndex), toIndex);
+            }
+
+            return result;
+        }
+
+        @Override
+        public <V extends IdentityType> int countQueryResults(IdentityContext context, IdentityQuery<V> identityQuery) {
+            int limit = identityQuery.getLimit();
+            int offset = identityQuery.getOffset();
+
+            identityQuery.setLimit(0);
+            identityQuery.setOffset(0);
+
+            int resultCount = identityQuery.getResultList().size();
+
+            identityQuery.setLimit(limit);
+            identityQuery.setOffset(offset);
+
+            return resultCount;
+        }
+
+        @Override
+        public <V extends Relationship> List<V> fetchQueryResults(IdentityContext context, RelationshipQuery<V> query) {
+            return Collections.emptyList();
+        }
+
+        @Override
+        public <V extends Relationship> int countQueryResults(IdentityContext context, RelationshipQuery<V> query) {
+            return 0;
+        }
+
+        @Override
+        public void validateCredentials(IdentityContext context, Credentials credentials) {
+        }
+
+        @Override
+        public void updateCredential(IdentityContext context, Account account, Object credential, Date effectiveDate,
+                                     Date expiryDate) {
+        }
+    }
+}
@@ -38,6 +38,7 @@ import java.security.interfaces.RSAPrivateKey;
 
 import javax.crypto.SecretKey;
 
+import org.picketlink.common.random.RandomGenerator;
 import org.picketlink.json.jose.JWE;
 import org.picketlink.json.util.Base64Util;
 
@@ -122,7 +123,7 @@ public class JWEDecrypter {
 
             // Protect against MMA attack by generating random CEK on failure,
             // see http://www.ietf.org/mail-archive/web/jose/current/msg01832.html
-            SecureRandom randomGen = new SecureRandom();
+            SecureRandom randomGen = RandomGenerator.getInstance().getSecureRandom();
             SecretKey randomCEK = AES.generateKey(keyLength, randomGen);
 
             try {
@@ -37,6 +37,7 @@ import java.security.interfaces.RSAPublicKey;
 
 import javax.crypto.SecretKey;
 
+import org.picketlink.common.random.RandomGenerator;
 import org.picketlink.json.jose.JWE;
 import org.picketlink.json.util.Base64Util;
 
@@ -117,7 +118,7 @@ public class JWEEncrypter {
         final String enc = jweHeader.getEncryptionAlgorithm();
 
         // Generate and encrypt the CEK according to the enc method
-        final SecureRandom randomGen = new SecureRandom();
+        final SecureRandom randomGen = RandomGenerator.getInstance().getSecureRandom();
         final SecretKey cek = AES.generateKey(Integer.parseInt(jweHeader.getCEKBitLength()), randomGen);
 
         byte[] encryptedKey;
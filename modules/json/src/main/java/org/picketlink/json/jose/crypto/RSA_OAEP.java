@@ -21,7 +21,6 @@
  */
 package org.picketlink.json.jose.crypto;
 
-import java.security.SecureRandom;
 import java.security.interfaces.RSAPrivateKey;
 import java.security.interfaces.RSAPublicKey;
 
@@ -29,6 +28,8 @@ import javax.crypto.Cipher;
 import javax.crypto.SecretKey;
 import javax.crypto.spec.SecretKeySpec;
 
+import org.picketlink.common.random.RandomGenerator;
+
 /**
  * RSAES OAEP methods for Content Encryption Key (CEK) encryption and decryption.
  *
@@ -50,7 +51,7 @@ public class RSA_OAEP {
 
         try {
             Cipher cipher = Cipher.getInstance("RSA/ECB/OAEPWithSHA-1AndMGF1Padding");
-            cipher.init(Cipher.ENCRYPT_MODE, pub, new SecureRandom());
+            cipher.init(Cipher.ENCRYPT_MODE, pub, RandomGenerator.getInstance().getSecureRandom());
             return cipher.doFinal(cek.getEncoded());
 
         } catch (Exception e) {
@@ -23,9 +23,10 @@ package org.picketlink.json.util;
 
 import static org.picketlink.json.JsonMessages.MESSAGES;
 
-import java.io.IOException;
 import java.io.UnsupportedEncodingException;
 
+import org.picketlink.common.util.Base64;
+
 public class Base64Util {
 
     /**
@@ -43,47 +44,23 @@ public class Base64Util {
     }
 
     /**
-     * Base64 Encode the byte array without breaking lines.
+     * Base64 Encode the byte array without breaking lines, using the URL and filename safe alphabet without padding.
      *
      * @param bytes the bytes
      * @return the string
      */
     public static String b64Encode(byte[] bytes) {
-        String s = Base64.encodeBytes(bytes);
-
-        s = s.split("=")[0]; // Remove any trailing '='s
-        s = s.replace('+', '-'); // 62nd char of encoding
-        s = s.replace('/', '_'); // 63rd char of encoding
-
-        return s;
+        return Base64.encodeBytes(bytes, Base64.URL_SAFE | Base64.NO_PADDING | Base64.DONT_BREAK_LINES);
     }
 
     /**
-     * Base64 decode the string.
+     * Base64 decode the string, with or without padding.
      *
      * @param s the string to be decoded
      * @return the decoded byte[] array
+     * @throws IllegalStateException if the string is not valid base64url
      */
     public static byte[] b64Decode(String s) {
-        s = s.replace('-', '+'); // 62nd char of encoding
-        s = s.replace('_', '/'); // 63rd char of encoding
-        switch (s.length() % 4) { // Pad with trailing '='s
-            case 0:
-                break; // No pad chars in this case
-            case 2:
-                s += "==";
-                break; // Two pad chars
-            case 3:
-                s += "=";
-                break; // One pad char
-            default:
-                throw new RuntimeException("Illegal base64url string!");
-        }
-
-        try {
-            return Base64.decode(s);
-        } catch (IOException e) {
-            throw new RuntimeException(e);
-        }
+        return Base64.decode(s, Base64.URL_SAFE);
     }
 }
@@ -18,7 +18,6 @@
 package org.picketlink.oauth.registration;
 
 import java.util.Date;
-import java.util.UUID;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 import javax.servlet.http.HttpServletRequest;
@@ -29,6 +28,7 @@ import javax.ws.rs.Path;
 import javax.ws.rs.Produces;
 import javax.ws.rs.core.Context;
 import javax.ws.rs.core.Response;
+import org.picketlink.common.random.RandomGenerator;
 import org.picketlink.idm.model.Attribute;
 import org.picketlink.idm.model.basic.Agent;
 import org.picketlink.oauth.messages.RegistrationRequest;
@@ -129,14 +129,11 @@ public class RegistrationEndpoint extends BaseEndpoint {
     }
 
     private String generateClientID() {
-        return UUID.randomUUID().toString();
+        return RandomGenerator.getInstance().generateUUID();
     }
 
     private String generateClientSecret() {
-        StringBuilder sb = new StringBuilder();
-        Date date = new Date();
-        sb.append(date.getTime());
-        return sb.toString();
+        return RandomGenerator.getInstance().generateId(32);
     }
 
     private long getCurrentTime() {